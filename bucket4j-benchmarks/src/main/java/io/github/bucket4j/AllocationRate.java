@@ -0,0 +1,91 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import io.github.bucket4j.state.LocalLockFreeState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures memory allocation of lock-free bucket via JMH GC profiler(the same as "-prof gc" command line option).
+ * The interesting metric is "gc.alloc.rate.norm" which shows count of bytes allocated per one operation,
+ * it should be zero for rejected consumption and for reading of available tokens.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AllocationRate {
+
+    @Benchmark
+    public boolean tryConsumeOneToken_mostlySuccess_LockFree(LocalLockFreeState state) {
+        return state.unlimitedBucket.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean tryConsumeOneToken_alwaysRejected_LockFree(LocalLockFreeState state) {
+        return state.alwaysEmptyBucket.tryConsume(1);
+    }
+
+    @Benchmark
+    public ConsumptionProbe tryConsumeAndReturnRemaining_alwaysRejected_LockFree(LocalLockFreeState state) {
+        return state.alwaysEmptyBucket.tryConsumeAndReturnRemaining(1);
+    }
+
+    @Benchmark
+    public long getAvailableTokens_LockFree(LocalLockFreeState state) {
+        return state.unlimitedBucket.getAvailableTokens();
+    }
+
+    public static class OneThread {
+
+        public static void main(String[] args) throws RunnerException {
+            benchmark(1);
+        }
+
+    }
+
+    public static class FourThreads {
+
+        public static void main(String[] args) throws RunnerException {
+            benchmark(4);
+        }
+
+    }
+
+    private static void benchmark(int threadCount) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(AllocationRate.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .threads(threadCount)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+}
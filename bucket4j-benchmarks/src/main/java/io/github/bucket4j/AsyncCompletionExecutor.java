@@ -0,0 +1,161 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import io.github.bucket4j.grid.CommandResult;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
+import io.github.bucket4j.grid.GridCommand;
+import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.TryConsumeCommand;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows how slow user continuations chained on asynchronous results occupy the single I/O thread of grid client.
+ * The grid is simulated by single thread which spends small amount of CPU per response,
+ * the "slowContinuation" threads chain expensive continuation on each result,
+ * the "cheapRequest" thread measures the latency of requests without continuations.
+ * When futures are completed by grid thread, the cheap requests wait in line behind slow continuations of other callers,
+ * when futures are completed by {@link CompletionExecutorGridProxy} the latency of cheap requests stays close to the cost of response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AsyncCompletionExecutor {
+
+    private static final long RESPONSE_CPU_TOKENS = 100;
+    private static final long CONTINUATION_CPU_TOKENS = 10_000;
+    private static final GridCommand<Boolean> COMMAND = new TryConsumeCommand(1);
+
+    @Param({"GRID_THREAD", "EXECUTOR"})
+    public String completion;
+
+    public ExecutorService gridThread;
+    public ExecutorService completionExecutor;
+    public GridProxy<Integer> proxy;
+
+    @Setup
+    public void setup() {
+        gridThread = Executors.newSingleThreadExecutor();
+        GridProxy<Integer> gridProxy = new SimulatedGridProxy(gridThread);
+        if ("EXECUTOR".equals(completion)) {
+            completionExecutor = Executors.newFixedThreadPool(4);
+            proxy = new CompletionExecutorGridProxy<>(gridProxy, completionExecutor);
+        } else {
+            proxy = gridProxy;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        gridThread.shutdownNow();
+        if (completionExecutor != null) {
+            completionExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @Group("completion")
+    @GroupThreads(3)
+    public Boolean slowContinuation() {
+        return proxy.executeAsync(1, COMMAND).thenApply(result -> {
+            Blackhole.consumeCPU(CONTINUATION_CPU_TOKENS);
+            return result.getData();
+        }).join();
+    }
+
+    @Benchmark
+    @Group("completion")
+    @GroupThreads(1)
+    public Boolean cheapRequest() {
+        return proxy.executeAsync(2, COMMAND).join().getData();
+    }
+
+    private static class SimulatedGridProxy implements GridProxy<Integer> {
+
+        private final ExecutorService gridThread;
+
+        SimulatedGridProxy(ExecutorService gridThread) {
+            this.gridThread = gridThread;
+        }
+
+        @Override
+        public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(Integer key, GridCommand<T> command) {
+            CompletableFuture<CommandResult<T>> future = new CompletableFuture<>();
+            gridThread.execute(() -> {
+                Blackhole.consumeCPU(RESPONSE_CPU_TOKENS);
+                future.complete(CommandResult.success((T) Boolean.TRUE));
+            });
+            return future;
+        }
+
+        @Override
+        public <T extends Serializable> CommandResult<T> execute(Integer key, GridCommand<T> command) {
+            return executeAsync(key, command).join();
+        }
+
+        @Override
+        public void createInitialState(Integer key, BucketConfiguration configuration) {
+            // state is not simulated
+        }
+
+        @Override
+        public <T extends Serializable> T createInitialStateAndExecute(Integer key, BucketConfiguration configuration, GridCommand<T> command) {
+            return execute(key, command).getData();
+        }
+
+        @Override
+        public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(Integer key, BucketConfiguration configuration, GridCommand<T> command) {
+            return executeAsync(key, command).thenApply(CommandResult::getData);
+        }
+
+        @Override
+        public Optional<BucketConfiguration> getConfiguration(Integer key) {
+            return Optional.empty();
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return true;
+        }
+
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(AsyncCompletionExecutor.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+}
@@ -38,6 +38,16 @@ public class BaseLineWithoutSynchronization {
         return state.bucket.tryConsume(1);
     }
 
+    @Benchmark
+    public boolean tryConsumeOneToken_alwaysSuccess_nanosecondPrecision(LocalUnsafeState state) {
+        return state.bucketWithNanosecondPrecision.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean tryConsumeOneToken_alwaysSuccess_cachedTime(LocalUnsafeState state) {
+        return state.bucketWithCachedTime.tryConsume(1);
+    }
+
     @Benchmark
     public boolean tryConsumeOneToken_alwaysSuccess_withoutRefill(LocalUnsafeState state) {
         return state.bucketWithoutRefill.tryConsume(1);
@@ -48,6 +58,21 @@ public class BaseLineWithoutSynchronization {
         return System.currentTimeMillis();
     }
 
+    @Benchmark
+    public long baseLineSystemMilliseconds() {
+        return TimeMeter.SYSTEM_MILLISECONDS.currentTimeNanos();
+    }
+
+    @Benchmark
+    public long baseLineSystemNanotime() {
+        return TimeMeter.SYSTEM_NANOTIME.currentTimeNanos();
+    }
+
+    @Benchmark
+    public long baseLineCachedTimeMeter(LocalUnsafeState state) {
+        return state.cachedTimeMeter.currentTimeNanos();
+    }
+
     public static class OneThread {
 
         public static void main(String[] args) throws RunnerException {
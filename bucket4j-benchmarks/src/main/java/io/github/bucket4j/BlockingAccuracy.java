@@ -0,0 +1,89 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how accurately blocking strategies wait for requested time.
+ * The requested wait is the {@code waitNanos} parameter, the distribution of actual wait is reported by {@link Mode#SampleTime} percentiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class BlockingAccuracy {
+
+    @Param({"1000", "10000", "50000", "100000", "1000000"})
+    public long waitNanos;
+
+    @Param({"PARKING", "ADAPTIVE"})
+    public String strategyName;
+
+    public BlockingStrategy strategy;
+
+    public Bucket bucket;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        strategy = "PARKING".equals(strategyName) ? BlockingStrategy.PARKING : new AdaptiveBlockingStrategy();
+        // each consumption of one token waits for waitNanos
+        bucket = Bucket4j.builder()
+                .withNanosecondPrecision()
+                .addLimit(0, Bandwidth.simple(1, Duration.ofNanos(waitNanos)))
+                .build();
+    }
+
+    @Benchmark
+    public void park() {
+        strategy.parkUninterruptibly(waitNanos);
+    }
+
+    @Benchmark
+    public boolean consumeOneToken_alwaysWait() {
+        return bucket.tryConsumeUninterruptibly(1, TimeUnit.SECONDS.toNanos(1), strategy);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BlockingAccuracy.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .threads(1)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+}
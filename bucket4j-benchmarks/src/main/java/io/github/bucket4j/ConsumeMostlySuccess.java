@@ -18,7 +18,9 @@
 package io.github.bucket4j;
 
 import io.github.bucket4j.state.GuavaLimiterState;
+import io.github.bucket4j.state.LocalGcraState;
 import io.github.bucket4j.state.LocalLockFreeState;
+import io.github.bucket4j.state.LocalStripedState;
 import io.github.bucket4j.state.LocalSynchronizedState;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -40,11 +42,21 @@ public class ConsumeMostlySuccess {
         state._10_milion_rps_Bucket.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(1), BlockingStrategy.PARKING);
     }
 
+    @Benchmark
+    public void consumeOneToken_mostlySuccess_Gcra(LocalGcraState state) {
+        state._10_milion_rps_Bucket.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(1), BlockingStrategy.PARKING);
+    }
+
     @Benchmark
     public void consumeOneToken_mostlySuccess_Synchronized(LocalSynchronizedState state) {
         state._10_milion_rps_Bucket.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(1), BlockingStrategy.PARKING);
     }
 
+    @Benchmark
+    public void consumeOneToken_mostlySuccess_Striped(LocalStripedState state) {
+        state._10_milion_rps_Bucket.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(1), BlockingStrategy.PARKING);
+    }
+
     @Benchmark
     public void consumeOneToken_mostlySuccess_GuavaLimiter(GuavaLimiterState state) {
         state._10_milion_rps_RateLimiter.acquire();
@@ -74,6 +86,14 @@ public class ConsumeMostlySuccess {
 
     }
 
+    public static class ThirtyTwoThreads {
+
+        public static void main(String[] args) throws RunnerException {
+            benchmark(32);
+        }
+
+    }
+
     private static void benchmark(int threadCount) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(ConsumeMostlySuccess.class.getSimpleName())
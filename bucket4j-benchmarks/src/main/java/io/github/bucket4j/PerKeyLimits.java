@@ -0,0 +1,118 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import io.github.bucket4j.local.LongKeyBucketTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PerKeyLimits {
+
+    private static final int KEYS = 1_000_000;
+
+    @State(Scope.Benchmark)
+    public static class MapOfBucketsState {
+
+        public final ConcurrentHashMap<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+        @Setup
+        public void setup() {
+            for (long key = 0; key < KEYS; key++) {
+                buckets.put(key, newBucket());
+            }
+        }
+
+        public Bucket getBucket(long key) {
+            return buckets.computeIfAbsent(key, k -> newBucket());
+        }
+
+        private static Bucket newBucket() {
+            return Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(1_000, Duration.ofSeconds(1)))
+                    .build();
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class BucketTableState {
+
+        public final LongKeyBucketTable table = Bucket4j.builder()
+                .addLimit(Bandwidth.simple(1_000, Duration.ofSeconds(1)))
+                .buildTable(KEYS);
+
+        @Setup
+        public void setup() {
+            for (long key = 0; key < KEYS; key++) {
+                table.tryConsume(key, 1);
+            }
+        }
+
+    }
+
+    @Benchmark
+    public boolean tryConsume_MapOfBuckets(MapOfBucketsState state) {
+        long key = ThreadLocalRandom.current().nextInt(KEYS);
+        return state.getBucket(key).tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean tryConsume_BucketTable(BucketTableState state) {
+        long key = ThreadLocalRandom.current().nextInt(KEYS);
+        return state.table.tryConsume(key, 1);
+    }
+
+    public static class OneThread {
+
+        public static void main(String[] args) throws RunnerException {
+            benchmark(1);
+        }
+
+    }
+
+    public static class FourThreads {
+
+        public static void main(String[] args) throws RunnerException {
+            benchmark(4);
+        }
+
+    }
+
+    private static void benchmark(int threadCount) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PerKeyLimits.class.getSimpleName())
+                .warmupIterations(10)
+                .measurementIterations(10)
+                .threads(threadCount)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+}
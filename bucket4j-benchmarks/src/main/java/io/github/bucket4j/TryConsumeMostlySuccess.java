@@ -18,7 +18,10 @@
 package io.github.bucket4j;
 
 import io.github.bucket4j.state.GuavaLimiterState;
+import io.github.bucket4j.state.LocalGcraState;
+import io.github.bucket4j.state.LocalLeasingState;
 import io.github.bucket4j.state.LocalLockFreeState;
+import io.github.bucket4j.state.LocalStripedState;
 import io.github.bucket4j.state.LocalSynchronizedState;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -40,11 +43,31 @@ public class TryConsumeMostlySuccess {
         return state.unlimitedBucket.tryConsume(1);
     }
 
+    @Benchmark
+    public boolean tryConsumeOneToken_mostlySuccess_Seqlock(LocalLockFreeState state) {
+        return state.unlimitedSeqlockBucket.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean tryConsumeOneToken_mostlySuccess_Gcra(LocalGcraState state) {
+        return state.unlimitedBucket.tryConsume(1);
+    }
+
     @Benchmark
     public boolean tryConsumeOneToken_mostlySuccess_Synchronized(LocalSynchronizedState state) {
         return state.unlimitedBucket.tryConsume(1);
     }
 
+    @Benchmark
+    public boolean tryConsumeOneToken_mostlySuccess_Striped(LocalStripedState state) {
+        return state.unlimitedBucket.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean tryConsumeOneToken_mostlySuccess_Leasing(LocalLeasingState state) {
+        return state.unlimitedBucket.tryConsume(1);
+    }
+
     @Benchmark
     public boolean tryConsumeOneToken_mostlySuccess_GuavaLimiter(GuavaLimiterState state) {
         return state.guavaRateLimiter.tryAcquire();
@@ -74,6 +97,14 @@ public class TryConsumeMostlySuccess {
 
     }
 
+    public static class ThirtyTwoThreads {
+
+        public static void main(String[] args) throws RunnerException {
+            benchmark(32);
+        }
+
+    }
+
     private static void benchmark(int threadCount) throws RunnerException {
         Options opt = new OptionsBuilder()
                 .include(TryConsumeMostlySuccess.class.getSimpleName())
@@ -0,0 +1,131 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j;
+
+import io.github.bucket4j.local.LocalBucketBuilder;
+import io.github.bucket4j.local.LongKeyBucketTable;
+import io.github.bucket4j.local.SynchronizationStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 100 000 virtual threads contend on small set of buckets, each thread performs single consumption.
+ * Requires Java 21+ at runtime, the executor for virtual threads is obtained reflectively because benchmarks are compiled for Java 8.
+ * Run with {@code -Djdk.tracePinnedThreads=full} to check that nothing pins the carrier threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(VirtualThreadsContention.THREADS)
+@State(Scope.Benchmark)
+public class VirtualThreadsContention {
+
+    static final int THREADS = 100_000;
+    private static final int BUCKETS = 16;
+
+    @Param({"LOCK_FREE", "SYNCHRONIZED", "TABLE"})
+    public String bucketType;
+
+    @Param({"false", "true"})
+    public boolean blocking;
+
+    public Bucket[] buckets;
+    public LongKeyBucketTable table;
+    public ExecutorService executor;
+
+    @Setup
+    public void setup() throws Throwable {
+        executor = newVirtualThreadPerTaskExecutor();
+        LocalBucketBuilder builder = Bucket4j.builder()
+                .addLimit(Bandwidth.simple(1_000_000, Duration.ofSeconds(1)))
+                .addLimit(Bandwidth.simple(10_000_000, Duration.ofSeconds(10)))
+                .addLimit(Bandwidth.simple(100_000_000, Duration.ofSeconds(100)));
+        if ("TABLE".equals(bucketType)) {
+            table = builder.buildTable(BUCKETS);
+            return;
+        }
+        SynchronizationStrategy synchronizationStrategy = "LOCK_FREE".equals(bucketType) ?
+                SynchronizationStrategy.LOCK_FREE : SynchronizationStrategy.SYNCHRONIZED;
+        buckets = new Bucket[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = builder.build(synchronizationStrategy);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void consumeFromVirtualThreads() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            int key = i % BUCKETS;
+            executor.execute(() -> {
+                consume(key);
+                latch.countDown();
+            });
+        }
+        latch.await();
+    }
+
+    private void consume(int key) {
+        if (table != null) {
+            table.tryConsume(key, 1);
+        } else if (blocking) {
+            buckets[key].tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(10), BlockingStrategy.ADAPTIVE);
+        } else {
+            buckets[key].tryConsume(1);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws Throwable {
+        MethodHandle factory;
+        try {
+            factory = MethodHandles.publicLookup().findStatic(java.util.concurrent.Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads are not supported by " + System.getProperty("java.version"), e);
+        }
+        return (ExecutorService) factory.invokeExact();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(VirtualThreadsContention.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.state;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Bucket4j;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+
+@State(Scope.Benchmark)
+public class LocalGcraState {
+
+    public final Bucket unlimitedBucket = Bucket4j.builder()
+            .withGcraState()
+            .addLimit(
+                    Bandwidth.simple(Long.MAX_VALUE / 8, Duration.ofNanos(Long.MAX_VALUE / 8))
+            ).build();
+
+    public final Bucket _10_milion_rps_Bucket = Bucket4j.builder()
+            .withGcraState()
+            .addLimit(0, Bandwidth.simple(10_000_000, Duration.ofSeconds(1)))
+            .build();
+
+}
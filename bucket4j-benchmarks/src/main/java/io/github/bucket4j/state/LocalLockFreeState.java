@@ -20,6 +20,9 @@ package io.github.bucket4j.state;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.local.LockFreeBucket;
+import io.github.bucket4j.local.SynchronizationStrategy;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 
@@ -28,14 +31,25 @@ import java.time.Duration;
 @State(Scope.Benchmark)
 public class LocalLockFreeState {
 
-    public final Bucket unlimitedBucket = Bucket4j.builder()
+    // constructed explicitly, so the measured implementation does not depend on the choice made by builder
+    public final Bucket unlimitedBucket = new LockFreeBucket(Bucket4j.configurationBuilder()
             .addLimit(
                     Bandwidth.simple(Long.MAX_VALUE / 2, Duration.ofNanos(Long.MAX_VALUE / 2))
-            ).build();
+            ).buildConfiguration(), TimeMeter.SYSTEM_MILLISECONDS);
+
+    // allows to compare immutable state with primitive fields protected by version
+    public final Bucket unlimitedSeqlockBucket = Bucket4j.builder()
+            .addLimit(
+                    Bandwidth.simple(Long.MAX_VALUE / 2, Duration.ofNanos(Long.MAX_VALUE / 2))
+            ).build(SynchronizationStrategy.SEQLOCK);
 
     public final Bucket _10_milion_rps_Bucket = Bucket4j.builder()
             .addLimit(0, Bandwidth.simple(10_000_000, Duration.ofSeconds(1)))
             .build();
 
+    public final Bucket alwaysEmptyBucket = new LockFreeBucket(Bucket4j.configurationBuilder()
+            .addLimit(0, Bandwidth.simple(1, Duration.ofDays(365)))
+            .buildConfiguration(), TimeMeter.SYSTEM_MILLISECONDS);
+
 
 }
@@ -20,6 +20,8 @@ package io.github.bucket4j.state;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.CachedTimeMeter;
+import io.github.bucket4j.TimeMeter;
 import io.github.bucket4j.local.SynchronizationStrategy;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
@@ -36,6 +38,20 @@ public class LocalUnsafeState {
             ).build(SynchronizationStrategy.NONE);
 
 
+    public final Bucket bucketWithNanosecondPrecision = Bucket4j.builder()
+            .withNanosecondPrecision()
+            .addLimit(
+                    Bandwidth.simple(Long.MAX_VALUE / 2, Duration.ofNanos(Long.MAX_VALUE / 2))
+            ).build(SynchronizationStrategy.NONE);
+
+    public final Bucket bucketWithCachedTime = Bucket4j.builder()
+            .withCachedTimePrecision(Duration.ofMillis(1))
+            .addLimit(
+                    Bandwidth.simple(Long.MAX_VALUE / 2, Duration.ofNanos(Long.MAX_VALUE / 2))
+            ).build(SynchronizationStrategy.NONE);
+
+    public final TimeMeter cachedTimeMeter = CachedTimeMeter.acquire(Duration.ofMillis(1));
+
     public final Bucket bucketWithoutRefill = Bucket4j.builder()
             .withMillisecondPrecision()
             .withCustomTimePrecision(() -> 0)
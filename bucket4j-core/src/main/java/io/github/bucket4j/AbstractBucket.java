@@ -20,6 +20,7 @@ package io.github.bucket4j;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
 
 public abstract class AbstractBucket implements Bucket {
 
@@ -29,6 +30,17 @@ public abstract class AbstractBucket implements Bucket {
 
     protected abstract ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume);
 
+    /**
+     * Consumes requests one by one via {@link #tryConsumeAndReturnRemainingTokensImpl(long)} until first rejection,
+     * buckets which able to check whole batch atomically should override this method.
+     *
+     * @param cumulativeCosts the cumulative costs of requests, see {@link BatchConsumptionProbe#toCumulativeCosts(long[])}
+     * @return the result of batch consumption
+     */
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        return BatchConsumptionProbe.tryConsumeOneByOne(cumulativeCosts, this::tryConsumeAndReturnRemainingTokensImpl);
+    }
+
     protected abstract long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanos);
 
     protected abstract void addTokensImpl(long tokensToAdd);
@@ -54,6 +66,18 @@ public abstract class AbstractBucket implements Bucket {
      */
     protected abstract CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemainingTokensAsyncImpl(long tokensToConsume);
 
+    /**
+     * Consumes requests one by one via {@link #tryConsumeAndReturnRemainingTokensAsyncImpl(long)} until first rejection,
+     * buckets which able to check whole batch atomically should override this method.
+     *
+     * @param cumulativeCosts the cumulative costs of requests, see {@link BatchConsumptionProbe#toCumulativeCosts(long[])}
+     * @return the future which will be completed by probe which describes which requests were consumed
+     * @throws UnsupportedOperationException if bucket does not support asynchronous mode
+     */
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        return BatchConsumptionProbe.tryConsumeOneByOneAsync(cumulativeCosts, this::tryConsumeAndReturnRemainingTokensAsyncImpl);
+    }
+
     /**
      * @param tokensToConsume
      * @param maxWaitTimeNanos
@@ -89,6 +113,12 @@ public abstract class AbstractBucket implements Bucket {
                 return tryConsumeAndReturnRemainingTokensAsyncImpl(tokensToConsume);
             }
 
+            @Override
+            public CompletableFuture<BatchConsumptionProbe> tryConsumeBatch(long[] costs) {
+                long[] cumulativeCosts = BatchConsumptionProbe.toCumulativeCosts(costs);
+                return tryConsumeBatchAsyncImpl(cumulativeCosts);
+            }
+
             @Override
             public CompletableFuture<Long> tryConsumeAsMuchAsPossible() {
                 return tryConsumeAsMuchAsPossibleAsyncImpl(Long.MAX_VALUE);
@@ -105,29 +135,16 @@ public abstract class AbstractBucket implements Bucket {
                 checkMaxWaitTime(maxWaitTimeNanos);
                 checkTokensToConsume(tokensToConsume);
                 checkScheduler(scheduler);
-                CompletableFuture<Boolean> resultFuture = new CompletableFuture<>();
-                CompletableFuture<Long> reservationFuture = reserveAndCalculateTimeToSleepAsyncImpl(tokensToConsume, maxWaitTimeNanos);
-                reservationFuture.whenComplete((nanosToSleep, exception) -> {
-                    if (exception != null) {
-                        resultFuture.completeExceptionally(exception);
-                        return;
-                    }
-                    if (nanosToSleep == Long.MAX_VALUE) {
-                        resultFuture.complete(false);
-                        return;
-                    }
-                    if (nanosToSleep == 0L) {
-                        resultFuture.complete(true);
-                        return;
-                    }
-                    try {
-                        Runnable delayedCompletion = () -> resultFuture.complete(true);
-                        scheduler.schedule(delayedCompletion, nanosToSleep, TimeUnit.NANOSECONDS);
-                    } catch (Throwable t) {
-                        resultFuture.completeExceptionally(t);
-                    }
-                });
-                return resultFuture;
+                return tryConsumeAsync(tokensToConsume, maxWaitTimeNanos,
+                        (delayedCompletion, nanosToSleep) -> scheduler.schedule(delayedCompletion, nanosToSleep, TimeUnit.NANOSECONDS));
+            }
+
+            @Override
+            public CompletableFuture<Boolean> tryConsumeWithTimer(long tokensToConsume, long maxWaitTimeNanos, HashedWheelTimer timer) {
+                checkMaxWaitTime(maxWaitTimeNanos);
+                checkTokensToConsume(tokensToConsume);
+                checkTimer(timer);
+                return tryConsumeAsync(tokensToConsume, maxWaitTimeNanos, timer::schedule);
             }
 
             @Override
@@ -145,6 +162,32 @@ public abstract class AbstractBucket implements Bucket {
         };
     }
 
+    private CompletableFuture<Boolean> tryConsumeAsync(long tokensToConsume, long maxWaitTimeNanos, ObjLongConsumer<Runnable> delayedCompletionScheduler) {
+        CompletableFuture<Boolean> resultFuture = new CompletableFuture<>();
+        CompletableFuture<Long> reservationFuture = reserveAndCalculateTimeToSleepAsyncImpl(tokensToConsume, maxWaitTimeNanos);
+        reservationFuture.whenComplete((nanosToSleep, exception) -> {
+            if (exception != null) {
+                resultFuture.completeExceptionally(exception);
+                return;
+            }
+            if (nanosToSleep == Long.MAX_VALUE) {
+                resultFuture.complete(false);
+                return;
+            }
+            if (nanosToSleep == 0L) {
+                resultFuture.complete(true);
+                return;
+            }
+            try {
+                Runnable delayedCompletion = () -> resultFuture.complete(true);
+                delayedCompletionScheduler.accept(delayedCompletion, nanosToSleep);
+            } catch (Throwable t) {
+                resultFuture.completeExceptionally(t);
+            }
+        });
+        return resultFuture;
+    }
+
     @Override
     public AsyncBucket asAsync() {
         if (!isAsyncModeSupported()) {
@@ -206,6 +249,12 @@ public abstract class AbstractBucket implements Bucket {
         return tryConsumeAndReturnRemainingTokensImpl(tokensToConsume);
     }
 
+    @Override
+    public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        long[] cumulativeCosts = BatchConsumptionProbe.toCumulativeCosts(costs);
+        return tryConsumeBatchImpl(cumulativeCosts);
+    }
+
     @Override
     public void addTokens(long tokensToAdd) {
         checkTokensToAdd(tokensToAdd);
@@ -242,6 +291,12 @@ public abstract class AbstractBucket implements Bucket {
         }
     }
 
+    private static void checkTimer(HashedWheelTimer timer) {
+        if (timer == null) {
+            throw BucketExceptions.nullTimer();
+        }
+    }
+
     private static void checkConfiguration(BucketConfiguration newConfiguration) {
         if (newConfiguration == null) {
             throw BucketExceptions.nullConfiguration();
@@ -0,0 +1,192 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Blocking strategy which is intended for short waits, for example sub-100 microsecond waits which are typical for buckets with high rate of refill.
+ *
+ * <p>
+ * {@link BlockingStrategy#PARKING} relies on {@link LockSupport#parkNanos(long)} only, but operating system wakes up parked thread
+ * with some delay(timer slack), that often exceeds 50 microseconds, so short waits are overshot many times.
+ * This strategy waits in three phases:
+ * <ul>
+ *     <li>While remaining time is greater than {@code yieldThresholdNanos} the thread is parked,
+ *     but the park duration is reduced by overshoot which was observed for previous parks,
+ *     so the thread wakes up slightly before deadline instead of after it.</li>
+ *     <li>While remaining time is greater than {@code spinThresholdNanos} the thread calls {@link Thread#yield()}.</li>
+ *     <li>The rest of time is busy-spinned with {@code Thread.onSpinWait()} hint when it is available(Java 9+).</li>
+ * </ul>
+ * The overshoot is learned at runtime as exponentially weighted moving average which is shared by all threads which use the same instance of strategy.
+ * The strategy never returns before requested time has elapsed.
+ *
+ * <p>
+ * Yielding and spinning burn the CPU, so this strategy should not be used when count of waiting platform threads exceeds count of available processors.
+ * When the current thread is virtual, the strategy never spins and never subtracts the learned overshoot,
+ * it just parks for whole remaining time exactly like {@link BlockingStrategy#PARKING}, because parking of virtual thread releases the carrier thread,
+ * while spinning would occupy the carrier which is shared with other virtual threads.
+ */
+public class AdaptiveBlockingStrategy implements BlockingStrategy {
+
+    public static final long DEFAULT_SPIN_THRESHOLD_NANOS = 10_000;
+    public static final long DEFAULT_YIELD_THRESHOLD_NANOS = 50_000;
+
+    // samples which exceed this value are caused by descheduling of thread rather than by timer slack, so they are truncated
+    private static final long MAX_OVERSHOOT_SAMPLE_NANOS = 1_000_000;
+    // the weight of new sample is 1/8
+    private static final int EWMA_SHIFT = 3;
+
+    private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+    private final long spinThresholdNanos;
+    private final long yieldThresholdNanos;
+
+    // is not updated atomically, lost updates just slightly slow down the learning
+    private volatile long parkOvershootNanos;
+
+    public AdaptiveBlockingStrategy() {
+        this(DEFAULT_SPIN_THRESHOLD_NANOS, DEFAULT_YIELD_THRESHOLD_NANOS);
+    }
+
+    /**
+     * Creates the strategy.
+     *
+     * @param spinThresholdNanos the remaining time below which thread spins
+     * @param yieldThresholdNanos the remaining time below which thread yields instead of parking
+     */
+    public AdaptiveBlockingStrategy(long spinThresholdNanos, long yieldThresholdNanos) {
+        if (spinThresholdNanos < 0) {
+            throw BucketExceptions.negativeSpinThreshold(spinThresholdNanos);
+        }
+        if (yieldThresholdNanos < spinThresholdNanos) {
+            throw BucketExceptions.yieldThresholdLessThanSpinThreshold(yieldThresholdNanos, spinThresholdNanos);
+        }
+        this.spinThresholdNanos = spinThresholdNanos;
+        this.yieldThresholdNanos = yieldThresholdNanos;
+    }
+
+    @Override
+    public void park(long nanosToPark) throws InterruptedException {
+        final long endNanos = System.nanoTime() + nanosToPark;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (!waitAndCheckRemaining(endNanos)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void parkUninterruptibly(long nanosToPark) {
+        final long endNanos = System.nanoTime() + nanosToPark;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                // interrupted thread can not be parked, so the flag is cleared and restored at the end
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+                if (!waitAndCheckRemaining(endNanos)) {
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                // restore interrupted status
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the average overshoot of {@link LockSupport#parkNanos(long)} which was learned by this strategy.
+     *
+     * @return average overshoot of park in nanoseconds
+     */
+    public long getParkOvershootNanos() {
+        return parkOvershootNanos;
+    }
+
+    // returns false when deadline reached
+    private boolean waitAndCheckRemaining(long endNanos) {
+        long remainingNanos = endNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            return false;
+        }
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            LockSupport.parkNanos(remainingNanos);
+            return true;
+        }
+        if (remainingNanos <= spinThresholdNanos) {
+            onSpinWait();
+            return true;
+        }
+        long overshootNanos = parkOvershootNanos;
+        if (remainingNanos <= yieldThresholdNanos + overshootNanos) {
+            Thread.yield();
+            return true;
+        }
+
+        long nanosToPark = remainingNanos - overshootNanos;
+        long startNanos = System.nanoTime();
+        LockSupport.parkNanos(nanosToPark);
+        long actualNanos = System.nanoTime() - startNanos;
+        if (actualNanos >= nanosToPark) {
+            // wake up which is caused by unpark or interrupt says nothing about timer slack
+            long sample = Math.min(actualNanos - nanosToPark, MAX_OVERSHOOT_SAMPLE_NANOS);
+            parkOvershootNanos = overshootNanos + ((sample - overshootNanos) >> EWMA_SHIFT);
+        }
+        return true;
+    }
+
+    private static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable e) {
+                // Thread.onSpinWait never throws
+            }
+        }
+    }
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // Java 8
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveBlockingStrategy{" +
+                "spinThresholdNanos=" + spinThresholdNanos +
+                ", yieldThresholdNanos=" + yieldThresholdNanos +
+                ", parkOvershootNanos=" + parkOvershootNanos +
+                '}';
+    }
+
+}
@@ -100,6 +100,24 @@ public interface AsyncBucket {
      */
     CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemaining(long numTokens);
 
+    /**
+     * Asynchronous version of {@link Bucket#tryConsumeBatch(long[])}, follows the same semantic.
+     * For buckets which are stored in the grid the whole batch is sent to back-end as single command.
+     *
+     * <p>
+     * The default implementation consumes the requests one by one via {@link #tryConsumeAndReturnRemaining(long)} until first rejection,
+     * so it is neither atomic nor single round-trip, the buckets provided by Bucket4j override it.
+     *
+     * @param costs the count of tokens required by each request in the batch, each cost must be a positive number.
+     *
+     * @return the future which eventually will be completed by {@link BatchConsumptionProbe probe} which describes which requests were consumed.
+     *
+     * @see Bucket#tryConsumeBatch(long[])
+     */
+    default CompletableFuture<BatchConsumptionProbe> tryConsumeBatch(long[] costs) {
+        return BatchConsumptionProbe.tryConsumeOneByOneAsync(BatchConsumptionProbe.toCumulativeCosts(costs), this::tryConsumeAndReturnRemaining);
+    }
+
     /**
      * Asynchronous version of {@link Bucket#tryConsumeAsMuchAsPossible()}, follows the same semantic.
      *
@@ -196,6 +214,37 @@ public interface AsyncBucket {
      */
     CompletableFuture<Boolean> tryConsume(long numTokens, long maxWaitNanos, ScheduledExecutorService scheduler);
 
+    /**
+     * Has same semantic with {@link #tryConsume(long, long, ScheduledExecutorService)},
+     * but delayed completion of future is scheduled to the timer which is shared by all buckets, see {@link HashedWheelTimer#getDefault()}.
+     * The future can be completed later than reserved tokens are refilled, up to one tick of timer, but never earlier.
+     *
+     * @param numTokens The number of tokens to consume from the bucket.
+     * @param maxWaitNanos limit of time(in nanoseconds) which thread can wait.
+     *
+     * @return true if {@code numTokens} has been consumed or false when {@code numTokens} has not been consumed
+     */
+    default CompletableFuture<Boolean> tryConsume(long numTokens, long maxWaitNanos) {
+        return tryConsumeWithTimer(numTokens, maxWaitNanos, HashedWheelTimer.getDefault());
+    }
+
+    /**
+     * Has same semantic with {@link #tryConsume(long, long, ScheduledExecutorService)},
+     * but delayed completion of future is scheduled to the {@code timer}, which allows to choose the tick of timer.
+     *
+     * @param numTokens The number of tokens to consume from the bucket.
+     * @param maxWaitNanos limit of time(in nanoseconds) which thread can wait.
+     * @param timer the timer which is used to complete the future after delay
+     *
+     * @return true if {@code numTokens} has been consumed or false when {@code numTokens} has not been consumed
+     */
+    default CompletableFuture<Boolean> tryConsumeWithTimer(long numTokens, long maxWaitNanos, HashedWheelTimer timer) {
+        if (timer == null) {
+            throw BucketExceptions.nullTimer();
+        }
+        return tryConsume(numTokens, maxWaitNanos, new HashedWheelTimerScheduler(timer));
+    }
+
     /**
      * Asynchronous version of {@link Bucket#addTokens(long)}, follows the same semantic.
      *
@@ -0,0 +1,217 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+
+/**
+ * Describes the result of batch consumption, see {@link Bucket#tryConsumeBatch(long[])}.
+ *
+ * <p>
+ * The requests of batch are admitted in order, so the consumed requests always form a prefix of batch:
+ * requests with indexes {@code [0, getConsumedCount())} are consumed, others are rejected.
+ */
+public class BatchConsumptionProbe implements Serializable {
+
+    private static final long serialVersionUID = 42L;
+
+    private final int requestedCount;
+    private final int consumedCount;
+    private final long consumedTokens;
+    private final long remainingTokens;
+    private final long nanosToWaitForRefill;
+
+    public BatchConsumptionProbe(int requestedCount, int consumedCount, long consumedTokens, long remainingTokens, long nanosToWaitForRefill) {
+        this.requestedCount = requestedCount;
+        this.consumedCount = consumedCount;
+        this.consumedTokens = consumedTokens;
+        this.remainingTokens = Math.max(0L, remainingTokens);
+        this.nanosToWaitForRefill = nanosToWaitForRefill;
+    }
+
+    /**
+     * @return true if all requests of batch were consumed
+     */
+    public boolean isAllConsumed() {
+        return consumedCount == requestedCount;
+    }
+
+    /**
+     * Checks that request with specified index was consumed.
+     *
+     * @param index the index of request in the batch
+     *
+     * @return true if request was consumed
+     */
+    public boolean isConsumed(int index) {
+        return index < consumedCount;
+    }
+
+    /**
+     * @return the count of requests in the batch
+     */
+    public int getRequestedCount() {
+        return requestedCount;
+    }
+
+    /**
+     * @return the count of requests from the beginning of batch which were consumed
+     */
+    public int getConsumedCount() {
+        return consumedCount;
+    }
+
+    /**
+     * @return the sum of costs of consumed requests
+     */
+    public long getConsumedTokens() {
+        return consumedTokens;
+    }
+
+    /**
+     * @return the tokens remaining in the bucket after consumption
+     */
+    public long getRemainingTokens() {
+        return remainingTokens;
+    }
+
+    /**
+     * Returns zero if {@link #isAllConsumed()} returns true, else time in nanos which need to wait until the first rejected request can be consumed.
+     *
+     * @return time in nanos which need to wait until the first rejected request can be consumed
+     */
+    public long getNanosToWaitForRefill() {
+        return nanosToWaitForRefill;
+    }
+
+    // ------------------- primitive functions which are used by buckets to calculate the batch inside single atomic operation -----------------
+
+    /**
+     * Converts the costs of requests to cumulative costs, the element {@code i} of result is the sum of costs from {@code 0} to {@code i} inclusive.
+     * The sum is saturated at {@code Long.MAX_VALUE}.
+     *
+     * @param costs the costs of requests, each cost must be positive
+     *
+     * @return the cumulative costs
+     */
+    public static long[] toCumulativeCosts(long[] costs) {
+        if (costs == null) {
+            throw BucketExceptions.nullBatch();
+        }
+        if (costs.length == 0) {
+            throw BucketExceptions.emptyBatch();
+        }
+        long[] cumulativeCosts = new long[costs.length];
+        long sum = 0;
+        for (int i = 0; i < costs.length; i++) {
+            long cost = costs[i];
+            if (cost <= 0) {
+                throw BucketExceptions.nonPositiveTokensToConsume(cost);
+            }
+            sum = sum > Long.MAX_VALUE - cost ? Long.MAX_VALUE : sum + cost;
+            cumulativeCosts[i] = sum;
+        }
+        return cumulativeCosts;
+    }
+
+    /**
+     * Calculates how many requests from the beginning of batch can be consumed when {@code availableTokens} are available.
+     *
+     * @param cumulativeCosts the cumulative costs of requests
+     * @param availableTokens the count of available tokens
+     *
+     * @return the count of requests which can be consumed
+     */
+    public static int countConsumable(long[] cumulativeCosts, long availableTokens) {
+        // binary search of first element which is greater than available tokens
+        int low = 0;
+        int high = cumulativeCosts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeCosts[middle] <= availableTokens) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param cumulativeCosts the cumulative costs of requests
+     * @param count the count of requests from the beginning of batch
+     *
+     * @return the sum of costs of first {@code count} requests
+     */
+    public static long tokensOf(long[] cumulativeCosts, int count) {
+        return count == 0 ? 0 : cumulativeCosts[count - 1];
+    }
+
+    // ------------- consumption one by one which is used by default methods of Bucket, AsyncBucket and AbstractBucket -------------
+
+    static BatchConsumptionProbe tryConsumeOneByOne(long[] cumulativeCosts, LongFunction<ConsumptionProbe> consumer) {
+        int index = 0;
+        while (true) {
+            ConsumptionProbe probe = consumer.apply(costOf(cumulativeCosts, index));
+            if (!probe.isConsumed() || index == cumulativeCosts.length - 1) {
+                return afterRequest(cumulativeCosts, index, probe);
+            }
+            index++;
+        }
+    }
+
+    static CompletableFuture<BatchConsumptionProbe> tryConsumeOneByOneAsync(long[] cumulativeCosts, LongFunction<CompletableFuture<ConsumptionProbe>> consumer) {
+        return tryConsumeOneByOneAsync(cumulativeCosts, consumer, 0);
+    }
+
+    private static CompletableFuture<BatchConsumptionProbe> tryConsumeOneByOneAsync(long[] cumulativeCosts,
+                                                                                   LongFunction<CompletableFuture<ConsumptionProbe>> consumer, int index) {
+        return consumer.apply(costOf(cumulativeCosts, index)).thenCompose(probe -> {
+            if (!probe.isConsumed() || index == cumulativeCosts.length - 1) {
+                return CompletableFuture.completedFuture(afterRequest(cumulativeCosts, index, probe));
+            }
+            return tryConsumeOneByOneAsync(cumulativeCosts, consumer, index + 1);
+        });
+    }
+
+    private static long costOf(long[] cumulativeCosts, int index) {
+        return cumulativeCosts[index] - tokensOf(cumulativeCosts, index);
+    }
+
+    private static BatchConsumptionProbe afterRequest(long[] cumulativeCosts, int index, ConsumptionProbe probe) {
+        int consumedCount = probe.isConsumed() ? index + 1 : index;
+        long nanosToWaitForRefill = probe.isConsumed() ? 0 : probe.getNanosToWaitForRefill();
+        return new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensOf(cumulativeCosts, consumedCount),
+                probe.getRemainingTokens(), nanosToWaitForRefill);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchConsumptionProbe{" +
+                "requestedCount=" + requestedCount +
+                ", consumedCount=" + consumedCount +
+                ", consumedTokens=" + consumedTokens +
+                ", remainingTokens=" + remainingTokens +
+                ", nanosToWaitForRefill=" + nanosToWaitForRefill +
+                '}';
+    }
+
+}
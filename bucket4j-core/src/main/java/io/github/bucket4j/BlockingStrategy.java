@@ -23,8 +23,12 @@ import java.util.concurrent.locks.LockSupport;
 /**
  * Specifies the way to block current thread to amount of time required to refill missed number of tokens in the bucket.
  *
- * There is default implementation {@link #PARKING},
+ * There is default implementation {@link #PARKING}, and {@link #ADAPTIVE} which is more accurate for sub-100 microsecond waits,
  * also you can provide any other implementation which for example does something useful instead of blocking(acts as co-routine) or does spin loop.
+ *
+ * <p>
+ * Both built-in strategies are safe for virtual threads: they block via {@link LockSupport} which unmounts virtual thread from its carrier,
+ * and {@link #ADAPTIVE} does not spin on virtual threads.
  */
 public interface BlockingStrategy {
 
@@ -94,4 +98,9 @@ public interface BlockingStrategy {
 
     };
 
+    /**
+     * Shared instance of {@link AdaptiveBlockingStrategy} with default thresholds.
+     */
+    BlockingStrategy ADAPTIVE = new AdaptiveBlockingStrategy();
+
 }
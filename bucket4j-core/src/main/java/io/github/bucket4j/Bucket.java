@@ -68,6 +68,27 @@ public interface Bucket {
      */
     ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens);
 
+    /**
+     * Tries to consume tokens for the batch of requests in single atomic operation,
+     * it is the replacement for the loop of {@link #tryConsume(long)} calls which does one refill and one write of state for the whole batch,
+     * and for buckets which are stored in the grid it is single round-trip.
+     *
+     * <p>
+     * The requests are admitted in order: the longest prefix of batch which sum of costs does not exceed available tokens is consumed,
+     * and the rest of batch is rejected even if smaller requests from the rest could be consumed separately.
+     *
+     * <p>
+     * The default implementation consumes the requests one by one via {@link #tryConsumeAndReturnRemaining(long)} until first rejection,
+     * so it is neither atomic nor single round-trip, the buckets provided by Bucket4j override it.
+     *
+     * @param costs the count of tokens required by each request in the batch, each cost must be a positive number.
+     *
+     * @return {@link BatchConsumptionProbe} which describes which requests were consumed and how long to wait for the first rejected request.
+     */
+    default BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        return BatchConsumptionProbe.tryConsumeOneByOne(BatchConsumptionProbe.toCumulativeCosts(costs), this::tryConsumeAndReturnRemaining);
+    }
+
     /**
      * Tries to consume as much tokens from this bucket as available at the moment of invocation.
      *
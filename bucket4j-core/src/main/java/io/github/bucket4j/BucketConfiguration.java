@@ -28,8 +28,13 @@ public final class BucketConfiguration implements Serializable {
 
     private final Bandwidth[] bandwidths;
     private final long[] bandwidthsInitialTokens;
+    private final boolean gcraState;
 
     public BucketConfiguration(List<BandwidthDefinition> bandwidths) {
+        this(bandwidths, false);
+    }
+
+    public BucketConfiguration(List<BandwidthDefinition> bandwidths, boolean gcraState) {
         if (bandwidths.isEmpty()) {
             throw BucketExceptions.restrictionsNotSpecified();
         }
@@ -39,6 +44,15 @@ public final class BucketConfiguration implements Serializable {
             this.bandwidths[i] = bandwidths.get(i).getBandwidth();
             this.bandwidthsInitialTokens[i] = bandwidths.get(i).getInitialTokens();
         }
+        if (gcraState) {
+            if (this.bandwidths.length != 1) {
+                throw BucketExceptions.gcraRequiresSingleBandwidth(this.bandwidths.length);
+            }
+            if (!GcraState.isCompatible(this.bandwidths[0])) {
+                throw BucketExceptions.gcraIncompatibleBandwidth(this.bandwidths[0]);
+            }
+        }
+        this.gcraState = gcraState;
     }
 
     public Bandwidth[] getBandwidths() {
@@ -49,10 +63,18 @@ public final class BucketConfiguration implements Serializable {
         return bandwidthsInitialTokens;
     }
 
+    /**
+     * @return true if state of bucket should be represented by {@link GcraState} instead of {@link BucketState}
+     */
+    public boolean isGcraState() {
+        return gcraState;
+    }
+
     @Override
     public String toString() {
         return "BucketConfiguration{" +
                 "bandwidths=" + Arrays.toString(bandwidths) +
+                ", gcraState=" + gcraState +
                 '}';
     }
 
@@ -63,7 +85,8 @@ public final class BucketConfiguration implements Serializable {
     }
 
     public boolean isCompatible(BucketConfiguration newConfiguration) {
-        return bandwidths.length == newConfiguration.bandwidths.length;
+        return bandwidths.length == newConfiguration.bandwidths.length
+                && gcraState == newConfiguration.gcraState;
     }
 
 }
@@ -49,6 +49,17 @@ public final class BucketExceptions {
         return new IllegalArgumentException(msg);
     }
 
+    public static IllegalArgumentException nullTimeResolution() {
+        String msg = "Time resolution can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveTimeResolution(long resolutionNanos) {
+        String pattern = "{0} is wrong value for time resolution, because resolution should be positive";
+        String msg = MessageFormat.format(pattern, resolutionNanos);
+        return new IllegalArgumentException(msg);
+    }
+
     public static IllegalArgumentException nullRefillPeriod() {
         String msg = "Refill period can not be null";
         return new IllegalArgumentException(msg);
@@ -94,6 +105,110 @@ public final class BucketExceptions {
         return new IllegalArgumentException(msg);
     }
 
+    public static IllegalArgumentException nonPositiveStripes(int stripes) {
+        String pattern = "{0} is wrong value for stripes, because stripes should be positive";
+        String msg = MessageFormat.format(pattern, stripes);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullBucket() {
+        String msg = "Bucket can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveLeaseBatch(long batch) {
+        String pattern = "{0} is wrong value for lease batch, because batch should be positive";
+        String msg = MessageFormat.format(pattern, batch);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException wrongLeaseBatchRange(long minBatch, long maxBatch) {
+        String pattern = "Minimum lease batch {0} should not be greater than maximum lease batch {1}";
+        String msg = MessageFormat.format(pattern, minBatch, maxBatch);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveLeaseDuration(long leaseDurationNanos) {
+        String pattern = "{0} is wrong value for lease duration, because lease duration should be positive";
+        String msg = MessageFormat.format(pattern, leaseDurationNanos);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException negativeExpectedKeys(int expectedKeys) {
+        String pattern = "{0} is wrong value for expected count of keys, because count of keys should not be negative";
+        String msg = MessageFormat.format(pattern, expectedKeys);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveSegments(int segments) {
+        String pattern = "{0} is wrong value for count of segments, because count of segments should be positive";
+        String msg = MessageFormat.format(pattern, segments);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveMaxBuckets(long maxBuckets) {
+        String pattern = "{0} is wrong value for max count of buckets, because max count of buckets should be positive";
+        String msg = MessageFormat.format(pattern, maxBuckets);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalStateException segmentIsFull(int size, int capacity) {
+        String pattern = "Segment of table holds {0} keys and can not grow beyond capacity {1} because of array length limit, use more segments";
+        String msg = MessageFormat.format(pattern, size, capacity);
+        return new IllegalStateException(msg);
+    }
+
+    public static IllegalArgumentException gcraRequiresSingleBandwidth(int bandwidthCount) {
+        String pattern = "GCRA state can not be used with {0} bandwidths, because GCRA requires exactly one bandwidth";
+        String msg = MessageFormat.format(pattern, bandwidthCount);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException gcraIncompatibleBandwidth(Bandwidth bandwidth) {
+        String pattern = "GCRA state can not be used with {0}, because refill period should be divisible by count of refill tokens " +
+                "and capacity multiplied by refill period of one token should not exceed {1} nanoseconds";
+        String msg = MessageFormat.format(pattern, bandwidth, GcraState.MAX_BURST_NANOS);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveTicksPerWheel(int ticksPerWheel) {
+        String pattern = "{0} is wrong value for count of ticks per wheel, because count of ticks should be positive";
+        String msg = MessageFormat.format(pattern, ticksPerWheel);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullTimer() {
+        String msg = "Timer can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullExecutor() {
+        String msg = "Executor can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static UnsupportedOperationException defaultTimerCanNotBeStopped() {
+        String msg = "Default timer is shared by all buckets, so it can not be stopped";
+        return new UnsupportedOperationException(msg);
+    }
+
+    public static UnsupportedOperationException gcraStateRequiresCurrentTime() {
+        String msg = "Token count of GCRA state depends on current time, so it can not be converted to BucketState without time";
+        return new UnsupportedOperationException(msg);
+    }
+
+    public static IllegalArgumentException negativeSpinThreshold(long spinThresholdNanos) {
+        String pattern = "{0} is wrong value for spin threshold, because threshold should not be negative";
+        String msg = MessageFormat.format(pattern, spinThresholdNanos);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException yieldThresholdLessThanSpinThreshold(long yieldThresholdNanos, long spinThresholdNanos) {
+        String pattern = "Yield threshold {0} should not be less than spin threshold {1}";
+        String msg = MessageFormat.format(pattern, yieldThresholdNanos, spinThresholdNanos);
+        return new IllegalArgumentException(msg);
+    }
+
     // ------------------- end of construction time exceptions --------------------------------
 
     // ------------------- usage time exceptions  ---------------------------------------------
@@ -109,6 +224,106 @@ public final class BucketExceptions {
         return new IllegalArgumentException(msg);
     }
 
+    public static IllegalArgumentException nullBatch() {
+        String msg = "Costs of batch can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException emptyBatch() {
+        String msg = "Batch should contain at least one request";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullGridProxy() {
+        String msg = "Grid proxy can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveMaxBatchSize(int maxBatchSize) {
+        String pattern = "Max batch size should be positive, {0} is wrong";
+        String msg = MessageFormat.format(pattern, maxBatchSize);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullMultiKeyConsistency() {
+        String msg = "Consistency of multi-key request can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveLocalShare(long maxLocalShare) {
+        String pattern = "{0} is wrong value for maximum local share, because share should be positive";
+        String msg = MessageFormat.format(pattern, maxLocalShare);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException negativeLowWatermark(long lowWatermark) {
+        String pattern = "{0} is wrong value for low watermark, because watermark should not be negative";
+        String msg = MessageFormat.format(pattern, lowWatermark);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveRebalanceInterval(long rebalanceIntervalNanos) {
+        String pattern = "{0} is wrong value for rebalance interval, because interval should be positive";
+        String msg = MessageFormat.format(pattern, rebalanceIntervalNanos);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveDeadline(long deadlineNanos) {
+        String pattern = "{0} is wrong value for deadline, because deadline should be positive";
+        String msg = MessageFormat.format(pattern, deadlineNanos);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException wrongHedgeDelay(long hedgeDelayNanos, long deadlineNanos) {
+        String pattern = "Hedge delay {0} should be positive and less than deadline {1}";
+        String msg = MessageFormat.format(pattern, hedgeDelayNanos, deadlineNanos);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullFallbackStrategy() {
+        String msg = "Fallback strategy can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException asyncModeIsNotSupportedByGridProxy() {
+        String msg = "Grid proxy should support asynchronous mode in order to bound the duration of operations";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveFlushInterval(long flushIntervalNanos) {
+        String pattern = "{0} is wrong value for flush interval, because interval should be positive";
+        String msg = MessageFormat.format(pattern, flushIntervalNanos);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveFlushThreshold(long flushThreshold) {
+        String pattern = "{0} is wrong value for flush threshold, because threshold should be positive";
+        String msg = MessageFormat.format(pattern, flushThreshold);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nonPositiveMaxInFlightOperations(int maxInFlightOperations) {
+        String pattern = "Max count of in-flight operations should be positive, {0} is wrong";
+        String msg = MessageFormat.format(pattern, maxInFlightOperations);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException negativeMaxQueueSize(int maxQueueSize) {
+        String pattern = "Max queue size should not be negative, {0} is wrong";
+        String msg = MessageFormat.format(pattern, maxQueueSize);
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullOverflowStrategy() {
+        String msg = "Overflow strategy can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
+    public static IllegalArgumentException nullCompletionExecutor() {
+        String msg = "Completion executor can not be null";
+        return new IllegalArgumentException(msg);
+    }
+
     private BucketExceptions() {
         // private constructor for utility class
     }
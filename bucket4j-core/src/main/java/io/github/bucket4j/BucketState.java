@@ -56,10 +56,53 @@ public class BucketState implements Serializable {
         System.arraycopy(sourceState.stateData, 0, stateData, 0, stateData.length);
     }
 
+    /**
+     * Copies the state from the region of array which was previously filled by {@link #copyStateTo(long[], int)}.
+     *
+     * @param source the array which contains the state
+     * @param offset the offset of state inside array
+     */
+    public void copyStateFrom(long[] source, int offset) {
+        System.arraycopy(source, offset, stateData, 0, stateData.length);
+    }
+
+    /**
+     * Copies this state to the region of array, the size of region is equal to {@link #getSizeInLongs()}.
+     *
+     * @param target the array to which state should be copied
+     * @param offset the offset of state inside array
+     */
+    public void copyStateTo(long[] target, int offset) {
+        System.arraycopy(stateData, 0, target, offset, stateData.length);
+    }
+
+    /**
+     * @return the count of long values which required to store this state in the array
+     */
+    public int getSizeInLongs() {
+        return stateData.length;
+    }
+
     public static BucketState createInitialState(BucketConfiguration configuration, long currentTimeNanos) {
         return new BucketState(configuration, currentTimeNanos);
     }
 
+    /**
+     * Restores the state from its raw representation.
+     * This method is intended for bucket implementations which store the state in their own format instead of {@link BucketState}.
+     *
+     * @param lastRefillTimeNanos the time of last refill
+     * @param sizesAndRoundingErrors pairs of current size and rounding error, one pair for each bandwidth
+     *
+     * @return the state
+     */
+    public static BucketState fromRawData(long lastRefillTimeNanos, long... sizesAndRoundingErrors) {
+        long[] stateData = new long[1 + sizesAndRoundingErrors.length];
+        stateData[LAST_REFILL_TIME_OFFSET] = lastRefillTimeNanos;
+        System.arraycopy(sizesAndRoundingErrors, 0, stateData, 1, sizesAndRoundingErrors.length);
+        return new BucketState(stateData);
+    }
+
     public long getAvailableTokens(Bandwidth[] bandwidths) {
         long availableTokens = getCurrentSize(0);
         for (int i = 1; i < bandwidths.length; i++) {
@@ -205,11 +248,11 @@ public class BucketState implements Serializable {
         }
     }
 
-    long getCurrentSize(int bandwidth) {
+    public long getCurrentSize(int bandwidth) {
         return stateData[1 + bandwidth * 2];
     }
 
-    long getRoundingError(int bandwidth) {
+    public long getRoundingError(int bandwidth) {
         return stateData[2 + bandwidth * 2];
     }
 
@@ -221,7 +264,7 @@ public class BucketState implements Serializable {
         stateData[2 + bandwidth * 2] = roundingError;
     }
 
-    private long getLastRefillTimeNanos() {
+    public long getLastRefillTimeNanos() {
         return stateData[LAST_REFILL_TIME_OFFSET];
     }
 
@@ -0,0 +1,191 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The implementation of {@link TimeMeter} which reads the time from volatile field instead of calling the system clock.
+ * The field is updated by daemon ticker thread with configured resolution, so reading of time costs as cheap as single volatile read.
+ *
+ * <p>
+ * All time meters with same resolution share single ticker thread. The ticker is started when first time meter is acquired,
+ * and stopped when all time meters with same resolution are closed via {@link #close()} or became garbage collected.
+ * So, there is no need to close the time meter which is used by bucket, the ticker will be stopped automatically after bucket collection.
+ *
+ * <p>
+ * The time returned by this meter lags behind the {@link System#nanoTime()} for up to resolution(plus scheduling delays of ticker thread),
+ * so the refill of buckets is recognized with the same lag. This lag leads to small under-consumption, but never to over-consumption.
+ * After closing the time meter falls back to {@link System#nanoTime()}.
+ *
+ * <pre>{@code
+ * Bucket bucket = Bucket4j.builder()
+ *       .withCachedTimePrecision(Duration.ofMillis(1))
+ *       .addLimit(Bandwidth.simple(100, Duration.ofSeconds(1)))
+ *       .build();
+ * }</pre>
+ *
+ * @see io.github.bucket4j.local.LocalBucketBuilder#withCachedTimePrecision(Duration)
+ */
+public final class CachedTimeMeter implements TimeMeter, AutoCloseable {
+
+    private static final Map<Long, Ticker> TICKERS = new HashMap<>();
+
+    private final Ticker ticker;
+    private volatile boolean closed;
+
+    private CachedTimeMeter(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    /**
+     * Acquires time meter with specified resolution. If there is running ticker with same resolution, then it will be reused.
+     *
+     * @param resolution the period between updates of time
+     *
+     * @return the time meter
+     */
+    public static CachedTimeMeter acquire(Duration resolution) {
+        if (resolution == null) {
+            throw BucketExceptions.nullTimeResolution();
+        }
+        long resolutionNanos = resolution.toNanos();
+        if (resolutionNanos <= 0) {
+            throw BucketExceptions.nonPositiveTimeResolution(resolutionNanos);
+        }
+        synchronized (TICKERS) {
+            Ticker ticker = TICKERS.get(resolutionNanos);
+            boolean newTicker = ticker == null;
+            if (newTicker) {
+                ticker = new Ticker(resolutionNanos);
+                TICKERS.put(resolutionNanos, ticker);
+            }
+            CachedTimeMeter timeMeter = new CachedTimeMeter(ticker);
+            ticker.users.add(new WeakReference<>(timeMeter));
+            if (newTicker) {
+                ticker.start();
+            }
+            return timeMeter;
+        }
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        if (closed) {
+            return System.nanoTime();
+        }
+        return ticker.currentTimeNanos;
+    }
+
+    /**
+     * Returns the period between updates of time.
+     *
+     * @return the resolution in nanoseconds
+     */
+    public long getResolutionNanos() {
+        return ticker.resolutionNanos;
+    }
+
+    /**
+     * Detaches this time meter from ticker. The ticker is stopped when last time meter with same resolution is closed.
+     */
+    @Override
+    public void close() {
+        synchronized (TICKERS) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Iterator<WeakReference<CachedTimeMeter>> iterator = ticker.users.iterator();
+            while (iterator.hasNext()) {
+                CachedTimeMeter user = iterator.next().get();
+                if (user == null || user == this) {
+                    iterator.remove();
+                }
+            }
+            ticker.stopIfUnused();
+        }
+    }
+
+    static boolean isTickerRunning(Duration resolution) {
+        synchronized (TICKERS) {
+            return TICKERS.containsKey(resolution.toNanos());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CachedTimeMeter{" +
+                "resolutionNanos=" + ticker.resolutionNanos +
+                ", closed=" + closed +
+                '}';
+    }
+
+    private static final class Ticker extends Thread {
+
+        // check for garbage collected users roughly once per second
+        private static final long CLEANUP_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final long resolutionNanos;
+        private final List<WeakReference<CachedTimeMeter>> users = new ArrayList<>();
+        private volatile long currentTimeNanos;
+        private volatile boolean stopped;
+
+        Ticker(long resolutionNanos) {
+            super("bucket4j-time-ticker-" + resolutionNanos + "ns");
+            setDaemon(true);
+            this.resolutionNanos = resolutionNanos;
+            this.currentTimeNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long ticksBetweenCleanup = Math.max(1, CLEANUP_PERIOD_NANOS / resolutionNanos);
+            long ticks = 0;
+            while (!stopped) {
+                LockSupport.parkNanos(resolutionNanos);
+                currentTimeNanos = System.nanoTime();
+                if (++ticks % ticksBetweenCleanup == 0) {
+                    synchronized (TICKERS) {
+                        users.removeIf(user -> user.get() == null);
+                        stopIfUnused();
+                    }
+                }
+            }
+        }
+
+        // should be called under lock on TICKERS
+        private void stopIfUnused() {
+            if (users.isEmpty() && !stopped) {
+                stopped = true;
+                TICKERS.remove(resolutionNanos);
+                LockSupport.unpark(this);
+            }
+        }
+
+    }
+
+}
@@ -28,6 +28,7 @@ import java.util.List;
 public class ConfigurationBuilder<T extends ConfigurationBuilder> {
 
     private List<BandwidthDefinition> bandwidths;
+    private boolean gcraState;
 
     protected ConfigurationBuilder() {
         this.bandwidths = new ArrayList<>(1);
@@ -37,7 +38,7 @@ public class ConfigurationBuilder<T extends ConfigurationBuilder> {
      * @return configuration which used for bucket construction.
      */
     public BucketConfiguration buildConfiguration() {
-        return new BucketConfiguration(this.bandwidths);
+        return new BucketConfiguration(this.bandwidths, gcraState);
     }
 
     /**
@@ -64,10 +65,24 @@ public class ConfigurationBuilder<T extends ConfigurationBuilder> {
         return (T) this;
     }
 
+    /**
+     * Switches representation of bucket state to Generic Cell Rate Algorithm, where whole state is single {@code long},
+     * see {@link GcraState} for details. The buckets constructed by this builder behave exactly as usual buckets,
+     * but this representation is applicable only for single bandwidth which refill period is divisible by count of refill tokens,
+     * the configuration is validated by {@link #buildConfiguration()}.
+     *
+     * @return this builder instance
+     */
+    public T withGcraState() {
+        this.gcraState = true;
+        return (T) this;
+    }
+
     @Override
     public String toString() {
         return "AbstractBucketBuilder{" +
                 ", bandwidths=" + bandwidths +
+                ", gcraState=" + gcraState +
                 '}';
     }
 
@@ -31,19 +31,25 @@ public class ConsumptionProbe implements Serializable {
     private final boolean consumed;
     private final long remainingTokens;
     private final long nanosToWaitForRefill;
+    private final int rejectingLevel;
 
     public static ConsumptionProbe consumed(long remainingTokens) {
-        return new ConsumptionProbe(true, remainingTokens, 0);
+        return new ConsumptionProbe(true, remainingTokens, 0, -1);
     }
 
     public static ConsumptionProbe rejected(long remainingTokens, long nanosToWaitForRefill) {
-        return new ConsumptionProbe(false, remainingTokens, nanosToWaitForRefill);
+        return new ConsumptionProbe(false, remainingTokens, nanosToWaitForRefill, 0);
     }
 
-    private ConsumptionProbe(boolean consumed, long remainingTokens, long nanosToWaitForRefill) {
+    public static ConsumptionProbe rejected(long remainingTokens, long nanosToWaitForRefill, int rejectingLevel) {
+        return new ConsumptionProbe(false, remainingTokens, nanosToWaitForRefill, rejectingLevel);
+    }
+
+    private ConsumptionProbe(boolean consumed, long remainingTokens, long nanosToWaitForRefill, int rejectingLevel) {
         this.consumed = consumed;
         this.remainingTokens = Math.max(0L, remainingTokens);
         this.nanosToWaitForRefill = nanosToWaitForRefill;
+        this.rejectingLevel = rejectingLevel;
     }
 
     /**
@@ -73,12 +79,25 @@ public class ConsumptionProbe implements Serializable {
         return nanosToWaitForRefill;
     }
 
+    /**
+     * Returns the level of bucket which rejected the consumption, it makes sense for {@link io.github.bucket4j.local.HierarchicalBucket}
+     * where level is the depth of bucket in hierarchy and {@code 0} means the root.
+     * When consumption is rejected by several levels, then the level which requires longest waiting is reported.
+     * For plain buckets it is always {@code 0} when consumption is rejected.
+     *
+     * @return the level of bucket which rejected the consumption, or {@code -1} if {@link #isConsumed()} returns true
+     */
+    public int getRejectingLevel() {
+        return rejectingLevel;
+    }
+
     @Override
     public String toString() {
         return "ConsumptionResult{" +
                 "consumed=" + consumed +
                 ", remainingTokens=" + remainingTokens +
                 ", nanosToWaitForRefill=" + nanosToWaitForRefill +
+                ", rejectingLevel=" + rejectingLevel +
                 '}';
     }
 
@@ -0,0 +1,270 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wrapper around {@link Bucket} which serves blocking consumption through explicit FIFO queue of waiters.
+ *
+ * <p>
+ * In contrast to default blocking mode, where each caller reserves tokens and parks independently for precalculated duration,
+ * this bucket works in following way:
+ * <ul>
+ *     <li>Only the head of queue tries to consume tokens, and only the head parks with timeout which is equal to time required to refill missing tokens.
+ *     Other waiters park until their own deadline and are woken up early when they become the head,
+ *     so there is no stampede of timed wake-ups while tokens are missing.</li>
+ *     <li>When head consumes the tokens it leaves the queue and wakes up the next waiter, which immediately tries to consume its own tokens,
+ *     so waiters are served in FIFO order exactly at moment when tokens become available.</li>
+ *     <li>{@link #addTokens(long)} and {@link #replaceConfiguration(BucketConfiguration)} wake up the head immediately,
+ *     so the waiters react to added tokens without waiting for precalculated time.</li>
+ * </ul>
+ *
+ * <p>
+ * Peculiarities of this mode:
+ * <ul>
+ *     <li>The tokens are not reserved in advance, the waiter consumes tokens only when becomes the head and tokens are available.</li>
+ *     <li>The head which is not able to consume tokens before its deadline fails immediately,
+ *     but the waiter behind the head is not able to predict the time when it becomes the head,
+ *     so it leaves the queue and returns {@code false} only when its deadline is reached.</li>
+ *     <li>Waiters are parked via {@link LockSupport}, so {@link BlockingStrategy} which passed to blocking methods is ignored.</li>
+ *     <li>Non-blocking methods are delegated directly to the wrapped bucket, they do not wait in the queue.</li>
+ * </ul>
+ */
+public class FairBlockingBucket implements Bucket {
+
+    private final Bucket bucket;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private volatile int queueLength;
+
+    public FairBlockingBucket(Bucket bucket) {
+        if (bucket == null) {
+            throw BucketExceptions.nullBucket();
+        }
+        this.bucket = bucket;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) throws InterruptedException {
+        return consume(numTokens, maxWaitTimeNanos, true);
+    }
+
+    @Override
+    public boolean tryConsumeUninterruptibly(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) {
+        try {
+            return consume(numTokens, maxWaitTimeNanos, false);
+        } catch (InterruptedException e) {
+            // never happen for uninterruptible consumption
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void addTokens(long tokensToAdd) {
+        bucket.addTokens(tokensToAdd);
+        wakeUpHead();
+    }
+
+    @Override
+    public void replaceConfiguration(BucketConfiguration newConfiguration) {
+        bucket.replaceConfiguration(newConfiguration);
+        wakeUpHead();
+    }
+
+    /**
+     * Returns the count of threads which currently wait in the queue.
+     *
+     * @return the count of waiting threads
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        return bucket.tryConsume(numTokens);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+        return bucket.tryConsumeAndReturnRemaining(numTokens);
+    }
+
+    @Override
+    public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        return bucket.tryConsumeBatch(costs);
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible() {
+        return bucket.tryConsumeAsMuchAsPossible();
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(long limit) {
+        return bucket.tryConsumeAsMuchAsPossible(limit);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        return bucket.getAvailableTokens();
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        return bucket.createSnapshot();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return bucket.isAsyncModeSupported();
+    }
+
+    /**
+     * Returns asynchronous view of wrapped bucket, asynchronous operations do not wait in the queue.
+     *
+     * @return asynchronous view of wrapped bucket
+     */
+    @Override
+    public AsyncBucket asAsync() {
+        return bucket.asAsync();
+    }
+
+    private boolean consume(long numTokens, long maxWaitTimeNanos, boolean interruptibly) throws InterruptedException {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        if (maxWaitTimeNanos <= 0) {
+            throw BucketExceptions.nonPositiveNanosToWait(maxWaitTimeNanos);
+        }
+
+        // there is no sense to wait in the queue when nobody waits and tokens are available
+        if (queueLength == 0 && bucket.tryConsume(numTokens)) {
+            return true;
+        }
+
+        long deadlineNanos = System.nanoTime() + maxWaitTimeNanos;
+        Waiter waiter = new Waiter(Thread.currentThread());
+        enqueue(waiter);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                long nanosToDeadline = deadlineNanos - System.nanoTime();
+                if (isHead(waiter)) {
+                    ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(numTokens);
+                    if (probe.isConsumed()) {
+                        return true;
+                    }
+                    if (probe.getNanosToWaitForRefill() > nanosToDeadline) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, probe.getNanosToWaitForRefill());
+                } else {
+                    if (nanosToDeadline <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, nanosToDeadline);
+                }
+                if (Thread.interrupted()) {
+                    if (interruptibly) {
+                        throw new InterruptedException();
+                    }
+                    interrupted = true;
+                }
+            }
+        } finally {
+            dequeue(waiter);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void enqueue(Waiter waiter) {
+        lock.lock();
+        try {
+            waiters.addLast(waiter);
+            queueLength = waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isHead(Waiter waiter) {
+        lock.lock();
+        try {
+            return waiters.peekFirst() == waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dequeue(Waiter waiter) {
+        Waiter nextHead;
+        lock.lock();
+        try {
+            boolean wasHead = waiters.peekFirst() == waiter;
+            waiters.remove(waiter);
+            queueLength = waiters.size();
+            nextHead = wasHead ? waiters.peekFirst() : null;
+        } finally {
+            lock.unlock();
+        }
+        if (nextHead != null) {
+            LockSupport.unpark(nextHead.thread);
+        }
+    }
+
+    private void wakeUpHead() {
+        if (queueLength == 0) {
+            return;
+        }
+        Waiter head;
+        lock.lock();
+        try {
+            head = waiters.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+        if (head != null) {
+            LockSupport.unpark(head.thread);
+        }
+    }
+
+    private static final class Waiter {
+
+        final Thread thread;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "FairBlockingBucket{" +
+                "bucket=" + bucket +
+                ", queueLength=" + queueLength +
+                '}';
+    }
+
+}
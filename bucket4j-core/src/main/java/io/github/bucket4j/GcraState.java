@@ -0,0 +1,219 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import java.io.Serializable;
+
+/**
+ * The state of bucket with single bandwidth which represented in terms of Generic Cell Rate Algorithm(GCRA).
+ *
+ * <p>
+ * Instead of current size, rounding error and time of last refill, the whole state is stored as single {@code long} -
+ * the theoretical arrival time(TAT). The TAT is the moment when bucket becomes full if nobody consumes tokens,
+ * so the count of available tokens at moment {@code now} is
+ * <pre>{@code min(capacity, (now - TAT + capacity * emissionInterval) / emissionInterval)}</pre>
+ * where {@code emissionInterval} is the count of nanoseconds required to refill one token.
+ * Refill is implicit, so the state is changed only by consumption and by adding of tokens,
+ * and the check that tokens can be consumed requires neither division nor reading of anything except TAT:
+ * <pre>{@code max(TAT, now) + tokens * emissionInterval - now <= capacity * emissionInterval}</pre>
+ *
+ * <p>
+ * The emission interval is integer only when refill period is divisible by count of refill tokens,
+ * in this case the state is exactly equivalent to {@link BucketState}, including the rounding errors,
+ * because the fractional part of token is represented as offset of TAT inside emission interval.
+ * See {@link #isCompatible(BucketConfiguration)} for exact restrictions.
+ *
+ * @see ConfigurationBuilder#withGcraState()
+ */
+public final class GcraState implements Serializable {
+
+    private static final long serialVersionUID = 42L;
+
+    // the limit for capacity * emissionInterval, it leaves enough room for arithmetic with nanoTime and currentTimeMillis based clocks
+    static final long MAX_BURST_NANOS = Long.MAX_VALUE / 4;
+
+    private long theoreticalArrivalTimeNanos;
+
+    public GcraState(long theoreticalArrivalTimeNanos) {
+        this.theoreticalArrivalTimeNanos = theoreticalArrivalTimeNanos;
+    }
+
+    public static GcraState createInitialState(BucketConfiguration configuration, long currentTimeNanos) {
+        Bandwidth bandwidth = configuration.getBandwidths()[0];
+        long initialTokens = configuration.getBandwidthsInitialTokens()[0];
+        if (initialTokens == BucketConfiguration.INITIAL_TOKENS_UNSPECIFIED || initialTokens > bandwidth.capacity) {
+            initialTokens = bandwidth.capacity;
+        }
+        long emissionIntervalNanos = getEmissionIntervalNanos(bandwidth);
+        return new GcraState(currentTimeNanos + (bandwidth.capacity - initialTokens) * emissionIntervalNanos);
+    }
+
+    /**
+     * Converts the state from {@link BucketState} representation.
+     *
+     * @param bandwidth the bandwidth which state is converted
+     * @param state the state in token-bucket representation
+     *
+     * @return the state in GCRA representation
+     */
+    public static GcraState fromBucketState(Bandwidth bandwidth, BucketState state) {
+        long emissionIntervalNanos = getEmissionIntervalNanos(bandwidth);
+        long fractionNanos = state.getRoundingError(0) / bandwidth.refill.getTokens();
+        long emptyTimeNanos = state.getLastRefillTimeNanos() - state.getCurrentSize(0) * emissionIntervalNanos - fractionNanos;
+        return new GcraState(emptyTimeNanos + bandwidth.capacity * emissionIntervalNanos);
+    }
+
+    /**
+     * Converts this state to {@link BucketState} representation which is refilled at {@code currentTimeNanos}.
+     *
+     * @param bandwidth the bandwidth which state is converted
+     * @param currentTimeNanos current time
+     *
+     * @return the state in token-bucket representation
+     */
+    public BucketState toBucketState(Bandwidth bandwidth, long currentTimeNanos) {
+        return toBucketState(theoreticalArrivalTimeNanos, bandwidth.capacity, getEmissionIntervalNanos(bandwidth),
+                bandwidth.refill.getTokens(), currentTimeNanos);
+    }
+
+    public GcraState copy() {
+        return new GcraState(theoreticalArrivalTimeNanos);
+    }
+
+    public long getTheoreticalArrivalTimeNanos() {
+        return theoreticalArrivalTimeNanos;
+    }
+
+    /**
+     * Checks that configuration can be represented in terms of GCRA:
+     * <ul>
+     *     <li>configuration contains single bandwidth;</li>
+     *     <li>refill period is divisible by count of refill tokens;</li>
+     *     <li>capacity multiplied by emission interval does not exceed {@code Long.MAX_VALUE / 4} nanoseconds.</li>
+     * </ul>
+     *
+     * @param configuration the configuration to check
+     *
+     * @return true if configuration can be represented in terms of GCRA
+     */
+    public static boolean isCompatible(BucketConfiguration configuration) {
+        return configuration.getBandwidths().length == 1 && isCompatible(configuration.getBandwidths()[0]);
+    }
+
+    static boolean isCompatible(Bandwidth bandwidth) {
+        Refill refill = bandwidth.refill;
+        if (refill.getPeriodNanos() % refill.getTokens() != 0) {
+            return false;
+        }
+        long emissionIntervalNanos = refill.getPeriodNanos() / refill.getTokens();
+        return bandwidth.capacity <= MAX_BURST_NANOS / emissionIntervalNanos;
+    }
+
+    // ------------------- primitive functions which are used by lock-free bucket without allocation of state --------------------------------
+
+    public static long getEmissionIntervalNanos(Bandwidth bandwidth) {
+        return bandwidth.refill.getPeriodNanos() / bandwidth.refill.getTokens();
+    }
+
+    public static long getAvailableTokens(long theoreticalArrivalTimeNanos, long capacity, long emissionIntervalNanos, long currentTimeNanos) {
+        if (theoreticalArrivalTimeNanos <= currentTimeNanos) {
+            return capacity;
+        }
+        long elapsedSinceEmptyNanos = currentTimeNanos - theoreticalArrivalTimeNanos + capacity * emissionIntervalNanos;
+        return Math.floorDiv(elapsedSinceEmptyNanos, emissionIntervalNanos);
+    }
+
+    /**
+     * Calculates TAT after consumption. The caller is responsible to check that consumption is possible.
+     *
+     * @return new TAT, or {@code Long.MAX_VALUE} in case of arithmetic overflow
+     */
+    public static long consume(long theoreticalArrivalTimeNanos, long tokens, long emissionIntervalNanos, long currentTimeNanos) {
+        long baseNanos = Math.max(theoreticalArrivalTimeNanos, currentTimeNanos);
+        long incrementNanos = multiplyExactOrReturnMaxValue(tokens, emissionIntervalNanos);
+        long newTheoreticalArrivalTimeNanos = baseNanos + incrementNanos;
+        if (incrementNanos == Long.MAX_VALUE || newTheoreticalArrivalTimeNanos < baseNanos) {
+            return Long.MAX_VALUE;
+        }
+        return newTheoreticalArrivalTimeNanos;
+    }
+
+    public static long addTokens(long theoreticalArrivalTimeNanos, long tokens, long emissionIntervalNanos, long currentTimeNanos) {
+        if (theoreticalArrivalTimeNanos <= currentTimeNanos) {
+            // bucket is already full
+            return currentTimeNanos;
+        }
+        long debtNanos = theoreticalArrivalTimeNanos - currentTimeNanos;
+        long decrementNanos = multiplyExactOrReturnMaxValue(tokens, emissionIntervalNanos);
+        if (decrementNanos >= debtNanos) {
+            // bucket becomes full, fractional part of token is dropped in the same way as BucketState does
+            return currentTimeNanos;
+        }
+        return theoreticalArrivalTimeNanos - decrementNanos;
+    }
+
+    public static long delayNanosAfterWillBePossibleToConsume(long theoreticalArrivalTimeNanos, long tokens, long capacity,
+                                                              long emissionIntervalNanos, long currentTimeNanos) {
+        long availableTokens = getAvailableTokens(theoreticalArrivalTimeNanos, capacity, emissionIntervalNanos, currentTimeNanos);
+        if (tokens <= availableTokens) {
+            return 0;
+        }
+        // the same as BucketState does, the fractional part of token which already refilled is not taken into account
+        return multiplyExactOrReturnMaxValue(tokens - availableTokens, emissionIntervalNanos);
+    }
+
+    public static long fromAvailableTokens(long availableTokens, long capacity, long emissionIntervalNanos, long currentTimeNanos) {
+        if (availableTokens >= capacity) {
+            return currentTimeNanos;
+        }
+        return currentTimeNanos + (capacity - availableTokens) * emissionIntervalNanos;
+    }
+
+    public static BucketState toBucketState(long theoreticalArrivalTimeNanos, long capacity, long emissionIntervalNanos,
+                                            long refillTokens, long currentTimeNanos) {
+        if (theoreticalArrivalTimeNanos <= currentTimeNanos) {
+            return BucketState.fromRawData(currentTimeNanos, capacity, 0);
+        }
+        long elapsedSinceEmptyNanos = currentTimeNanos - theoreticalArrivalTimeNanos + capacity * emissionIntervalNanos;
+        long size = Math.floorDiv(elapsedSinceEmptyNanos, emissionIntervalNanos);
+        long fractionNanos = Math.floorMod(elapsedSinceEmptyNanos, emissionIntervalNanos);
+        return BucketState.fromRawData(currentTimeNanos, size, fractionNanos * refillTokens);
+    }
+
+    @Override
+    public String toString() {
+        return "GcraState{" +
+                "theoreticalArrivalTimeNanos=" + theoreticalArrivalTimeNanos +
+                '}';
+    }
+
+    // just a copy of JDK method Math#multiplyExact,
+    // but instead of throwing exception it returns Long.MAX_VALUE in case of overflow
+    private static long multiplyExactOrReturnMaxValue(long x, long y) {
+        long r = x * y;
+        long ax = Math.abs(x);
+        long ay = Math.abs(y);
+        if (((ax | ay) >>> 31 != 0)) {
+            if (((y != 0) && (r / y != x)) || (x == Long.MIN_VALUE && y == -1)) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,381 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer based on hashed timing wheel which is used by {@link AsyncBucket} for delayed completion of futures
+ * when {@link java.util.concurrent.ScheduledExecutorService} is not provided by user.
+ *
+ * <p>
+ * In contrast to {@link java.util.concurrent.ScheduledThreadPoolExecutor}, which keeps tasks in the heap protected by single lock,
+ * this timer works in following way:
+ * <ul>
+ *     <li>Scheduling of task is lock-free O(1) operation which just appends the task to the queue of incoming tasks.</li>
+ *     <li>Single daemon worker thread wakes up once per tick, moves incoming tasks to the slots of the wheel
+ *     and submits all tasks which deadline belongs to current tick to the task executor, so completions which are due in the same tick are coalesced into one wake-up.</li>
+ *     <li>The worker thread parks without timeout when there are no pending tasks, so idle timer does not consume CPU.</li>
+ * </ul>
+ *
+ * <p>
+ * Tasks are never executed before their deadline, but can be executed later up to one tick,
+ * so the tick should be chosen as compromise between precision and count of wake-ups.
+ * Tasks are executed by the task executor instead of worker thread, so the callbacks which are attached to futures completed by these tasks
+ * can not delay the other tasks.
+ */
+public class HashedWheelTimer {
+
+    private static final Duration DEFAULT_TICK = Duration.ofMillis(1);
+    private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private static volatile HashedWheelTimer defaultTimer;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final long tickNanos;
+    private final int mask;
+    private final Slot[] wheel;
+    private final ConcurrentLinkedQueue<Timeout> incomingTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    private final long startTimeNanos;
+    private final Worker worker;
+    private final Executor taskExecutor;
+    private final boolean shared;
+    private volatile boolean stopped;
+
+    /**
+     * Creates the timer which executes the tasks in {@link ForkJoinPool#commonPool()}.
+     *
+     * @param tick the duration between wake-ups of worker thread
+     * @param ticksPerWheel the count of slots in the wheel, it will be rounded up to the power of two
+     */
+    public HashedWheelTimer(Duration tick, int ticksPerWheel) {
+        this(tick, ticksPerWheel, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates the timer.
+     *
+     * @param tick the duration between wake-ups of worker thread
+     * @param ticksPerWheel the count of slots in the wheel, it will be rounded up to the power of two
+     * @param taskExecutor the executor which executes the tasks when their deadline comes
+     */
+    public HashedWheelTimer(Duration tick, int ticksPerWheel, Executor taskExecutor) {
+        this(tick, ticksPerWheel, taskExecutor, false);
+    }
+
+    private HashedWheelTimer(Duration tick, int ticksPerWheel, Executor taskExecutor, boolean shared) {
+        if (tick == null) {
+            throw BucketExceptions.nullTimeResolution();
+        }
+        if (tick.toNanos() <= 0) {
+            throw BucketExceptions.nonPositiveTimeResolution(tick.toNanos());
+        }
+        if (ticksPerWheel <= 0) {
+            throw BucketExceptions.nonPositiveTicksPerWheel(ticksPerWheel);
+        }
+        if (taskExecutor == null) {
+            throw BucketExceptions.nullExecutor();
+        }
+        int wheelSize = Integer.highestOneBit(ticksPerWheel);
+        if (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.tickNanos = tick.toNanos();
+        this.mask = wheelSize - 1;
+        this.wheel = new Slot[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Slot();
+        }
+        this.taskExecutor = taskExecutor;
+        this.shared = shared;
+        this.startTimeNanos = System.nanoTime();
+        this.worker = new Worker();
+        this.worker.start();
+    }
+
+    /**
+     * Returns the timer which is shared by all buckets, it ticks each millisecond, has 512 slots
+     * and executes the tasks in {@link ForkJoinPool#commonPool()}. This timer can not be stopped.
+     *
+     * @return the timer which is shared by all buckets
+     */
+    public static HashedWheelTimer getDefault() {
+        HashedWheelTimer timer = defaultTimer;
+        if (timer == null) {
+            synchronized (HashedWheelTimer.class) {
+                timer = defaultTimer;
+                if (timer == null) {
+                    timer = new HashedWheelTimer(DEFAULT_TICK, DEFAULT_TICKS_PER_WHEEL, ForkJoinPool.commonPool(), true);
+                    defaultTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Schedules the task for execution after specified delay.
+     *
+     * @param task the task to execute
+     * @param delayNanos the delay in nanoseconds
+     *
+     * @return the handle which allows to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delayNanos) {
+        if (stopped) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+        long deadlineNanos = System.nanoTime() - startTimeNanos + Math.max(0, delayNanos);
+        if (deadlineNanos < 0) {
+            // arithmetic overflow happens
+            deadlineNanos = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(task, deadlineNanos);
+        pendingTimeouts.incrementAndGet();
+        incomingTimeouts.add(timeout);
+        worker.wakeUpIfIdle();
+        return timeout;
+    }
+
+    /**
+     * Returns the count of tasks which are scheduled but not executed yet.
+     *
+     * @return the count of pending tasks
+     */
+    public long getPendingTasks() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * Stops the worker thread, the pending tasks are not executed.
+     *
+     * @throws UnsupportedOperationException if this is the default timer which is shared by all buckets
+     */
+    public void stop() {
+        if (shared) {
+            throw BucketExceptions.defaultTimerCanNotBeStopped();
+        }
+        stopped = true;
+        LockSupport.unpark(worker);
+    }
+
+    private final class Worker extends Thread {
+
+        private volatile boolean idle;
+        private long tick;
+
+        Worker() {
+            super("bucket4j-wheel-timer");
+            setDaemon(true);
+        }
+
+        void wakeUpIfIdle() {
+            if (idle) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                // nobody should interrupt the worker, but interrupted thread can not be parked, so just clear the flag
+                Thread.interrupted();
+                if (pendingTimeouts.get() == 0) {
+                    idle = true;
+                    // re-check after publication of flag, so concurrent schedule can not be missed
+                    if (pendingTimeouts.get() == 0) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                    if (pendingTimeouts.get() == 0) {
+                        continue;
+                    }
+                    // the wheel is empty, so there is no need to process the ticks which were missed during parking
+                    tick = Math.max(tick, elapsedNanos() / tickNanos);
+                }
+
+                long tickDeadlineNanos = (tick + 1) * tickNanos;
+                long nanosToSleep = tickDeadlineNanos - elapsedNanos();
+                if (nanosToSleep > 0) {
+                    LockSupport.parkNanos(this, nanosToSleep);
+                    continue;
+                }
+                tick++;
+                transferIncomingTimeouts();
+                expireTimeouts(wheel[(int) (tick & mask)]);
+            }
+        }
+
+        private void transferIncomingTimeouts() {
+            Timeout timeout;
+            while ((timeout = incomingTimeouts.poll()) != null) {
+                if (timeout.isCancelled()) {
+                    continue;
+                }
+                // round up, because task should never be executed before its deadline
+                long deadlineTick = timeout.deadlineNanos / tickNanos + (timeout.deadlineNanos % tickNanos == 0 ? 0 : 1);
+                if (deadlineTick <= tick) {
+                    // deadline already passed
+                    deadlineTick = tick;
+                }
+                timeout.remainingRounds = (deadlineTick - tick) >> Integer.bitCount(mask);
+                wheel[(int) (deadlineTick & mask)].add(timeout);
+            }
+        }
+
+        private void expireTimeouts(Slot slot) {
+            Timeout previous = null;
+            Timeout timeout = slot.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.isCancelled()) {
+                    slot.remove(previous, timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    slot.remove(previous, timeout);
+                    if (STATE_UPDATER.compareAndSet(timeout, PENDING, EXPIRED)) {
+                        pendingTimeouts.decrementAndGet();
+                        execute(timeout);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                    previous = timeout;
+                }
+                timeout = next;
+            }
+        }
+
+    }
+
+    private void execute(Timeout timeout) {
+        try {
+            taskExecutor.execute(timeout::execute);
+        } catch (RejectedExecutionException e) {
+            // the task should not be lost, so it is executed by worker thread
+            timeout.execute();
+        }
+    }
+
+    private long elapsedNanos() {
+        return System.nanoTime() - startTimeNanos;
+    }
+
+    // singly linked list which is accessed only by worker thread
+    private static final class Slot {
+
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout previous, Timeout timeout) {
+            if (previous == null) {
+                head = timeout.next;
+            } else {
+                previous.next = timeout.next;
+            }
+            if (tail == timeout) {
+                tail = previous;
+            }
+            timeout.next = null;
+        }
+
+    }
+
+    /**
+     * Handle of scheduled task which allows to cancel it.
+     */
+    public final class Timeout {
+
+        private volatile Runnable task;
+        private final long deadlineNanos;
+        volatile int state;
+
+        // accessed only by worker thread
+        private long remainingRounds;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancels the task if it is not executed yet.
+         * The cancelled task is released immediately, so it does not retain the objects captured by task until its deadline.
+         *
+         * @return true if task has been cancelled, false if task already executed or cancelled
+         */
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            task = null;
+            pendingTimeouts.decrementAndGet();
+            return true;
+        }
+
+        /**
+         * @return true if task has been cancelled
+         */
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        private void execute() {
+            Runnable task = this.task;
+            this.task = null;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // the executing thread should survive any failure of task
+                Thread currentThread = Thread.currentThread();
+                currentThread.getUncaughtExceptionHandler().uncaughtException(currentThread, t);
+            }
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "HashedWheelTimer{" +
+                "tickNanos=" + tickNanos +
+                ", ticksPerWheel=" + wheel.length +
+                ", pendingTasks=" + pendingTimeouts.get() +
+                '}';
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts {@link HashedWheelTimer} to {@link ScheduledExecutorService}, it is used by default implementation of
+ * {@link AsyncBucket#tryConsumeWithTimer(long, long, HashedWheelTimer)} in order to pass the timer to {@link AsyncBucket#tryConsume(long, long, ScheduledExecutorService)}.
+ *
+ * <p>
+ * Only one-shot scheduling is supported, the periodic tasks are rejected.
+ * The timer is not owned by adapter, so adapter can not be shut down.
+ */
+class HashedWheelTimerScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final HashedWheelTimer timer;
+
+    HashedWheelTimerScheduler(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(Executors.callable(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        long delayNanos = unit.toNanos(delay);
+        ScheduledTask<V> task = new ScheduledTask<>(callable, System.nanoTime() + delayNanos);
+        task.timeout = timer.schedule(task, delayNanos);
+        return task;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        timer.schedule(command, 0);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static final class ScheduledTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+
+        private final long deadlineNanos;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        ScheduledTask(Callable<V> callable, long deadlineNanos) {
+            super(callable);
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            HashedWheelTimer.Timeout timeout = this.timeout;
+            if (cancelled && timeout != null) {
+                // release the slot of timer instead of waiting for deadline
+                timeout.cancel();
+            }
+            return cancelled;
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Detection of virtual threads which works on any JDK, including Java 8 where virtual threads do not exist.
+ * The {@code Thread#isVirtual()} method is resolved once via {@link MethodHandle}, so the check is cheap enough for hot paths.
+ */
+public final class VirtualThreads {
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreads() {
+        // to avoid initialization of utility class
+    }
+
+    /**
+     * @return true if virtual threads are supported by current JVM
+     */
+    public static boolean isSupported() {
+        return IS_VIRTUAL != null;
+    }
+
+    /**
+     * Checks that thread is virtual.
+     *
+     * @param thread the thread to check
+     *
+     * @return true if thread is virtual, always false for JDK which does not support virtual threads
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            // Thread#isVirtual never throws
+            return false;
+        }
+    }
+
+    /**
+     * @return true if current thread is virtual
+     */
+    public static boolean isCurrentThreadVirtual() {
+        return IS_VIRTUAL != null && isVirtual(Thread.currentThread());
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.lookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // JDK without virtual threads
+            return null;
+        }
+    }
+
+}
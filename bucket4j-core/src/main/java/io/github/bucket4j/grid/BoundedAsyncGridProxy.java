@@ -0,0 +1,332 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketExceptions;
+import io.github.bucket4j.TimeMeter;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Decorator for {@link GridProxy} which limits the count of outstanding asynchronous operations,
+ * so the spike of traffic does not accumulate unbounded count of pending futures on the client and in invocation registry of the grid.
+ *
+ * <p>
+ * When the limit is reached, the operation is handled according to {@link OverflowStrategy}:
+ * it waits in the bounded queue, it is rejected immediately, or it is merged with other operations for same key which wait in the queue.
+ * The rejected operation is completed by {@link InFlightLimitExceededException}, so asynchronous mode degrades by fast failures instead of mass timeouts.
+ * Synchronous operations are delegated to target proxy without limits, because they are naturally bounded by count of calling threads.
+ *
+ * <p>
+ * The depth of queue, count of rejections and time spent by operations in the queue are exposed via getters,
+ * so they can be published to any metrics system.
+ *
+ * @param <K> type of key
+ */
+public class BoundedAsyncGridProxy<K extends Serializable> implements GridProxy<K> {
+
+    private final GridProxy<K> target;
+    private final int maxInFlightOperations;
+    private final int maxQueueSize;
+    private final OverflowStrategy overflowStrategy;
+    private final TimeMeter timeMeter;
+    private final GridProxy<K> asyncEntryPoint;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock
+    private final ArrayDeque<QueuedOperation<?>> queue = new ArrayDeque<>();
+    // guarded by lock
+    private int inFlightOperations;
+    // guarded by lock, completions which are not processed yet by the thread which drains the queue
+    private int pendingReleases;
+    // guarded by lock
+    private boolean draining;
+
+    private final LongAdder rejectedOperations = new LongAdder();
+    private final LongAdder queuedOperations = new LongAdder();
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    public BoundedAsyncGridProxy(GridProxy<K> target, int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy) {
+        this(target, maxInFlightOperations, maxQueueSize, overflowStrategy, TimeMeter.SYSTEM_NANOTIME);
+    }
+
+    /**
+     * @param target the proxy which actually communicates with the grid
+     * @param maxInFlightOperations the maximum count of asynchronous operations which are sent to the grid and not completed yet
+     * @param maxQueueSize the maximum count of operations which wait for free slot, it is ignored by {@link OverflowStrategy#REJECT}
+     * @param overflowStrategy the reaction on operation which exceeds the limit
+     * @param timeMeter the clock which is used to measure the time spent in the queue
+     */
+    public BoundedAsyncGridProxy(GridProxy<K> target, int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy, TimeMeter timeMeter) {
+        if (target == null) {
+            throw BucketExceptions.nullGridProxy();
+        }
+        if (maxInFlightOperations <= 0) {
+            throw BucketExceptions.nonPositiveMaxInFlightOperations(maxInFlightOperations);
+        }
+        if (maxQueueSize < 0) {
+            throw BucketExceptions.negativeMaxQueueSize(maxQueueSize);
+        }
+        if (overflowStrategy == null) {
+            throw BucketExceptions.nullOverflowStrategy();
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        this.target = target;
+        this.maxInFlightOperations = maxInFlightOperations;
+        this.maxQueueSize = overflowStrategy == OverflowStrategy.REJECT ? 0 : maxQueueSize;
+        this.overflowStrategy = overflowStrategy;
+        this.timeMeter = timeMeter;
+        GridProxy<K> limiter = new Limiter();
+        // batch for the key is collected by coalescing proxy while previous batch for this key waits in the queue or is in flight
+        this.asyncEntryPoint = overflowStrategy == OverflowStrategy.COALESCE ? new CoalescingGridProxy<>(limiter) : limiter;
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(K key, GridCommand<T> command) {
+        return asyncEntryPoint.executeAsync(key, command);
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        return asyncEntryPoint.createInitialStateAndExecuteAsync(key, configuration, command);
+    }
+
+    @Override
+    public <T extends Serializable> CommandResult<T> execute(K key, GridCommand<T> command) {
+        return target.execute(key, command);
+    }
+
+    @Override
+    public void createInitialState(K key, BucketConfiguration configuration) {
+        target.createInitialState(key, configuration);
+    }
+
+    @Override
+    public <T extends Serializable> T createInitialStateAndExecute(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        return target.createInitialStateAndExecute(key, configuration, command);
+    }
+
+    @Override
+    public Optional<BucketConfiguration> getConfiguration(K key) {
+        return target.getConfiguration(key);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return target.isAsyncModeSupported();
+    }
+
+    /**
+     * @return the count of asynchronous operations which are sent to the grid and not completed yet
+     */
+    public int getInFlightOperations() {
+        lock.lock();
+        try {
+            return inFlightOperations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the count of operations which wait in the queue right now
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total count of operations which were rejected since creation of this proxy
+     */
+    public long getRejectedOperations() {
+        return rejectedOperations.sum();
+    }
+
+    /**
+     * @return the total count of operations which waited in the queue since creation of this proxy
+     */
+    public long getQueuedOperations() {
+        return queuedOperations.sum();
+    }
+
+    /**
+     * @return the total time in nanoseconds which was spent in the queue by all operations,
+     * divide it by {@link #getQueuedOperations()} to get average wait time
+     */
+    public long getTotalQueueWaitNanos() {
+        return totalQueueWaitNanos.sum();
+    }
+
+    /**
+     * @return the maximum time in nanoseconds which was spent in the queue by single operation
+     */
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos.get();
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<CompletableFuture<R>> operation) {
+        lock.lock();
+        try {
+            if (inFlightOperations >= maxInFlightOperations) {
+                if (queue.size() >= maxQueueSize) {
+                    rejectedOperations.increment();
+                    CompletableFuture<R> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new InFlightLimitExceededException(maxInFlightOperations, maxQueueSize));
+                    return rejected;
+                }
+                QueuedOperation<R> queuedOperation = new QueuedOperation<>(operation, timeMeter.currentTimeNanos());
+                queue.addLast(queuedOperation);
+                queuedOperations.increment();
+                return queuedOperation.result;
+            }
+            inFlightOperations++;
+        } finally {
+            lock.unlock();
+        }
+        return start(operation);
+    }
+
+    private <R> CompletableFuture<R> start(Supplier<CompletableFuture<R>> operation) {
+        CompletableFuture<R> future;
+        try {
+            future = operation.get();
+        } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((result, error) -> release());
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            pendingReleases++;
+            if (draining) {
+                // the operation which completed synchronously inside next.start() below, or completion from another thread,
+                // is processed by the loop of draining thread, so the queue is drained without recursion
+                return;
+            }
+            draining = true;
+        } finally {
+            lock.unlock();
+        }
+
+        while (true) {
+            QueuedOperation<?> next;
+            lock.lock();
+            try {
+                if (pendingReleases == 0) {
+                    draining = false;
+                    return;
+                }
+                pendingReleases--;
+                next = queue.pollFirst();
+                if (next == null) {
+                    inFlightOperations--;
+                    continue;
+                }
+                // the slot is passed to the next operation
+            } finally {
+                lock.unlock();
+            }
+            long waitNanos = timeMeter.currentTimeNanos() - next.enqueueTimeNanos;
+            totalQueueWaitNanos.add(waitNanos);
+            maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            next.start();
+        }
+    }
+
+    private final class QueuedOperation<R> {
+
+        private final Supplier<CompletableFuture<R>> operation;
+        private final long enqueueTimeNanos;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private QueuedOperation(Supplier<CompletableFuture<R>> operation, long enqueueTimeNanos) {
+            this.operation = operation;
+            this.enqueueTimeNanos = enqueueTimeNanos;
+        }
+
+        private void start() {
+            BoundedAsyncGridProxy.this.start(operation).whenComplete((data, error) -> {
+                if (error == null) {
+                    result.complete(data);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+
+    }
+
+    private final class Limiter implements GridProxy<K> {
+
+        @Override
+        public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(K key, GridCommand<T> command) {
+            return submit(() -> target.executeAsync(key, command));
+        }
+
+        @Override
+        public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(K key, BucketConfiguration configuration, GridCommand<T> command) {
+            return submit(() -> target.createInitialStateAndExecuteAsync(key, configuration, command));
+        }
+
+        @Override
+        public <T extends Serializable> CommandResult<T> execute(K key, GridCommand<T> command) {
+            return target.execute(key, command);
+        }
+
+        @Override
+        public void createInitialState(K key, BucketConfiguration configuration) {
+            target.createInitialState(key, configuration);
+        }
+
+        @Override
+        public <T extends Serializable> T createInitialStateAndExecute(K key, BucketConfiguration configuration, GridCommand<T> command) {
+            return target.createInitialStateAndExecute(key, configuration, command);
+        }
+
+        @Override
+        public Optional<BucketConfiguration> getConfiguration(K key) {
+            return target.getConfiguration(key);
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return target.isAsyncModeSupported();
+        }
+
+    }
+
+}
@@ -0,0 +1,360 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketExceptions;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decorator for {@link GridProxy} which coalesces the commands executed concurrently by threads of current JVM against same key.
+ *
+ * <p>
+ * At most one request per key is in flight, the commands which arrive while it is in flight are merged into single {@link CompositeCommand}
+ * which is sent by the next round trip, then results are fanned out back to callers.
+ * The grid executes the commands for same key one by one anyway, so execution of merged commands in order of arrival has the same semantic
+ * as independent execution, but costs one network call and one invocation of entry processor for whole batch.
+ *
+ * <p>
+ * There is no artificial delay for collecting the batch: when key is not contended each command is sent immediately,
+ * the batch grows only while previous request for same key is in flight, so the window automatically adapts to latency of grid.
+ * Synchronous and asynchronous commands are coalesced independently of each other.
+ *
+ * @param <K> type of key
+ */
+public class CoalescingGridProxy<K extends Serializable> implements GridProxy<K> {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 128;
+
+    private final GridProxy<K> target;
+    private final int maxBatchSize;
+    private final ConcurrentHashMap<K, CommandQueue<K>> syncQueues = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CommandQueue<K>> asyncQueues = new ConcurrentHashMap<>();
+
+    public CoalescingGridProxy(GridProxy<K> target) {
+        this(target, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param target the proxy which actually communicates with the grid
+     * @param maxBatchSize the maximum count of commands which can be merged into single round trip,
+     *                     the commands above this limit wait for the next round trip
+     */
+    public CoalescingGridProxy(GridProxy<K> target, int maxBatchSize) {
+        if (target == null) {
+            throw BucketExceptions.nullGridProxy();
+        }
+        if (maxBatchSize <= 0) {
+            throw BucketExceptions.nonPositiveMaxBatchSize(maxBatchSize);
+        }
+        this.target = target;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public <T extends Serializable> CommandResult<T> execute(K key, GridCommand<T> command) {
+        PendingCommand pending = new PendingCommand(command);
+        CommandQueue<K> queue = enqueue(syncQueues, key, pending);
+        if (queue == null) {
+            // the previous batch is in flight, the leader will either execute this command or hand over leadership to this thread
+            queue = (CommandQueue<K>) pending.awaitCompletionOrLeadership();
+            if (queue == null) {
+                return pending.getResult();
+            }
+        }
+        executeBatch(queue);
+        return pending.getResult();
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(K key, GridCommand<T> command) {
+        PendingCommand pending = new PendingCommand(command);
+        CommandQueue<K> queue = enqueue(asyncQueues, key, pending);
+        if (queue != null) {
+            executeBatchAsync(queue);
+        }
+        return (CompletableFuture) pending.result;
+    }
+
+    @Override
+    public void createInitialState(K key, BucketConfiguration configuration) {
+        target.createInitialState(key, configuration);
+    }
+
+    @Override
+    public <T extends Serializable> T createInitialStateAndExecute(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        return target.createInitialStateAndExecute(key, configuration, command);
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        return target.createInitialStateAndExecuteAsync(key, configuration, command);
+    }
+
+    @Override
+    public <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        return target.executeBatch(commands);
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<Map<K, CommandResult<T>>> executeBatchAsync(Map<K, GridCommand<T>> commands) {
+        return target.executeBatchAsync(commands);
+    }
+
+    @Override
+    public Optional<BucketConfiguration> getConfiguration(K key) {
+        return target.getConfiguration(key);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return target.isAsyncModeSupported();
+    }
+
+    /**
+     * @return the queue if caller became the leader which should execute the batch, or null if request for same key is already in flight
+     */
+    private CommandQueue<K> enqueue(ConcurrentHashMap<K, CommandQueue<K>> queues, K key, PendingCommand command) {
+        while (true) {
+            CommandQueue<K> queue = queues.computeIfAbsent(key, k -> new CommandQueue<>(k, queues));
+            queue.lock();
+            try {
+                if (queue.retired) {
+                    // the queue was removed from map concurrently, the new one should be used
+                    continue;
+                }
+                queue.pending.add(command);
+                if (queue.inFlight) {
+                    return null;
+                }
+                queue.inFlight = true;
+                return queue;
+            } finally {
+                queue.unlock();
+            }
+        }
+    }
+
+    private void executeBatch(CommandQueue<K> queue) {
+        List<PendingCommand> batch = queue.takeBatch(maxBatchSize);
+        try {
+            CommandResult<?> result = target.execute(queue.key, toCommand(batch));
+            complete(batch, result);
+        } catch (Throwable t) {
+            completeExceptionally(batch, t);
+        }
+        PendingCommand nextLeader = queue.nextLeaderOrRetire();
+        if (nextLeader != null) {
+            nextLeader.leadership.complete(queue);
+        }
+    }
+
+    private void executeBatchAsync(CommandQueue<K> queue) {
+        while (true) {
+            queue.lock();
+            try {
+                queue.draining = true;
+            } finally {
+                queue.unlock();
+            }
+            sendBatchAsync(queue);
+            queue.lock();
+            try {
+                queue.draining = false;
+                if (!queue.completedWhileDraining) {
+                    // the batch is still in flight, its completion will send the next batch
+                    return;
+                }
+                queue.completedWhileDraining = false;
+            } finally {
+                queue.unlock();
+            }
+            if (queue.nextLeaderOrRetire() == null) {
+                return;
+            }
+        }
+    }
+
+    private void sendBatchAsync(CommandQueue<K> queue) {
+        List<PendingCommand> batch = queue.takeBatch(maxBatchSize);
+        CompletableFuture<? extends CommandResult<?>> future;
+        try {
+            future = target.executeAsync(queue.key, toCommand(batch));
+        } catch (Throwable t) {
+            CompletableFuture<CommandResult<?>> failedFuture = new CompletableFuture<>();
+            failedFuture.completeExceptionally(t);
+            future = failedFuture;
+        }
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                complete(batch, result);
+            } else {
+                completeExceptionally(batch, error);
+            }
+            queue.lock();
+            try {
+                if (queue.draining) {
+                    // the batch completed before sendBatchAsync returned, the loop of draining thread sends the next batch,
+                    // so already completed futures do not drain the queue by recursion
+                    queue.completedWhileDraining = true;
+                    return;
+                }
+            } finally {
+                queue.unlock();
+            }
+            if (queue.nextLeaderOrRetire() != null) {
+                executeBatchAsync(queue);
+            }
+        });
+    }
+
+    private static GridCommand<?> toCommand(List<PendingCommand> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).command;
+        }
+        List<GridCommand<?>> commands = new ArrayList<>(batch.size());
+        for (PendingCommand pending : batch) {
+            commands.add(pending.command);
+        }
+        return new CompositeCommand(commands);
+    }
+
+    private static void complete(List<PendingCommand> batch, CommandResult<?> result) {
+        if (batch.size() == 1) {
+            batch.get(0).result.complete(result);
+            return;
+        }
+        if (result.isBucketNotFound()) {
+            for (PendingCommand pending : batch) {
+                pending.result.complete(CommandResult.bucketNotFound());
+            }
+            return;
+        }
+        List<Serializable> results = (List<Serializable>) result.getData();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(CommandResult.success(results.get(i)));
+        }
+    }
+
+    private static void completeExceptionally(List<PendingCommand> batch, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        for (PendingCommand pending : batch) {
+            pending.result.completeExceptionally(cause);
+        }
+    }
+
+    private static final class PendingCommand {
+
+        private final GridCommand<?> command;
+        private final CompletableFuture<CommandResult<?>> result = new CompletableFuture<>();
+        // used only by synchronous commands
+        private final CompletableFuture<CommandQueue<?>> leadership = new CompletableFuture<>();
+
+        private PendingCommand(GridCommand<?> command) {
+            this.command = command;
+        }
+
+        private CommandQueue<?> awaitCompletionOrLeadership() {
+            try {
+                CompletableFuture.anyOf(result, leadership).join();
+            } catch (CompletionException e) {
+                // command failed, exception will be rethrown by getResult
+            }
+            return result.isDone() ? null : leadership.join();
+        }
+
+        private <T extends Serializable> CommandResult<T> getResult() {
+            try {
+                return (CommandResult<T>) result.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+    }
+
+    private static final class CommandQueue<K> extends ReentrantLock {
+
+        private final K key;
+        private final ConcurrentHashMap<K, CommandQueue<K>> queues;
+        private ArrayList<PendingCommand> pending = new ArrayList<>();
+        private boolean inFlight;
+        private boolean retired;
+        // used only by asynchronous commands
+        private boolean draining;
+        private boolean completedWhileDraining;
+
+        private CommandQueue(K key, ConcurrentHashMap<K, CommandQueue<K>> queues) {
+            this.key = key;
+            this.queues = queues;
+        }
+
+        private List<PendingCommand> takeBatch(int maxBatchSize) {
+            lock();
+            try {
+                if (pending.size() <= maxBatchSize) {
+                    List<PendingCommand> batch = pending;
+                    pending = new ArrayList<>();
+                    return batch;
+                }
+                List<PendingCommand> head = pending.subList(0, maxBatchSize);
+                List<PendingCommand> batch = new ArrayList<>(head);
+                head.clear();
+                return batch;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * @return the command which owner should execute the next batch, or null if there are no pending commands
+         */
+        private PendingCommand nextLeaderOrRetire() {
+            lock();
+            try {
+                if (!pending.isEmpty()) {
+                    return pending.get(0);
+                }
+                inFlight = false;
+                retired = true;
+                queues.remove(key, this);
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+    }
+
+}
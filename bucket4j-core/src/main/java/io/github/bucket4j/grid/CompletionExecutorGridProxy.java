@@ -0,0 +1,153 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketExceptions;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decorator for {@link GridProxy} which completes the futures of asynchronous operations in specified {@link Executor}
+ * instead of the thread which receives the response from grid.
+ *
+ * <p>
+ * Grid clients complete the futures from I/O or partition threads,
+ * so the continuations chained by user on futures returned by {@link io.github.bucket4j.AsyncBucket} run in these threads too,
+ * and single slow continuation stalls the whole grid client.
+ * This decorator hands off the completion to executor, so grid thread spends only the time required to schedule the task.
+ *
+ * <p>
+ * The returned futures are never the futures of target proxy, so caller can not complete or obtrude the futures owned by grid client.
+ * The completion is done inline, without executor, in following cases:
+ * <ul>
+ *     <li>when the target proxy completed the future before returning it, in this case the calling thread runs everything;</li>
+ *     <li>when executor rejects the task.</li>
+ * </ul>
+ * Each other completion costs one hand-off to executor, even when continuations are cheap,
+ * the call sites which attach only cheap non-blocking continuations can skip the hand-off via {@link GridBucket#withInlineCompletion()}.
+ *
+ * <p>
+ * There is no such decorator for JCache, because JCache API is synchronous,
+ * so {@code JCacheProxy} does not support asynchronous mode and there are no futures to complete.
+ *
+ * @param <K> type of key
+ */
+public class CompletionExecutorGridProxy<K extends Serializable> implements GridProxy<K> {
+
+    private final GridProxy<K> target;
+    private final Executor completionExecutor;
+
+    /**
+     * @param target the proxy which actually communicates with the grid
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     */
+    public CompletionExecutorGridProxy(GridProxy<K> target, Executor completionExecutor) {
+        if (target == null) {
+            throw BucketExceptions.nullGridProxy();
+        }
+        if (completionExecutor == null) {
+            throw BucketExceptions.nullCompletionExecutor();
+        }
+        this.target = target;
+        this.completionExecutor = completionExecutor;
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(K key, GridCommand<T> command) {
+        return completeInExecutor(target.executeAsync(key, command));
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        return completeInExecutor(target.createInitialStateAndExecuteAsync(key, configuration, command));
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<Map<K, CommandResult<T>>> executeBatchAsync(Map<K, GridCommand<T>> commands) {
+        return completeInExecutor(target.executeBatchAsync(commands));
+    }
+
+    @Override
+    public <T extends Serializable> CommandResult<T> execute(K key, GridCommand<T> command) {
+        return target.execute(key, command);
+    }
+
+    @Override
+    public <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        return target.executeBatch(commands);
+    }
+
+    @Override
+    public void createInitialState(K key, BucketConfiguration configuration) {
+        target.createInitialState(key, configuration);
+    }
+
+    @Override
+    public <T extends Serializable> T createInitialStateAndExecute(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        return target.createInitialStateAndExecute(key, configuration, command);
+    }
+
+    @Override
+    public Optional<BucketConfiguration> getConfiguration(K key) {
+        return target.getConfiguration(key);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return target.isAsyncModeSupported();
+    }
+
+    /**
+     * @return the proxy which actually communicates with the grid
+     */
+    public GridProxy<K> getTarget() {
+        return target;
+    }
+
+    private <R> CompletableFuture<R> completeInExecutor(CompletableFuture<R> targetFuture) {
+        CompletableFuture<R> resultFuture = new CompletableFuture<>();
+        if (targetFuture.isDone()) {
+            // completed by calling thread, so continuations attached by caller run in the calling thread as well
+            targetFuture.whenComplete((result, error) -> complete(resultFuture, result, error));
+            return resultFuture;
+        }
+        targetFuture.whenComplete((result, error) -> {
+            try {
+                completionExecutor.execute(() -> complete(resultFuture, result, error));
+            } catch (RejectedExecutionException e) {
+                complete(resultFuture, result, error);
+            }
+        });
+        return resultFuture;
+    }
+
+    private static <R> void complete(CompletableFuture<R> future, R result, Throwable error) {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(result);
+        }
+    }
+
+}
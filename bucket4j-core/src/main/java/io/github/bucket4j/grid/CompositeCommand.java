@@ -0,0 +1,64 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes several commands one by one against same state of bucket, so they are sent to the grid by single round trip.
+ * The result of composite command is the list of results of nested commands in same order.
+ */
+public class CompositeCommand implements GridCommand<ArrayList<Serializable>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private ArrayList<GridCommand<?>> commands;
+    private boolean bucketStateModified = false;
+
+    public CompositeCommand(List<? extends GridCommand<?>> commands) {
+        this.commands = new ArrayList<>(commands);
+    }
+
+    @Override
+    public ArrayList<Serializable> execute(GridBucketState state, long currentTimeNanos) {
+        ArrayList<Serializable> results = new ArrayList<>(commands.size());
+        for (GridCommand<?> command : commands) {
+            results.add(command.execute(state, currentTimeNanos));
+            bucketStateModified |= command.isBucketStateModified();
+        }
+        return results;
+    }
+
+    @Override
+    public boolean isBucketStateModified() {
+        return bucketStateModified;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        for (GridCommand<?> command : commands) {
+            if (!command.isReadOnly()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
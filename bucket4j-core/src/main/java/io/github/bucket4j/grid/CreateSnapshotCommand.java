@@ -25,7 +25,7 @@ public class CreateSnapshotCommand implements GridCommand<BucketState> {
 
     @Override
     public BucketState execute(GridBucketState gridState, long currentTimeNanos) {
-        return gridState.copyBucketState();
+        return gridState.copyBucketState(currentTimeNanos);
     }
 
     @Override
@@ -33,4 +33,9 @@ public class CreateSnapshotCommand implements GridCommand<BucketState> {
         return false;
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
 }
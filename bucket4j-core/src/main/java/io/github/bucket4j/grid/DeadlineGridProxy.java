@@ -0,0 +1,355 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.*;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decorator for {@link GridProxy} which bounds the duration of each operation by deadline,
+ * so the threads which use rate limiter do not pile up when the grid is slow, for example during migration of partitions.
+ *
+ * <p>
+ * The commands are sent via asynchronous API of target proxy, when the grid does not respond before deadline or fails,
+ * the command is answered by {@link FallbackStrategy}, the late response of the grid is ignored.
+ * The fallback executes the original command against the state held in current JVM,
+ * the tokens consumed or added by fallback are remembered per key and reconciled back to the grid
+ * via {@link ConsumeAsMuchAsPossibleCommand} or {@link AddTokensCommand} as soon as the grid responds for this key again.
+ *
+ * <p>
+ * The {@link GridCommand#isReadOnly() read-only} commands like {@link GetAvailableTokensCommand} and {@link CreateSnapshotCommand} are idempotent,
+ * so when {@code hedgeDelay} is specified they are sent yet another time if the grid does not respond during this delay,
+ * the first response wins.
+ *
+ * <p>
+ * The deadlines and hedged commands are scheduled to {@link HashedWheelTimer}, the task of deadline is cancelled as soon as the grid responds,
+ * so it does not retain the future and fallback until deadline. When deadline expires, the fallback is executed and the future is completed
+ * by the task executor of timer, the worker thread of timer is never blocked by fallback or by callbacks attached to the future.
+ *
+ * <p>
+ * Bounds of inaccuracy: the commands executed by fallback are not visible for other nodes until reconciliation,
+ * and command which timed out can still be executed by the grid, so in the worst case the tokens are consumed twice.
+ * The tokens admitted by {@link FallbackStrategy#LOCAL} per key and per node during the outage are bounded by capacity plus refill during the outage,
+ * the part of them which can not be consumed from the grid by reconciliation is over-admission.
+ *
+ * @param <K> type of key
+ */
+public class DeadlineGridProxy<K extends Serializable> implements GridProxy<K> {
+
+    private final GridProxy<K> target;
+    private final long deadlineNanos;
+    private final long hedgeDelayNanos;
+    private final FallbackStrategy fallbackStrategy;
+    private final Function<K, BucketConfiguration> configurations;
+    private final TimeMeter timeMeter;
+    private final HashedWheelTimer timer;
+    private final ConcurrentHashMap<K, FallbackState> fallbackStates = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the proxy which schedules the deadlines to the timer shared by all buckets, see {@link HashedWheelTimer#getDefault()}.
+     *
+     * @param target the proxy which actually communicates with the grid, it should support asynchronous mode
+     * @param deadline the maximum duration of each operation
+     * @param fallbackStrategy the strategy which answers the commands when deadline expires
+     * @param configurations the configuration of bucket for each key which is used by fallback
+     */
+    public DeadlineGridProxy(GridProxy<K> target, Duration deadline, FallbackStrategy fallbackStrategy, Function<K, BucketConfiguration> configurations) {
+        this(target, deadline, null, fallbackStrategy, configurations, TimeMeter.SYSTEM_MILLISECONDS, HashedWheelTimer.getDefault());
+    }
+
+    /**
+     * @param target the proxy which actually communicates with the grid, it should support asynchronous mode
+     * @param deadline the maximum duration of each operation
+     * @param hedgeDelay the delay after which read-only command is sent yet another time, {@code null} means that commands are never hedged
+     * @param fallbackStrategy the strategy which answers the commands when deadline expires
+     * @param configurations the configuration of bucket for each key which is used by fallback
+     * @param timeMeter the clock which is used by fallback, it should be consistent with clock of the grid
+     * @param timer the timer which is used to expire asynchronous operations and to send hedged commands,
+     *              the fallback and hedged commands are executed by the task executor of this timer
+     */
+    public DeadlineGridProxy(GridProxy<K> target, Duration deadline, Duration hedgeDelay, FallbackStrategy fallbackStrategy,
+                             Function<K, BucketConfiguration> configurations, TimeMeter timeMeter, HashedWheelTimer timer) {
+        if (target == null) {
+            throw BucketExceptions.nullGridProxy();
+        }
+        if (!target.isAsyncModeSupported()) {
+            throw BucketExceptions.asyncModeIsNotSupportedByGridProxy();
+        }
+        if (deadline == null || deadline.toNanos() <= 0) {
+            throw BucketExceptions.nonPositiveDeadline(deadline == null ? 0 : deadline.toNanos());
+        }
+        if (hedgeDelay != null && (hedgeDelay.toNanos() <= 0 || hedgeDelay.toNanos() >= deadline.toNanos())) {
+            throw BucketExceptions.wrongHedgeDelay(hedgeDelay.toNanos(), deadline.toNanos());
+        }
+        if (fallbackStrategy == null) {
+            throw BucketExceptions.nullFallbackStrategy();
+        }
+        if (configurations == null) {
+            throw BucketExceptions.nullConfigurationSupplier();
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        if (timer == null) {
+            throw BucketExceptions.nullTimer();
+        }
+        this.target = target;
+        this.deadlineNanos = deadline.toNanos();
+        this.hedgeDelayNanos = hedgeDelay == null ? 0 : hedgeDelay.toNanos();
+        this.fallbackStrategy = fallbackStrategy;
+        this.configurations = configurations;
+        this.timeMeter = timeMeter;
+        this.timer = timer;
+    }
+
+    @Override
+    public <T extends Serializable> CommandResult<T> execute(K key, GridCommand<T> command) {
+        CompletableFuture<CommandResult<T>> future = isHedgeable(command) ?
+                hedge(() -> target.executeAsync(key, command)) : target.executeAsync(key, command);
+        return await(key, future, () -> CommandResult.success(executeFallback(key, command)));
+    }
+
+    @Override
+    public <T extends Serializable> T createInitialStateAndExecute(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        CompletableFuture<T> future = target.createInitialStateAndExecuteAsync(key, configuration, command);
+        return await(key, future, () -> executeFallback(key, command));
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(K key, GridCommand<T> command) {
+        CompletableFuture<CommandResult<T>> future = isHedgeable(command) ?
+                hedge(() -> target.executeAsync(key, command)) : target.executeAsync(key, command);
+        return withDeadline(key, future, () -> CommandResult.success(executeFallback(key, command)));
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(K key, BucketConfiguration configuration, GridCommand<T> command) {
+        CompletableFuture<T> future = target.createInitialStateAndExecuteAsync(key, configuration, command);
+        return withDeadline(key, future, () -> executeFallback(key, command));
+    }
+
+    @Override
+    public void createInitialState(K key, BucketConfiguration configuration) {
+        target.createInitialState(key, configuration);
+    }
+
+    @Override
+    public Optional<BucketConfiguration> getConfiguration(K key) {
+        return target.getConfiguration(key);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    private boolean isHedgeable(GridCommand<?> command) {
+        return hedgeDelayNanos > 0 && command.isReadOnly();
+    }
+
+    private <R> R await(K key, CompletableFuture<R> future, Supplier<R> fallback) {
+        R result;
+        try {
+            result = future.get(deadlineNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return fallback.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback.get();
+        }
+        reconcile(key);
+        return result;
+    }
+
+    private <R> CompletableFuture<R> withDeadline(K key, CompletableFuture<R> future, Supplier<R> fallback) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicBoolean settled = new AtomicBoolean();
+        HashedWheelTimer.Timeout deadlineTimeout = timer.schedule(() -> {
+            if (settled.compareAndSet(false, true)) {
+                completeByFallback(result, fallback);
+            }
+        }, deadlineNanos);
+        future.whenComplete((data, error) -> {
+            if (error == null) {
+                reconcile(key);
+            }
+            if (!settled.compareAndSet(false, true)) {
+                // deadline already expired
+                return;
+            }
+            deadlineTimeout.cancel();
+            if (error == null) {
+                result.complete(data);
+            } else {
+                completeByFallback(result, fallback);
+            }
+        });
+        return result;
+    }
+
+    private static <R> void completeByFallback(CompletableFuture<R> result, Supplier<R> fallback) {
+        try {
+            result.complete(fallback.get());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private <R> CompletableFuture<R> hedge(Supplier<CompletableFuture<R>> attempt) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicInteger outstandingAttempts = new AtomicInteger(2);
+        BiConsumer<R, Throwable> relay = (data, error) -> {
+            if (error == null) {
+                result.complete(data);
+            } else if (outstandingAttempts.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        };
+        attempt.get().whenComplete(relay);
+        HashedWheelTimer.Timeout hedgeTimeout = timer.schedule(() -> {
+            if (!result.isDone()) {
+                attempt.get().whenComplete(relay);
+            }
+        }, hedgeDelayNanos);
+        result.whenComplete((data, error) -> hedgeTimeout.cancel());
+        return result;
+    }
+
+    private <T extends Serializable> T executeFallback(K key, GridCommand<T> command) {
+        while (true) {
+            FallbackState fallbackState = fallbackStates.computeIfAbsent(key, k -> new FallbackState());
+            fallbackState.lock();
+            try {
+                if (fallbackState.retired) {
+                    // the grid has responded concurrently, state was already reconciled
+                    continue;
+                }
+                long currentTimeNanos = timeMeter.currentTimeNanos();
+                GridBucketState state = prepareFallbackState(key, fallbackState, currentTimeNanos);
+                state.refillAllBandwidth(currentTimeNanos);
+                long tokensBefore = state.getAvailableTokens();
+                T result = command.execute(state, currentTimeNanos);
+                fallbackState.unreconciledTokens += tokensBefore - state.getAvailableTokens();
+                return result;
+            } finally {
+                fallbackState.unlock();
+            }
+        }
+    }
+
+    private GridBucketState prepareFallbackState(K key, FallbackState fallbackState, long currentTimeNanos) {
+        if (fallbackStrategy == FallbackStrategy.LOCAL && fallbackState.state != null) {
+            return fallbackState.state;
+        }
+        BucketConfiguration configuration = configurations.apply(key);
+        if (configuration == null) {
+            throw BucketExceptions.nullConfiguration();
+        }
+        GridBucketState state = new GridBucketState(configuration, BucketState.createInitialState(configuration, currentTimeNanos));
+        state.refillAllBandwidth(currentTimeNanos);
+        switch (fallbackStrategy) {
+            case FAIL_OPEN:
+                long maxCapacity = 0;
+                for (Bandwidth bandwidth : configuration.getBandwidths()) {
+                    maxCapacity = Math.max(maxCapacity, bandwidth.getCapacity());
+                }
+                state.addTokens(maxCapacity);
+                break;
+            case FAIL_CLOSED:
+                long availableTokens = state.getAvailableTokens();
+                if (availableTokens > 0) {
+                    state.consume(availableTokens);
+                }
+                break;
+            case LOCAL:
+                fallbackState.state = state;
+                break;
+            default:
+                throw new IllegalStateException("Unknown fallback strategy " + fallbackStrategy);
+        }
+        return state;
+    }
+
+    private void reconcile(K key) {
+        if (fallbackStates.isEmpty()) {
+            return;
+        }
+        FallbackState fallbackState = fallbackStates.get(key);
+        if (fallbackState == null) {
+            return;
+        }
+        long tokens;
+        fallbackState.lock();
+        try {
+            if (fallbackState.retired) {
+                return;
+            }
+            fallbackState.retired = true;
+            tokens = fallbackState.unreconciledTokens;
+        } finally {
+            fallbackState.unlock();
+        }
+        fallbackStates.remove(key, fallbackState);
+        if (tokens == 0) {
+            return;
+        }
+
+        GridCommand<?> command = tokens > 0 ? new ConsumeAsMuchAsPossibleCommand(tokens) : new AddTokensCommand(-tokens);
+        target.executeAsync(key, command).whenComplete((result, error) -> {
+            if (error != null) {
+                // the grid fails again, tokens will be reconciled by next response
+                restoreUnreconciledTokens(key, tokens);
+            }
+        });
+    }
+
+    private void restoreUnreconciledTokens(K key, long tokens) {
+        while (true) {
+            FallbackState fallbackState = fallbackStates.computeIfAbsent(key, k -> new FallbackState());
+            fallbackState.lock();
+            try {
+                if (!fallbackState.retired) {
+                    fallbackState.unreconciledTokens += tokens;
+                    return;
+                }
+            } finally {
+                fallbackState.unlock();
+            }
+        }
+    }
+
+    private static final class FallbackState extends ReentrantLock {
+
+        // guarded by lock
+        private GridBucketState state;
+        private long unreconciledTokens;
+        private boolean retired;
+
+    }
+
+}
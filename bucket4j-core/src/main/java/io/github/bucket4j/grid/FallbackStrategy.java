@@ -0,0 +1,47 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+/**
+ * Specifies how the command should be answered when the grid does not respond in time or fails, see {@link DeadlineGridProxy}.
+ *
+ * Each strategy executes the original command against the state of bucket which is held in current JVM,
+ * so the result has the same type as result which is expected from the grid.
+ * The tokens consumed or added by fallback are reconciled back to the grid when the grid responds again.
+ */
+public enum FallbackStrategy {
+
+    /**
+     * Execute the command against full bucket, so all requests which fit into capacity are admitted.
+     * Use this strategy if availability of protected service is more preferred than the limits.
+     */
+    FAIL_OPEN,
+
+    /**
+     * Execute the command against empty bucket, so all requests are rejected.
+     * Use this strategy if the limits are more preferred than availability of protected service.
+     */
+    FAIL_CLOSED,
+
+    /**
+     * Execute the command against local bucket with the same configuration, which is created at the first fallback
+     * and lives until the grid responds again, so the limits are approximately enforced by each node independently.
+     */
+    LOCAL
+
+}
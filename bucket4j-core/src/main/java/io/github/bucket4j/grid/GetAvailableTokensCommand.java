@@ -33,4 +33,9 @@ public class GetAvailableTokensCommand implements GridCommand<Long> {
         return false;
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
 }
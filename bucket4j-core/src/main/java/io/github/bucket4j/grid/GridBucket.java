@@ -20,7 +20,10 @@ package io.github.bucket4j.grid;
 import io.github.bucket4j.*;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 /**
@@ -34,16 +37,37 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
     private final GridProxy<K> gridProxy;
     private final RecoveryStrategy recoveryStrategy;
     private final Supplier<BucketConfiguration> configurationSupplier;
+    private final TimeMeter rejectionCacheTimeMeter;
+    private final RejectionCache rejectionCache;
+    private final SingleRoundTripInitializer.KeyInitialization keyInitialization;
 
     public static <T extends Serializable> GridBucket<T> createLazyBucket(T key, Supplier<BucketConfiguration> configurationSupplier, GridProxy<T> gridProxy) {
-        return new GridBucket<>(key, configurationSupplier, gridProxy, RecoveryStrategy.RECONSTRUCT, false);
+        return new GridBucket<>(key, configurationSupplier, gridProxy, RecoveryStrategy.RECONSTRUCT, false, null, null);
+    }
+
+    /**
+     * Creates the lazy bucket which initializes absent bucket in single round trip, see {@link #withSingleRoundTripInitialization()}.
+     * The state of initialization is taken from {@code initializer}, so it is shared by all buckets created for the same key via the same initializer.
+     *
+     * @param key the key of bucket
+     * @param configurationSupplier provides configuration when bucket is absent in the grid
+     * @param gridProxy the proxy to the grid
+     * @param initializer holds the state of initialization per key
+     * @param <T> type of key
+     *
+     * @return the lazy bucket which initializes absent bucket in single round trip
+     */
+    public static <T extends Serializable> GridBucket<T> createLazyBucket(T key, Supplier<BucketConfiguration> configurationSupplier, GridProxy<T> gridProxy,
+                                                                         SingleRoundTripInitializer<T> initializer) {
+        return new GridBucket<>(key, configurationSupplier, gridProxy, RecoveryStrategy.RECONSTRUCT, false, null, initializer.initializationOf(key));
     }
 
     public static <T extends Serializable> GridBucket<T> createInitializedBucket(T key, BucketConfiguration configuration, GridProxy<T> gridProxy, RecoveryStrategy recoveryStrategy) {
-        return new GridBucket<>(key, () -> configuration, gridProxy, recoveryStrategy, true);
+        return new GridBucket<>(key, () -> configuration, gridProxy, recoveryStrategy, true, null, null);
     }
 
-    private GridBucket(K key, Supplier<BucketConfiguration> configurationSupplier, GridProxy<K> gridProxy, RecoveryStrategy recoveryStrategy, boolean initializeBucket) {
+    private GridBucket(K key, Supplier<BucketConfiguration> configurationSupplier, GridProxy<K> gridProxy, RecoveryStrategy recoveryStrategy, boolean initializeBucket,
+                       TimeMeter rejectionCacheTimeMeter, SingleRoundTripInitializer.KeyInitialization keyInitialization) {
         this.key = key;
         this.gridProxy = gridProxy;
         this.recoveryStrategy = recoveryStrategy;
@@ -51,12 +75,158 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
         if (configurationSupplier == null) {
             throw BucketExceptions.nullConfigurationSupplier();
         }
+        this.keyInitialization = keyInitialization;
+        this.rejectionCacheTimeMeter = rejectionCacheTimeMeter;
+        this.rejectionCache = rejectionCacheTimeMeter == null ? null : new RejectionCache(rejectionCacheTimeMeter, this::getConfiguration);
         if (initializeBucket) {
             BucketConfiguration configuration = getConfiguration();
             gridProxy.createInitialState(key, configuration);
         }
     }
 
+    /**
+     * Returns the view of this bucket which rejects requests locally, without network round trip,
+     * while the grid is known to reject them.
+     *
+     * <p>
+     * Each rejection reported by the grid carries {@link ConsumptionProbe#getNanosToWaitForRefill()},
+     * the returned bucket remembers it as "rejected until" deadline for this key,
+     * so the requests which arrive inside this window are rejected with zero I/O.
+     * In order to learn the deadline, {@link #tryConsume(long)} is executed via {@link TryConsumeAndReturnRemainingTokensCommand}.
+     * The deadline is invalidated once {@link #addTokens(long)} or {@link #replaceConfiguration(BucketConfiguration)} called through the returned bucket is executed by the grid,
+     * but the tokens added by other nodes are not visible until the deadline passes.
+     *
+     * <p>
+     * The deadline is held by returned instance, so it makes sense to reuse single instance per key
+     * instead of requesting new proxy from {@link ProxyManager} for each request.
+     *
+     * @return the view of this bucket with client-side rejection cache
+     */
+    public GridBucket<K> withRejectionCache() {
+        return withRejectionCache(TimeMeter.SYSTEM_NANOTIME);
+    }
+
+    /**
+     * Returns the view of this bucket which rejects requests locally, see {@link #withRejectionCache()} for details.
+     *
+     * @param timeMeter the local clock which is used to track the "rejected until" deadline
+     *
+     * @return the view of this bucket with client-side rejection cache
+     */
+    public GridBucket<K> withRejectionCache(TimeMeter timeMeter) {
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        return new GridBucket<>(key, configurationSupplier, gridProxy, recoveryStrategy, false, timeMeter, keyInitialization);
+    }
+
+    /**
+     * Returns the view of this bucket which initializes absent bucket without additional round trips.
+     *
+     * <p>
+     * By default the command is executed first, and when the grid reports that bucket is absent
+     * the command is sent again together with configuration, so the first touch of key costs two round trips.
+     * The returned bucket behaves in following way:
+     * <ul>
+     *     <li>The first command is sent as create-if-absent-and-execute, so the first touch of key costs single round trip.
+     *     Subsequent commands are sent without configuration.</li>
+     *     <li>When several threads hit the absent bucket concurrently, only one of them sends the configuration to the grid,
+     *     others wait for this initialization and then execute their commands as usual.</li>
+     *     <li>The configuration supplier is evaluated at most once, the result is reused by all subsequent initializations.</li>
+     * </ul>
+     * The absent bucket is never initialized implicitly when {@link RecoveryStrategy#THROW_BUCKET_NOT_FOUND_EXCEPTION} is used,
+     * in this case only the configuration is memoized.
+     *
+     * <p>
+     * The state of initialization is held by returned instance, so it makes sense to reuse single instance per key.
+     * Use {@link ProxyManager#withSingleRoundTripInitialization()} in order to share the state of initialization
+     * between all proxies of the same key which are requested from {@link ProxyManager}.
+     *
+     * @return the view of this bucket which initializes absent bucket in single round trip
+     */
+    public GridBucket<K> withSingleRoundTripInitialization() {
+        SingleRoundTripInitializer<K> initializer = new SingleRoundTripInitializer<>();
+        return new GridBucket<>(key, configurationSupplier, gridProxy, recoveryStrategy, false, rejectionCacheTimeMeter, initializer.initializationOf(key));
+    }
+
+    /**
+     * Returns the view of this bucket which bounds the duration of each operation by deadline,
+     * see {@link DeadlineGridProxy} for details.
+     *
+     * @param deadline the maximum duration of each operation
+     * @param fallbackStrategy the strategy which answers the command when deadline expires or the grid fails
+     *
+     * @return the view of this bucket which bounds the duration of each operation by deadline
+     */
+    public GridBucket<K> withDeadline(Duration deadline, FallbackStrategy fallbackStrategy) {
+        return withDeadline(deadline, null, fallbackStrategy, TimeMeter.SYSTEM_MILLISECONDS);
+    }
+
+    /**
+     * Returns the view of this bucket which bounds the duration of each operation by deadline,
+     * see {@link DeadlineGridProxy} for details.
+     *
+     * @param deadline the maximum duration of each operation
+     * @param hedgeDelay the delay after which read-only command is sent yet another time, {@code null} means that commands are never hedged
+     * @param fallbackStrategy the strategy which answers the command when deadline expires or the grid fails
+     * @param timeMeter the clock which is used by fallback, it should be consistent with clock of the grid
+     *
+     * @return the view of this bucket which bounds the duration of each operation by deadline
+     */
+    public GridBucket<K> withDeadline(Duration deadline, Duration hedgeDelay, FallbackStrategy fallbackStrategy, TimeMeter timeMeter) {
+        return withDeadline(deadline, hedgeDelay, fallbackStrategy, timeMeter, HashedWheelTimer.getDefault());
+    }
+
+    /**
+     * Returns the view of this bucket which bounds the duration of each operation by deadline,
+     * see {@link DeadlineGridProxy} for details.
+     *
+     * @param deadline the maximum duration of each operation
+     * @param hedgeDelay the delay after which read-only command is sent yet another time, {@code null} means that commands are never hedged
+     * @param fallbackStrategy the strategy which answers the command when deadline expires or the grid fails
+     * @param timeMeter the clock which is used by fallback, it should be consistent with clock of the grid
+     * @param timer the timer which is used to expire asynchronous operations and to send hedged commands,
+     *              the fallback and hedged commands are executed by the task executor of this timer
+     *
+     * @return the view of this bucket which bounds the duration of each operation by deadline
+     */
+    public GridBucket<K> withDeadline(Duration deadline, Duration hedgeDelay, FallbackStrategy fallbackStrategy, TimeMeter timeMeter, HashedWheelTimer timer) {
+        DeadlineGridProxy<K> deadlineProxy = new DeadlineGridProxy<>(gridProxy, deadline, hedgeDelay, fallbackStrategy,
+                anyKey -> getConfiguration(), timeMeter, timer);
+        return new GridBucket<>(key, configurationSupplier, deadlineProxy, recoveryStrategy, false, rejectionCacheTimeMeter, keyInitialization);
+    }
+
+    /**
+     * Returns the view of this bucket which completes the futures of asynchronous operations in specified executor
+     * instead of grid thread, see {@link CompletionExecutorGridProxy} for details.
+     *
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     *
+     * @return the view of this bucket which completes the futures of asynchronous operations in specified executor
+     */
+    public GridBucket<K> withCompletionExecutor(Executor completionExecutor) {
+        CompletionExecutorGridProxy<K> executorProxy = new CompletionExecutorGridProxy<>(gridProxy, completionExecutor);
+        return new GridBucket<>(key, configurationSupplier, executorProxy, recoveryStrategy, false, rejectionCacheTimeMeter, keyInitialization);
+    }
+
+    /**
+     * Returns the view of this bucket which completes the futures of asynchronous operations in grid thread,
+     * it is the opt-in for call sites which attach only cheap non-blocking continuations and do not want to pay for hand-off to completion executor.
+     *
+     * <p>
+     * The hand-off is skipped only when {@link CompletionExecutorGridProxy} is the outermost proxy of this bucket,
+     * for example when this bucket is returned by {@link #withCompletionExecutor(Executor)}, otherwise this bucket is returned as is.
+     *
+     * @return the view of this bucket which completes the futures of asynchronous operations in grid thread
+     */
+    public GridBucket<K> withInlineCompletion() {
+        if (!(gridProxy instanceof CompletionExecutorGridProxy)) {
+            return this;
+        }
+        GridProxy<K> targetProxy = ((CompletionExecutorGridProxy<K>) gridProxy).getTarget();
+        return new GridBucket<>(key, configurationSupplier, targetProxy, recoveryStrategy, false, rejectionCacheTimeMeter, keyInitialization);
+    }
+
     @Override
     public boolean isAsyncModeSupported() {
         return gridProxy.isAsyncModeSupported();
@@ -74,22 +244,62 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
 
     @Override
     protected boolean tryConsumeImpl(long tokensToConsume) {
+        if (rejectionCache != null) {
+            return tryConsumeAndReturnRemainingTokensImpl(tokensToConsume).isConsumed();
+        }
         return execute(new TryConsumeCommand(tokensToConsume));
     }
 
     @Override
     protected CompletableFuture<Boolean> tryConsumeAsyncImpl(long tokensToConsume) {
+        if (rejectionCache != null) {
+            return tryConsumeAndReturnRemainingTokensAsyncImpl(tokensToConsume).thenApply(ConsumptionProbe::isConsumed);
+        }
         return executeAsync(new TryConsumeCommand(tokensToConsume));
     }
 
     @Override
     protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
-        return execute(new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume));
+        if (rejectionCache == null) {
+            return execute(new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume));
+        }
+        ConsumptionProbe localRejection = rejectionCache.checkRejected(tokensToConsume);
+        if (localRejection != null) {
+            return localRejection;
+        }
+        Object snapshot = rejectionCache.snapshot();
+        long timeNanos = rejectionCache.currentTimeNanos();
+        ConsumptionProbe probe = execute(new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume));
+        rejectionCache.onProbe(snapshot, timeNanos, tokensToConsume, probe);
+        return probe;
     }
 
     @Override
     protected CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemainingTokensAsyncImpl(long tokensToConsume) {
-        return executeAsync(new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume));
+        if (rejectionCache == null) {
+            return executeAsync(new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume));
+        }
+        ConsumptionProbe localRejection = rejectionCache.checkRejected(tokensToConsume);
+        if (localRejection != null) {
+            return CompletableFuture.completedFuture(localRejection);
+        }
+        Object snapshot = rejectionCache.snapshot();
+        long timeNanos = rejectionCache.currentTimeNanos();
+        CompletableFuture<ConsumptionProbe> result = executeAsync(new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume));
+        return result.thenApply(probe -> {
+            rejectionCache.onProbe(snapshot, timeNanos, tokensToConsume, probe);
+            return probe;
+        });
+    }
+
+    @Override
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        return execute(new TryConsumeBatchCommand(cumulativeCosts));
+    }
+
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        return executeAsync(new TryConsumeBatchCommand(cumulativeCosts));
     }
 
     @Override
@@ -106,19 +316,33 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
 
     @Override
     protected void addTokensImpl(long tokensToAdd) {
-        execute(new AddTokensCommand(tokensToAdd));
+        try {
+            execute(new AddTokensCommand(tokensToAdd));
+        } finally {
+            // the rejections which were observed before tokens were added should not be cached
+            invalidateRejectionCache(null);
+        }
     }
 
     @Override
     protected CompletableFuture<Void> addTokensAsyncImpl(long tokensToAdd) {
         CompletableFuture<Nothing> future = executeAsync(new AddTokensCommand(tokensToAdd));
-        return future.thenApply(nothing -> null);
+        return future.whenComplete((nothing, error) -> invalidateRejectionCache(null))
+                .thenApply(nothing -> null);
     }
 
     @Override
     protected void replaceConfigurationImpl(BucketConfiguration newConfiguration) {
         ReplaceConfigurationOrReturnPreviousCommand replaceConfigCommand = new ReplaceConfigurationOrReturnPreviousCommand(newConfiguration);
-        BucketConfiguration previousConfiguration = execute(replaceConfigCommand);
+        BucketConfiguration previousConfiguration = null;
+        boolean replaced = false;
+        try {
+            previousConfiguration = execute(replaceConfigCommand);
+            replaced = previousConfiguration == null;
+        } finally {
+            // the rejections which were observed before configuration was replaced should not be cached
+            invalidateRejectionCache(replaced ? newConfiguration : null);
+        }
         if (previousConfiguration != null) {
             throw new IncompatibleConfigurationException(previousConfiguration, newConfiguration);
         }
@@ -128,6 +352,8 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
     protected CompletableFuture<Void> replaceConfigurationAsyncImpl(BucketConfiguration newConfiguration) {
         ReplaceConfigurationOrReturnPreviousCommand replaceConfigCommand = new ReplaceConfigurationOrReturnPreviousCommand(newConfiguration);
         CompletableFuture<BucketConfiguration> result = executeAsync(replaceConfigCommand);
+        result = result.whenComplete((previousConfiguration, error) ->
+                invalidateRejectionCache(error == null && previousConfiguration == null ? newConfiguration : null));
         return result.thenCompose(previousConfiguration -> {
             if (previousConfiguration == null) {
                 return CompletableFuture.completedFuture(null);
@@ -149,15 +375,40 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
         return execute(new CreateSnapshotCommand());
     }
 
+    private void invalidateRejectionCache(BucketConfiguration newConfiguration) {
+        if (rejectionCache == null) {
+            return;
+        }
+        if (newConfiguration == null) {
+            rejectionCache.invalidate();
+        } else {
+            rejectionCache.invalidate(newConfiguration);
+        }
+    }
+
     private BucketConfiguration getConfiguration() {
-        BucketConfiguration bucketConfiguration = configurationSupplier.get();
+        BucketConfiguration bucketConfiguration = keyInitialization == null ? null : keyInitialization.configuration;
+        if (bucketConfiguration != null) {
+            return bucketConfiguration;
+        }
+        bucketConfiguration = configurationSupplier.get();
         if (bucketConfiguration == null) {
             throw BucketExceptions.nullConfiguration();
         }
+        if (keyInitialization != null) {
+            keyInitialization.configuration = bucketConfiguration;
+        }
         return bucketConfiguration;
     }
 
-    private <T extends Serializable> T execute(GridCommand<T> command) {
+    private boolean isSingleRoundTripInitializationRequired() {
+        return keyInitialization != null && recoveryStrategy == RecoveryStrategy.RECONSTRUCT;
+    }
+
+    <T extends Serializable> T execute(GridCommand<T> command) {
+        if (isSingleRoundTripInitializationRequired() && !keyInitialization.initialized) {
+            return initializeAndExecute(command);
+        }
         CommandResult<T> result = gridProxy.execute(key, command);
         if (!result.isBucketNotFound()) {
             return result.getData();
@@ -168,11 +419,95 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
             throw new BucketNotFoundException(key);
         }
 
+        if (keyInitialization != null) {
+            return initializeAndExecute(command);
+        }
+
         // retry command execution
         return gridProxy.createInitialStateAndExecute(key, getConfiguration(), command);
     }
 
+    private <T extends Serializable> T initializeAndExecute(GridCommand<T> command) {
+        while (true) {
+            CompletableFuture<Void> initialization = keyInitialization.inFlight.get();
+            if (initialization != null) {
+                // other thread initializes the bucket right now
+                try {
+                    initialization.join();
+                } catch (CompletionException e) {
+                    // the error is reported to initiator, current thread will try to initialize the bucket by itself
+                }
+                CommandResult<T> result = gridProxy.execute(key, command);
+                if (!result.isBucketNotFound()) {
+                    return result.getData();
+                }
+                return gridProxy.createInitialStateAndExecute(key, getConfiguration(), command);
+            }
+
+            initialization = new CompletableFuture<>();
+            if (!keyInitialization.inFlight.compareAndSet(null, initialization)) {
+                continue;
+            }
+            try {
+                T result = gridProxy.createInitialStateAndExecute(key, getConfiguration(), command);
+                keyInitialization.initialized = true;
+                initialization.complete(null);
+                return result;
+            } catch (Throwable e) {
+                initialization.completeExceptionally(e);
+                throw e;
+            } finally {
+                keyInitialization.inFlight.compareAndSet(initialization, null);
+            }
+        }
+    }
+
+    private <T extends Serializable> CompletableFuture<T> initializeAndExecuteAsync(GridCommand<T> command) {
+        while (true) {
+            CompletableFuture<Void> initialization = keyInitialization.inFlight.get();
+            if (initialization != null) {
+                // other request initializes the bucket right now
+                return initialization
+                        .handle((nothing, error) -> null)
+                        .thenCompose(nothing -> gridProxy.executeAsync(key, command))
+                        .thenCompose(cmdResult -> {
+                            if (!cmdResult.isBucketNotFound()) {
+                                return CompletableFuture.completedFuture(cmdResult.getData());
+                            }
+                            return gridProxy.createInitialStateAndExecuteAsync(key, getConfiguration(), command);
+                        });
+            }
+
+            CompletableFuture<Void> ownInitialization = new CompletableFuture<>();
+            if (!keyInitialization.inFlight.compareAndSet(null, ownInitialization)) {
+                continue;
+            }
+            CompletableFuture<T> result;
+            try {
+                result = gridProxy.createInitialStateAndExecuteAsync(key, getConfiguration(), command);
+            } catch (Throwable e) {
+                keyInitialization.inFlight.compareAndSet(ownInitialization, null);
+                ownInitialization.completeExceptionally(e);
+                throw e;
+            }
+            return result.whenComplete((data, error) -> {
+                if (error == null) {
+                    keyInitialization.initialized = true;
+                }
+                keyInitialization.inFlight.compareAndSet(ownInitialization, null);
+                if (error == null) {
+                    ownInitialization.complete(null);
+                } else {
+                    ownInitialization.completeExceptionally(error);
+                }
+            });
+        }
+    }
+
     private <T extends Serializable> CompletableFuture<T> executeAsync(GridCommand<T> command) {
+        if (isSingleRoundTripInitializationRequired() && !keyInitialization.initialized) {
+            return initializeAndExecuteAsync(command);
+        }
         CompletableFuture<CommandResult<T>> futureResult = gridProxy.executeAsync(key, command);
         return futureResult.thenCompose(cmdResult -> {
             if (!cmdResult.isBucketNotFound()) {
@@ -184,6 +519,9 @@ public class GridBucket<K extends Serializable> extends AbstractBucket {
                 failedFuture.completeExceptionally(new BucketNotFoundException(key));
                 return failedFuture;
             }
+            if (keyInitialization != null) {
+                return initializeAndExecuteAsync(command);
+            }
             return gridProxy.createInitialStateAndExecuteAsync(key, getConfiguration(), command);
         });
     }
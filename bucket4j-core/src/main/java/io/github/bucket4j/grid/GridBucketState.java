@@ -17,48 +17,131 @@
 
 package io.github.bucket4j.grid;
 
+import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketExceptions;
 import io.github.bucket4j.BucketState;
+import io.github.bucket4j.GcraState;
 
 import java.io.Serializable;
 
+/**
+ * The state of bucket which is stored in the grid together with configuration.
+ *
+ * <p>
+ * When configuration is built with {@link io.github.bucket4j.ConfigurationBuilder#withGcraState()},
+ * the state is stored as single {@code long} in terms of {@link GcraState} instead of {@link BucketState},
+ * so the entries stored in the grid become smaller and cheaper to serialize.
+ * GCRA does not require explicit refill, so {@link #refillAllBandwidth(long)} just remembers the current time
+ * which is used by subsequent operations inside same command.
+ */
 public class GridBucketState implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     private BucketConfiguration configuration;
     private BucketState state;
+    private long theoreticalArrivalTimeNanos;
+    private transient long currentTimeNanos;
 
     public GridBucketState(BucketConfiguration configuration, BucketState state) {
+        this.configuration = configuration;
+        if (configuration.isGcraState()) {
+            this.theoreticalArrivalTimeNanos = GcraState.fromBucketState(getBandwidth(), state).getTheoreticalArrivalTimeNanos();
+            this.currentTimeNanos = state.getLastRefillTimeNanos();
+        } else {
+            this.state = state;
+        }
+    }
+
+    private GridBucketState(BucketConfiguration configuration, BucketState state, long theoreticalArrivalTimeNanos, long currentTimeNanos) {
         this.configuration = configuration;
         this.state = state;
+        this.theoreticalArrivalTimeNanos = theoreticalArrivalTimeNanos;
+        this.currentTimeNanos = currentTimeNanos;
     }
 
     public GridBucketState deepCopy() {
-        return new GridBucketState(configuration, state.copy());
+        BucketState stateCopy = state == null ? null : state.copy();
+        return new GridBucketState(configuration, stateCopy, theoreticalArrivalTimeNanos, currentTimeNanos);
     }
 
     public void refillAllBandwidth(long currentTimeNanos) {
+        if (state == null) {
+            this.currentTimeNanos = currentTimeNanos;
+            return;
+        }
         state.refillAllBandwidth(configuration.getBandwidths(), currentTimeNanos);
     }
 
     public long getAvailableTokens() {
+        if (state == null) {
+            Bandwidth bandwidth = getBandwidth();
+            return GcraState.getAvailableTokens(theoreticalArrivalTimeNanos, bandwidth.getCapacity(),
+                    GcraState.getEmissionIntervalNanos(bandwidth), currentTimeNanos);
+        }
         return state.getAvailableTokens(configuration.getBandwidths());
     }
 
     public void consume(long tokensToConsume) {
+        if (state == null) {
+            theoreticalArrivalTimeNanos = GcraState.consume(theoreticalArrivalTimeNanos, tokensToConsume,
+                    GcraState.getEmissionIntervalNanos(getBandwidth()), currentTimeNanos);
+            return;
+        }
         state.consume(configuration.getBandwidths(), tokensToConsume);
     }
 
     public long delayNanosAfterWillBePossibleToConsume(long tokensToConsume) {
+        if (state == null) {
+            Bandwidth bandwidth = getBandwidth();
+            return GcraState.delayNanosAfterWillBePossibleToConsume(theoreticalArrivalTimeNanos, tokensToConsume,
+                    bandwidth.getCapacity(), GcraState.getEmissionIntervalNanos(bandwidth), currentTimeNanos);
+        }
         return state.delayNanosAfterWillBePossibleToConsume(configuration.getBandwidths(), tokensToConsume);
     }
 
     public void addTokens(long tokensToAdd) {
+        if (state == null) {
+            theoreticalArrivalTimeNanos = GcraState.addTokens(theoreticalArrivalTimeNanos, tokensToAdd,
+                    GcraState.getEmissionIntervalNanos(getBandwidth()), currentTimeNanos);
+            return;
+        }
         state.addTokens(configuration.getBandwidths(), tokensToAdd);
     }
 
+    /**
+     * Returns copy of state.
+     *
+     * @return copy of state
+     *
+     * @throws UnsupportedOperationException if state is stored in terms of {@link GcraState},
+     * because token count of such state depends on current time, use {@link #copyBucketState(long)} instead
+     *
+     * @deprecated use {@link #copyBucketState(long)}
+     */
+    @Deprecated
     public BucketState copyBucketState() {
+        if (state == null) {
+            throw BucketExceptions.gcraStateRequiresCurrentTime();
+        }
+        return state.copy();
+    }
+
+    /**
+     * Returns copy of state in {@link BucketState} representation.
+     *
+     * @param currentTimeNanos current time, it is used only when state is stored in terms of {@link GcraState},
+     *                         in this case the returned state is refilled at this time
+     *
+     * @return copy of state
+     */
+    public BucketState copyBucketState(long currentTimeNanos) {
+        if (state == null) {
+            Bandwidth bandwidth = getBandwidth();
+            return GcraState.toBucketState(theoreticalArrivalTimeNanos, bandwidth.getCapacity(),
+                    GcraState.getEmissionIntervalNanos(bandwidth), bandwidth.getRefill().getTokens(), currentTimeNanos);
+        }
         return state.copy();
     }
 
@@ -66,6 +149,14 @@ public class GridBucketState implements Serializable {
         if (!configuration.isCompatible(newConfiguration)) {
             return configuration;
         }
+        if (state == null) {
+            Bandwidth previousBandwidth = getBandwidth();
+            Bandwidth newBandwidth = newConfiguration.getBandwidths()[0];
+            long availableTokens = GcraState.getAvailableTokens(theoreticalArrivalTimeNanos, previousBandwidth.getCapacity(),
+                    GcraState.getEmissionIntervalNanos(previousBandwidth), currentTimeNanos);
+            theoreticalArrivalTimeNanos = GcraState.fromAvailableTokens(availableTokens, newBandwidth.getCapacity(),
+                    GcraState.getEmissionIntervalNanos(newBandwidth), currentTimeNanos);
+        }
         configuration = newConfiguration;
         return null;
     }
@@ -74,8 +165,41 @@ public class GridBucketState implements Serializable {
         return configuration;
     }
 
+    /**
+     * Returns the state.
+     *
+     * @return the state
+     *
+     * @throws UnsupportedOperationException if state is stored in terms of {@link GcraState},
+     * because token count of such state depends on current time, use {@link #getState(long)} instead
+     *
+     * @deprecated use {@link #getState(long)}
+     */
+    @Deprecated
     public BucketState getState() {
+        if (state == null) {
+            throw BucketExceptions.gcraStateRequiresCurrentTime();
+        }
         return state;
     }
 
+    /**
+     * Returns the state in {@link BucketState} representation.
+     *
+     * @param currentTimeNanos current time, it is used only when state is stored in terms of {@link GcraState},
+     *                         in this case the returned state is the copy which is refilled at this time
+     *
+     * @return the state
+     */
+    public BucketState getState(long currentTimeNanos) {
+        if (state == null) {
+            return copyBucketState(currentTimeNanos);
+        }
+        return state;
+    }
+
+    private Bandwidth getBandwidth() {
+        return configuration.getBandwidths()[0];
+    }
+
 }
@@ -25,4 +25,15 @@ public interface GridCommand<T extends Serializable> extends Serializable {
 
     boolean isBucketStateModified();
 
+    /**
+     * Returns true when command never modifies the state of bucket, independently of the state.
+     * In contrast to {@link #isBucketStateModified()} this method is evaluated before execution,
+     * so grid proxy is able to choose the cheaper read path for such commands, and the command can be safely sent several times.
+     *
+     * @return true if command never modifies the state of bucket
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
+
 }
@@ -20,6 +20,8 @@ package io.github.bucket4j.grid;
 import io.github.bucket4j.BucketConfiguration;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -39,4 +41,40 @@ public interface GridProxy<K extends Serializable> {
 
     boolean isAsyncModeSupported();
 
+    /**
+     * Executes the commands against several buckets.
+     * The default implementation executes commands one by one,
+     * implementations override it in order to send all commands to the grid in single round trip.
+     *
+     * @param commands the commands mapped by keys of buckets
+     * @param <T> type of command result
+     *
+     * @return the results of commands mapped by keys of buckets
+     */
+    default <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        Map<K, CommandResult<T>> results = new LinkedHashMap<>();
+        commands.forEach((key, command) -> results.put(key, execute(key, command)));
+        return results;
+    }
+
+    /**
+     * Asynchronous version of {@link #executeBatch(Map)}.
+     * The default implementation executes commands in parallel and combines the results into single future.
+     *
+     * @param commands the commands mapped by keys of buckets
+     * @param <T> type of command result
+     *
+     * @return the future of results of commands mapped by keys of buckets
+     */
+    default <T extends Serializable> CompletableFuture<Map<K, CommandResult<T>>> executeBatchAsync(Map<K, GridCommand<T>> commands) {
+        Map<K, CompletableFuture<CommandResult<T>>> futures = new LinkedHashMap<>();
+        commands.forEach((key, command) -> futures.put(key, executeAsync(key, command)));
+        CompletableFuture<?>[] futuresArray = futures.values().toArray(new CompletableFuture<?>[0]);
+        return CompletableFuture.allOf(futuresArray).thenApply(nothing -> {
+            Map<K, CommandResult<T>> results = new LinkedHashMap<>();
+            futures.forEach((key, future) -> results.put(key, future.join()));
+            return results;
+        });
+    }
+
 }
@@ -0,0 +1,48 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+/**
+ * Exception which is used to complete the future of asynchronous operation rejected by {@link BoundedAsyncGridProxy}.
+ */
+public class InFlightLimitExceededException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxInFlightOperations;
+    private final int maxQueueSize;
+
+    public InFlightLimitExceededException(int maxInFlightOperations, int maxQueueSize) {
+        super(createErrorMessage(maxInFlightOperations, maxQueueSize));
+        this.maxInFlightOperations = maxInFlightOperations;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    private static String createErrorMessage(int maxInFlightOperations, int maxQueueSize) {
+        return "Limit of " + maxInFlightOperations + " in-flight operations is exceeded and queue of " + maxQueueSize + " operations is full";
+    }
+
+    public int getMaxInFlightOperations() {
+        return maxInFlightOperations;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+}
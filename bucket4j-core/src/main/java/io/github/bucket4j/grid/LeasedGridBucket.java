@@ -0,0 +1,316 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wrapper around bucket stored in the grid which serves consumption of hot keys from the lease of tokens pre-fetched by current JVM.
+ *
+ * <p>
+ * The lease is acquired from the grid via single {@link Bucket#tryConsumeAsMuchAsPossible(long)},
+ * so for {@link GridBucket} it costs one round trip with {@link ConsumeAsMuchAsPossibleCommand}.
+ * Then {@link #tryConsume(long)} is served from the local lock-free counter which is shared by all threads of current JVM,
+ * at most one thread communicates with the grid at the moment in order to renew the lease.
+ * The size of lease adapts to demand observed for the key and changes between {@code minLease} and {@code maxLease}:
+ * <ul>
+ *     <li>lease is doubled when it was exhausted in less than half of lease duration;</li>
+ *     <li>lease is halved when it expires with unused tokens or when the grid is not able to provide the whole lease.</li>
+ * </ul>
+ *
+ * <p>
+ * Unused tokens are returned to the grid via {@link Bucket#addTokens(long)}, that is {@link AddTokensCommand} for {@link GridBucket}, in following cases:
+ * <ul>
+ *     <li>the lease is expired, the expiration is checked on each {@link #tryConsume(long)};</li>
+ *     <li>the grid can not satisfy the request, so leased tokens are returned instead of keeping them idle;</li>
+ *     <li>{@link #releaseLease()} or any method which requires exact state of bucket is called.</li>
+ * </ul>
+ *
+ * <p>
+ * Bounds of inaccuracy in comparison with direct usage of bucket stored in the grid:
+ * <ul>
+ *     <li>The tokens in lease are already consumed in the grid, so total consumption across the cluster never exceeds the limits,
+ *     but the moment of real usage can be shifted up to {@code maxLeaseDuration} after the moment of acquisition.</li>
+ *     <li>The tokens held by lease are not available for other nodes, the count of such tokens is bounded by
+ *     <tt>maxLease + tokensToConsume - 1</tt> per node, so the total under-admission for the cluster is bounded by <tt>nodes * (maxLease + tokensToConsume - 1)</tt>.
+ *     The lease of idle key is not expired until the next call, use {@link #releaseLease()} to return tokens of idle keys.</li>
+ *     <li>The tokens returned to the grid can not exceed the capacity of bucket, so the tokens which were refilled while lease was held can be lost.</li>
+ *     <li>{@link #getAvailableTokens()} and {@link #createSnapshot()} do not take into account the tokens held by lease.</li>
+ * </ul>
+ *
+ * <p>
+ * The lease is held by instance of this class, so single instance per key should be shared by all threads of JVM,
+ * in contrast to proxies returned by {@link ProxyManager} it is not cheap to create new instance for each request.
+ */
+public class LeasedGridBucket implements Bucket {
+
+    private final Bucket gridBucket;
+    private final TimeMeter timeMeter;
+    private final long minLease;
+    private final long maxLease;
+    private final long maxLeaseDurationNanos;
+
+    private final AtomicLong leasedTokens = new AtomicLong();
+    private final ReentrantLock renewalLock = new ReentrantLock();
+    private volatile long leaseAcquiredTimeNanos = Long.MIN_VALUE;
+    // guarded by renewalLock
+    private long leaseSize;
+
+    public LeasedGridBucket(Bucket gridBucket, long maxLease, Duration maxLeaseDuration) {
+        this(gridBucket, 1, maxLease, maxLeaseDuration, TimeMeter.SYSTEM_MILLISECONDS);
+    }
+
+    public LeasedGridBucket(Bucket gridBucket, long minLease, long maxLease, Duration maxLeaseDuration, TimeMeter timeMeter) {
+        if (gridBucket == null) {
+            throw BucketExceptions.nullBucket();
+        }
+        if (minLease <= 0) {
+            throw BucketExceptions.nonPositiveLeaseBatch(minLease);
+        }
+        if (minLease > maxLease) {
+            throw BucketExceptions.wrongLeaseBatchRange(minLease, maxLease);
+        }
+        if (maxLeaseDuration == null || maxLeaseDuration.toNanos() <= 0) {
+            throw BucketExceptions.nonPositiveLeaseDuration(maxLeaseDuration == null ? 0 : maxLeaseDuration.toNanos());
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        this.gridBucket = gridBucket;
+        this.timeMeter = timeMeter;
+        this.minLease = minLease;
+        this.maxLease = maxLease;
+        this.maxLeaseDurationNanos = maxLeaseDuration.toNanos();
+        this.leaseSize = minLease;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        if (isLeaseExpired(timeMeter.currentTimeNanos())) {
+            expireLease();
+        }
+        if (tryConsumeFromLease(numTokens)) {
+            return true;
+        }
+        return renewLeaseAndConsume(numTokens);
+    }
+
+    /**
+     * Returns unused tokens of lease back to the grid.
+     */
+    public void releaseLease() {
+        renewalLock.lock();
+        try {
+            release();
+        } finally {
+            renewalLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the count of tokens which currently leased by this JVM.
+     *
+     * @return the count of tokens which currently leased by this JVM
+     */
+    public long getLeasedTokens() {
+        return leasedTokens.get();
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) throws InterruptedException {
+        if (tryConsumeFromValidLease(numTokens)) {
+            return true;
+        }
+        releaseLease();
+        return gridBucket.tryConsume(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public boolean tryConsumeUninterruptibly(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) {
+        if (tryConsumeFromValidLease(numTokens)) {
+            return true;
+        }
+        releaseLease();
+        return gridBucket.tryConsumeUninterruptibly(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+        releaseLease();
+        return gridBucket.tryConsumeAndReturnRemaining(numTokens);
+    }
+
+    @Override
+    public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        releaseLease();
+        return gridBucket.tryConsumeBatch(costs);
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible() {
+        releaseLease();
+        return gridBucket.tryConsumeAsMuchAsPossible();
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(long limit) {
+        releaseLease();
+        return gridBucket.tryConsumeAsMuchAsPossible(limit);
+    }
+
+    @Override
+    public void addTokens(long tokensToAdd) {
+        gridBucket.addTokens(tokensToAdd);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        return gridBucket.getAvailableTokens();
+    }
+
+    @Override
+    public void replaceConfiguration(BucketConfiguration newConfiguration) {
+        releaseLease();
+        gridBucket.replaceConfiguration(newConfiguration);
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        return gridBucket.createSnapshot();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return gridBucket.isAsyncModeSupported();
+    }
+
+    /**
+     * Returns asynchronous view of bucket stored in the grid, asynchronous operations do not use the lease.
+     *
+     * @return asynchronous view of bucket stored in the grid
+     */
+    @Override
+    public AsyncBucket asAsync() {
+        return gridBucket.asAsync();
+    }
+
+    private boolean tryConsumeFromLease(long numTokens) {
+        while (true) {
+            long tokens = leasedTokens.get();
+            if (tokens < numTokens) {
+                return false;
+            }
+            if (leasedTokens.compareAndSet(tokens, tokens - numTokens)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean tryConsumeFromValidLease(long numTokens) {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        return !isLeaseExpired(timeMeter.currentTimeNanos()) && tryConsumeFromLease(numTokens);
+    }
+
+    private boolean isLeaseExpired(long currentTimeNanos) {
+        long acquiredTimeNanos = leaseAcquiredTimeNanos;
+        return acquiredTimeNanos != Long.MIN_VALUE && currentTimeNanos - acquiredTimeNanos > maxLeaseDurationNanos;
+    }
+
+    private void expireLease() {
+        if (!renewalLock.tryLock()) {
+            // other thread is communicating with the grid right now, it will handle the expiration
+            return;
+        }
+        try {
+            if (isLeaseExpired(timeMeter.currentTimeNanos())) {
+                if (leasedTokens.get() > 0) {
+                    leaseSize = Math.max(minLease, leaseSize / 2);
+                }
+                release();
+            }
+        } finally {
+            renewalLock.unlock();
+        }
+    }
+
+    private boolean renewLeaseAndConsume(long numTokens) {
+        renewalLock.lock();
+        try {
+            // other thread could renew the lease while current thread was waiting for the lock
+            if (tryConsumeFromLease(numTokens)) {
+                return true;
+            }
+
+            long currentTimeNanos = timeMeter.currentTimeNanos();
+            long acquiredTimeNanos = leaseAcquiredTimeNanos;
+            if (acquiredTimeNanos != Long.MIN_VALUE && currentTimeNanos - acquiredTimeNanos < maxLeaseDurationNanos / 2) {
+                // previous lease was exhausted too quickly
+                leaseSize = leaseSize <= maxLease / 2 ? leaseSize * 2 : maxLease;
+            }
+            long deficit = numTokens - leasedTokens.get();
+            long tokensToLease = Math.max(deficit, leaseSize);
+            long leased = gridBucket.tryConsumeAsMuchAsPossible(tokensToLease);
+            if (leased < tokensToLease) {
+                // bucket is close to be empty, so there is no sense to hold many tokens in the lease
+                leaseSize = Math.max(minLease, leaseSize / 2);
+            }
+            if (leased > 0 && leasedTokens.getAndAdd(leased) == 0) {
+                // when lease still holds the tokens the original time is kept, so carried-over tokens do not outlive the lease duration
+                leaseAcquiredTimeNanos = currentTimeNanos;
+            }
+
+            if (tryConsumeFromLease(numTokens)) {
+                return true;
+            }
+            // request can not be satisfied, so return leased tokens back to make them available for other nodes
+            release();
+            return false;
+        } finally {
+            renewalLock.unlock();
+        }
+    }
+
+    // should be called under renewalLock
+    private void release() {
+        long unusedTokens = leasedTokens.getAndSet(0);
+        leaseAcquiredTimeNanos = Long.MIN_VALUE;
+        if (unusedTokens > 0) {
+            gridBucket.addTokens(unusedTokens);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LeasedGridBucket{" +
+                "gridBucket=" + gridBucket +
+                ", minLease=" + minLease +
+                ", maxLease=" + maxLease +
+                ", maxLeaseDurationNanos=" + maxLeaseDurationNanos +
+                '}';
+    }
+
+}
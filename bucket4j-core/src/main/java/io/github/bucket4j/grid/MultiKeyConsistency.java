@@ -0,0 +1,44 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+/**
+ * Defines how results of consumption from several buckets inside single multi-key request relate to each other,
+ * see {@link ProxyManager#tryConsume(java.util.Map, java.util.function.Function, MultiKeyConsistency)}.
+ */
+public enum MultiKeyConsistency {
+
+    /**
+     * Each bucket is checked independently, tokens are consumed from each bucket which has enough tokens
+     * regardless of results for other keys.
+     */
+    BEST_EFFORT,
+
+    /**
+     * Tokens are consumed either from all buckets or from none of them.
+     *
+     * <p>
+     * Grids do not provide transactions which span the entries located in different partitions,
+     * so this mode is implemented via compensation: when at least one bucket rejects the request,
+     * the tokens are returned back to buckets which accepted it by second round trip.
+     * Concurrent requests can observe the tokens consumed during short window between two round trips,
+     * and tokens returned back can not exceed the capacity of bucket.
+     */
+    ALL_OR_NOTHING
+
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketExceptions;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Nothing;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Consumes tokens from several buckets stored in the grid via {@link GridProxy#executeBatch(Map)},
+ * so the check of all limits applied to single request costs one network round trip.
+ * The buckets which are absent in the grid are lazily created via additional round trip per each missed bucket.
+ */
+public final class MultiKeyConsumption {
+
+    public static <K extends Serializable> Map<K, ConsumptionProbe> tryConsume(GridProxy<K> gridProxy, Map<K, Long> tokensToConsume,
+                                                                              Function<K, BucketConfiguration> configurationLazySupplier,
+                                                                              MultiKeyConsistency consistency) {
+        checkArguments(tokensToConsume, configurationLazySupplier, consistency);
+
+        Map<K, CommandResult<ConsumptionProbe>> results = gridProxy.executeBatch(createConsumeCommands(tokensToConsume));
+        Map<K, ConsumptionProbe> probes = new LinkedHashMap<>();
+        results.forEach((key, result) -> {
+            if (result.isBucketNotFound()) {
+                BucketConfiguration configuration = getConfiguration(key, configurationLazySupplier);
+                GridCommand<ConsumptionProbe> command = new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume.get(key));
+                probes.put(key, gridProxy.createInitialStateAndExecute(key, configuration, command));
+            } else {
+                probes.put(key, result.getData());
+            }
+        });
+
+        if (consistency == MultiKeyConsistency.ALL_OR_NOTHING) {
+            Map<K, GridCommand<Nothing>> refunds = rejectAllIfAnyRejected(probes, tokensToConsume);
+            if (!refunds.isEmpty()) {
+                gridProxy.executeBatch(refunds);
+            }
+        }
+        return probes;
+    }
+
+    public static <K extends Serializable> CompletableFuture<Map<K, ConsumptionProbe>> tryConsumeAsync(GridProxy<K> gridProxy, Map<K, Long> tokensToConsume,
+                                                                                                      Function<K, BucketConfiguration> configurationLazySupplier,
+                                                                                                      MultiKeyConsistency consistency) {
+        checkArguments(tokensToConsume, configurationLazySupplier, consistency);
+
+        CompletableFuture<Map<K, CommandResult<ConsumptionProbe>>> resultsFuture = gridProxy.executeBatchAsync(createConsumeCommands(tokensToConsume));
+        CompletableFuture<Map<K, ConsumptionProbe>> probesFuture = resultsFuture.thenCompose(results -> {
+            Map<K, CompletableFuture<ConsumptionProbe>> futures = new LinkedHashMap<>();
+            results.forEach((key, result) -> {
+                if (result.isBucketNotFound()) {
+                    BucketConfiguration configuration = getConfiguration(key, configurationLazySupplier);
+                    GridCommand<ConsumptionProbe> command = new TryConsumeAndReturnRemainingTokensCommand(tokensToConsume.get(key));
+                    futures.put(key, gridProxy.createInitialStateAndExecuteAsync(key, configuration, command));
+                } else {
+                    futures.put(key, CompletableFuture.completedFuture(result.getData()));
+                }
+            });
+            return allOf(futures);
+        });
+
+        if (consistency == MultiKeyConsistency.BEST_EFFORT) {
+            return probesFuture;
+        }
+        return probesFuture.thenCompose(probes -> {
+            Map<K, GridCommand<Nothing>> refunds = rejectAllIfAnyRejected(probes, tokensToConsume);
+            if (refunds.isEmpty()) {
+                return CompletableFuture.completedFuture(probes);
+            }
+            return gridProxy.executeBatchAsync(refunds).thenApply(refundResults -> probes);
+        });
+    }
+
+    static <K> void checkArguments(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                   MultiKeyConsistency consistency) {
+        if (tokensToConsume == null) {
+            throw BucketExceptions.nullBatch();
+        }
+        if (tokensToConsume.isEmpty()) {
+            throw BucketExceptions.emptyBatch();
+        }
+        for (Long tokens : tokensToConsume.values()) {
+            if (tokens == null || tokens <= 0) {
+                throw BucketExceptions.nonPositiveTokensToConsume(tokens == null ? 0 : tokens);
+            }
+        }
+        if (configurationLazySupplier == null) {
+            throw BucketExceptions.nullConfigurationSupplier();
+        }
+        if (consistency == null) {
+            throw BucketExceptions.nullMultiKeyConsistency();
+        }
+    }
+
+    /**
+     * Replaces the probes of accepted requests by rejected probes when at least one request was rejected.
+     *
+     * @return the commands which return consumed tokens back to buckets, or empty map if nothing should be returned
+     */
+    static <K> Map<K, GridCommand<Nothing>> rejectAllIfAnyRejected(Map<K, ConsumptionProbe> probes, Map<K, Long> tokensToConsume) {
+        Map<K, GridCommand<Nothing>> refunds = new LinkedHashMap<>();
+        if (probes.values().stream().allMatch(ConsumptionProbe::isConsumed)) {
+            return refunds;
+        }
+        for (Map.Entry<K, ConsumptionProbe> entry : probes.entrySet()) {
+            ConsumptionProbe probe = entry.getValue();
+            if (probe.isConsumed()) {
+                long tokens = tokensToConsume.get(entry.getKey());
+                refunds.put(entry.getKey(), new AddTokensCommand(tokens));
+                entry.setValue(ConsumptionProbe.rejected(probe.getRemainingTokens() + tokens, 0));
+            }
+        }
+        return refunds;
+    }
+
+    static <K> CompletableFuture<Map<K, ConsumptionProbe>> allOf(Map<K, CompletableFuture<ConsumptionProbe>> futures) {
+        CompletableFuture<?>[] futuresArray = futures.values().toArray(new CompletableFuture<?>[0]);
+        return CompletableFuture.allOf(futuresArray).thenApply(nothing -> {
+            Map<K, ConsumptionProbe> probes = new LinkedHashMap<>();
+            futures.forEach((key, future) -> probes.put(key, future.join()));
+            return probes;
+        });
+    }
+
+    static <K> BucketConfiguration getConfiguration(K key, Function<K, BucketConfiguration> configurationLazySupplier) {
+        BucketConfiguration configuration = configurationLazySupplier.apply(key);
+        if (configuration == null) {
+            throw BucketExceptions.nullConfiguration();
+        }
+        return configuration;
+    }
+
+    private static <K> Map<K, GridCommand<ConsumptionProbe>> createConsumeCommands(Map<K, Long> tokensToConsume) {
+        Map<K, GridCommand<ConsumptionProbe>> commands = new LinkedHashMap<>();
+        tokensToConsume.forEach((key, tokens) -> commands.put(key, new TryConsumeAndReturnRemainingTokensCommand(tokens)));
+        return commands;
+    }
+
+    private MultiKeyConsumption() {
+        // private constructor for utility class
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+/**
+ * Specifies the reaction on asynchronous operation which exceeds the limit of in-flight operations, see {@link BoundedAsyncGridProxy}.
+ */
+public enum OverflowStrategy {
+
+    /**
+     * Put the operation to the bounded queue, it will be sent when one of in-flight operations completes.
+     * The operation is rejected when the queue is full.
+     */
+    QUEUE,
+
+    /**
+     * Reject the operation immediately.
+     */
+    REJECT,
+
+    /**
+     * Put the operation to the bounded queue as {@link #QUEUE} does, but merge the commands for same key which wait in the queue
+     * into single {@link CompositeCommand} via {@link CoalescingGridProxy}, so the queue holds at most one batch per key.
+     */
+    COALESCE
+
+}
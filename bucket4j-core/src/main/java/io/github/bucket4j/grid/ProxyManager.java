@@ -19,9 +19,15 @@ package io.github.bucket4j.grid;
 
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Nothing;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -67,4 +73,83 @@ public interface ProxyManager<K extends Serializable> {
      */
     Optional<BucketConfiguration> getProxyConfiguration(K key);
 
+    /**
+     * Returns the manager which provides proxies that initialize absent buckets in single round trip,
+     * see {@link GridBucket#withSingleRoundTripInitialization()} for details.
+     *
+     * <p>
+     * The in-flight initialization and the memoized configuration are shared by all proxies of the same key which are provided by returned manager,
+     * so it is not necessary to cache the proxies in order to benefit from this mode.
+     * Each call of this method creates the manager with its own state of initialization, so it makes sense to call it once and reuse the result.
+     *
+     * @return the manager which provides proxies that initialize absent buckets in single round trip
+     *
+     * @throws UnsupportedOperationException if this manager does not support single round trip initialization
+     */
+    default ProxyManager<K> withSingleRoundTripInitialization() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Tries to consume tokens from several buckets at once, for example when single request should be checked against limits per IP, per API key and per route.
+     *
+     * <p>
+     * The default implementation performs the request for each key one by one through proxies returned by {@link #getProxy(Serializable, Supplier)},
+     * the grid specific implementations override it in order to check all buckets in single network round trip.
+     *
+     * @param tokensToConsume the count of tokens to consume mapped by keys of buckets
+     * @param configurationLazySupplier provides configuration for the key, it is called if and only if bucket with the key is absent in storage
+     * @param consistency defines whether tokens are consumed from buckets independently or from all buckets or from none of them
+     *
+     * @return the results of consumption mapped by keys of buckets
+     */
+    default Map<K, ConsumptionProbe> tryConsume(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                                MultiKeyConsistency consistency) {
+        MultiKeyConsumption.checkArguments(tokensToConsume, configurationLazySupplier, consistency);
+        Map<K, ConsumptionProbe> probes = new LinkedHashMap<>();
+        tokensToConsume.forEach((key, tokens) -> {
+            Bucket bucket = getProxy(key, () -> MultiKeyConsumption.getConfiguration(key, configurationLazySupplier));
+            probes.put(key, bucket.tryConsumeAndReturnRemaining(tokens));
+        });
+        if (consistency == MultiKeyConsistency.ALL_OR_NOTHING) {
+            Map<K, GridCommand<Nothing>> refunds = MultiKeyConsumption.rejectAllIfAnyRejected(probes, tokensToConsume);
+            refunds.keySet().forEach(key -> getProxy(key, () -> MultiKeyConsumption.getConfiguration(key, configurationLazySupplier))
+                    .addTokens(tokensToConsume.get(key)));
+        }
+        return probes;
+    }
+
+    /**
+     * Asynchronous version of {@link #tryConsume(Map, Function, MultiKeyConsistency)}, the results for all keys are returned in single future.
+     *
+     * @param tokensToConsume the count of tokens to consume mapped by keys of buckets
+     * @param configurationLazySupplier provides configuration for the key, it is called if and only if bucket with the key is absent in storage
+     * @param consistency defines whether tokens are consumed from buckets independently or from all buckets or from none of them
+     *
+     * @return the future of results of consumption mapped by keys of buckets
+     *
+     * @throws UnsupportedOperationException if buckets do not support asynchronous mode
+     */
+    default CompletableFuture<Map<K, ConsumptionProbe>> tryConsumeAsync(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                                                        MultiKeyConsistency consistency) {
+        MultiKeyConsumption.checkArguments(tokensToConsume, configurationLazySupplier, consistency);
+        Map<K, CompletableFuture<ConsumptionProbe>> futures = new LinkedHashMap<>();
+        tokensToConsume.forEach((key, tokens) -> {
+            Bucket bucket = getProxy(key, () -> MultiKeyConsumption.getConfiguration(key, configurationLazySupplier));
+            futures.put(key, bucket.asAsync().tryConsumeAndReturnRemaining(tokens));
+        });
+        CompletableFuture<Map<K, ConsumptionProbe>> probesFuture = MultiKeyConsumption.allOf(futures);
+        if (consistency == MultiKeyConsistency.BEST_EFFORT) {
+            return probesFuture;
+        }
+        return probesFuture.thenCompose(probes -> {
+            Map<K, GridCommand<Nothing>> refunds = MultiKeyConsumption.rejectAllIfAnyRejected(probes, tokensToConsume);
+            CompletableFuture<?>[] refundFutures = refunds.keySet().stream()
+                    .map(key -> getProxy(key, () -> MultiKeyConsumption.getConfiguration(key, configurationLazySupplier))
+                            .asAsync().addTokens(tokensToConsume.get(key)))
+                    .toArray(CompletableFuture<?>[]::new);
+            return CompletableFuture.allOf(refundFutures).thenApply(nothing -> probes);
+        });
+    }
+
 }
@@ -0,0 +1,137 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.TimeMeter;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the last rejection reported by the grid for single key,
+ * in order to reject requests which are known to be rejected without network round trip.
+ *
+ * <p>
+ * The rejection of {@code n} tokens with {@code nanosToWaitForRefill} means that any request for at least {@code n} tokens
+ * will be rejected until {@code nanosToWaitForRefill} is elapsed.
+ * For smaller requests the lower bound of waiting is derived from the configuration,
+ * because the tokens can not be refilled faster than fastest bandwidth refills them.
+ *
+ * <p>
+ * Each invalidation installs new entry, so the rejection observed by command which was sent before invalidation is never cached.
+ */
+final class RejectionCache {
+
+    private final TimeMeter timeMeter;
+    private final Supplier<BucketConfiguration> configurationSupplier;
+    private final AtomicReference<Rejection> lastRejection = new AtomicReference<>(new Rejection());
+    private volatile Bandwidth[] bandwidths;
+
+    RejectionCache(TimeMeter timeMeter, Supplier<BucketConfiguration> configurationSupplier) {
+        this.timeMeter = timeMeter;
+        this.configurationSupplier = configurationSupplier;
+    }
+
+    long currentTimeNanos() {
+        return timeMeter.currentTimeNanos();
+    }
+
+    Object snapshot() {
+        return lastRejection.get();
+    }
+
+    /**
+     * @return the probe which describes local rejection, or null if request should be sent to the grid
+     */
+    ConsumptionProbe checkRejected(long tokensToConsume) {
+        Rejection rejection = lastRejection.get();
+        if (rejection.bandwidths == null) {
+            return null;
+        }
+        long nanosToWait = rejection.nanosToWaitForRefill(tokensToConsume) - (timeMeter.currentTimeNanos() - rejection.timeNanos);
+        if (nanosToWait <= 0) {
+            return null;
+        }
+        return ConsumptionProbe.rejected(rejection.remainingTokens, nanosToWait);
+    }
+
+    void onProbe(Object snapshot, long timeNanos, long tokensToConsume, ConsumptionProbe probe) {
+        if (probe.isConsumed() || probe.getNanosToWaitForRefill() <= 0) {
+            return;
+        }
+        Bandwidth[] bandwidths = this.bandwidths;
+        if (bandwidths == null) {
+            bandwidths = configurationSupplier.get().getBandwidths();
+            this.bandwidths = bandwidths;
+        }
+        Rejection rejection = new Rejection(tokensToConsume, probe.getRemainingTokens(), probe.getNanosToWaitForRefill(), timeNanos, bandwidths);
+        lastRejection.compareAndSet((Rejection) snapshot, rejection);
+    }
+
+    void invalidate() {
+        lastRejection.set(new Rejection());
+    }
+
+    void invalidate(BucketConfiguration newConfiguration) {
+        bandwidths = newConfiguration.getBandwidths();
+        invalidate();
+    }
+
+    private static final class Rejection {
+
+        private final long rejectedTokens;
+        private final long remainingTokens;
+        private final long nanosToWaitForRefill;
+        private final long timeNanos;
+        private final Bandwidth[] bandwidths;
+
+        private Rejection() {
+            this(0, 0, 0, 0, null);
+        }
+
+        private Rejection(long rejectedTokens, long remainingTokens, long nanosToWaitForRefill, long timeNanos, Bandwidth[] bandwidths) {
+            this.rejectedTokens = rejectedTokens;
+            this.remainingTokens = remainingTokens;
+            this.nanosToWaitForRefill = nanosToWaitForRefill;
+            this.timeNanos = timeNanos;
+            this.bandwidths = bandwidths;
+        }
+
+        private long nanosToWaitForRefill(long tokensToConsume) {
+            if (tokensToConsume >= rejectedTokens) {
+                return nanosToWaitForRefill;
+            }
+            // one token is subtracted because fractional part of refill which accumulated by the grid is unknown
+            long deficit = tokensToConsume - remainingTokens - 1;
+            if (deficit <= 0) {
+                return 0;
+            }
+            double minNanosToWait = Double.MAX_VALUE;
+            for (Bandwidth bandwidth : bandwidths) {
+                double nanosToRefill = (double) deficit * bandwidth.getRefill().getPeriodNanos() / bandwidth.getRefill().getTokens();
+                minNanosToWait = Math.min(minNanosToWait, nanosToRefill);
+            }
+            return Math.min(nanosToWaitForRefill, (long) minNanosToWait);
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.BucketConfiguration;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the state of single round trip initialization for each key, see {@link GridBucket#withSingleRoundTripInitialization()}.
+ *
+ * <p>
+ * The instance is shared by all proxies which are created by the same {@link ProxyManager},
+ * so the proxies of same key share the in-flight initialization and the memoized configuration,
+ * even if new proxy is requested from {@link ProxyManager} for each request.
+ * The instance holds small record for each key which was accessed through it, records are never removed.
+ *
+ * @param <K> type of key
+ *
+ * @see ProxyManager#withSingleRoundTripInitialization()
+ */
+public final class SingleRoundTripInitializer<K extends Serializable> {
+
+    private final ConcurrentMap<K, KeyInitialization> initializations = new ConcurrentHashMap<>();
+
+    KeyInitialization initializationOf(K key) {
+        KeyInitialization initialization = initializations.get(key);
+        if (initialization != null) {
+            return initialization;
+        }
+        return initializations.computeIfAbsent(key, anyKey -> new KeyInitialization());
+    }
+
+    static final class KeyInitialization {
+
+        final AtomicReference<CompletableFuture<Void>> inFlight = new AtomicReference<>();
+        volatile boolean initialized;
+        volatile BucketConfiguration configuration;
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.BatchConsumptionProbe;
+
+
+public class TryConsumeBatchCommand implements GridCommand<BatchConsumptionProbe> {
+
+    private static final long serialVersionUID = 1L;
+
+    private long[] cumulativeCosts;
+    private boolean bucketStateModified = false;
+
+    public TryConsumeBatchCommand(long[] cumulativeCosts) {
+        this.cumulativeCosts = cumulativeCosts;
+    }
+
+    @Override
+    public BatchConsumptionProbe execute(GridBucketState state, long currentTimeNanos) {
+        state.refillAllBandwidth(currentTimeNanos);
+        long availableToConsume = state.getAvailableTokens();
+        int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, availableToConsume);
+        long tokensToConsume = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+        // consumption of prefix does not change the deficit for cumulative cost of the next request
+        long nanosToWaitForRefill = consumedCount == cumulativeCosts.length ? 0 :
+                state.delayNanosAfterWillBePossibleToConsume(cumulativeCosts[consumedCount]);
+        if (consumedCount > 0) {
+            state.consume(tokensToConsume);
+            bucketStateModified = true;
+        }
+        return new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensToConsume,
+                availableToConsume - tokensToConsume, nanosToWaitForRefill);
+    }
+
+    @Override
+    public boolean isBucketStateModified() {
+        return bucketStateModified;
+    }
+
+}
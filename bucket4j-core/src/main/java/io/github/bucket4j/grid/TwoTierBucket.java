@@ -0,0 +1,255 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.*;
+import io.github.bucket4j.local.LockFreeBucket;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Composite bucket which enforces the local share of global limit in front of bucket stored in the grid.
+ *
+ * <p>
+ * The requests are admitted by local {@link LockFreeBucket} while local share is not exhausted,
+ * and only remaining requests are checked by the grid, so the most of requests do not produce the network traffic.
+ * The local share is rebalanced once per {@code rebalanceInterval}, the rebalance is triggered by first {@link #tryConsume(long)} after interval elapsed
+ * and performed by single thread:
+ * <ol>
+ *     <li>the tokens admitted locally since previous rebalance are consumed from the grid via {@link Bucket#tryConsumeAsMuchAsPossible(long)},
+ *     so the grid stays the bookkeeper of global consumption;</li>
+ *     <li>the available tokens are read from the grid;</li>
+ *     <li>the new share is the demand observed by this node during previous interval,
+ *     limited by {@code maxLocalShare} and by the amount of tokens in the grid above {@code lowWatermark}.</li>
+ * </ol>
+ * The local bucket is recreated on each rebalance with zero tokens and refill rate of share per {@code rebalanceInterval},
+ * so the node admits locally at most {@code share} tokens between rebalances.
+ * When the grid has no more than {@code lowWatermark} tokens, or when the grid rejects the request,
+ * the local share is dropped and each request is checked by the grid until next rebalance.
+ *
+ * <p>
+ * Guarantee on global over-admission: the tokens admitted locally are debited from the grid with delay up to {@code rebalanceInterval},
+ * and the shares of different nodes are granted from the same tokens in the grid.
+ * So, in the worst case, the cluster admits more than global limit by
+ * <tt>max(0, nodes * maxLocalShare - lowWatermark)</tt> tokens per {@code rebalanceInterval}.
+ * Choosing {@code lowWatermark >= nodes * maxLocalShare} means that local shares are granted only when the grid holds enough tokens to back all of them,
+ * in this case the limit is violated only by tokens consumed from the grid directly while shares are in use.
+ *
+ * <p>
+ * Only {@link #tryConsume(long)} uses the local share, other methods delegate to the grid directly.
+ * The share is held by instance of this class, so single instance per key should be shared by all threads of JVM.
+ */
+public class TwoTierBucket implements Bucket {
+
+    private final Bucket gridBucket;
+    private final TimeMeter timeMeter;
+    private final long maxLocalShare;
+    private final long lowWatermark;
+    private final long rebalanceIntervalNanos;
+
+    private final AtomicLong locallyAdmittedTokens = new AtomicLong();
+    private final LongAdder observedDemand = new LongAdder();
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+    private volatile LockFreeBucket localBucket;
+    private volatile long localShare;
+    private volatile long lastRebalanceTimeNanos;
+
+    public TwoTierBucket(Bucket gridBucket, long maxLocalShare, long lowWatermark, Duration rebalanceInterval) {
+        this(gridBucket, maxLocalShare, lowWatermark, rebalanceInterval, TimeMeter.SYSTEM_MILLISECONDS);
+    }
+
+    public TwoTierBucket(Bucket gridBucket, long maxLocalShare, long lowWatermark, Duration rebalanceInterval, TimeMeter timeMeter) {
+        if (gridBucket == null) {
+            throw BucketExceptions.nullBucket();
+        }
+        if (maxLocalShare <= 0) {
+            throw BucketExceptions.nonPositiveLocalShare(maxLocalShare);
+        }
+        if (lowWatermark < 0) {
+            throw BucketExceptions.negativeLowWatermark(lowWatermark);
+        }
+        if (rebalanceInterval == null || rebalanceInterval.toNanos() <= 0) {
+            throw BucketExceptions.nonPositiveRebalanceInterval(rebalanceInterval == null ? 0 : rebalanceInterval.toNanos());
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        this.gridBucket = gridBucket;
+        this.timeMeter = timeMeter;
+        this.maxLocalShare = maxLocalShare;
+        this.lowWatermark = lowWatermark;
+        this.rebalanceIntervalNanos = rebalanceInterval.toNanos();
+        // the demand is unknown, so each request is checked by the grid until first rebalance
+        this.lastRebalanceTimeNanos = timeMeter.currentTimeNanos();
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        if (timeMeter.currentTimeNanos() - lastRebalanceTimeNanos >= rebalanceIntervalNanos) {
+            rebalance();
+        }
+        observedDemand.add(numTokens);
+
+        LockFreeBucket local = localBucket;
+        if (local != null && local.tryConsume(numTokens)) {
+            locallyAdmittedTokens.addAndGet(numTokens);
+            return true;
+        }
+        if (gridBucket.tryConsume(numTokens)) {
+            return true;
+        }
+        // global bucket is exhausted, so local admission should be stopped until next rebalance
+        localBucket = null;
+        localShare = 0;
+        return false;
+    }
+
+    /**
+     * Returns the amount of tokens which this node is allowed to admit locally per rebalance interval.
+     *
+     * @return the current local share
+     */
+    public long getLocalShare() {
+        return localShare;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) throws InterruptedException {
+        return gridBucket.tryConsume(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public boolean tryConsumeUninterruptibly(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) {
+        return gridBucket.tryConsumeUninterruptibly(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+        return gridBucket.tryConsumeAndReturnRemaining(numTokens);
+    }
+
+    @Override
+    public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        return gridBucket.tryConsumeBatch(costs);
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible() {
+        return gridBucket.tryConsumeAsMuchAsPossible();
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(long limit) {
+        return gridBucket.tryConsumeAsMuchAsPossible(limit);
+    }
+
+    @Override
+    public void addTokens(long tokensToAdd) {
+        gridBucket.addTokens(tokensToAdd);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        return gridBucket.getAvailableTokens();
+    }
+
+    @Override
+    public void replaceConfiguration(BucketConfiguration newConfiguration) {
+        gridBucket.replaceConfiguration(newConfiguration);
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        return gridBucket.createSnapshot();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return gridBucket.isAsyncModeSupported();
+    }
+
+    /**
+     * Returns asynchronous view of bucket stored in the grid, asynchronous operations do not use the local share.
+     *
+     * @return asynchronous view of bucket stored in the grid
+     */
+    @Override
+    public AsyncBucket asAsync() {
+        return gridBucket.asAsync();
+    }
+
+    private void rebalance() {
+        if (!rebalanceLock.tryLock()) {
+            // other thread is rebalancing right now
+            return;
+        }
+        try {
+            long currentTimeNanos = timeMeter.currentTimeNanos();
+            long elapsedNanos = currentTimeNanos - lastRebalanceTimeNanos;
+            if (elapsedNanos < rebalanceIntervalNanos) {
+                return;
+            }
+            // the tokens which admitted by old local bucket after this point will be debited by next rebalance
+            localBucket = null;
+            long admittedTokens = locallyAdmittedTokens.getAndSet(0);
+            long demandPerInterval = (long) ((double) observedDemand.sumThenReset() * rebalanceIntervalNanos / elapsedNanos);
+            long availableTokens;
+            try {
+                if (admittedTokens > 0) {
+                    gridBucket.tryConsumeAsMuchAsPossible(admittedTokens);
+                    admittedTokens = 0;
+                }
+                availableTokens = gridBucket.getAvailableTokens();
+            } catch (RuntimeException e) {
+                // tokens which were not debited will be debited by next rebalance
+                locallyAdmittedTokens.addAndGet(admittedTokens);
+                throw e;
+            }
+
+            long share = Math.min(maxLocalShare, Math.min(demandPerInterval, availableTokens - lowWatermark));
+            if (share > 0) {
+                BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                        .addLimit(0, Bandwidth.simple(share, Duration.ofNanos(rebalanceIntervalNanos)))
+                        .buildConfiguration();
+                localBucket = new LockFreeBucket(configuration, timeMeter);
+            }
+            localShare = Math.max(0, share);
+            lastRebalanceTimeNanos = currentTimeNanos;
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TwoTierBucket{" +
+                "gridBucket=" + gridBucket +
+                ", maxLocalShare=" + maxLocalShare +
+                ", lowWatermark=" + lowWatermark +
+                ", rebalanceIntervalNanos=" + rebalanceIntervalNanos +
+                ", localShare=" + localShare +
+                '}';
+    }
+
+}
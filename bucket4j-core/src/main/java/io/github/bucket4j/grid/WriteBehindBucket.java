@@ -0,0 +1,282 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid;
+
+import io.github.bucket4j.*;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wrapper around bucket stored in the grid which meters consumption locally and writes it to the grid in background of requests,
+ * it is intended for billing-style quotas where eventual enforcement is enough.
+ *
+ * <p>
+ * {@link #tryConsume(long)} does not communicate with the grid, the admitted tokens are accumulated in local striped counter,
+ * and admission decision is made against the estimate of remote balance:
+ * the request is admitted when the sum of pending tokens and requested tokens does not exceed the balance observed by last flush.
+ * The pending tokens are flushed to the grid when {@code flushThreshold} is reached or when {@code flushInterval} is elapsed since last flush,
+ * the flush is performed by single thread which triggered it, and it can be requested explicitly via {@link #flush()}.
+ * In order to write the pending tokens of idle key, the flush is also checked by the task which is scheduled to {@code scheduler}
+ * with fixed delay equals to {@code flushInterval}, this task should be cancelled via {@link #close()} when bucket is not needed anymore.
+ * Each flush is single round trip which consumes pending tokens via {@link ConsumeAsMuchAsPossibleCommand}
+ * and reads the current remote balance via {@link GetAvailableTokensCommand} in the same {@link CompositeCommand},
+ * so the grid writes for hot key drop from one per request to one per flush.
+ *
+ * <p>
+ * Bounds of inaccuracy:
+ * <ul>
+ *     <li>The consumption of other nodes becomes visible only after next flush, so the cluster can admit up to
+ *     <tt>nodes * min(flushThreshold, balance)</tt> tokens above the limit per flush interval,
+ *     the tokens which grid can not absorb on flush are over-admission.</li>
+ *     <li>The estimate does not include the tokens refilled since last flush, so under-admission is possible until next flush.</li>
+ *     <li>Concurrent requests check the estimate without synchronization, so the estimate can be exceeded by the tokens requested concurrently.</li>
+ * </ul>
+ * Other methods flush pending tokens and then delegate to the grid, asynchronous operations do not use local metering.
+ * The counters are held by instance of this class, so single instance per key should be shared by all threads of JVM.
+ *
+ * @param <K> type of key
+ */
+public class WriteBehindBucket<K extends Serializable> implements Bucket, AutoCloseable {
+
+    private final GridBucket<K> gridBucket;
+    private final TimeMeter timeMeter;
+    private final long flushIntervalNanos;
+    private final long flushThreshold;
+
+    private final LongAdder pendingTokens = new LongAdder();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long remoteBalance;
+    private volatile long lastFlushTimeNanos;
+    private volatile boolean balanceKnown;
+    private final ScheduledFuture<?> scheduledFlush;
+
+    public WriteBehindBucket(GridBucket<K> gridBucket, Duration flushInterval, long flushThreshold, ScheduledExecutorService scheduler) {
+        this(gridBucket, flushInterval, flushThreshold, TimeMeter.SYSTEM_MILLISECONDS, scheduler);
+    }
+
+    public WriteBehindBucket(GridBucket<K> gridBucket, Duration flushInterval, long flushThreshold, TimeMeter timeMeter, ScheduledExecutorService scheduler) {
+        if (gridBucket == null) {
+            throw BucketExceptions.nullBucket();
+        }
+        if (flushInterval == null || flushInterval.toNanos() <= 0) {
+            throw BucketExceptions.nonPositiveFlushInterval(flushInterval == null ? 0 : flushInterval.toNanos());
+        }
+        if (flushThreshold <= 0) {
+            throw BucketExceptions.nonPositiveFlushThreshold(flushThreshold);
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        if (scheduler == null) {
+            throw BucketExceptions.nullScheduler();
+        }
+        this.gridBucket = gridBucket;
+        this.timeMeter = timeMeter;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.flushThreshold = flushThreshold;
+        this.scheduledFlush = scheduler.scheduleWithFixedDelay(this::flushIfIdle, flushIntervalNanos, flushIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        if (!balanceKnown || timeMeter.currentTimeNanos() - lastFlushTimeNanos >= flushIntervalNanos) {
+            flush(!balanceKnown);
+        }
+
+        long pending = pendingTokens.sum();
+        if (pending + numTokens > remoteBalance) {
+            return false;
+        }
+        pendingTokens.add(numTokens);
+        if (pending + numTokens >= flushThreshold) {
+            flush(false);
+        }
+        return true;
+    }
+
+    /**
+     * Writes pending tokens to the grid and refreshes the estimate of remote balance.
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    /**
+     * Cancels the scheduled flush and writes pending tokens to the grid.
+     */
+    @Override
+    public void close() {
+        scheduledFlush.cancel(false);
+        flush(true);
+    }
+
+    /**
+     * Returns the count of tokens which are admitted locally but not written to the grid yet.
+     *
+     * @return the count of pending tokens
+     */
+    public long getPendingTokens() {
+        return pendingTokens.sum();
+    }
+
+    /**
+     * Returns the estimate of remote balance which was observed by last flush.
+     *
+     * @return the estimate of remote balance
+     */
+    public long getRemoteBalance() {
+        return remoteBalance;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) throws InterruptedException {
+        flush();
+        return gridBucket.tryConsume(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public boolean tryConsumeUninterruptibly(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) {
+        flush();
+        return gridBucket.tryConsumeUninterruptibly(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+        flush();
+        return gridBucket.tryConsumeAndReturnRemaining(numTokens);
+    }
+
+    @Override
+    public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        flush();
+        return gridBucket.tryConsumeBatch(costs);
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible() {
+        flush();
+        return gridBucket.tryConsumeAsMuchAsPossible();
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(long limit) {
+        flush();
+        return gridBucket.tryConsumeAsMuchAsPossible(limit);
+    }
+
+    @Override
+    public void addTokens(long tokensToAdd) {
+        flush();
+        gridBucket.addTokens(tokensToAdd);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        flush();
+        return remoteBalance;
+    }
+
+    @Override
+    public void replaceConfiguration(BucketConfiguration newConfiguration) {
+        flush();
+        gridBucket.replaceConfiguration(newConfiguration);
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        flush();
+        return gridBucket.createSnapshot();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return gridBucket.isAsyncModeSupported();
+    }
+
+    /**
+     * Returns asynchronous view of bucket stored in the grid, asynchronous operations do not use local metering.
+     *
+     * @return asynchronous view of bucket stored in the grid
+     */
+    @Override
+    public AsyncBucket asAsync() {
+        return gridBucket.asAsync();
+    }
+
+    private void flushIfIdle() {
+        if (pendingTokens.sum() == 0 || timeMeter.currentTimeNanos() - lastFlushTimeNanos < flushIntervalNanos) {
+            // nothing to write or the requests have flushed recently
+            return;
+        }
+        try {
+            flush(false);
+        } catch (RuntimeException e) {
+            // the tokens stay pending and will be written by next flush,
+            // the exception should not be propagated because scheduler suppresses next executions of failed task
+        }
+    }
+
+    private void flush(boolean waitForConcurrentFlush) {
+        if (waitForConcurrentFlush) {
+            flushLock.lock();
+        } else if (!flushLock.tryLock()) {
+            // other thread is flushing right now
+            return;
+        }
+        try {
+            long currentTimeNanos = timeMeter.currentTimeNanos();
+            long tokens = pendingTokens.sum();
+            if (tokens > 0) {
+                CompositeCommand command = new CompositeCommand(Arrays.asList(new ConsumeAsMuchAsPossibleCommand(tokens), new GetAvailableTokensCommand()));
+                ArrayList<Serializable> results = gridBucket.execute(command);
+                // the tokens which were admitted concurrently with flush stay pending
+                pendingTokens.add(-tokens);
+                remoteBalance = (Long) results.get(1);
+            } else {
+                remoteBalance = gridBucket.execute(new GetAvailableTokensCommand());
+            }
+            lastFlushTimeNanos = currentTimeNanos;
+            balanceKnown = true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindBucket{" +
+                "gridBucket=" + gridBucket +
+                ", flushIntervalNanos=" + flushIntervalNanos +
+                ", flushThreshold=" + flushThreshold +
+                ", pendingTokens=" + pendingTokens.sum() +
+                ", remoteBalance=" + remoteBalance +
+                '}';
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock-free bucket which state is represented in terms of Generic Cell Rate Algorithm, see {@link GcraState} for details.
+ * The whole mutable state is single {@code long}, so each successful consumption is single CAS without allocation,
+ * and {@link #tryConsume(long)} does not perform any division.
+ *
+ * <p>
+ * This bucket is created by {@link LocalBucketBuilder} for {@link SynchronizationStrategy#LOCK_FREE} strategy
+ * when configuration is built with {@link ConfigurationBuilder#withGcraState()}.
+ */
+public class GcraBucket extends AbstractBucket implements LocalBucket {
+
+    private static final AtomicLongFieldUpdater<GcraBucket> TAT_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(GcraBucket.class, "theoreticalArrivalTimeNanos");
+
+    // the value of TAT which is used as marker that configuration is being replaced right now
+    private static final long REPLACEMENT_IN_PROGRESS = Long.MIN_VALUE;
+
+    private final TimeMeter timeMeter;
+    private volatile Limit limit;
+    private volatile long theoreticalArrivalTimeNanos;
+
+    public GcraBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        if (!GcraState.isCompatible(configuration)) {
+            if (configuration.getBandwidths().length != 1) {
+                throw BucketExceptions.gcraRequiresSingleBandwidth(configuration.getBandwidths().length);
+            }
+            throw BucketExceptions.gcraIncompatibleBandwidth(configuration.getBandwidths()[0]);
+        }
+        this.timeMeter = timeMeter;
+        this.limit = new Limit(configuration);
+        this.theoreticalArrivalTimeNanos = GcraState.createInitialState(configuration, timeMeter.currentTimeNanos())
+                .getTheoreticalArrivalTimeNanos();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    @Override
+    protected boolean tryConsumeImpl(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long previousTat = readTat();
+            Limit limit = this.limit;
+            if (tokensToConsume > limit.capacity) {
+                return false;
+            }
+            long newTat = Math.max(previousTat, currentTimeNanos) + tokensToConsume * limit.emissionIntervalNanos;
+            if (newTat - currentTimeNanos > limit.burstNanos) {
+                return false;
+            }
+            if (TAT_UPDATER.compareAndSet(this, previousTat, newTat)) {
+                return true;
+            }
+        }
+    }
+
+    // single attempt without retry after failed CAS, it is used by StripedBucket in order to detect the contention on cell
+    int tryConsumeWithoutRetry(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long previousTat = readTat();
+        Limit limit = this.limit;
+        if (tokensToConsume > limit.capacity) {
+            return StripedBucket.REJECTED;
+        }
+        long newTat = Math.max(previousTat, currentTimeNanos) + tokensToConsume * limit.emissionIntervalNanos;
+        if (newTat - currentTimeNanos > limit.burstNanos) {
+            return StripedBucket.REJECTED;
+        }
+        return TAT_UPDATER.compareAndSet(this, previousTat, newTat) ? StripedBucket.CONSUMED : StripedBucket.CONTENDED;
+    }
+
+    @Override
+    protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long previousTat = readTat();
+            Limit limit = this.limit;
+            long availableTokens = GcraState.getAvailableTokens(previousTat, limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+            if (tokensToConsume > availableTokens) {
+                long nanosToWaitForRefill = GcraState.delayNanosAfterWillBePossibleToConsume(previousTat, tokensToConsume,
+                        limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+                return ConsumptionProbe.rejected(availableTokens, nanosToWaitForRefill);
+            }
+            long newTat = GcraState.consume(previousTat, tokensToConsume, limit.emissionIntervalNanos, currentTimeNanos);
+            if (TAT_UPDATER.compareAndSet(this, previousTat, newTat)) {
+                return ConsumptionProbe.consumed(availableTokens - tokensToConsume);
+            }
+        }
+    }
+
+    @Override
+    protected long consumeAsMuchAsPossibleImpl(long limitOfTokens) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long previousTat = readTat();
+            Limit limit = this.limit;
+            long availableTokens = GcraState.getAvailableTokens(previousTat, limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+            long toConsume = Math.min(limitOfTokens, availableTokens);
+            if (toConsume <= 0) {
+                return 0;
+            }
+            long newTat = GcraState.consume(previousTat, toConsume, limit.emissionIntervalNanos, currentTimeNanos);
+            if (TAT_UPDATER.compareAndSet(this, previousTat, newTat)) {
+                return toConsume;
+            }
+        }
+    }
+
+    @Override
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long previousTat = readTat();
+            Limit limit = this.limit;
+            long availableTokens = GcraState.getAvailableTokens(previousTat, limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+            int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, availableTokens);
+            long tokensToConsume = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+            // consumption of prefix does not change the deficit for cumulative cost of the next request
+            long nanosToWaitForRefill = consumedCount == cumulativeCosts.length ? 0 :
+                    GcraState.delayNanosAfterWillBePossibleToConsume(previousTat, cumulativeCosts[consumedCount],
+                            limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+            BatchConsumptionProbe probe = new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensToConsume,
+                    availableTokens - tokensToConsume, nanosToWaitForRefill);
+            if (consumedCount == 0) {
+                return probe;
+            }
+            long newTat = GcraState.consume(previousTat, tokensToConsume, limit.emissionIntervalNanos, currentTimeNanos);
+            if (TAT_UPDATER.compareAndSet(this, previousTat, newTat)) {
+                return probe;
+            }
+        }
+    }
+
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long previousTat = readTat();
+            Limit limit = this.limit;
+            long nanosToCloseDeficit = GcraState.delayNanosAfterWillBePossibleToConsume(previousTat, tokensToConsume,
+                    limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+            if (nanosToCloseDeficit == Long.MAX_VALUE || nanosToCloseDeficit > waitIfBusyNanosLimit) {
+                return Long.MAX_VALUE;
+            }
+            long newTat = GcraState.consume(previousTat, tokensToConsume, limit.emissionIntervalNanos, currentTimeNanos);
+            if (newTat == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            if (TAT_UPDATER.compareAndSet(this, previousTat, newTat)) {
+                return nanosToCloseDeficit;
+            }
+        }
+    }
+
+    @Override
+    protected void addTokensImpl(long tokensToAdd) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long previousTat = readTat();
+            Limit limit = this.limit;
+            long newTat = GcraState.addTokens(previousTat, tokensToAdd, limit.emissionIntervalNanos, currentTimeNanos);
+            if (TAT_UPDATER.compareAndSet(this, previousTat, newTat)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected synchronized void replaceConfigurationImpl(BucketConfiguration newConfiguration) {
+        // replacement is rare, so it is serialized by monitor, and TAT is temporarily replaced by marker
+        // in order to guarantee that nobody updates TAT by using the configuration which is being replaced
+        Limit previousLimit = this.limit;
+        previousLimit.configuration.checkCompatibility(newConfiguration);
+        Limit newLimit = new Limit(newConfiguration);
+        long previousTat;
+        do {
+            previousTat = readTat();
+        } while (!TAT_UPDATER.compareAndSet(this, previousTat, REPLACEMENT_IN_PROGRESS));
+
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long availableTokens = GcraState.getAvailableTokens(previousTat, previousLimit.capacity,
+                previousLimit.emissionIntervalNanos, currentTimeNanos);
+        this.limit = newLimit;
+        this.theoreticalArrivalTimeNanos = GcraState.fromAvailableTokens(availableTokens, newLimit.capacity,
+                newLimit.emissionIntervalNanos, currentTimeNanos);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long tat = readTat();
+        Limit limit = this.limit;
+        return GcraState.getAvailableTokens(tat, limit.capacity, limit.emissionIntervalNanos, currentTimeNanos);
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> tryConsumeAsyncImpl(long tokensToConsume) {
+        boolean result = tryConsumeImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Void> addTokensAsyncImpl(long tokensToAdd) {
+        addTokensImpl(tokensToAdd);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected CompletableFuture<Void> replaceConfigurationAsyncImpl(BucketConfiguration newConfiguration) {
+        try {
+            replaceConfigurationImpl(newConfiguration);
+            return CompletableFuture.completedFuture(null);
+        } catch (IncompatibleConfigurationException e) {
+            CompletableFuture<Void> fail = new CompletableFuture<>();
+            fail.completeExceptionally(e);
+            return fail;
+        }
+    }
+
+    @Override
+    protected CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemainingTokensAsyncImpl(long tokensToConsume) {
+        ConsumptionProbe result = tryConsumeAndReturnRemainingTokensImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        BatchConsumptionProbe result = tryConsumeBatchImpl(cumulativeCosts);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> tryConsumeAsMuchAsPossibleAsyncImpl(long limit) {
+        long result = tryConsumeAsMuchAsPossible(limit);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> reserveAndCalculateTimeToSleepAsyncImpl(long tokensToConsume, long maxWaitTimeNanos) {
+        long result = reserveAndCalculateTimeToSleepImpl(tokensToConsume, maxWaitTimeNanos);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    /**
+     * Returns the snapshot of state in {@link BucketState} representation which is refilled at current time.
+     *
+     * @return the snapshot of state
+     */
+    @Override
+    public BucketState createSnapshot() {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long tat = readTat();
+        Limit limit = this.limit;
+        return GcraState.toBucketState(tat, limit.capacity, limit.emissionIntervalNanos,
+                limit.refillTokens, currentTimeNanos);
+    }
+
+    @Override
+    public BucketConfiguration getConfiguration() {
+        return limit.configuration;
+    }
+
+    // TAT should be read before configuration, because new configuration is published before new TAT
+    private long readTat() {
+        while (true) {
+            long tat = theoreticalArrivalTimeNanos;
+            if (tat != REPLACEMENT_IN_PROGRESS) {
+                return tat;
+            }
+            Thread.yield();
+        }
+    }
+
+    private static final class Limit {
+
+        final BucketConfiguration configuration;
+        final long capacity;
+        final long emissionIntervalNanos;
+        final long burstNanos;
+        final long refillTokens;
+
+        Limit(BucketConfiguration configuration) {
+            Bandwidth bandwidth = configuration.getBandwidths()[0];
+            this.configuration = configuration;
+            this.capacity = bandwidth.getCapacity();
+            this.emissionIntervalNanos = GcraState.getEmissionIntervalNanos(bandwidth);
+            this.burstNanos = capacity * emissionIntervalNanos;
+            this.refillTokens = bandwidth.getRefill().getTokens();
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "GcraBucket{" +
+                "theoreticalArrivalTimeNanos=" + theoreticalArrivalTimeNanos +
+                ", configuration=" + getConfiguration() +
+                '}';
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The bucket which is the node in the hierarchy of buckets, each consumption from the bucket consumes the tokens from the bucket itself
+ * and from all its ancestors in one atomic operation, for example per-user limits nested under per-tenant limits nested under the global limit:
+ * <pre>{@code
+ * HierarchicalBucket global = Bucket4j.builder()
+ *       .addLimit(Bandwidth.simple(10_000, Duration.ofSeconds(1)))
+ *       .buildHierarchy();
+ * HierarchicalBucket tenant = global.createChild(tenantConfiguration);
+ * HierarchicalBucket user = tenant.createChild(userConfiguration);
+ *
+ * // consumes from user, tenant and global limits, or consumes nothing
+ * ConsumptionProbe probe = user.tryConsumeAndReturnRemaining(1);
+ * if (!probe.isConsumed()) {
+ *     // 0 - global, 1 - tenant, 2 - user
+ *     int rejectingLevel = probe.getRejectingLevel();
+ * }
+ * }</pre>
+ *
+ * <p>
+ * All buckets of hierarchy are protected by the single lock which is owned by the root,
+ * so consumption from any level is one lock acquisition without any compensation in case of rejection.
+ * The root participates in each consumption, so sharing of lock does not reduce the concurrency in comparison with separated buckets.
+ *
+ * <p>
+ * Semantic of operations:
+ * <ul>
+ *     <li>Consumption succeeds only when all levels from the bucket to the root have enough tokens,
+ *     {@link #getAvailableTokens()} returns minimum across these levels.</li>
+ *     <li>{@link #addTokens(long)} returns tokens to the bucket and all its ancestors, so it can be used to compensate previous consumption.</li>
+ *     <li>{@link #replaceConfiguration(BucketConfiguration)}, {@link #createSnapshot()} and {@link #getConfiguration()} work with the bucket itself only.</li>
+ *     <li>Parent does not hold references to children, so children which are not used anymore are garbage collected as usual.</li>
+ * </ul>
+ */
+public class HierarchicalBucket extends AbstractBucket implements LocalBucket {
+
+    private final HierarchicalBucket parent;
+    private final int level;
+    private final TimeMeter timeMeter;
+    private final Lock lock;
+
+    // the bucket itself followed by its ancestors up to the root
+    private final HierarchicalBucket[] path;
+
+    private BucketConfiguration configuration;
+    private Bandwidth[] bandwidths;
+    private final BucketState state;
+
+    public HierarchicalBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        this(null, configuration, timeMeter, new ReentrantLock());
+    }
+
+    private HierarchicalBucket(HierarchicalBucket parent, BucketConfiguration configuration, TimeMeter timeMeter, Lock lock) {
+        if (configuration == null) {
+            throw BucketExceptions.nullConfiguration();
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        this.parent = parent;
+        this.level = parent == null ? 0 : parent.level + 1;
+        this.timeMeter = timeMeter;
+        this.lock = lock;
+        this.configuration = configuration;
+        this.bandwidths = configuration.getBandwidths();
+        this.state = BucketState.createInitialState(configuration, timeMeter.currentTimeNanos());
+
+        this.path = new HierarchicalBucket[level + 1];
+        HierarchicalBucket bucket = this;
+        for (int i = 0; i <= level; i++) {
+            path[i] = bucket;
+            bucket = bucket.parent;
+        }
+    }
+
+    /**
+     * Creates the child bucket which shares the lock and time meter with this bucket.
+     *
+     * @param configuration the configuration of child
+     *
+     * @return the new child of this bucket
+     */
+    public HierarchicalBucket createChild(BucketConfiguration configuration) {
+        return new HierarchicalBucket(this, configuration, timeMeter, lock);
+    }
+
+    /**
+     * @return parent of this bucket, or null if this bucket is the root
+     */
+    public HierarchicalBucket getParent() {
+        return parent;
+    }
+
+    /**
+     * @return the depth of this bucket in the hierarchy, the root has level {@code 0}
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    @Override
+    protected long consumeAsMuchAsPossibleImpl(long limit) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            long availableToConsume = refillAndGetAvailableTokens(currentTimeNanos);
+            long toConsume = Math.min(limit, availableToConsume);
+            if (toConsume <= 0) {
+                return 0;
+            }
+            consume(toConsume);
+            return toConsume;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected boolean tryConsumeImpl(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            long availableToConsume = refillAndGetAvailableTokens(currentTimeNanos);
+            if (tokensToConsume > availableToConsume) {
+                return false;
+            }
+            consume(tokensToConsume);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            long availableToConsume = refillAndGetAvailableTokens(currentTimeNanos);
+            if (tokensToConsume <= availableToConsume) {
+                consume(tokensToConsume);
+                return ConsumptionProbe.consumed(availableToConsume - tokensToConsume);
+            }
+            long nanosToWaitForRefill = 0;
+            int rejectingLevel = level;
+            for (HierarchicalBucket bucket : path) {
+                long delay = bucket.state.delayNanosAfterWillBePossibleToConsume(bucket.bandwidths, tokensToConsume);
+                if (delay > nanosToWaitForRefill) {
+                    nanosToWaitForRefill = delay;
+                    rejectingLevel = bucket.level;
+                }
+            }
+            return ConsumptionProbe.rejected(availableToConsume, nanosToWaitForRefill, rejectingLevel);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            long availableToConsume = refillAndGetAvailableTokens(currentTimeNanos);
+            int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, availableToConsume);
+            long tokensToConsume = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+            long nanosToWaitForRefill = 0;
+            if (consumedCount < cumulativeCosts.length) {
+                // consumption of prefix does not change the deficit for cumulative cost of the next request
+                for (HierarchicalBucket bucket : path) {
+                    long delay = bucket.state.delayNanosAfterWillBePossibleToConsume(bucket.bandwidths, cumulativeCosts[consumedCount]);
+                    nanosToWaitForRefill = Math.max(nanosToWaitForRefill, delay);
+                }
+            }
+            if (consumedCount > 0) {
+                consume(tokensToConsume);
+            }
+            return new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensToConsume,
+                    availableToConsume - tokensToConsume, nanosToWaitForRefill);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            long nanosToCloseDeficit = 0;
+            for (HierarchicalBucket bucket : path) {
+                bucket.state.refillAllBandwidth(bucket.bandwidths, currentTimeNanos);
+                long delay = bucket.state.delayNanosAfterWillBePossibleToConsume(bucket.bandwidths, tokensToConsume);
+                nanosToCloseDeficit = Math.max(nanosToCloseDeficit, delay);
+            }
+
+            if (nanosToCloseDeficit == Long.MAX_VALUE || nanosToCloseDeficit > waitIfBusyNanosLimit) {
+                return Long.MAX_VALUE;
+            }
+
+            consume(tokensToConsume);
+            return nanosToCloseDeficit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void addTokensImpl(long tokensToAdd) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            for (HierarchicalBucket bucket : path) {
+                bucket.state.refillAllBandwidth(bucket.bandwidths, currentTimeNanos);
+                bucket.state.addTokens(bucket.bandwidths, tokensToAdd);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            return refillAndGetAvailableTokens(currentTimeNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void replaceConfigurationImpl(BucketConfiguration newConfiguration) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            configuration.checkCompatibility(newConfiguration);
+            this.state.refillAllBandwidth(bandwidths, currentTimeNanos);
+            this.configuration = newConfiguration;
+            this.bandwidths = newConfiguration.getBandwidths();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> tryConsumeAsyncImpl(long tokensToConsume) {
+        boolean result = tryConsumeImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Void> addTokensAsyncImpl(long tokensToAdd) {
+        addTokensImpl(tokensToAdd);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemainingTokensAsyncImpl(long tokensToConsume) {
+        ConsumptionProbe result = tryConsumeAndReturnRemainingTokensImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        BatchConsumptionProbe result = tryConsumeBatchImpl(cumulativeCosts);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> tryConsumeAsMuchAsPossibleAsyncImpl(long limit) {
+        long result = tryConsumeAsMuchAsPossible(limit);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> reserveAndCalculateTimeToSleepAsyncImpl(long tokensToConsume, long maxWaitTimeNanos) {
+        long result = reserveAndCalculateTimeToSleepImpl(tokensToConsume, maxWaitTimeNanos);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Void> replaceConfigurationAsyncImpl(BucketConfiguration newConfiguration) {
+        try {
+            replaceConfigurationImpl(newConfiguration);
+            return CompletableFuture.completedFuture(null);
+        } catch (IncompatibleConfigurationException e) {
+            CompletableFuture<Void> fail = new CompletableFuture<>();
+            fail.completeExceptionally(e);
+            return fail;
+        }
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        lock.lock();
+        try {
+            return state.copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BucketConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    // should be called under lock
+    private long refillAndGetAvailableTokens(long currentTimeNanos) {
+        long availableTokens = Long.MAX_VALUE;
+        for (HierarchicalBucket bucket : path) {
+            bucket.state.refillAllBandwidth(bucket.bandwidths, currentTimeNanos);
+            availableTokens = Math.min(availableTokens, bucket.state.getAvailableTokens(bucket.bandwidths));
+        }
+        return availableTokens;
+    }
+
+    // should be called under lock
+    private void consume(long tokensToConsume) {
+        for (HierarchicalBucket bucket : path) {
+            bucket.state.consume(bucket.bandwidths, tokensToConsume);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HierarchicalBucket{" +
+                "level=" + level +
+                ", state=" + state +
+                ", configuration=" + configuration +
+                '}';
+    }
+
+}
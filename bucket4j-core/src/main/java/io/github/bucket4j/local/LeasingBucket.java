@@ -0,0 +1,319 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wrapper around {@link Bucket} which allows to serve fine-grained consumption from thread-local leases instead of shared bucket.
+ *
+ * <p>
+ * When thread calls {@link #tryConsume(long)} first time, the batch of tokens is acquired from the shared bucket via single {@link Bucket#tryConsumeAsMuchAsPossible(long)},
+ * then next calls are served from the thread-local counter until the lease is exhausted or expired.
+ * The counter is owned by the thread, so the fast path is served by plain reads and writes without any atomic instruction,
+ * other threads touch the counter only after the owner thread is terminated.
+ * The size of batch is adaptive and changes between {@code minBatch} and {@code maxBatch}:
+ * <ul>
+ *     <li>batch is doubled when the lease was exhausted in less than half of lease duration;</li>
+ *     <li>batch is halved when lease expires with unused tokens or when shared bucket is not able to provide the whole batch.</li>
+ * </ul>
+ *
+ * <p>
+ * Unused tokens are returned to shared bucket via {@link Bucket#addTokens(long)} in following cases:
+ * <ul>
+ *     <li>the lease is expired, the expiration is checked by owner thread on each {@link #tryConsume(long)};</li>
+ *     <li>the shared bucket can not satisfy the request, so leased tokens are returned instead of keeping them idle;</li>
+ *     <li>the owner thread calls {@link #releaseLease()} or any method which requires exact state of shared bucket;</li>
+ *     <li>the owner thread is terminated, leases of terminated threads are swept periodically by other threads.</li>
+ * </ul>
+ *
+ * <p>
+ * Bounds of inaccuracy in comparison with direct usage of shared bucket:
+ * <ul>
+ *     <li>The tokens in leases are already consumed from shared bucket, so total consumption never exceeds the limits of shared bucket,
+ *     but the moment of real usage can be shifted up to lease duration after the moment of acquisition.</li>
+ *     <li>The count of tokens held by leases is bounded by <tt>threads * maxBatch</tt>, these tokens are not available for other threads.
+ *     The expired lease of idle thread is returned to shared bucket when the owner thread calls this bucket next time,
+ *     or by the first sweep after termination of owner thread, sweeps are done by active threads not often than once per lease duration.</li>
+ *     <li>{@link #getAvailableTokens()} and {@link #createSnapshot()} do not take into account the tokens held by leases.</li>
+ * </ul>
+ */
+public class LeasingBucket implements Bucket {
+
+    private final Bucket sharedBucket;
+    private final TimeMeter timeMeter;
+    private final long minBatch;
+    private final long maxBatch;
+    private final long maxLeaseDurationNanos;
+
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Lease> currentLease;
+    private volatile long nextSweepTimeNanos;
+
+    public LeasingBucket(Bucket sharedBucket, long maxBatch, Duration maxLeaseDuration) {
+        this(sharedBucket, 1, maxBatch, maxLeaseDuration, TimeMeter.SYSTEM_MILLISECONDS);
+    }
+
+    public LeasingBucket(Bucket sharedBucket, long minBatch, long maxBatch, Duration maxLeaseDuration, TimeMeter timeMeter) {
+        if (sharedBucket == null) {
+            throw BucketExceptions.nullBucket();
+        }
+        if (minBatch <= 0) {
+            throw BucketExceptions.nonPositiveLeaseBatch(minBatch);
+        }
+        if (minBatch > maxBatch) {
+            throw BucketExceptions.wrongLeaseBatchRange(minBatch, maxBatch);
+        }
+        if (maxLeaseDuration == null || maxLeaseDuration.toNanos() <= 0) {
+            throw BucketExceptions.nonPositiveLeaseDuration(maxLeaseDuration == null ? 0 : maxLeaseDuration.toNanos());
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        this.sharedBucket = sharedBucket;
+        this.timeMeter = timeMeter;
+        this.minBatch = minBatch;
+        this.maxBatch = maxBatch;
+        this.maxLeaseDurationNanos = maxLeaseDuration.toNanos();
+        this.currentLease = ThreadLocal.withInitial(() -> {
+            Lease lease = new Lease(Thread.currentThread(), minBatch);
+            leases.add(lease);
+            return lease;
+        });
+        this.nextSweepTimeNanos = timeMeter.currentTimeNanos() + maxLeaseDurationNanos;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens) {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        Lease lease = currentLease.get();
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        if (lease.tokens > 0 && isExpired(lease, currentTimeNanos)) {
+            lease.batch = Math.max(minBatch, lease.batch / 2);
+            release(lease);
+        }
+        if (consume(lease, numTokens)) {
+            return true;
+        }
+        return renewLease(lease, numTokens, currentTimeNanos);
+    }
+
+    /**
+     * Returns unused tokens leased by current thread back to shared bucket.
+     */
+    public void releaseLease() {
+        release(currentLease.get());
+    }
+
+    /**
+     * Returns the count of tokens which currently leased by current thread.
+     *
+     * @return the count of tokens which currently leased by current thread
+     */
+    public long getLeasedTokens() {
+        return currentLease.get().tokens;
+    }
+
+    @Override
+    public boolean tryConsume(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) throws InterruptedException {
+        if (tryConsumeFromLease(numTokens)) {
+            return true;
+        }
+        releaseLease();
+        return sharedBucket.tryConsume(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public boolean tryConsumeUninterruptibly(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) {
+        if (tryConsumeFromLease(numTokens)) {
+            return true;
+        }
+        releaseLease();
+        return sharedBucket.tryConsumeUninterruptibly(numTokens, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+        releaseLease();
+        return sharedBucket.tryConsumeAndReturnRemaining(numTokens);
+    }
+
+    @Override
+    public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+        releaseLease();
+        return sharedBucket.tryConsumeBatch(costs);
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible() {
+        releaseLease();
+        return sharedBucket.tryConsumeAsMuchAsPossible();
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(long limit) {
+        releaseLease();
+        return sharedBucket.tryConsumeAsMuchAsPossible(limit);
+    }
+
+    @Override
+    public void addTokens(long tokensToAdd) {
+        sharedBucket.addTokens(tokensToAdd);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        sweepLeasesIfNeeded(timeMeter.currentTimeNanos());
+        return sharedBucket.getAvailableTokens();
+    }
+
+    @Override
+    public void replaceConfiguration(BucketConfiguration newConfiguration) {
+        sharedBucket.replaceConfiguration(newConfiguration);
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        sweepLeasesIfNeeded(timeMeter.currentTimeNanos());
+        return sharedBucket.createSnapshot();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return sharedBucket.isAsyncModeSupported();
+    }
+
+    /**
+     * Returns asynchronous view of shared bucket, asynchronous operations do not use leases.
+     *
+     * @return asynchronous view of shared bucket
+     */
+    @Override
+    public AsyncBucket asAsync() {
+        return sharedBucket.asAsync();
+    }
+
+    private boolean tryConsumeFromLease(long numTokens) {
+        if (numTokens <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(numTokens);
+        }
+        Lease lease = currentLease.get();
+        return !isExpired(lease, timeMeter.currentTimeNanos()) && consume(lease, numTokens);
+    }
+
+    private boolean renewLease(Lease lease, long numTokens, long currentTimeNanos) {
+        sweepLeasesIfNeeded(currentTimeNanos);
+
+        long deficit = numTokens - lease.tokens;
+        if (lease.acquiredTimeNanos != Long.MIN_VALUE && currentTimeNanos - lease.acquiredTimeNanos < maxLeaseDurationNanos / 2) {
+            // previous lease was exhausted too quickly
+            lease.batch = lease.batch <= maxBatch / 2 ? lease.batch * 2 : maxBatch;
+        }
+        long tokensToLease = Math.max(deficit, lease.batch);
+        long leased = sharedBucket.tryConsumeAsMuchAsPossible(tokensToLease);
+        if (leased < tokensToLease) {
+            // shared bucket is close to be empty, so there is no sense to hold many tokens in the single lease
+            lease.batch = Math.max(minBatch, lease.batch / 2);
+        }
+        if (leased > 0) {
+            if (lease.tokens == 0) {
+                // when lease still holds the tokens the original time is kept, so carried-over tokens do not outlive the lease duration
+                lease.acquiredTimeNanos = currentTimeNanos;
+            }
+            lease.tokens += leased;
+        }
+
+        if (consume(lease, numTokens)) {
+            return true;
+        }
+        // request can not be satisfied, so return leased tokens back to make them available for other threads
+        release(lease);
+        return false;
+    }
+
+    private boolean isExpired(Lease lease, long currentTimeNanos) {
+        return currentTimeNanos - lease.acquiredTimeNanos > maxLeaseDurationNanos;
+    }
+
+    private boolean consume(Lease lease, long numTokens) {
+        long tokens = lease.tokens;
+        if (tokens < numTokens) {
+            return false;
+        }
+        lease.tokens = tokens - numTokens;
+        return true;
+    }
+
+    private void release(Lease lease) {
+        long unusedTokens = lease.tokens;
+        lease.tokens = 0;
+        lease.acquiredTimeNanos = Long.MIN_VALUE;
+        if (unusedTokens > 0) {
+            sharedBucket.addTokens(unusedTokens);
+        }
+    }
+
+    private void sweepLeasesIfNeeded(long currentTimeNanos) {
+        if (currentTimeNanos < nextSweepTimeNanos) {
+            return;
+        }
+        nextSweepTimeNanos = currentTimeNanos + maxLeaseDurationNanos;
+        for (Lease lease : leases) {
+            // the leases of live threads are never touched, so owner does not need atomic instructions,
+            // termination of owner happens-before isAlive returns false, so the last value of counter is visible here
+            if (!lease.owner.isAlive() && leases.remove(lease)) {
+                long reclaimedTokens = lease.tokens;
+                if (reclaimedTokens > 0) {
+                    sharedBucket.addTokens(reclaimedTokens);
+                }
+            }
+        }
+    }
+
+    private static final class Lease {
+
+        final Thread owner;
+        // accessed only by owner thread, and by sweeper after termination of owner
+        long tokens;
+        long batch;
+        long acquiredTimeNanos = Long.MIN_VALUE;
+
+        Lease(Thread owner, long batch) {
+            this.owner = owner;
+            this.batch = batch;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "LeasingBucket{" +
+                "sharedBucket=" + sharedBucket +
+                ", minBatch=" + minBatch +
+                ", maxBatch=" + maxBatch +
+                ", maxLeaseDurationNanos=" + maxLeaseDurationNanos +
+                '}';
+    }
+
+}
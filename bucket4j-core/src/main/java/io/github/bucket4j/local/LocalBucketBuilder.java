@@ -19,8 +19,10 @@ package io.github.bucket4j.local;
 
 import io.github.bucket4j.*;
 
+import java.time.Duration;
+
 /**
- * This builder creates in-memory buckets ({@link LockFreeBucket}).
+ * This builder creates in-memory buckets ({@link LockFreeBucket}, {@link PackedBucket} or {@link StripedBucket}).
  */
 public class LocalBucketBuilder extends ConfigurationBuilder<LocalBucketBuilder> {
 
@@ -50,6 +52,19 @@ public class LocalBucketBuilder extends ConfigurationBuilder<LocalBucketBuilder>
         return this;
     }
 
+    /**
+     * Creates instance of {@link ConfigurationBuilder} which will create buckets with {@link CachedTimeMeter} as time meter.
+     * All buckets which use same resolution share single ticker thread, see {@link CachedTimeMeter} for details about lifecycle and accuracy.
+     *
+     * @param resolution the period between updates of time
+     *
+     * @return this builder instance
+     */
+    public LocalBucketBuilder withCachedTimePrecision(Duration resolution) {
+        this.timeMeter = CachedTimeMeter.acquire(resolution);
+        return this;
+    }
+
     /**
      * Creates instance of {@link ConfigurationBuilder} which will create buckets with {@code customTimeMeter} as time meter.
      *
@@ -84,11 +99,55 @@ public class LocalBucketBuilder extends ConfigurationBuilder<LocalBucketBuilder>
     public LocalBucket build(SynchronizationStrategy synchronizationStrategy) {
         BucketConfiguration configuration = buildConfiguration();
         switch (synchronizationStrategy) {
-            case LOCK_FREE: return new LockFreeBucket(configuration, timeMeter);
+            case LOCK_FREE: return createLockFreeBucket(configuration, timeMeter);
+            case SEQLOCK: return createSeqlockBucket(configuration, timeMeter);
+            case STRIPED: return new StripedBucket(configuration, timeMeter);
             case SYNCHRONIZED: return new SynchronizedBucket(configuration, timeMeter);
             case NONE: return new SynchronizedBucket(configuration, timeMeter, FakeLock.INSTANCE);
             default: throw new IllegalStateException();
         }
     }
 
+    /**
+     * Constructs the root of hierarchy of buckets, the nested levels are created via {@link HierarchicalBucket#createChild(BucketConfiguration)}.
+     *
+     * @return the root of new hierarchy
+     *
+     * @see HierarchicalBucket
+     */
+    public HierarchicalBucket buildHierarchy() {
+        BucketConfiguration configuration = buildConfiguration();
+        return new HierarchicalBucket(configuration, timeMeter);
+    }
+
+    /**
+     * Constructs the table of buckets addressed by primitive keys, all buckets inside the table share the configuration from this builder.
+     *
+     * @param expectedKeys the expected count of keys, it is used to preallocate the memory
+     *
+     * @return the new table of buckets
+     *
+     * @see LongKeyBucketTable
+     */
+    public LongKeyBucketTable buildTable(int expectedKeys) {
+        BucketConfiguration configuration = buildConfiguration();
+        return new LongKeyBucketTable(configuration, timeMeter, expectedKeys);
+    }
+
+    static LocalBucket createLockFreeBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        if (configuration.isGcraState()) {
+            return new GcraBucket(configuration, timeMeter);
+        } else {
+            return new LockFreeBucket(configuration, timeMeter);
+        }
+    }
+
+    static LocalBucket createSeqlockBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        if (!configuration.isGcraState() && configuration.getBandwidths().length <= PackedBucket.MAX_BANDWIDTHS) {
+            return new PackedBucket(configuration, timeMeter);
+        } else {
+            return createLockFreeBucket(configuration, timeMeter);
+        }
+    }
+
 }
@@ -0,0 +1,362 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+import io.github.bucket4j.grid.BucketNotFoundException;
+import io.github.bucket4j.grid.ProxyManager;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * The implementation of {@link ProxyManager} which holds the buckets inside current JVM.
+ * It is intended to replace the hand-written {@code ConcurrentHashMap<K, Bucket>} for per-key limits.
+ *
+ * <p>
+ * Buckets are created lazily via {@link LocalBucketBuilder#build() lock-free} strategy
+ * on first invocation of any method on the proxy which was obtained by {@link #getProxy(Serializable, Supplier)}.
+ * The proxy itself does not hold the bucket, it locates the bucket via {@link ConcurrentHashMap#get(Object)} on each invocation,
+ * so lookups never take locks and the bucket can be evicted while proxy is still referenced by user code.
+ *
+ * <p>
+ * The buckets are evicted in following cases:
+ * <ul>
+ *     <li>The bucket was idle for long enough to be completely refilled by all bandwidths.
+ *     Such bucket is indistinguishable from the fresh one, so eviction is not observable by user,
+ *     the bucket will be recreated with full capacity on next access.
+ *     The bucket which configuration was replaced via {@link Bucket#replaceConfiguration(BucketConfiguration)} is never evicted by this reason,
+ *     because recreated bucket would get the configuration from supplier instead of replaced one.</li>
+ *     <li>The count of buckets exceeds {@code maxBuckets}. In this case the victims are selected by "second chance" algorithm.</li>
+ * </ul>
+ * The buckets are inspected in the order of creation, the bucket which was accessed since previous inspection gets the second chance,
+ * so the idle bucket is never evicted by amortized inspection until it stays untouched during whole pass through the queue.
+ * When the count of buckets exceeds {@code maxBuckets}, at most couple of second chances are given per creation,
+ * and the next oldest bucket is evicted even if it was accessed recently, so the cost of creation does not depend on {@code maxBuckets}.
+ * Under concurrent creation of buckets the bound can be temporarily overshot by the count of concurrently creating threads.
+ * It is not true LRU, but it does not require any bookkeeping on access except single volatile write.
+ * The eviction is amortized, each creation of bucket inspects couple of the oldest buckets, so memory stays flat
+ * even under churn of millions of short-lived keys without any background thread.
+ * Additionally, {@link #removeIdleBuckets()} can be called periodically to inspect all buckets at once.
+ *
+ * <p>
+ * Peculiarities of eviction:
+ * <ul>
+ *     <li>The bucket which was evicted by size bound loses its state and replaced configuration,
+ *     so next access will see the fresh bucket with full capacity and configuration provided by supplier.</li>
+ *     <li>The idle bucket which is being evicted concurrently with consumption can lose that consumption,
+ *     the count of lost tokens is bounded by consumption requests which were in-flight at the moment of eviction.</li>
+ * </ul>
+ *
+ * @param <K> type of key
+ */
+public class LocalProxyManager<K extends Serializable> implements ProxyManager<K> {
+
+    // how many of the oldest buckets are inspected on each creation of bucket
+    private static final int INSPECTIONS_PER_CREATION = 2;
+    // how many second chances are given per creation of bucket when size bound is exceeded
+    private static final int SECOND_CHANCES_PER_CREATION = 2;
+
+    private final long maxBuckets;
+    private final TimeMeter timeMeter;
+    private final ConcurrentHashMap<K, Entry<K>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry<K>> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    public LocalProxyManager(long maxBuckets) {
+        this(maxBuckets, TimeMeter.SYSTEM_MILLISECONDS);
+    }
+
+    public LocalProxyManager(long maxBuckets, TimeMeter timeMeter) {
+        if (maxBuckets <= 0) {
+            throw BucketExceptions.nonPositiveMaxBuckets(maxBuckets);
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        this.maxBuckets = maxBuckets;
+        this.timeMeter = timeMeter;
+    }
+
+    @Override
+    public Bucket getProxy(K key, Supplier<BucketConfiguration> configurationLazySupplier) {
+        if (configurationLazySupplier == null) {
+            throw BucketExceptions.nullConfigurationSupplier();
+        }
+        return new LocalProxy(key, configurationLazySupplier);
+    }
+
+    @Override
+    public Optional<Bucket> getProxy(K key) {
+        if (!buckets.containsKey(key)) {
+            return Optional.empty();
+        }
+        return Optional.of(new LocalProxy(key, null));
+    }
+
+    @Override
+    public Optional<BucketConfiguration> getProxyConfiguration(K key) {
+        Entry<K> entry = buckets.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.bucket.getConfiguration());
+    }
+
+    /**
+     * Returns this manager as is, because buckets are stored inside current JVM and there are no round trips to save.
+     *
+     * @return this manager
+     */
+    @Override
+    public ProxyManager<K> withSingleRoundTripInitialization() {
+        return this;
+    }
+
+    /**
+     * Returns the count of buckets which currently stored by this manager.
+     *
+     * @return the count of stored buckets
+     */
+    public long size() {
+        return buckets.mappingCount();
+    }
+
+    /**
+     * Inspects all buckets and evicts the buckets which were idle for long enough to be completely refilled.
+     * In contrast to amortized inspection, the buckets which were accessed recently do not get the second chance.
+     *
+     * @return the count of evicted buckets
+     */
+    public long removeIdleBuckets() {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long removed = 0;
+        for (Entry<K> entry : buckets.values()) {
+            if (entry.isEvictableWhenIdle(currentTimeNanos) && buckets.remove(entry.key, entry)) {
+                removed++;
+            }
+        }
+        // entries which were removed above still present in the eviction queue and will be skipped during next inspections
+        return removed;
+    }
+
+    private Entry<K> resolve(K key, Supplier<BucketConfiguration> configurationLazySupplier) {
+        Entry<K> entry = buckets.get(key);
+        if (entry == null) {
+            if (configurationLazySupplier == null) {
+                throw new BucketNotFoundException(key);
+            }
+            entry = createEntry(key, configurationLazySupplier);
+        }
+        if (!entry.accessed) {
+            entry.accessed = true;
+        }
+        return entry;
+    }
+
+    private void replaceConfiguration(K key, Supplier<BucketConfiguration> configurationLazySupplier, BucketConfiguration newConfiguration) {
+        while (true) {
+            Entry<K> entry = resolve(key, configurationLazySupplier);
+            // the flag is published before replacement, so idle eviction can not lose the replaced configuration
+            entry.configurationReplaced = true;
+            entry.bucket.replaceConfiguration(newConfiguration);
+            if (buckets.get(key) == entry) {
+                return;
+            }
+            // the entry was evicted before the flag became visible, so replace configuration of recreated bucket
+        }
+    }
+
+    private Entry<K> createEntry(K key, Supplier<BucketConfiguration> configurationLazySupplier) {
+        BucketConfiguration configuration = configurationLazySupplier.get();
+        if (configuration == null) {
+            throw BucketExceptions.nullConfiguration();
+        }
+        Entry<K> newEntry = new Entry<>(key, LocalBucketBuilder.createLockFreeBucket(configuration, timeMeter));
+        Entry<K> previousEntry = buckets.putIfAbsent(key, newEntry);
+        if (previousEntry != null) {
+            return previousEntry;
+        }
+        evictionQueue.add(newEntry);
+        inspectOldestEntries();
+        return newEntry;
+    }
+
+    private void inspectOldestEntries() {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        // the same bucket must not be inspected twice during one creation, otherwise fresh bucket could lose its second chance
+        long maxInspections = Math.min(buckets.mappingCount(), INSPECTIONS_PER_CREATION);
+        int inspected = 0;
+        int secondChances = 0;
+        // the victim is always found within the limit when buckets are not created concurrently,
+        // under concurrent creation the bound can be temporarily overshot, and next creations bring size back
+        while (inspected < maxInspections
+                || (inspected < INSPECTIONS_PER_CREATION + SECOND_CHANCES_PER_CREATION && buckets.mappingCount() > maxBuckets)) {
+            Entry<K> entry = evictionQueue.poll();
+            if (entry == null) {
+                return;
+            }
+            if (buckets.get(entry.key) != entry) {
+                // already evicted by removeIdleBuckets, each stale entry is polled only once, so it is not counted
+                continue;
+            }
+            inspected++;
+            boolean overflow = buckets.mappingCount() > maxBuckets;
+            if (entry.accessed && (!overflow || secondChances < SECOND_CHANCES_PER_CREATION)) {
+                // the bucket was accessed since previous inspection, so it gets the second chance
+                entry.accessed = false;
+                if (overflow) {
+                    secondChances++;
+                }
+            } else if (overflow || entry.isEvictableWhenIdle(currentTimeNanos)) {
+                buckets.remove(entry.key, entry);
+                continue;
+            }
+            evictionQueue.add(entry);
+        }
+    }
+
+    private static final class Entry<K> {
+
+        final K key;
+        final LocalBucket bucket;
+        // the fresh bucket is going to be accessed right after creation
+        volatile boolean accessed = true;
+        volatile boolean configurationReplaced;
+
+        Entry(K key, LocalBucket bucket) {
+            this.key = key;
+            this.bucket = bucket;
+        }
+
+        boolean isEvictableWhenIdle(long currentTimeNanos) {
+            if (configurationReplaced) {
+                return false;
+            }
+            Bandwidth[] bandwidths = bucket.getConfiguration().getBandwidths();
+            BucketState state = bucket.createSnapshot();
+            state.refillAllBandwidth(bandwidths, currentTimeNanos);
+            for (int i = 0; i < bandwidths.length; i++) {
+                if (state.getCurrentSize(i) < bandwidths[i].getCapacity()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private final class LocalProxy implements Bucket {
+
+        private final K key;
+        private final Supplier<BucketConfiguration> configurationLazySupplier;
+
+        LocalProxy(K key, Supplier<BucketConfiguration> configurationLazySupplier) {
+            this.key = key;
+            this.configurationLazySupplier = configurationLazySupplier;
+        }
+
+        private LocalBucket bucket() {
+            return resolve(key, configurationLazySupplier).bucket;
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return true;
+        }
+
+        @Override
+        public AsyncBucket asAsync() {
+            return bucket().asAsync();
+        }
+
+        @Override
+        public boolean tryConsume(long numTokens) {
+            return bucket().tryConsume(numTokens);
+        }
+
+        @Override
+        public ConsumptionProbe tryConsumeAndReturnRemaining(long numTokens) {
+            return bucket().tryConsumeAndReturnRemaining(numTokens);
+        }
+
+        @Override
+        public BatchConsumptionProbe tryConsumeBatch(long[] costs) {
+            return bucket().tryConsumeBatch(costs);
+        }
+
+        @Override
+        public long tryConsumeAsMuchAsPossible() {
+            return bucket().tryConsumeAsMuchAsPossible();
+        }
+
+        @Override
+        public long tryConsumeAsMuchAsPossible(long limit) {
+            return bucket().tryConsumeAsMuchAsPossible(limit);
+        }
+
+        @Override
+        public boolean tryConsume(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) throws InterruptedException {
+            return bucket().tryConsume(numTokens, maxWaitTimeNanos, blockingStrategy);
+        }
+
+        @Override
+        public boolean tryConsumeUninterruptibly(long numTokens, long maxWaitTimeNanos, BlockingStrategy blockingStrategy) {
+            return bucket().tryConsumeUninterruptibly(numTokens, maxWaitTimeNanos, blockingStrategy);
+        }
+
+        @Override
+        public void addTokens(long tokensToAdd) {
+            bucket().addTokens(tokensToAdd);
+        }
+
+        @Override
+        public long getAvailableTokens() {
+            return bucket().getAvailableTokens();
+        }
+
+        @Override
+        public void replaceConfiguration(BucketConfiguration newConfiguration) {
+            LocalProxyManager.this.replaceConfiguration(key, configurationLazySupplier, newConfiguration);
+        }
+
+        @Override
+        public BucketState createSnapshot() {
+            return bucket().createSnapshot();
+        }
+
+        @Override
+        public String toString() {
+            return "LocalProxy{" +
+                    "key=" + key +
+                    '}';
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "LocalProxyManager{" +
+                "maxBuckets=" + maxBuckets +
+                ", size=" + buckets.mappingCount() +
+                '}';
+    }
+
+}
@@ -19,20 +19,21 @@ package io.github.bucket4j.local;
 
 import io.github.bucket4j.*;
 
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-public class LockFreeBucket extends AbstractBucket implements LocalBucket {
+public class LockFreeBucket extends LockFreeStateHolder<LockFreeBucket.StateWithConfiguration> implements LocalBucket {
+
+    // Mutable states which are used by current thread to calculate the new state of bucket before publication.
+    // Indexed by count of bandwidths, because size of state depends on it.
+    private static final ThreadLocal<BucketState[]> SCRATCH_STATES = ThreadLocal.withInitial(() -> new BucketState[4]);
 
     private final TimeMeter timeMeter;
-    private static final AtomicReferenceFieldUpdater<LockFreeBucket, StateWithConfiguration> STATE_UPDATER =
-            AtomicReferenceFieldUpdater.newUpdater(LockFreeBucket.class, StateWithConfiguration.class, "state");
-    private volatile StateWithConfiguration state;
 
     public LockFreeBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
         this.timeMeter = timeMeter;
         BucketState initialState = BucketState.createInitialState(configuration, timeMeter.currentTimeNanos());
-        STATE_UPDATER.set(this, new StateWithConfiguration(configuration, initialState));
+        setState(new StateWithConfiguration(configuration, initialState));
     }
 
     @Override
@@ -42,137 +43,158 @@ public class LockFreeBucket extends AbstractBucket implements LocalBucket {
 
     @Override
     protected long consumeAsMuchAsPossibleImpl(long limit) {
-        StateWithConfiguration previousState = STATE_UPDATER.get(this);
-        StateWithConfiguration newState = previousState.copy();
         long currentTimeNanos = timeMeter.currentTimeNanos();
-
         while (true) {
-            newState.refillAllBandwidth(currentTimeNanos);
-            long availableToConsume = newState.getAvailableTokens();
+            StateWithConfiguration previousState = getState();
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            long availableToConsume = newState.getAvailableTokens(bandwidths);
             long toConsume = Math.min(limit, availableToConsume);
-            if (toConsume == 0) {
+            if (toConsume <= 0) {
                 return 0;
             }
-            newState.consume(toConsume);
-            if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
+            newState.consume(bandwidths, toConsume);
+            if (publish(previousState, previousState.configuration, newState)) {
                 return toConsume;
-            } else {
-                previousState = STATE_UPDATER.get(this);
-                newState.copyStateFrom(previousState);
             }
         }
     }
 
     @Override
     protected boolean tryConsumeImpl(long tokensToConsume) {
-        StateWithConfiguration previousState = STATE_UPDATER.get(this);
-        StateWithConfiguration newState = previousState.copy();
         long currentTimeNanos = timeMeter.currentTimeNanos();
-
         while (true) {
-            newState.refillAllBandwidth(currentTimeNanos);
-            long availableToConsume = newState.getAvailableTokens();
+            StateWithConfiguration previousState = getState();
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            long availableToConsume = newState.getAvailableTokens(bandwidths);
             if (tokensToConsume > availableToConsume) {
                 return false;
             }
-            newState.consume(tokensToConsume);
-            if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
+            newState.consume(bandwidths, tokensToConsume);
+            if (publish(previousState, previousState.configuration, newState)) {
                 return true;
-            } else {
-                previousState = STATE_UPDATER.get(this);
-                newState.copyStateFrom(previousState);
             }
         }
     }
 
+    // single attempt without retry after failed CAS, it is used by StripedBucket in order to detect the contention on cell
+    int tryConsumeWithoutRetry(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        StateWithConfiguration previousState = getState();
+        Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+        BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+        newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+        long availableToConsume = newState.getAvailableTokens(bandwidths);
+        if (tokensToConsume > availableToConsume) {
+            return StripedBucket.REJECTED;
+        }
+        newState.consume(bandwidths, tokensToConsume);
+        return publish(previousState, previousState.configuration, newState) ? StripedBucket.CONSUMED : StripedBucket.CONTENDED;
+    }
+
     @Override
     protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
-        StateWithConfiguration previousState = STATE_UPDATER.get(this);
-        StateWithConfiguration newState = previousState.copy();
         long currentTimeNanos = timeMeter.currentTimeNanos();
-
         while (true) {
-            newState.refillAllBandwidth(currentTimeNanos);
-            long availableToConsume = newState.getAvailableTokens();
+            StateWithConfiguration previousState = getState();
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            long availableToConsume = newState.getAvailableTokens(bandwidths);
             if (tokensToConsume > availableToConsume) {
-                long nanosToWaitForRefill = newState.delayNanosAfterWillBePossibleToConsume(tokensToConsume);
+                long nanosToWaitForRefill = newState.delayNanosAfterWillBePossibleToConsume(bandwidths, tokensToConsume);
                 return ConsumptionProbe.rejected(availableToConsume, nanosToWaitForRefill);
             }
-            newState.consume(tokensToConsume);
-            if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
+            newState.consume(bandwidths, tokensToConsume);
+            if (publish(previousState, previousState.configuration, newState)) {
                 return ConsumptionProbe.consumed(availableToConsume - tokensToConsume);
-            } else {
-                previousState = STATE_UPDATER.get(this);
-                newState.copyStateFrom(previousState);
             }
         }
     }
 
     @Override
-    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
-        StateWithConfiguration previousState = STATE_UPDATER.get(this);
-        StateWithConfiguration newState = previousState.copy();
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
         long currentTimeNanos = timeMeter.currentTimeNanos();
-
         while (true) {
-            newState.refillAllBandwidth(currentTimeNanos);
-            long nanosToCloseDeficit = newState.delayNanosAfterWillBePossibleToConsume(tokensToConsume);
-            if (nanosToCloseDeficit == 0) {
-                newState.consume(tokensToConsume);
-                if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
-                    return 0L;
-                }
-                previousState = STATE_UPDATER.get(this);
-                newState.copyStateFrom(previousState);
-                continue;
+            StateWithConfiguration previousState = getState();
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            long availableToConsume = newState.getAvailableTokens(bandwidths);
+            int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, availableToConsume);
+            long tokensToConsume = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+            // consumption of prefix does not change the deficit for cumulative cost of the next request
+            long nanosToWaitForRefill = consumedCount == cumulativeCosts.length ? 0 :
+                    newState.delayNanosAfterWillBePossibleToConsume(bandwidths, cumulativeCosts[consumedCount]);
+            BatchConsumptionProbe probe = new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensToConsume,
+                    availableToConsume - tokensToConsume, nanosToWaitForRefill);
+            if (consumedCount == 0) {
+                return probe;
+            }
+            newState.consume(bandwidths, tokensToConsume);
+            if (publish(previousState, previousState.configuration, newState)) {
+                return probe;
             }
+        }
+    }
 
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            StateWithConfiguration previousState = getState();
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            long nanosToCloseDeficit = newState.delayNanosAfterWillBePossibleToConsume(bandwidths, tokensToConsume);
             if (nanosToCloseDeficit == Long.MAX_VALUE || nanosToCloseDeficit > waitIfBusyNanosLimit) {
                 return Long.MAX_VALUE;
             }
 
-            newState.consume(tokensToConsume);
-            if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
+            newState.consume(bandwidths, tokensToConsume);
+            if (publish(previousState, previousState.configuration, newState)) {
                 return nanosToCloseDeficit;
             }
-            previousState = STATE_UPDATER.get(this);
-            newState.copyStateFrom(previousState);
         }
     }
 
     @Override
     protected void addTokensImpl(long tokensToAdd) {
-        StateWithConfiguration previousState = STATE_UPDATER.get(this);
-        StateWithConfiguration newState = previousState.copy();
         long currentTimeNanos = timeMeter.currentTimeNanos();
-
         while (true) {
-            newState.refillAllBandwidth(currentTimeNanos);
-            newState.state.addTokens(newState.configuration.getBandwidths(), tokensToAdd);
-            if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
+            StateWithConfiguration previousState = getState();
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            newState.addTokens(bandwidths, tokensToAdd);
+            if (publish(previousState, previousState.configuration, newState)) {
                 return;
-            } else {
-                previousState = STATE_UPDATER.get(this);
-                newState.copyStateFrom(previousState);
             }
         }
     }
 
     @Override
     protected void replaceConfigurationImpl(BucketConfiguration newConfiguration) {
-        StateWithConfiguration previousState = STATE_UPDATER.get(this);
-        StateWithConfiguration newState = previousState.copy();
         long currentTimeNanos = timeMeter.currentTimeNanos();
-
         while (true) {
+            StateWithConfiguration previousState = getState();
             previousState.configuration.checkCompatibility(newConfiguration);
-            newState.refillAllBandwidth(currentTimeNanos);
-            newState.configuration = newConfiguration;
-            if (STATE_UPDATER.compareAndSet(this, previousState, newState)) {
+            Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+            BucketState newState = scratchCopyOf(previousState.state, bandwidths.length);
+
+            newState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            if (publish(previousState, newConfiguration, newState)) {
                 return;
-            } else {
-                previousState = STATE_UPDATER.get(this);
-                newState.copyStateFrom(previousState);
             }
         }
     }
@@ -180,9 +202,11 @@ public class LockFreeBucket extends AbstractBucket implements LocalBucket {
     @Override
     public long getAvailableTokens() {
         long currentTimeNanos = timeMeter.currentTimeNanos();
-        StateWithConfiguration snapshot = STATE_UPDATER.get(this).copy();
-        snapshot.refillAllBandwidth(currentTimeNanos);
-        return snapshot.getAvailableTokens();
+        StateWithConfiguration snapshot = getState();
+        Bandwidth[] bandwidths = snapshot.configuration.getBandwidths();
+        BucketState state = scratchCopyOf(snapshot.state, bandwidths.length);
+        state.refillAllBandwidth(bandwidths, currentTimeNanos);
+        return state.getAvailableTokens(bandwidths);
     }
 
     @Override
@@ -215,6 +239,12 @@ public class LockFreeBucket extends AbstractBucket implements LocalBucket {
         return CompletableFuture.completedFuture(result);
     }
 
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        BatchConsumptionProbe result = tryConsumeBatchImpl(cumulativeCosts);
+        return CompletableFuture.completedFuture(result);
+    }
+
     @Override
     protected CompletableFuture<Long> tryConsumeAsMuchAsPossibleAsyncImpl(long limit) {
         long result = tryConsumeAsMuchAsPossible(limit);
@@ -229,54 +259,59 @@ public class LockFreeBucket extends AbstractBucket implements LocalBucket {
 
     @Override
     public BucketState createSnapshot() {
-        return STATE_UPDATER.get(this).state.copy();
+        return getState().state.copy();
     }
 
     @Override
     public BucketConfiguration getConfiguration() {
-        return STATE_UPDATER.get(this).configuration;
+        return getState().configuration;
     }
 
-    private static class StateWithConfiguration {
-
-        BucketConfiguration configuration;
-        BucketState state;
-
-        StateWithConfiguration(BucketConfiguration configuration, BucketState state) {
-            this.configuration = configuration;
-            this.state = state;
+    private boolean publish(StateWithConfiguration previousState, BucketConfiguration configuration, BucketState calculatedState) {
+        if (getState() != previousState) {
+            // there is no sense to allocate the new state, because CAS will fail anyway
+            return false;
         }
+        StateWithConfiguration newState = new StateWithConfiguration(configuration, calculatedState.copy());
+        return compareAndSetState(previousState, newState);
+    }
 
-        StateWithConfiguration copy() {
-            return new StateWithConfiguration(configuration, state.copy());
+    private static BucketState scratchCopyOf(BucketState source, int bandwidthCount) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            // virtual threads are usually created per task, so thread local scratch would be allocated on each invocation anyway
+            return source.copy();
         }
-
-        void copyStateFrom(StateWithConfiguration other) {
-            configuration = other.configuration;
-            state.copyStateFrom(other.state);
+        BucketState[] scratchStates = SCRATCH_STATES.get();
+        if (bandwidthCount >= scratchStates.length) {
+            scratchStates = Arrays.copyOf(scratchStates, bandwidthCount + 1);
+            SCRATCH_STATES.set(scratchStates);
         }
-
-        void refillAllBandwidth(long currentTimeNanos) {
-            state.refillAllBandwidth(configuration.getBandwidths(), currentTimeNanos);
+        BucketState scratchState = scratchStates[bandwidthCount];
+        if (scratchState == null) {
+            scratchState = source.copy();
+            scratchStates[bandwidthCount] = scratchState;
+        } else {
+            scratchState.copyStateFrom(source);
         }
+        return scratchState;
+    }
 
-        long getAvailableTokens() {
-            return state.getAvailableTokens(configuration.getBandwidths());
-        }
+    static class StateWithConfiguration {
 
-        void consume(long tokensToConsume) {
-            state.consume(configuration.getBandwidths(), tokensToConsume);
-        }
+        final BucketConfiguration configuration;
+        final BucketState state;
 
-        long delayNanosAfterWillBePossibleToConsume(long tokensToConsume) {
-            return state.delayNanosAfterWillBePossibleToConsume(configuration.getBandwidths(), tokensToConsume);
+        StateWithConfiguration(BucketConfiguration configuration, BucketState state) {
+            this.configuration = configuration;
+            this.state = state;
         }
+
     }
 
     @Override
     public String toString() {
         return "LockFreeBucket{" +
-                "state=" + STATE_UPDATER.get(this) +
+                "state=" + getState().state +
                 ", configuration=" + getConfiguration() +
                 '}';
     }
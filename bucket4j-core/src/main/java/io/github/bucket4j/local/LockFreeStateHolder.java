@@ -0,0 +1,55 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.AbstractBucket;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Holds the reference to immutable state of lock-free bucket and provides atomic operations on it.
+ *
+ * <p>
+ * This is the Java 8 implementation which is based on {@link AtomicReferenceFieldUpdater}.
+ * The multi-release JAR contains another implementation of this class in {@code META-INF/versions/9}
+ * which is based on {@code VarHandle}, it is picked by JVM automatically on Java 9 and newer.
+ *
+ * @param <S> type of state
+ */
+abstract class LockFreeStateHolder<S> extends AbstractBucket {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<LockFreeStateHolder, Object> STATE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(LockFreeStateHolder.class, Object.class, "state");
+
+    private volatile S state;
+
+    final S getState() {
+        return state;
+    }
+
+    final void setState(S newState) {
+        this.state = newState;
+    }
+
+    final boolean compareAndSetState(S expectedState, S newState) {
+        return STATE_UPDATER.compareAndSet(this, expectedState, newState);
+    }
+
+}
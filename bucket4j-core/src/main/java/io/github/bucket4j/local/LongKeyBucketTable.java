@@ -0,0 +1,475 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compact storage of many buckets which share same configuration and addressed by primitive {@code long} keys,
+ * for example by client IP or user identifier.
+ *
+ * <p>
+ * Instead of dedicated bucket object per key, the states of all buckets are stored inside large {@code long[]} arrays,
+ * so each key costs <tt>8 * (2 + 2 * bandwidths)</tt> bytes divided by load factor, for example ~43 bytes for configuration with single bandwidth.
+ * The table is split into segments, each segment is an open-addressing hash table with linear probing which protected by own {@link ReentrantLock},
+ * so contended access does not pin the carrier thread when table is used from virtual threads.
+ * Key and state of bucket are stored side by side in the same array, so the lookup and update of bucket usually touches single cache line.
+ *
+ * <p>
+ * The buckets are created lazily on first access to the key with initial state defined by configuration,
+ * and live until {@link #remove(long)} is called for the key. The semantic of operations is the same as semantic of {@link Bucket} methods with the same name.
+ *
+ * <p>
+ * The capacity of each segment is limited by maximum length of java array, for example ~200 millions of keys for configuration with single bandwidth,
+ * the attempt to create the bucket for new key in the full segment fails with {@link IllegalStateException}.
+ */
+public class LongKeyBucketTable {
+
+    private static final int DEFAULT_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 24;
+    // some VMs reserve header words in arrays, so the length which is close to Integer.MAX_VALUE can not be allocated
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final TimeMeter timeMeter;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final Lock replaceLock = new ReentrantLock();
+    private volatile BucketConfiguration configuration;
+
+    public LongKeyBucketTable(BucketConfiguration configuration, TimeMeter timeMeter, int expectedKeys) {
+        this(configuration, timeMeter, expectedKeys, DEFAULT_SEGMENTS);
+    }
+
+    public LongKeyBucketTable(BucketConfiguration configuration, TimeMeter timeMeter, int expectedKeys, int segmentCount) {
+        if (configuration == null) {
+            throw BucketExceptions.nullConfiguration();
+        }
+        if (timeMeter == null) {
+            throw BucketExceptions.nullTimeMeter();
+        }
+        if (expectedKeys < 0) {
+            throw BucketExceptions.negativeExpectedKeys(expectedKeys);
+        }
+        if (segmentCount <= 0) {
+            throw BucketExceptions.nonPositiveSegments(segmentCount);
+        }
+        this.timeMeter = timeMeter;
+        this.configuration = configuration;
+
+        int segmentsPowerOfTwo = Integer.highestOneBit(segmentCount);
+        if (segmentsPowerOfTwo < segmentCount) {
+            segmentsPowerOfTwo <<= 1;
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentsPowerOfTwo);
+        this.segmentMask = segmentsPowerOfTwo - 1;
+        int segmentCapacity = tableSizeFor((long) expectedKeys * 4 / 3 / segmentsPowerOfTwo + 1);
+        this.segments = new Segment[segmentsPowerOfTwo];
+        for (int i = 0; i < segmentsPowerOfTwo; i++) {
+            segments[i] = new Segment(configuration, segmentCapacity);
+        }
+    }
+
+    /**
+     * Tries to consume a specified number of tokens from the bucket associated with the key.
+     *
+     * @param key the key of bucket
+     * @param numTokens The number of tokens to consume from the bucket, must be a positive number.
+     *
+     * @return {@code true} if the tokens were consumed, {@code false} otherwise.
+     */
+    public boolean tryConsume(long key, long numTokens) {
+        checkTokensToConsume(numTokens);
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        segment.lock();
+        try {
+            int offset = segment.findOrInsert(key, hash, currentTimeNanos);
+            Bandwidth[] bandwidths = segment.configuration.getBandwidths();
+            BucketState state = segment.load(offset, bandwidths, currentTimeNanos);
+            long availableToConsume = state.getAvailableTokens(bandwidths);
+            if (numTokens > availableToConsume) {
+                return false;
+            }
+            state.consume(bandwidths, numTokens);
+            segment.store(offset);
+            return true;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Tries to consume specified number of tokens from the bucket associated with the key.
+     *
+     * @param key the key of bucket
+     * @param numTokens The number of tokens to consume from the bucket, must be a positive number.
+     *
+     * @return {@link ConsumptionProbe} which describes both result of consumption and tokens remaining in the bucket after consumption.
+     */
+    public ConsumptionProbe tryConsumeAndReturnRemaining(long key, long numTokens) {
+        checkTokensToConsume(numTokens);
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        segment.lock();
+        try {
+            int offset = segment.findOrInsert(key, hash, currentTimeNanos);
+            Bandwidth[] bandwidths = segment.configuration.getBandwidths();
+            BucketState state = segment.load(offset, bandwidths, currentTimeNanos);
+            long availableToConsume = state.getAvailableTokens(bandwidths);
+            if (numTokens > availableToConsume) {
+                long nanosToWaitForRefill = state.delayNanosAfterWillBePossibleToConsume(bandwidths, numTokens);
+                return ConsumptionProbe.rejected(availableToConsume, nanosToWaitForRefill);
+            }
+            state.consume(bandwidths, numTokens);
+            segment.store(offset);
+            return ConsumptionProbe.consumed(availableToConsume - numTokens);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Adds tokens to the bucket associated with the key.
+     *
+     * @param key the key of bucket
+     * @param tokensToAdd number of tokens to add
+     */
+    public void addTokens(long key, long tokensToAdd) {
+        if (tokensToAdd <= 0) {
+            throw new IllegalArgumentException("tokensToAdd should be >= 0");
+        }
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        segment.lock();
+        try {
+            int offset = segment.findOrInsert(key, hash, currentTimeNanos);
+            Bandwidth[] bandwidths = segment.configuration.getBandwidths();
+            BucketState state = segment.load(offset, bandwidths, currentTimeNanos);
+            state.addTokens(bandwidths, tokensToAdd);
+            segment.store(offset);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of available tokens in the bucket associated with the key.
+     * This method does not create the bucket if it does not exist yet.
+     *
+     * @param key the key of bucket
+     *
+     * @return amount of available tokens
+     */
+    public long getAvailableTokens(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        segment.lock();
+        try {
+            Bandwidth[] bandwidths = segment.configuration.getBandwidths();
+            int offset = segment.find(key, hash);
+            if (offset < 0) {
+                return BucketState.createInitialState(segment.configuration, currentTimeNanos).getAvailableTokens(bandwidths);
+            }
+            return segment.load(offset, bandwidths, currentTimeNanos).getAvailableTokens(bandwidths);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Creates the copy of state of the bucket associated with the key.
+     *
+     * @param key the key of bucket
+     *
+     * @return snapshot of bucket state, or {@code null} if there is no bucket for the key
+     */
+    public BucketState createSnapshot(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        segment.lock();
+        try {
+            int offset = segment.find(key, hash);
+            if (offset < 0) {
+                return null;
+            }
+            BucketState state = segment.scratchState.copy();
+            state.copyStateFrom(segment.table, offset + 1);
+            return state;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Removes the bucket associated with the key, the next access to the key will create the bucket from scratch.
+     *
+     * @param key the key of bucket
+     *
+     * @return {@code true} if bucket was removed, {@code false} if there was no bucket for the key
+     */
+    public boolean remove(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        segment.lock();
+        try {
+            return segment.remove(key, hash);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * @return count of buckets stored in this table
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Replaces configuration of all buckets stored in this table, rules of reconfiguration are described in {@link Bucket#replaceConfiguration(BucketConfiguration)}.
+     *
+     * @param newConfiguration the new configuration
+     */
+    public void replaceConfiguration(BucketConfiguration newConfiguration) {
+        if (newConfiguration == null) {
+            throw BucketExceptions.nullConfiguration();
+        }
+        replaceLock.lock();
+        try {
+            configuration.checkCompatibility(newConfiguration);
+            for (Segment segment : segments) {
+                long currentTimeNanos = timeMeter.currentTimeNanos();
+                segment.lock();
+                try {
+                    segment.replaceConfiguration(newConfiguration, currentTimeNanos);
+                } finally {
+                    segment.unlock();
+                }
+            }
+            configuration = newConfiguration;
+        } finally {
+            replaceLock.unlock();
+        }
+    }
+
+    public BucketConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    private Segment segmentFor(long hash) {
+        // shift by 64 is the same as shift by 0 in java, so mask is required when there is single segment
+        return segments[(int) (hash >>> segmentShift) & segmentMask];
+    }
+
+    private static void checkTokensToConsume(long tokensToConsume) {
+        if (tokensToConsume <= 0) {
+            throw BucketExceptions.nonPositiveTokensToConsume(tokensToConsume);
+        }
+    }
+
+    private static long hash(long key) {
+        // finalizer of MurmurHash3, high bits are used to select segment and low bits to select slot inside segment
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    // the largest power of two which keeps the length of table array inside the limit
+    static int maxSegmentCapacity(int stride) {
+        return Integer.highestOneBit(MAX_ARRAY_LENGTH / stride);
+    }
+
+    private static int tableSizeFor(long expectedSize) {
+        long size = MIN_SEGMENT_CAPACITY;
+        while (size < expectedSize && size < MAX_SEGMENT_CAPACITY) {
+            size <<= 1;
+        }
+        return (int) size;
+    }
+
+    private static final class Segment extends ReentrantLock {
+
+        // slot layout: [key, lastRefillTime, size0, roundingError0, ..., sizeN, roundingErrorN]
+        private final int stride;
+        private final int maxCapacity;
+        private BucketConfiguration configuration;
+        private BucketState scratchState;
+        private long[] table;
+        private long[] occupied;
+        private int capacity;
+        private int size;
+
+        Segment(BucketConfiguration configuration, int capacity) {
+            this.configuration = configuration;
+            this.scratchState = BucketState.createInitialState(configuration, 0);
+            this.stride = 1 + scratchState.getSizeInLongs();
+            this.maxCapacity = maxSegmentCapacity(stride);
+            allocate(Math.min(capacity, maxCapacity));
+        }
+
+        int find(long key, long hash) {
+            int mask = capacity - 1;
+            for (int slot = (int) hash & mask; isOccupied(slot); slot = (slot + 1) & mask) {
+                int offset = slot * stride;
+                if (table[offset] == key) {
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        int findOrInsert(long key, long hash, long currentTimeNanos) {
+            int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            for (; isOccupied(slot); slot = (slot + 1) & mask) {
+                int offset = slot * stride;
+                if (table[offset] == key) {
+                    return offset;
+                }
+            }
+            if ((size + 1) * 4L > capacity * 3L) {
+                resize();
+                return findOrInsert(key, hash, currentTimeNanos);
+            }
+            int offset = slot * stride;
+            table[offset] = key;
+            BucketState.createInitialState(configuration, currentTimeNanos).copyStateTo(table, offset + 1);
+            setOccupied(slot, true);
+            size++;
+            return offset;
+        }
+
+        BucketState load(int offset, Bandwidth[] bandwidths, long currentTimeNanos) {
+            scratchState.copyStateFrom(table, offset + 1);
+            scratchState.refillAllBandwidth(bandwidths, currentTimeNanos);
+            return scratchState;
+        }
+
+        void store(int offset) {
+            scratchState.copyStateTo(table, offset + 1);
+        }
+
+        boolean remove(long key, long hash) {
+            int offset = find(key, hash);
+            if (offset < 0) {
+                return false;
+            }
+            // backward shift deletion, which keeps the chains of linear probing without tombstones
+            int mask = capacity - 1;
+            int hole = offset / stride;
+            int slot = hole;
+            while (true) {
+                slot = (slot + 1) & mask;
+                if (!isOccupied(slot)) {
+                    break;
+                }
+                int home = (int) hash(table[slot * stride]) & mask;
+                boolean canBeMoved = hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+                if (canBeMoved) {
+                    System.arraycopy(table, slot * stride, table, hole * stride, stride);
+                    hole = slot;
+                }
+            }
+            setOccupied(hole, false);
+            size--;
+            return true;
+        }
+
+        void replaceConfiguration(BucketConfiguration newConfiguration, long currentTimeNanos) {
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            for (int slot = 0; slot < capacity; slot++) {
+                if (isOccupied(slot)) {
+                    int offset = slot * stride;
+                    load(offset, bandwidths, currentTimeNanos);
+                    store(offset);
+                }
+            }
+            configuration = newConfiguration;
+        }
+
+        private void resize() {
+            if (capacity >= maxCapacity) {
+                throw BucketExceptions.segmentIsFull(size, capacity);
+            }
+            long[] oldTable = table;
+            long[] oldOccupied = occupied;
+            int oldCapacity = capacity;
+            allocate(oldCapacity * 2);
+            int mask = capacity - 1;
+            for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+                if ((oldOccupied[oldSlot >>> 6] & (1L << oldSlot)) == 0) {
+                    continue;
+                }
+                int oldOffset = oldSlot * stride;
+                int slot = (int) hash(oldTable[oldOffset]) & mask;
+                while (isOccupied(slot)) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(oldTable, oldOffset, table, slot * stride, stride);
+                setOccupied(slot, true);
+            }
+        }
+
+        private void allocate(int capacity) {
+            this.capacity = capacity;
+            this.table = new long[capacity * stride];
+            this.occupied = new long[(capacity + 63) >>> 6];
+        }
+
+        private boolean isOccupied(int slot) {
+            return (occupied[slot >>> 6] & (1L << slot)) != 0;
+        }
+
+        private void setOccupied(int slot, boolean value) {
+            if (value) {
+                occupied[slot >>> 6] |= 1L << slot;
+            } else {
+                occupied[slot >>> 6] &= ~(1L << slot);
+            }
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "LongKeyBucketTable{" +
+                "size=" + size() +
+                ", segments=" + segments.length +
+                ", configuration=" + configuration +
+                '}';
+    }
+
+}
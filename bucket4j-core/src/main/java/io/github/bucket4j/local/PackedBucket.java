@@ -0,0 +1,536 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Allocation free implementation of {@link LocalBucket} which is specialized for configurations with one or two bandwidths.
+ *
+ * <p>
+ * Instead of {@link BucketState} behind the reference, the state of bucket is stored directly in primitive fields of this object.
+ * The consistency of fields is protected by the version in the manner of sequence lock, version is even when state is stable and odd when the state is being written:
+ * <ul>
+ *     <li>Each operation reads the fields optimistically and validates that version was not changed during the read.
+ *     Read-only operations and rejected consumptions are completed at this point without any write to memory.</li>
+ *     <li>If operation needs to change the state, then it moves the version to odd value by CAS from the version which was validated on read,
+ *     writes the new values of fields and publishes the next even version.
+ *     In case of CAS failure the operation is retried from scratch.</li>
+ * </ul>
+ * The writer holds an odd version only for the time required to store a few primitive fields,
+ * there are no any calls to foreign code(like {@link TimeMeter}) inside this window.
+ * But this is still a lock: when writer is preempted by OS scheduler while version is odd, all other readers and writers spin until it is resumed.
+ * So this bucket is not lock-free, it is created only by {@link SynchronizationStrategy#SEQLOCK}.
+ */
+public class PackedBucket extends AbstractBucket implements LocalBucket {
+
+    public static final int MAX_BANDWIDTHS = 2;
+
+    private static final AtomicLongFieldUpdater<PackedBucket> VERSION_UPDATER = AtomicLongFieldUpdater.newUpdater(PackedBucket.class, "version");
+    private static final AtomicLongFieldUpdater<PackedBucket> LAST_REFILL_TIME_UPDATER = AtomicLongFieldUpdater.newUpdater(PackedBucket.class, "lastRefillTimeNanos");
+    private static final AtomicLongFieldUpdater<PackedBucket> CURRENT_SIZE_0_UPDATER = AtomicLongFieldUpdater.newUpdater(PackedBucket.class, "currentSize0");
+    private static final AtomicLongFieldUpdater<PackedBucket> ROUNDING_ERROR_0_UPDATER = AtomicLongFieldUpdater.newUpdater(PackedBucket.class, "roundingError0");
+    private static final AtomicLongFieldUpdater<PackedBucket> CURRENT_SIZE_1_UPDATER = AtomicLongFieldUpdater.newUpdater(PackedBucket.class, "currentSize1");
+    private static final AtomicLongFieldUpdater<PackedBucket> ROUNDING_ERROR_1_UPDATER = AtomicLongFieldUpdater.newUpdater(PackedBucket.class, "roundingError1");
+
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final TimeMeter timeMeter;
+    private final int bandwidthCount;
+
+    private volatile long version;
+    private volatile BucketConfiguration configuration;
+    private volatile long lastRefillTimeNanos;
+    private volatile long currentSize0;
+    private volatile long roundingError0;
+    private volatile long currentSize1;
+    private volatile long roundingError1;
+
+    public PackedBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        Bandwidth[] bandwidths = configuration.getBandwidths();
+        if (bandwidths.length > MAX_BANDWIDTHS) {
+            throw new IllegalArgumentException("PackedBucket supports at most " + MAX_BANDWIDTHS + " bandwidths");
+        }
+        this.timeMeter = timeMeter;
+        this.bandwidthCount = bandwidths.length;
+        this.configuration = configuration;
+
+        BucketState initialState = BucketState.createInitialState(configuration, timeMeter.currentTimeNanos());
+        this.lastRefillTimeNanos = initialState.getLastRefillTimeNanos();
+        for (int i = 0; i < bandwidthCount; i++) {
+            setCurrentSize(i, initialState.getCurrentSize(i));
+            setRoundingError(i, initialState.getRoundingError(i));
+        }
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    @Override
+    protected long consumeAsMuchAsPossibleImpl(long limit) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long stamp = awaitStableVersion();
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            long availableToConsume = calculateAvailableTokens(bandwidths, currentTimeNanos);
+            if (version != stamp) {
+                continue;
+            }
+            long toConsume = Math.min(limit, availableToConsume);
+            if (toConsume <= 0) {
+                return 0;
+            }
+            if (tryLock(stamp)) {
+                try {
+                    refill(bandwidths, currentTimeNanos);
+                    consume(toConsume);
+                } finally {
+                    unlock(stamp);
+                }
+                return toConsume;
+            }
+        }
+    }
+
+    @Override
+    protected boolean tryConsumeImpl(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long stamp = awaitStableVersion();
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            long availableToConsume = calculateAvailableTokens(bandwidths, currentTimeNanos);
+            if (version != stamp) {
+                continue;
+            }
+            if (tokensToConsume > availableToConsume) {
+                return false;
+            }
+            if (tryLock(stamp)) {
+                try {
+                    refill(bandwidths, currentTimeNanos);
+                    consume(tokensToConsume);
+                } finally {
+                    unlock(stamp);
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long stamp = awaitStableVersion();
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            long availableToConsume = calculateAvailableTokens(bandwidths, currentTimeNanos);
+            if (tokensToConsume > availableToConsume) {
+                long nanosToWaitForRefill = calculateDelayNanosAfterWillBePossibleToConsume(bandwidths, currentTimeNanos, tokensToConsume);
+                if (version != stamp) {
+                    continue;
+                }
+                return ConsumptionProbe.rejected(availableToConsume, nanosToWaitForRefill);
+            }
+            if (tryLock(stamp)) {
+                try {
+                    refill(bandwidths, currentTimeNanos);
+                    consume(tokensToConsume);
+                } finally {
+                    unlock(stamp);
+                }
+                return ConsumptionProbe.consumed(availableToConsume - tokensToConsume);
+            }
+        }
+    }
+
+    @Override
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long stamp = awaitStableVersion();
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            long availableToConsume = calculateAvailableTokens(bandwidths, currentTimeNanos);
+            int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, availableToConsume);
+            long tokensToConsume = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+            // consumption of prefix does not change the deficit for cumulative cost of the next request
+            long nanosToWaitForRefill = consumedCount == cumulativeCosts.length ? 0 :
+                    calculateDelayNanosAfterWillBePossibleToConsume(bandwidths, currentTimeNanos, cumulativeCosts[consumedCount]);
+            if (version != stamp) {
+                continue;
+            }
+            BatchConsumptionProbe probe = new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensToConsume,
+                    availableToConsume - tokensToConsume, nanosToWaitForRefill);
+            if (consumedCount == 0) {
+                return probe;
+            }
+            if (tryLock(stamp)) {
+                try {
+                    refill(bandwidths, currentTimeNanos);
+                    consume(tokensToConsume);
+                } finally {
+                    unlock(stamp);
+                }
+                return probe;
+            }
+        }
+    }
+
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long stamp = awaitStableVersion();
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            long nanosToCloseDeficit = calculateDelayNanosAfterWillBePossibleToConsume(bandwidths, currentTimeNanos, tokensToConsume);
+            if (version != stamp) {
+                continue;
+            }
+            if (nanosToCloseDeficit == Long.MAX_VALUE || nanosToCloseDeficit > waitIfBusyNanosLimit) {
+                return Long.MAX_VALUE;
+            }
+            if (tryLock(stamp)) {
+                try {
+                    refill(bandwidths, currentTimeNanos);
+                    consume(tokensToConsume);
+                } finally {
+                    unlock(stamp);
+                }
+                return nanosToCloseDeficit;
+            }
+        }
+    }
+
+    @Override
+    protected void addTokensImpl(long tokensToAdd) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long stamp = lock();
+        try {
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            refill(bandwidths, currentTimeNanos);
+            for (int i = 0; i < bandwidthCount; i++) {
+                addTokens(i, bandwidths[i], tokensToAdd);
+            }
+        } finally {
+            unlock(stamp);
+        }
+    }
+
+    @Override
+    protected void replaceConfigurationImpl(BucketConfiguration newConfiguration) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        long stamp = lock();
+        try {
+            BucketConfiguration previousConfiguration = configuration;
+            previousConfiguration.checkCompatibility(newConfiguration);
+            refill(previousConfiguration.getBandwidths(), currentTimeNanos);
+            configuration = newConfiguration;
+        } finally {
+            unlock(stamp);
+        }
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        while (true) {
+            long stamp = awaitStableVersion();
+            long availableTokens = calculateAvailableTokens(configuration.getBandwidths(), currentTimeNanos);
+            if (version == stamp) {
+                return availableTokens;
+            }
+        }
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> tryConsumeAsyncImpl(long tokensToConsume) {
+        boolean result = tryConsumeImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Void> addTokensAsyncImpl(long tokensToAdd) {
+        addTokensImpl(tokensToAdd);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected CompletableFuture<Void> replaceConfigurationAsyncImpl(BucketConfiguration newConfiguration) {
+        try {
+            replaceConfigurationImpl(newConfiguration);
+            return CompletableFuture.completedFuture(null);
+        } catch (IncompatibleConfigurationException e) {
+            CompletableFuture<Void> fail = new CompletableFuture<>();
+            fail.completeExceptionally(e);
+            return fail;
+        }
+    }
+
+    @Override
+    protected CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemainingTokensAsyncImpl(long tokensToConsume) {
+        ConsumptionProbe result = tryConsumeAndReturnRemainingTokensImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        BatchConsumptionProbe result = tryConsumeBatchImpl(cumulativeCosts);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> tryConsumeAsMuchAsPossibleAsyncImpl(long limit) {
+        long result = tryConsumeAsMuchAsPossible(limit);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> reserveAndCalculateTimeToSleepAsyncImpl(long tokensToConsume, long maxWaitTimeNanos) {
+        long result = reserveAndCalculateTimeToSleepImpl(tokensToConsume, maxWaitTimeNanos);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    public BucketState createSnapshot() {
+        while (true) {
+            long stamp = awaitStableVersion();
+            long lastRefill = lastRefillTimeNanos;
+            long[] sizesAndRoundingErrors = new long[bandwidthCount * 2];
+            for (int i = 0; i < bandwidthCount; i++) {
+                sizesAndRoundingErrors[i * 2] = getCurrentSize(i);
+                sizesAndRoundingErrors[i * 2 + 1] = getRoundingError(i);
+            }
+            if (version == stamp) {
+                return BucketState.fromRawData(lastRefill, sizesAndRoundingErrors);
+            }
+        }
+    }
+
+    @Override
+    public BucketConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    private long calculateAvailableTokens(Bandwidth[] bandwidths, long currentTimeNanos) {
+        long lastRefill = lastRefillTimeNanos;
+        long availableTokens = refilledSize(bandwidths[0], currentSize0, roundingError0, lastRefill, currentTimeNanos);
+        if (bandwidthCount > 1) {
+            availableTokens = Math.min(availableTokens, refilledSize(bandwidths[1], currentSize1, roundingError1, lastRefill, currentTimeNanos));
+        }
+        return availableTokens;
+    }
+
+    private long calculateDelayNanosAfterWillBePossibleToConsume(Bandwidth[] bandwidths, long currentTimeNanos, long tokensToConsume) {
+        long lastRefill = lastRefillTimeNanos;
+        long size = refilledSize(bandwidths[0], currentSize0, roundingError0, lastRefill, currentTimeNanos);
+        long delay = delayNanosAfterWillBePossibleToConsume(bandwidths[0], size, tokensToConsume);
+        if (bandwidthCount > 1) {
+            size = refilledSize(bandwidths[1], currentSize1, roundingError1, lastRefill, currentTimeNanos);
+            delay = Math.max(delay, delayNanosAfterWillBePossibleToConsume(bandwidths[1], size, tokensToConsume));
+        }
+        return delay;
+    }
+
+    // ---------------------- methods which must be called only by writer which holds odd version ----------------------
+
+    private void refill(Bandwidth[] bandwidths, long currentTimeNanos) {
+        long lastRefill = lastRefillTimeNanos;
+        if (currentTimeNanos <= lastRefill) {
+            return;
+        }
+        long durationSinceLastRefillNanos = currentTimeNanos - lastRefill;
+        for (int i = 0; i < bandwidthCount; i++) {
+            refill(i, bandwidths[i], getCurrentSize(i), getRoundingError(i), durationSinceLastRefillNanos, true);
+        }
+        LAST_REFILL_TIME_UPDATER.lazySet(this, currentTimeNanos);
+    }
+
+    private void consume(long tokensToConsume) {
+        for (int i = 0; i < bandwidthCount; i++) {
+            setCurrentSize(i, getCurrentSize(i) - tokensToConsume);
+        }
+    }
+
+    private void addTokens(int bandwidthIndex, Bandwidth bandwidth, long tokensToAdd) {
+        long currentSize = getCurrentSize(bandwidthIndex);
+        long newSize = currentSize + tokensToAdd;
+        if (newSize >= bandwidth.getCapacity() || newSize < currentSize) {
+            // the second condition means that arithmetic overflow happens, so just reset bandwidth state
+            setCurrentSize(bandwidthIndex, bandwidth.getCapacity());
+            setRoundingError(bandwidthIndex, 0);
+        } else {
+            setCurrentSize(bandwidthIndex, newSize);
+        }
+    }
+
+    private long getCurrentSize(int bandwidthIndex) {
+        return bandwidthIndex == 0 ? currentSize0 : currentSize1;
+    }
+
+    private long getRoundingError(int bandwidthIndex) {
+        return bandwidthIndex == 0 ? roundingError0 : roundingError1;
+    }
+
+    private void setCurrentSize(int bandwidthIndex, long currentSize) {
+        (bandwidthIndex == 0 ? CURRENT_SIZE_0_UPDATER : CURRENT_SIZE_1_UPDATER).lazySet(this, currentSize);
+    }
+
+    private void setRoundingError(int bandwidthIndex, long roundingError) {
+        (bandwidthIndex == 0 ? ROUNDING_ERROR_0_UPDATER : ROUNDING_ERROR_1_UPDATER).lazySet(this, roundingError);
+    }
+
+    // ---------------------- version management ----------------------
+
+    private long awaitStableVersion() {
+        int spins = 0;
+        while (true) {
+            long stamp = version;
+            if ((stamp & 1) == 0) {
+                return stamp;
+            }
+            if (++spins % SPINS_BEFORE_YIELD == 0) {
+                // the writer was likely preempted by OS scheduler
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean tryLock(long stamp) {
+        return VERSION_UPDATER.compareAndSet(this, stamp, stamp + 1);
+    }
+
+    private long lock() {
+        while (true) {
+            long stamp = awaitStableVersion();
+            if (tryLock(stamp)) {
+                return stamp;
+            }
+        }
+    }
+
+    private void unlock(long stamp) {
+        VERSION_UPDATER.lazySet(this, stamp + 2);
+    }
+
+    // ---------------------- arithmetic which mirrors BucketState ----------------------
+
+    private long refilledSize(Bandwidth bandwidth, long currentSize, long roundingError, long lastRefillTimeNanos, long currentTimeNanos) {
+        if (currentTimeNanos <= lastRefillTimeNanos) {
+            return currentSize;
+        }
+        return refill(-1, bandwidth, currentSize, roundingError, currentTimeNanos - lastRefillTimeNanos, false);
+    }
+
+    /**
+     * Does the same calculation as {@link BucketState#refillAllBandwidth(Bandwidth[], long)} for one bandwidth and returns new size.
+     * The new size and rounding error are stored to the fields of bandwidth only when {@code store} is true,
+     * this must be done only by writer which holds odd version.
+     */
+    private long refill(int bandwidthIndex, Bandwidth bandwidth, long currentSize, long roundingError, long durationSinceLastRefillNanos, boolean store) {
+        final long capacity = bandwidth.getCapacity();
+        final long refillPeriodNanos = bandwidth.getRefill().getPeriodNanos();
+        final long refillTokens = bandwidth.getRefill().getTokens();
+
+        long newSize = currentSize;
+        if (durationSinceLastRefillNanos > refillPeriodNanos) {
+            long elapsedPeriods = durationSinceLastRefillNanos / refillPeriodNanos;
+            long calculatedRefill = elapsedPeriods * refillTokens;
+            newSize += calculatedRefill;
+            if (newSize > capacity || newSize < currentSize) {
+                // the second condition means that arithmetic overflow happens, so just reset bandwidth state
+                return storeRefill(bandwidthIndex, capacity, 0, store);
+            }
+            durationSinceLastRefillNanos %= refillPeriodNanos;
+        }
+
+        long dividedWithoutError = multiplyExactOrReturnMaxValue(refillTokens, durationSinceLastRefillNanos);
+        long divided = dividedWithoutError + roundingError;
+        if (divided < 0 || dividedWithoutError == Long.MAX_VALUE) {
+            // arithmetic overflow happens.
+            // there is no sense to stay in integer arithmetic when having deal with so big numbers
+            newSize += (long) ((double) durationSinceLastRefillNanos / (double) refillPeriodNanos * (double) refillTokens);
+            roundingError = 0;
+        } else {
+            long calculatedRefill = divided / refillPeriodNanos;
+            if (calculatedRefill == 0) {
+                roundingError = divided;
+            } else {
+                newSize += calculatedRefill;
+                roundingError = divided % refillPeriodNanos;
+            }
+        }
+
+        if (newSize >= capacity || newSize < currentSize) {
+            return storeRefill(bandwidthIndex, capacity, 0, store);
+        }
+        return storeRefill(bandwidthIndex, newSize, roundingError, store);
+    }
+
+    private long storeRefill(int bandwidthIndex, long newSize, long newRoundingError, boolean store) {
+        if (store) {
+            setCurrentSize(bandwidthIndex, newSize);
+            setRoundingError(bandwidthIndex, newRoundingError);
+        }
+        return newSize;
+    }
+
+    private static long delayNanosAfterWillBePossibleToConsume(Bandwidth bandwidth, long currentSize, long tokens) {
+        if (tokens <= currentSize) {
+            return 0;
+        }
+        long deficit = tokens - currentSize;
+        long refillPeriodNanos = bandwidth.getRefill().getPeriodNanos();
+        long refillPeriodTokens = bandwidth.getRefill().getTokens();
+
+        long divided = multiplyExactOrReturnMaxValue(refillPeriodNanos, deficit);
+        if (divided == Long.MAX_VALUE) {
+            // arithmetic overflow happens.
+            // there is no sense to stay in integer arithmetic when having deal with so big numbers
+            return (long)((double) deficit / (double) refillPeriodTokens * (double) refillPeriodNanos);
+        } else {
+            return divided / refillPeriodTokens;
+        }
+    }
+
+    // just a copy of JDK method Math#multiplyExact,
+    // but instead of throwing exception it returns Long.MAX_VALUE in case of overflow
+    private static long multiplyExactOrReturnMaxValue(long x, long y) {
+        long r = x * y;
+        long ax = Math.abs(x);
+        long ay = Math.abs(y);
+        if (((ax | ay) >>> 31 != 0)) {
+            if (((y != 0) && (r / y != x)) || (x == Long.MIN_VALUE && y == -1)) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedBucket{" +
+                "state=" + createSnapshot() +
+                ", configuration=" + getConfiguration() +
+                '}';
+    }
+
+}
@@ -0,0 +1,612 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Implementation of {@link LocalBucket} which splits the limits between independent cells, in the same manner as {@link java.util.concurrent.atomic.LongAdder}
+ * splits the counter. This bucket is intended for extremely hot limits shared between many threads,
+ * where CAS on single state of {@link LockFreeBucket} becomes the point of contention.
+ *
+ * <p>
+ * Each cell is ordinary lock-free bucket which receives the <tt>1/N</tt> part of capacity and initial tokens of each bandwidth
+ * (remainder is distributed between first cells), the refill of each cell is <tt>N</tt> times slower than original,
+ * so the sum of capacities and the sum of refill rates of all cells are exactly equal to original.
+ * The cells are padded in order to keep them in different cache lines.
+ * Each thread has the home cell chosen by thread identifier, the thread moves to another home cell when it meets the contention on current one,
+ * when tokens in the home cell are not enough, the missing tokens are borrowed from other cells.
+ * If all cells together can not satisfy the request, then all borrowed tokens are returned back via {@link Bucket#addTokens(long)}.
+ *
+ * <p>
+ * Bounds of inaccuracy in comparison with non-striped bucket:
+ * <ul>
+ *     <li><b>Over-admission:</b> never. The total count of tokens in all cells never exceeds the capacity,
+ *     and the total refill rate never exceeds the refill rate of original bandwidth.
+ *     The only exception is replacement of configuration, the requests which have been started before replacement
+ *     can consume the tokens which are refilled by replaced cells after their tokens were moved to new cells,
+ *     this is bounded by the refill rate multiplied by duration of single request.</li>
+ *     <li><b>Under-admission:</b> when several bandwidths are configured, the available tokens of each cell is the minimum across its bandwidths,
+ *     so the sum of minimums can be lesser than minimum of sums. In addition the request can be rejected
+ *     when concurrent request temporary holds the borrowed tokens before return them back,
+ *     and returned tokens can be lost if the cell has been refilled up to its capacity in the meantime.
+ *     In any case the lost of tokens is bounded by the size of concurrently rejected requests.
+ *     Also each cell accumulates fractional part of refilled tokens separately, so up to <tt>N - 1</tt> tokens can be refilled later than in non-striped bucket.</li>
+ *     <li><b>Waiting time:</b> the time to wait which is reported by {@link ConsumptionProbe} is calculated for sum of all cells,
+ *     and the blocking consumption reserves the tokens proportionally in all cells.</li>
+ *     <li><b>Remaining tokens:</b> summing of all cells is too expensive for each request, so when request is satisfied by the home cell
+ *     the remaining tokens reported by {@link ConsumptionProbe} and {@link BatchConsumptionProbe} are estimated as remaining tokens of home cell
+ *     multiplied by count of cells. The exact value is returned by {@link #getAvailableTokens()}.</li>
+ * </ul>
+ *
+ * <p>
+ * The count of cells is limited by smallest capacity across bandwidths, because each cell needs at least one token of capacity.
+ *
+ * @see SynchronizationStrategy#STRIPED
+ */
+public class StripedBucket extends AbstractBucket implements LocalBucket {
+
+    // results of single attempt to consume tokens from cell
+    static final int CONSUMED = 0;
+    static final int REJECTED = 1;
+    static final int CONTENDED = 2;
+
+    private static final ThreadLocal<Probe> PROBES = ThreadLocal.withInitial(Probe::new);
+
+    private final TimeMeter timeMeter;
+    private final int cellCount;
+    private volatile Stripes stripes;
+
+    public StripedBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        this(configuration, timeMeter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedBucket(BucketConfiguration configuration, TimeMeter timeMeter, int stripes) {
+        if (stripes <= 0) {
+            throw BucketExceptions.nonPositiveStripes(stripes);
+        }
+        this.timeMeter = timeMeter;
+        this.cellCount = (int) Math.min(stripes, minCapacity(configuration));
+        this.stripes = new Stripes(configuration, createCells(configuration));
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    @Override
+    protected long consumeAsMuchAsPossibleImpl(long limit) {
+        Cell[] cells = stripes.cells;
+        int homeIndex = homeIndex(currentProbe());
+        long consumed = 0;
+        for (int i = 0; i < cellCount && consumed < limit; i++) {
+            Cell cell = cells[(homeIndex + i) % cellCount];
+            consumed += cell.tryConsumeAsMuchAsPossible(limit - consumed);
+        }
+        return consumed;
+    }
+
+    @Override
+    protected boolean tryConsumeImpl(long tokensToConsume) {
+        Cell[] cells = stripes.cells;
+        Probe probe = currentProbe();
+        return tryConsumeFromHomeCell(cells, probe, tokensToConsume)
+                || borrow(cells, homeIndex(probe), tokensToConsume);
+    }
+
+    @Override
+    protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
+        Stripes stripes = this.stripes;
+        Probe probe = currentProbe();
+        if (tryConsumeFromHomeCell(stripes.cells, probe, tokensToConsume)) {
+            return ConsumptionProbe.consumed(estimateRemainingTokens(stripes.cells[homeIndex(probe)]));
+        }
+        if (borrow(stripes.cells, homeIndex(probe), tokensToConsume)) {
+            return ConsumptionProbe.consumed(getAvailableTokens(stripes));
+        }
+        BucketState aggregatedState = createSnapshot(stripes);
+        Bandwidth[] bandwidths = stripes.configuration.getBandwidths();
+        long availableTokens = getAvailableTokens(stripes);
+        long nanosToWaitForRefill = aggregatedState.delayNanosAfterWillBePossibleToConsume(bandwidths, tokensToConsume);
+        return ConsumptionProbe.rejected(availableTokens, nanosToWaitForRefill);
+    }
+
+    @Override
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        Stripes stripes = this.stripes;
+        Probe probe = currentProbe();
+        long totalCost = cumulativeCosts[cumulativeCosts.length - 1];
+        if (tryConsumeFromHomeCell(stripes.cells, probe, totalCost)) {
+            long remainingTokens = estimateRemainingTokens(stripes.cells[homeIndex(probe)]);
+            return new BatchConsumptionProbe(cumulativeCosts.length, cumulativeCosts.length, totalCost, remainingTokens, 0);
+        }
+
+        // the tokens are spread across the cells, so the prefix is chosen by the sum of cells and then consumed with borrowing,
+        // the prefix is shrunk when concurrent requests have taken the tokens in the meantime
+        int homeIndex = homeIndex(probe);
+        int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, getAvailableTokens(stripes));
+        while (consumedCount > 0 && !borrow(stripes.cells, homeIndex, cumulativeCosts[consumedCount - 1])) {
+            consumedCount--;
+        }
+        long consumedTokens = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+        long nanosToWaitForRefill = 0;
+        if (consumedCount < cumulativeCosts.length) {
+            BucketState aggregatedState = createSnapshot(stripes);
+            long nextCost = cumulativeCosts[consumedCount] - consumedTokens;
+            nanosToWaitForRefill = aggregatedState.delayNanosAfterWillBePossibleToConsume(stripes.configuration.getBandwidths(), nextCost);
+        }
+        return new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, consumedTokens, getAvailableTokens(stripes), nanosToWaitForRefill);
+    }
+
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
+        Cell[] cells = stripes.cells;
+        Probe probe = currentProbe();
+        if (tryConsumeFromHomeCell(cells, probe, tokensToConsume) || borrow(cells, homeIndex(probe), tokensToConsume)) {
+            return 0;
+        }
+        long[] shares = split(tokensToConsume);
+        long nanosToCloseDeficit = 0;
+        for (int i = 0; i < cellCount; i++) {
+            if (shares[i] == 0) {
+                continue;
+            }
+            long cellNanos = cells[i].reserve(shares[i], waitIfBusyNanosLimit);
+            if (cellNanos == Long.MAX_VALUE) {
+                // rollback reservations which were done in previous cells
+                for (int j = 0; j < i; j++) {
+                    if (shares[j] > 0) {
+                        cells[j].addTokens(shares[j]);
+                    }
+                }
+                return Long.MAX_VALUE;
+            }
+            nanosToCloseDeficit = Math.max(nanosToCloseDeficit, cellNanos);
+        }
+        return nanosToCloseDeficit;
+    }
+
+    @Override
+    protected void addTokensImpl(long tokensToAdd) {
+        Cell[] cells = stripes.cells;
+        long[] shares = split(tokensToAdd);
+        for (int i = 0; i < cellCount; i++) {
+            if (shares[i] > 0) {
+                cells[i].addTokens(shares[i]);
+            }
+        }
+    }
+
+    @Override
+    protected synchronized void replaceConfigurationImpl(BucketConfiguration newConfiguration) {
+        Stripes previousStripes = this.stripes;
+        previousStripes.configuration.checkCompatibility(newConfiguration);
+        if (minCapacity(newConfiguration) < cellCount) {
+            throw new IncompatibleConfigurationException(previousStripes.configuration, newConfiguration);
+        }
+        // the tokens of each cell are moved to the new cell with new configuration, and then all new cells are published at once,
+        // so nobody can observe the mix of old and new configurations
+        BucketConfiguration[] cellConfigurations = splitConfiguration(newConfiguration);
+        Cell[] newCells = new Cell[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            newCells[i] = previousStripes.cells[i].moveTo(cellConfigurations[i], timeMeter);
+        }
+        this.stripes = new Stripes(newConfiguration, newCells);
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        return getAvailableTokens(stripes);
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> tryConsumeAsyncImpl(long tokensToConsume) {
+        boolean result = tryConsumeImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Void> addTokensAsyncImpl(long tokensToAdd) {
+        addTokensImpl(tokensToAdd);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected CompletableFuture<Void> replaceConfigurationAsyncImpl(BucketConfiguration newConfiguration) {
+        try {
+            replaceConfigurationImpl(newConfiguration);
+            return CompletableFuture.completedFuture(null);
+        } catch (IncompatibleConfigurationException e) {
+            CompletableFuture<Void> fail = new CompletableFuture<>();
+            fail.completeExceptionally(e);
+            return fail;
+        }
+    }
+
+    @Override
+    protected CompletableFuture<ConsumptionProbe> tryConsumeAndReturnRemainingTokensAsyncImpl(long tokensToConsume) {
+        ConsumptionProbe result = tryConsumeAndReturnRemainingTokensImpl(tokensToConsume);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        BatchConsumptionProbe result = tryConsumeBatchImpl(cumulativeCosts);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> tryConsumeAsMuchAsPossibleAsyncImpl(long limit) {
+        long result = tryConsumeAsMuchAsPossible(limit);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    protected CompletableFuture<Long> reserveAndCalculateTimeToSleepAsyncImpl(long tokensToConsume, long maxWaitTimeNanos) {
+        long result = reserveAndCalculateTimeToSleepImpl(tokensToConsume, maxWaitTimeNanos);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    /**
+     * Returns the state aggregated across all cells and refilled up to current time.
+     * Sizes of bandwidths are summed, rounding errors are converted from the slower refill of cells to refill of original bandwidth.
+     *
+     * @return the aggregated state
+     */
+    @Override
+    public BucketState createSnapshot() {
+        return createSnapshot(stripes);
+    }
+
+    @Override
+    public BucketConfiguration getConfiguration() {
+        return stripes.configuration;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    // returns true when tokens have been consumed from the home cell of current thread
+    private boolean tryConsumeFromHomeCell(Cell[] cells, Probe probe, long tokensToConsume) {
+        while (true) {
+            int result = cells[homeIndex(probe)].tryConsumeOnce(tokensToConsume);
+            if (result != CONTENDED) {
+                return result == CONSUMED;
+            }
+            // another thread has updated the same cell, so current thread moves to another cell in the same manner as LongAdder does
+            probe.advance();
+        }
+    }
+
+    private boolean borrow(Cell[] cells, int homeIndex, long tokensToConsume) {
+        long[] borrowed = null;
+        long borrowedTotal = 0;
+        for (int i = 1; i < cellCount && borrowedTotal < tokensToConsume; i++) {
+            int cellIndex = (homeIndex + i) % cellCount;
+            long consumed = cells[cellIndex].tryConsumeAsMuchAsPossible(tokensToConsume - borrowedTotal);
+            if (consumed > 0) {
+                if (borrowed == null) {
+                    borrowed = new long[cellCount];
+                }
+                borrowed[cellIndex] = consumed;
+                borrowedTotal += consumed;
+            }
+        }
+        if (borrowedTotal < tokensToConsume) {
+            // take the rest from home cell, it could be refilled since first attempt
+            long consumed = cells[homeIndex].tryConsumeAsMuchAsPossible(tokensToConsume - borrowedTotal);
+            if (consumed > 0) {
+                if (borrowed == null) {
+                    borrowed = new long[cellCount];
+                }
+                borrowed[homeIndex] = consumed;
+                borrowedTotal += consumed;
+            }
+        }
+        if (borrowedTotal == tokensToConsume) {
+            return true;
+        }
+        // it is impossible to satisfy request, so return back all borrowed tokens
+        if (borrowed != null) {
+            for (int i = 0; i < cellCount; i++) {
+                if (borrowed[i] > 0) {
+                    cells[i].addTokens(borrowed[i]);
+                }
+            }
+        }
+        return false;
+    }
+
+    private long estimateRemainingTokens(Cell homeCell) {
+        long remainingTokens = homeCell.getAvailableTokens();
+        return remainingTokens > Long.MAX_VALUE / cellCount ? Long.MAX_VALUE : remainingTokens * cellCount;
+    }
+
+    private long getAvailableTokens(Stripes stripes) {
+        long availableTokens = 0;
+        for (Cell cell : stripes.cells) {
+            availableTokens += cell.getAvailableTokens();
+        }
+        return availableTokens;
+    }
+
+    private BucketState createSnapshot(Stripes stripes) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        int bandwidthCount = stripes.configuration.getBandwidths().length;
+        long[] sizesAndRoundingErrors = new long[bandwidthCount * 2];
+        for (Cell cell : stripes.cells) {
+            BucketState cellState = cell.createSnapshot();
+            cellState.refillAllBandwidth(cell.getConfiguration().getBandwidths(), currentTimeNanos);
+            for (int i = 0; i < bandwidthCount; i++) {
+                sizesAndRoundingErrors[i * 2] += cellState.getCurrentSize(i);
+                sizesAndRoundingErrors[i * 2 + 1] += cellState.getRoundingError(i);
+            }
+        }
+        for (int i = 0; i < bandwidthCount; i++) {
+            sizesAndRoundingErrors[i * 2 + 1] /= cellCount;
+        }
+        return BucketState.fromRawData(currentTimeNanos, sizesAndRoundingErrors);
+    }
+
+    private int homeIndex(Probe probe) {
+        return (probe.hash & Integer.MAX_VALUE) % cellCount;
+    }
+
+    private static Probe currentProbe() {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            // virtual threads are usually created per task, so there is no sense to remember the probe in thread local
+            return new Probe();
+        }
+        return PROBES.get();
+    }
+
+    private long[] split(long tokens) {
+        long[] shares = new long[cellCount];
+        long share = tokens / cellCount;
+        long remainder = tokens % cellCount;
+        for (int i = 0; i < cellCount; i++) {
+            shares[i] = i < remainder ? share + 1 : share;
+        }
+        return shares;
+    }
+
+    private Cell[] createCells(BucketConfiguration configuration) {
+        BucketConfiguration[] cellConfigurations = splitConfiguration(configuration);
+        Cell[] cells = new Cell[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cells[i] = createCell(cellConfigurations[i], timeMeter);
+        }
+        return cells;
+    }
+
+    private static Cell createCell(BucketConfiguration cellConfiguration, TimeMeter timeMeter) {
+        if (cellConfiguration.isGcraState()) {
+            return new GcraCell(cellConfiguration, timeMeter);
+        }
+        return new LockFreeCell(cellConfiguration, timeMeter);
+    }
+
+    private BucketConfiguration[] splitConfiguration(BucketConfiguration configuration) {
+        LocalBucketBuilder[] builders = new LocalBucketBuilder[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            builders[i] = new LocalBucketBuilder();
+        }
+        Bandwidth[] bandwidths = configuration.getBandwidths();
+        long[] initialTokens = configuration.getBandwidthsInitialTokens();
+        for (int b = 0; b < bandwidths.length; b++) {
+            Bandwidth bandwidth = bandwidths[b];
+            long[] capacities = split(bandwidth.getCapacity());
+            long[] initialTokenShares = initialTokens[b] == BucketConfiguration.INITIAL_TOKENS_UNSPECIFIED ? null : split(initialTokens[b]);
+            Refill refill = splitRefill(bandwidth.getRefill());
+            for (int i = 0; i < cellCount; i++) {
+                Bandwidth cellBandwidth = Bandwidth.classic(capacities[i], refill);
+                if (initialTokenShares == null) {
+                    builders[i].addLimit(cellBandwidth);
+                } else {
+                    builders[i].addLimit(initialTokenShares[i], cellBandwidth);
+                }
+            }
+        }
+        BucketConfiguration[] cellConfigurations = new BucketConfiguration[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cellConfigurations[i] = builders[i].buildConfiguration();
+            if (configuration.isGcraState() && GcraState.isCompatible(cellConfigurations[i])) {
+                // the rounding of split refill can make the cell incompatible with GCRA, then the cell keeps the usual state
+                cellConfigurations[i] = builders[i].withGcraState().buildConfiguration();
+            }
+        }
+        return cellConfigurations;
+    }
+
+    private Refill splitRefill(Refill refill) {
+        long tokens = refill.getTokens();
+        long periodNanos = refill.getPeriodNanos();
+        if (tokens % cellCount == 0) {
+            return Refill.smooth(tokens / cellCount, Duration.ofNanos(periodNanos));
+        }
+        if (periodNanos <= Long.MAX_VALUE / cellCount) {
+            return Refill.smooth(tokens, Duration.ofNanos(periodNanos * cellCount));
+        }
+        // period is so long that refill is not observable in practice, so the small rounding of rate does not matter
+        return Refill.smooth(Math.max(1, tokens / cellCount), Duration.ofNanos(periodNanos));
+    }
+
+    private static long minCapacity(BucketConfiguration configuration) {
+        long minCapacity = Long.MAX_VALUE;
+        for (Bandwidth bandwidth : configuration.getBandwidths()) {
+            minCapacity = Math.min(minCapacity, bandwidth.getCapacity());
+        }
+        return minCapacity;
+    }
+
+    // moves the tokens between cells with different representation of state, this is exact for single bandwidth
+    private static Cell moveTokens(Cell source, BucketConfiguration cellConfiguration, TimeMeter timeMeter) {
+        long tokens = source.tryConsumeAsMuchAsPossible();
+        Cell target = createCell(cellConfiguration, timeMeter);
+        target.tryConsumeAsMuchAsPossible();
+        if (tokens > 0) {
+            target.addTokens(tokens);
+        }
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedBucket{" +
+                "cellCount=" + cellCount +
+                ", state=" + createSnapshot() +
+                ", configuration=" + getConfiguration() +
+                '}';
+    }
+
+    // configuration and cells are replaced together by single volatile write
+    private static final class Stripes {
+
+        final BucketConfiguration configuration;
+        final Cell[] cells;
+
+        Stripes(BucketConfiguration configuration, Cell[] cells) {
+            this.configuration = configuration;
+            this.cells = cells;
+        }
+
+    }
+
+    private interface Cell extends LocalBucket {
+
+        /**
+         * Makes single attempt to consume the tokens without retry after failed CAS.
+         *
+         * @return {@code CONSUMED}, {@code REJECTED} or {@code CONTENDED} when CAS has failed
+         */
+        int tryConsumeOnce(long tokensToConsume);
+
+        long reserve(long tokensToConsume, long waitIfBusyNanosLimit);
+
+        /**
+         * Atomically takes all tokens from this cell and moves them to new cell with specified configuration.
+         * This cell is left empty, because the concurrent requests can still access it.
+         *
+         * @return the new cell
+         */
+        Cell moveTo(BucketConfiguration cellConfiguration, TimeMeter timeMeter);
+
+    }
+
+    // The cells are allocated one after another, so the padding after the fields of each cell
+    // keeps the hot state of neighbour cells in different cache lines, including the adjacent line which is prefetched together.
+    @SuppressWarnings("unused")
+    private static final class LockFreeCell extends LockFreeBucket implements Cell {
+
+        long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15, p16;
+
+        LockFreeCell(BucketConfiguration configuration, TimeMeter timeMeter) {
+            super(configuration, timeMeter);
+        }
+
+        @Override
+        public int tryConsumeOnce(long tokensToConsume) {
+            return tryConsumeWithoutRetry(tokensToConsume);
+        }
+
+        @Override
+        public long reserve(long tokensToConsume, long waitIfBusyNanosLimit) {
+            return reserveAndCalculateTimeToSleepImpl(tokensToConsume, waitIfBusyNanosLimit);
+        }
+
+        @Override
+        public Cell moveTo(BucketConfiguration cellConfiguration, TimeMeter timeMeter) {
+            if (cellConfiguration.isGcraState()) {
+                return moveTokens(this, cellConfiguration, timeMeter);
+            }
+            // the state of each bandwidth is kept as is, in the same way as LockFreeBucket#replaceConfiguration does
+            long currentTimeNanos = timeMeter.currentTimeNanos();
+            while (true) {
+                StateWithConfiguration previousState = getState();
+                Bandwidth[] bandwidths = previousState.configuration.getBandwidths();
+                BucketState movedState = previousState.state.copy();
+                movedState.refillAllBandwidth(bandwidths, currentTimeNanos);
+                BucketState emptyState = BucketState.fromRawData(currentTimeNanos, new long[bandwidths.length * 2]);
+                if (compareAndSetState(previousState, new StateWithConfiguration(previousState.configuration, emptyState))) {
+                    LockFreeCell target = new LockFreeCell(cellConfiguration, timeMeter);
+                    target.setState(new StateWithConfiguration(cellConfiguration, movedState));
+                    return target;
+                }
+            }
+        }
+
+    }
+
+    @SuppressWarnings("unused")
+    private static final class GcraCell extends GcraBucket implements Cell {
+
+        long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15, p16;
+
+        GcraCell(BucketConfiguration configuration, TimeMeter timeMeter) {
+            super(configuration, timeMeter);
+        }
+
+        @Override
+        public int tryConsumeOnce(long tokensToConsume) {
+            return tryConsumeWithoutRetry(tokensToConsume);
+        }
+
+        @Override
+        public long reserve(long tokensToConsume, long waitIfBusyNanosLimit) {
+            return reserveAndCalculateTimeToSleepImpl(tokensToConsume, waitIfBusyNanosLimit);
+        }
+
+        @Override
+        public Cell moveTo(BucketConfiguration cellConfiguration, TimeMeter timeMeter) {
+            return moveTokens(this, cellConfiguration, timeMeter);
+        }
+
+    }
+
+    // the hash which chooses the home cell of thread, it is changed when thread meets the contention on its home cell
+    private static final class Probe {
+
+        int hash = initialHash(Thread.currentThread().getId());
+
+        void advance() {
+            // xorshift, the same as LongAdder uses
+            int h = hash;
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            hash = h;
+        }
+
+        private static int initialHash(long id) {
+            // mixing from SplittableRandom, it spreads sequential thread identifiers across the cells
+            id = (id ^ (id >>> 33)) * 0xff51afd7ed558ccdL;
+            id = (id ^ (id >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            id = id ^ (id >>> 33);
+            int hash = (int) id;
+            // xorshift never leaves zero
+            return hash == 0 ? 1 : hash;
+        }
+
+    }
+
+}
@@ -28,7 +28,10 @@ public enum SynchronizationStrategy {
      * Lock-free algorithm based on CAS(compare and swap) of immutable objects.
      *
      * <p>Advantages: This strategy is tolerant to high contention usage scenario, threads do not block each other.
-     * <br>Disadvantages: The sequence "read-clone-update-save" needs to allocate one object per each invocation of consumption method.
+     * <br>Disadvantages: The sequence "read-clone-update-save" needs to allocate new state each time when state of bucket is changed.
+     * The clone is calculated in thread-local scratch state, so rejected consumptions and read-only operations like {@link io.github.bucket4j.Bucket#getAvailableTokens()} never allocate memory.
+     * When configuration is built with {@link io.github.bucket4j.ConfigurationBuilder#withGcraState()} the {@link GcraBucket} is used,
+     * it stores whole state in single {@code long} which is updated by single CAS.
      * <br>Usage recommendations: when you are not sure what kind of strategy is better for you.
      *
      * <p> The {@link LocalBucketBuilder#build()} without parameters uses this strategy.
@@ -44,6 +47,30 @@ public enum SynchronizationStrategy {
      */
     SYNCHRONIZED,
 
+    /**
+     * Optimistic strategy based on sequence lock, the state is stored in primitive fields protected by version, see {@link PackedBucket} for details.
+     * It is applicable only when configuration contains not more than two bandwidths and is not built with {@link io.github.bucket4j.ConfigurationBuilder#withGcraState()},
+     * in other cases the bucket is constructed in the same way as for {@link #LOCK_FREE}.
+     *
+     * <p>Advantages: Never allocates memory, read-only operations and rejected consumptions never write to memory.
+     * <br>Disadvantages: The writer holds the version for very short time, but it is still a lock:
+     * thread which is superseded from CPU by OS scheduler in the middle of write makes all another threads to spin.
+     * <br>Usage recommendations: when your primary goal is avoiding of memory allocation and writers are rarely preempted,
+     * for example when count of threads which share the bucket is not greater than count of cores.
+     */
+    SEQLOCK,
+
+    /**
+     * Lock-free strategy which splits capacity and refill rate of each bandwidth between independent cells, one cell per available processor.
+     * Each thread consumes from its own cell and borrows tokens from other cells when own cell is empty, see {@link StripedBucket} for details.
+     *
+     * <p>Advantages: Threads are spread across cells, so throughput scales with count of cores even for single bucket shared by dozens of threads.
+     * <br>Disadvantages: Consumes more memory. The limit can be under-admitted by the size of concurrently rejected requests,
+     * and operations which touch all cells like {@link io.github.bucket4j.Bucket#getAvailableTokens()} are more expensive.
+     * <br>Usage recommendations: for extremely hot limits shared by many threads, when {@link #LOCK_FREE} becomes the point of contention.
+     */
+    STRIPED,
+
     /**
      * This is fake strategy which does not perform synchronization at all.
      * It is usable when there are no multithreading access to same bucket,
@@ -102,6 +102,28 @@ public class SynchronizedBucket extends AbstractBucket implements LocalBucket {
         }
     }
 
+    @Override
+    protected BatchConsumptionProbe tryConsumeBatchImpl(long[] cumulativeCosts) {
+        long currentTimeNanos = timeMeter.currentTimeNanos();
+        lock.lock();
+        try {
+            state.refillAllBandwidth(bandwidths, currentTimeNanos);
+            long availableToConsume = state.getAvailableTokens(bandwidths);
+            int consumedCount = BatchConsumptionProbe.countConsumable(cumulativeCosts, availableToConsume);
+            long tokensToConsume = BatchConsumptionProbe.tokensOf(cumulativeCosts, consumedCount);
+            // consumption of prefix does not change the deficit for cumulative cost of the next request
+            long nanosToWaitForRefill = consumedCount == cumulativeCosts.length ? 0 :
+                    state.delayNanosAfterWillBePossibleToConsume(bandwidths, cumulativeCosts[consumedCount]);
+            if (consumedCount > 0) {
+                state.consume(bandwidths, tokensToConsume);
+            }
+            return new BatchConsumptionProbe(cumulativeCosts.length, consumedCount, tokensToConsume,
+                    availableToConsume - tokensToConsume, nanosToWaitForRefill);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanosLimit) {
         long currentTimeNanos = timeMeter.currentTimeNanos();
@@ -177,6 +199,12 @@ public class SynchronizedBucket extends AbstractBucket implements LocalBucket {
         return CompletableFuture.completedFuture(result);
     }
 
+    @Override
+    protected CompletableFuture<BatchConsumptionProbe> tryConsumeBatchAsyncImpl(long[] cumulativeCosts) {
+        BatchConsumptionProbe result = tryConsumeBatchImpl(cumulativeCosts);
+        return CompletableFuture.completedFuture(result);
+    }
+
     @Override
     protected CompletableFuture<Long> tryConsumeAsMuchAsPossibleAsyncImpl(long limit) {
         long result = tryConsumeAsMuchAsPossible(limit);
@@ -218,11 +246,14 @@ public class SynchronizedBucket extends AbstractBucket implements LocalBucket {
 
     @Override
     public String toString() {
-        synchronized (this) {
+        lock.lock();
+        try {
             return "SynchronizedBucket{" +
                 "state=" + state +
                 ", configuration=" + getConfiguration() +
                 '}';
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -0,0 +1,60 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j.local;
+
+import io.github.bucket4j.AbstractBucket;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Holds the reference to immutable state of lock-free bucket and provides atomic operations on it.
+ *
+ * <p>
+ * This is the Java 9+ implementation which is based on {@link VarHandle},
+ * in contrast to {@code AtomicReferenceFieldUpdater} it does not perform access and type checks on each invocation.
+ *
+ * @param <S> type of state
+ */
+abstract class LockFreeStateHolder<S> extends AbstractBucket {
+
+    private static final VarHandle STATE;
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(LockFreeStateHolder.class, "state", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile S state;
+
+    final S getState() {
+        return state;
+    }
+
+    final void setState(S newState) {
+        this.state = newState;
+    }
+
+    final boolean compareAndSetState(S expectedState, S newState) {
+        return STATE.compareAndSet(this, expectedState, newState);
+    }
+
+}
@@ -18,14 +18,21 @@
 package io.github.bucket4j;
 
 import io.github.bucket4j.grid.BucketNotFoundException;
+import io.github.bucket4j.grid.MultiKeyConsistency;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import io.github.bucket4j.grid.RecoveryStrategy;
 import io.github.bucket4j.util.ConsumptionScenario;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -55,6 +62,10 @@ public abstract class AbstractDistributedBucketTest<B extends ConfigurationBuild
 
     protected abstract ProxyManager<String> newProxyManager();
 
+    protected abstract ProxyManager<String> newCoalescingProxyManager();
+
+    protected abstract ProxyManager<String> newBoundedProxyManager(int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy);
+
     protected abstract void removeBucketFromBackingStorage(String key);
 
     @Test
@@ -95,6 +106,23 @@ public abstract class AbstractDistributedBucketTest<B extends ConfigurationBuild
         }
     }
 
+    @Test
+    public void testReadOnlyCommands() {
+        B builder = Bucket4j.extension(extensionClass).builder()
+                .addLimit(Bandwidth.simple(200, Duration.ofDays(1)));
+        Bucket bucket = build(builder, key, RECONSTRUCT);
+
+        assertTrue(bucket.tryConsume(10));
+        assertEquals(190, bucket.getAvailableTokens());
+        assertNotNull(bucket.createSnapshot());
+        assertEquals(190, bucket.getAvailableTokens());
+
+        // simulate crash
+        removeBucketFromBackingStorage(key);
+
+        assertEquals(200, bucket.getAvailableTokens());
+    }
+
     @Test
     public void testLocateConfigurationThroughProxyManager() {
         ProxyManager<String> proxyManager = newProxyManager();
@@ -210,4 +238,91 @@ public abstract class AbstractDistributedBucketTest<B extends ConfigurationBuild
         assertFalse(bucket2.tryConsume(1));
     }
 
+    @Test
+    public void testMultiKeyConsumption() throws Exception {
+        String thirdKey = UUID.randomUUID().toString();
+        Map<String, BucketConfiguration> configurations = new HashMap<>();
+        configurations.put(key, Bucket4j.configurationBuilder().addLimit(Bandwidth.simple(10, Duration.ofDays(1))).buildConfiguration());
+        configurations.put(anotherKey, Bucket4j.configurationBuilder().addLimit(Bandwidth.simple(5, Duration.ofDays(1))).buildConfiguration());
+        configurations.put(thirdKey, Bucket4j.configurationBuilder().addLimit(Bandwidth.simple(3, Duration.ofDays(1))).buildConfiguration());
+        Map<String, Long> tokensToConsume = new HashMap<>();
+        configurations.keySet().forEach(bucketKey -> tokensToConsume.put(bucketKey, 3L));
+
+        ProxyManager<String> registry = newProxyManager();
+        Map<String, ConsumptionProbe> probes = registry.tryConsume(tokensToConsume, configurations::get, MultiKeyConsistency.ALL_OR_NOTHING);
+        assertTrue(probes.values().stream().allMatch(ConsumptionProbe::isConsumed));
+
+        probes = registry.tryConsume(tokensToConsume, configurations::get, MultiKeyConsistency.ALL_OR_NOTHING);
+        assertTrue(probes.values().stream().noneMatch(ConsumptionProbe::isConsumed));
+        assertEquals(7, registry.getProxy(key).get().getAvailableTokens());
+
+        probes = registry.tryConsume(tokensToConsume, configurations::get, MultiKeyConsistency.BEST_EFFORT);
+        assertTrue(probes.get(key).isConsumed());
+        assertFalse(probes.get(anotherKey).isConsumed());
+        assertFalse(probes.get(thirdKey).isConsumed());
+        assertEquals(4, registry.getProxy(key).get().getAvailableTokens());
+
+        if (registry.getProxy(key).get().isAsyncModeSupported()) {
+            probes = registry.tryConsumeAsync(tokensToConsume, configurations::get, MultiKeyConsistency.BEST_EFFORT).get();
+            assertTrue(probes.get(key).isConsumed());
+            assertEquals(1, registry.getProxy(key).get().getAvailableTokens());
+        }
+    }
+
+    @Test
+    public void testCoalescingProxyManager() throws Exception {
+        BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(100, Duration.ofDays(1)))
+                .buildConfiguration();
+        ProxyManager<String> registry = newCoalescingProxyManager();
+        Bucket bucket = registry.getProxy(key, () -> configuration);
+
+        AtomicInteger consumed = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                while (bucket.tryConsume(1)) {
+                    consumed.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100, consumed.get());
+        assertEquals(0, bucket.getAvailableTokens());
+
+        if (bucket.isAsyncModeSupported()) {
+            bucket.addTokens(10);
+            assertTrue(bucket.asAsync().tryConsume(10).get());
+            assertFalse(bucket.asAsync().tryConsume(1).get());
+        }
+    }
+
+    @Test
+    public void testBoundedProxyManager() throws Exception {
+        BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(100, Duration.ofDays(1)))
+                .buildConfiguration();
+        ProxyManager<String> registry = newBoundedProxyManager(1, 1_000, OverflowStrategy.QUEUE);
+        Bucket bucket = registry.getProxy(key, () -> configuration);
+        if (!bucket.isAsyncModeSupported()) {
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 110; i++) {
+            futures.add(bucket.asAsync().tryConsume(1));
+        }
+        int consumed = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            if (future.get()) {
+                consumed++;
+            }
+        }
+        assertEquals(100, consumed);
+        assertEquals(0, bucket.getAvailableTokens());
+    }
+
 }
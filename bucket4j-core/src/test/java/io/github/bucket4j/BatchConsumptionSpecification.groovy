@@ -0,0 +1,250 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.local.SynchronizationStrategy
+import io.github.bucket4j.mock.BucketType
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+
+class BatchConsumptionSpecification extends Specification {
+
+    @Unroll
+    def "#type should admit the longest prefix of batch which fits into available tokens"(BucketType type) {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket bucket = type.createBucket(Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100))), meter)
+        when:
+            BatchConsumptionProbe probe = bucket.tryConsumeBatch([3, 4, 5, 1] as long[])
+        then:
+            probe.requestedCount == 4
+            probe.consumedCount == 2
+            probe.consumedTokens == 7
+            probe.remainingTokens == 3
+            !probe.allConsumed
+            probe.isConsumed(1)
+            !probe.isConsumed(2)
+            // 5 tokens are required for third request, 2 tokens are missing
+            probe.nanosToWaitForRefill == 20
+            bucket.availableTokens == 3
+        where:
+            type << BucketType.values()
+    }
+
+    @Unroll
+    def "#type should consume whole batch when enough tokens"(BucketType type) {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket bucket = type.createBucket(Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100))), meter)
+        when:
+            BatchConsumptionProbe probe = bucket.tryConsumeBatch([2, 2, 2] as long[])
+        then:
+            probe.allConsumed
+            probe.consumedTokens == 6
+            probe.remainingTokens == 4
+            probe.nanosToWaitForRefill == 0
+            bucket.availableTokens == 4
+        where:
+            type << BucketType.values()
+    }
+
+    @Unroll
+    def "#type should not change the bucket when first request can not be admitted"(BucketType type) {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket bucket = type.createBucket(Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100))), meter)
+            bucket.tryConsume(8)
+        when:
+            BatchConsumptionProbe probe = bucket.tryConsumeBatch([3, 1] as long[])
+        then:
+            probe.consumedCount == 0
+            probe.consumedTokens == 0
+            probe.remainingTokens == 2
+            probe.nanosToWaitForRefill == 10
+            bucket.availableTokens == 2
+        where:
+            type << BucketType.values()
+    }
+
+    @Unroll
+    def "#type should give same result as sequential tryConsume for costs #costs"(BucketType type, List<Long> costs) {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            ConfigurationBuilder builder = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(20, Duration.ofNanos(200)))
+                    .addLimit(Bandwidth.simple(12, Duration.ofNanos(60)))
+            Bucket batchBucket = type.createBucket(builder, meter)
+            Bucket sequentialBucket = type.createBucket(builder, meter)
+        when:
+            BatchConsumptionProbe probe = batchBucket.tryConsumeBatch(costs as long[])
+            int sequentialCount = 0
+            for (long cost : costs) {
+                if (!sequentialBucket.tryConsume(cost)) {
+                    break
+                }
+                sequentialCount++
+            }
+        then:
+            probe.consumedCount == sequentialCount
+            batchBucket.availableTokens == sequentialBucket.availableTokens
+            probe.allConsumed || probe.nanosToWaitForRefill == sequentialBucket.tryConsumeAndReturnRemaining(costs[sequentialCount]).nanosToWaitForRefill
+        where:
+            [type, costs] << [BucketType.values(), [[1], [12], [13], [5, 5, 5], [4, 4, 4, 4], [1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1]]].combinations()
+    }
+
+    def "GCRA, striped and hierarchical buckets should support batches"() {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket gcra = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .withGcraState()
+                    .withCustomTimePrecision(meter)
+                    .build()
+            Bucket striped = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .withCustomTimePrecision(meter)
+                    .build(SynchronizationStrategy.STRIPED)
+            Bucket hierarchy = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .withCustomTimePrecision(meter)
+                    .buildHierarchy()
+                    .createChild(Bucket4j.configurationBuilder()
+                        .addLimit(Bandwidth.simple(8, Duration.ofNanos(80)))
+                        .buildConfiguration())
+        expect:
+            for (Bucket bucket : [gcra, striped]) {
+                BatchConsumptionProbe probe = bucket.tryConsumeBatch([3, 4, 5] as long[])
+                assert probe.consumedCount == 2
+                assert probe.nanosToWaitForRefill == 20
+                assert bucket.availableTokens == 3
+            }
+            BatchConsumptionProbe probe = hierarchy.tryConsumeBatch([3, 4, 5] as long[])
+            probe.consumedCount == 2
+            probe.remainingTokens == 1
+            // the child bucket is the bottleneck: 12 tokens are required and only 8 present
+            probe.nanosToWaitForRefill == 40
+    }
+
+    def "async view should return same result as synchronous batch"() {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket bucket = BucketType.GRID.createBucket(Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100))), meter)
+        when:
+            BatchConsumptionProbe probe = bucket.asAsync().tryConsumeBatch([6, 6] as long[]).get()
+        then:
+            probe.consumedCount == 1
+            probe.remainingTokens == 4
+            probe.nanosToWaitForRefill == 20
+    }
+
+    def "should reject illegal batches"() {
+        setup:
+            Bucket bucket = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofSeconds(1)))
+                    .build()
+        when:
+            bucket.tryConsumeBatch(null)
+        then:
+            IllegalArgumentException ex = thrown()
+            ex.message == BucketExceptions.nullBatch().message
+
+        when:
+            bucket.tryConsumeBatch(new long[0])
+        then:
+            ex = thrown()
+            ex.message == BucketExceptions.emptyBatch().message
+
+        when:
+            bucket.tryConsumeBatch([1, 0] as long[])
+        then:
+            ex = thrown()
+            ex.message == BucketExceptions.nonPositiveTokensToConsume(0).message
+    }
+
+    def "default implementation should consume requests one by one until first rejection"() {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket bucket = new BucketWithoutBatchSupport(Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .withCustomTimePrecision(meter)
+                    .build())
+        when:
+            BatchConsumptionProbe probe = bucket.tryConsumeBatch([3, 4, 5, 1] as long[])
+        then:
+            probe.requestedCount == 4
+            probe.consumedCount == 2
+            probe.consumedTokens == 7
+            probe.remainingTokens == 3
+            probe.nanosToWaitForRefill == 20
+            bucket.availableTokens == 3
+        when:
+            probe = bucket.tryConsumeBatch([1, 2] as long[])
+        then:
+            probe.allConsumed
+            probe.consumedTokens == 3
+            probe.remainingTokens == 0
+            probe.nanosToWaitForRefill == 0
+    }
+
+    def "default asynchronous implementation should consume requests one by one until first rejection"() {
+        setup:
+            TimeMeterMock meter = new TimeMeterMock(0)
+            Bucket bucket = BucketType.GRID.createBucket(Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100))), meter)
+            AsyncBucket asyncBucket = new AsyncBucketWithoutBatchSupport(bucket.asAsync())
+        when:
+            BatchConsumptionProbe probe = asyncBucket.tryConsumeBatch([6, 6] as long[]).get()
+        then:
+            probe.requestedCount == 2
+            probe.consumedCount == 1
+            probe.consumedTokens == 6
+            probe.remainingTokens == 4
+            probe.nanosToWaitForRefill == 20
+        when:
+            asyncBucket.tryConsumeBatch([1, 0] as long[])
+        then:
+            IllegalArgumentException ex = thrown()
+            ex.message == BucketExceptions.nonPositiveTokensToConsume(0).message
+    }
+
+    private static class BucketWithoutBatchSupport implements Bucket {
+        @Delegate(excludes = ['tryConsumeBatch'])
+        final Bucket target
+
+        BucketWithoutBatchSupport(Bucket target) {
+            this.target = target
+        }
+    }
+
+    private static class AsyncBucketWithoutBatchSupport implements AsyncBucket {
+        @Delegate(excludes = ['tryConsumeBatch'])
+        final AsyncBucket target
+
+        AsyncBucketWithoutBatchSupport(AsyncBucket target) {
+            this.target = target
+        }
+    }
+
+}
@@ -53,4 +53,39 @@ public class BlockingStrategyTest {
         assertTrue(Thread.currentThread().isInterrupted());
     }
 
-}
\ No newline at end of file
+    @Test(expected = InterruptedException.class, timeout = 1000)
+    public void adaptiveSleepShouldThrowExceptionWhenThreadInterrupted() throws InterruptedException {
+        Thread.currentThread().interrupt();
+        BlockingStrategy.ADAPTIVE.park(TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test(timeout = 10000)
+    public void adaptiveSleepUniterruptibleShouldNotThrowInterruptedException() {
+        long nanosToPark = TimeUnit.MILLISECONDS.toNanos(100);
+        Thread.currentThread().interrupt();
+        long startNanos = System.nanoTime();
+        BlockingStrategy.ADAPTIVE.parkUninterruptibly(nanosToPark);
+        assertTrue(System.nanoTime() - startNanos >= nanosToPark);
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test(timeout = 10000)
+    public void adaptiveSleepShouldNeverReturnEarly() throws InterruptedException {
+        AdaptiveBlockingStrategy strategy = new AdaptiveBlockingStrategy();
+        long[] waits = {0, 1_000, 5_000, 20_000, 60_000, 100_000, 500_000, 2_000_000};
+        for (int i = 0; i < 20; i++) {
+            for (long nanosToPark : waits) {
+                long startNanos = System.nanoTime();
+                strategy.park(nanosToPark);
+                assertTrue(System.nanoTime() - startNanos >= nanosToPark);
+            }
+        }
+        assertTrue(strategy.getParkOvershootNanos() >= 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveShouldRejectYieldThresholdLessThanSpinThreshold() {
+        new AdaptiveBlockingStrategy(10_000, 5_000);
+    }
+
+}
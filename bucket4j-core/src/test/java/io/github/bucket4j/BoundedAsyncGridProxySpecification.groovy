@@ -0,0 +1,216 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.BoundedAsyncGridProxy
+import io.github.bucket4j.grid.CommandResult
+import io.github.bucket4j.grid.CompositeCommand
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.GridCommand
+import io.github.bucket4j.grid.InFlightLimitExceededException
+import io.github.bucket4j.mock.GridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+import static io.github.bucket4j.grid.OverflowStrategy.COALESCE
+import static io.github.bucket4j.grid.OverflowStrategy.QUEUE
+import static io.github.bucket4j.grid.OverflowStrategy.REJECT
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class BoundedAsyncGridProxySpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    HoldingGridProxyMock target = new HoldingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(100, Duration.ofDays(1)))
+            .buildConfiguration()
+
+    def "excess operations should wait in bounded queue"() {
+        setup:
+            BoundedAsyncGridProxy<String> proxy = new BoundedAsyncGridProxy<>(target, 2, 2, QUEUE, meter)
+            AsyncBucket bucket = bucket("42", proxy)
+            target.holding = true
+        when:
+            List<CompletableFuture<Boolean>> futures = (1..5).collect { bucket.tryConsume(1) }
+        then:
+            proxy.inFlightOperations == 2
+            proxy.queueDepth == 2
+            proxy.rejectedOperations == 1
+            target.heldCount() == 2
+        when:
+            futures[4].get()
+        then:
+            ExecutionException e = thrown()
+            e.cause instanceof InFlightLimitExceededException
+        when:
+            meter.addTime(10)
+            target.releaseAll()
+        then: "queued operations take the slots of completed ones"
+            futures[0].get()
+            futures[1].get()
+            proxy.inFlightOperations == 2
+            proxy.queueDepth == 0
+            target.heldCount() == 2
+        when:
+            target.holding = false
+            target.releaseAll()
+        then:
+            futures[2].get()
+            futures[3].get()
+            proxy.inFlightOperations == 0
+            proxy.queuedOperations == 2
+            proxy.totalQueueWaitNanos == 20
+            proxy.maxQueueWaitNanos == 10
+            GridBucket.createLazyBucket("42", { configuration }, target).availableTokens == 96
+    }
+
+    def "long queue should be drained without recursion when grid completes operations synchronously"() {
+        setup:
+            int queued = 10_000
+            BoundedAsyncGridProxy<String> proxy = new BoundedAsyncGridProxy<>(target, 1, queued, QUEUE, meter)
+            AsyncBucket bucket = bucket("42", proxy)
+            target.holding = true
+            CompletableFuture<Boolean> first = bucket.tryConsume(1)
+            target.holding = false
+        when:
+            List<CompletableFuture<Boolean>> futures = (1..queued).collect { bucket.tryConsume(1) }
+        then:
+            proxy.queueDepth == queued
+        when:
+            target.releaseAll()
+        then:
+            first.get()
+            futures.every { it.isDone() && !it.isCompletedExceptionally() }
+            futures.count { it.get() } == 99
+            proxy.inFlightOperations == 0
+            proxy.queueDepth == 0
+    }
+
+    def "reject strategy should reject excess operations immediately"() {
+        setup:
+            BoundedAsyncGridProxy<String> proxy = new BoundedAsyncGridProxy<>(target, 1, 10, REJECT, meter)
+            AsyncBucket bucket = bucket("42", proxy)
+            target.holding = true
+        when:
+            CompletableFuture<Boolean> first = bucket.tryConsume(1)
+            CompletableFuture<Boolean> second = bucket.tryConsume(1)
+        then:
+            second.isCompletedExceptionally()
+            proxy.rejectedOperations == 1
+            proxy.queueDepth == 0
+        when:
+            target.holding = false
+            target.releaseAll()
+        then:
+            first.get()
+            proxy.inFlightOperations == 0
+    }
+
+    def "coalesce strategy should merge waiting operations for same key into single batch"() {
+        setup:
+            BoundedAsyncGridProxy<String> proxy = new BoundedAsyncGridProxy<>(target, 1, 1, COALESCE, meter)
+            AsyncBucket bucket = bucket("42", proxy)
+            target.holding = true
+        when:
+            List<CompletableFuture<Boolean>> futures = (1..6).collect { bucket.tryConsume(1) }
+        then: "only first operation is sent, others are collected by coalescing proxy"
+            target.heldCount() == 1
+            proxy.queueDepth == 0
+            proxy.rejectedOperations == 0
+        when:
+            target.holding = false
+            target.releaseAll()
+        then:
+            futures.every { it.get() }
+            target.executedCommands.any { it instanceof CompositeCommand }
+            proxy.inFlightOperations == 0
+            GridBucket.createLazyBucket("42", { configuration }, target).availableTokens == 94
+    }
+
+    def "synchronous operations should not be limited"() {
+        setup:
+            BoundedAsyncGridProxy<String> proxy = new BoundedAsyncGridProxy<>(target, 1, 0, REJECT, meter)
+            Bucket bucket = GridBucket.createInitializedBucket("42", configuration, proxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+            target.holding = true
+            bucket.asAsync().tryConsume(1)
+        expect:
+            bucket.tryConsume(1)
+            proxy.inFlightOperations == 1
+    }
+
+    @Unroll
+    def "should detect illegal arguments #maxInFlight #maxQueueSize #strategy"() {
+        when:
+            new BoundedAsyncGridProxy<>(target, maxInFlight, maxQueueSize, strategy, meter)
+        then:
+            thrown(IllegalArgumentException)
+        where:
+            maxInFlight | maxQueueSize | strategy
+            0           | 1            | QUEUE
+            1           | -1           | QUEUE
+            1           | 1            | null
+    }
+
+    private AsyncBucket bucket(String key, BoundedAsyncGridProxy<String> proxy) {
+        return GridBucket.createInitializedBucket(key, configuration, proxy, THROW_BUCKET_NOT_FOUND_EXCEPTION).asAsync()
+    }
+
+    static class HoldingGridProxyMock extends GridProxyMock {
+
+        final List<GridCommand> executedCommands = []
+        final List<Runnable> held = []
+        boolean holding
+
+        HoldingGridProxyMock(TimeMeter timeMeter) {
+            super(timeMeter)
+        }
+
+        int heldCount() {
+            return held.size()
+        }
+
+        void releaseAll() {
+            List<Runnable> toRelease = new ArrayList<>(held)
+            held.clear()
+            toRelease*.run()
+        }
+
+        @Override
+        CommandResult execute(Serializable key, GridCommand command) {
+            executedCommands.add(command)
+            return super.execute(key, command)
+        }
+
+        @Override
+        CompletableFuture<CommandResult> executeAsync(Serializable key, GridCommand command) {
+            if (!holding) {
+                return super.executeAsync(key, command)
+            }
+            CompletableFuture<CommandResult> future = new CompletableFuture<>()
+            held.add({ future.complete(execute(key, command)) } as Runnable)
+            return future
+        }
+
+    }
+
+}
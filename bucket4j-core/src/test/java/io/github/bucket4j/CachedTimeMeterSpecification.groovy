@@ -0,0 +1,92 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class CachedTimeMeterSpecification extends Specification {
+
+    def "time should be updated by ticker"() {
+        setup:
+            CachedTimeMeter timeMeter = CachedTimeMeter.acquire(Duration.ofMillis(1))
+        when:
+            long before = timeMeter.currentTimeNanos()
+            Thread.sleep(50)
+            long after = timeMeter.currentTimeNanos()
+        then:
+            after > before
+            after <= System.nanoTime()
+        cleanup:
+            timeMeter.close()
+    }
+
+    def "time meters with same resolution should share ticker"() {
+        setup:
+            Duration resolution = Duration.ofMillis(3)
+            CachedTimeMeter first = CachedTimeMeter.acquire(resolution)
+            CachedTimeMeter second = CachedTimeMeter.acquire(resolution)
+        expect:
+            CachedTimeMeter.isTickerRunning(resolution)
+        when:
+            first.close()
+            first.close()
+        then:
+            CachedTimeMeter.isTickerRunning(resolution)
+        when:
+            second.close()
+        then:
+            !CachedTimeMeter.isTickerRunning(resolution)
+    }
+
+    def "closed time meter should fall back to system clock"() {
+        setup:
+            CachedTimeMeter timeMeter = CachedTimeMeter.acquire(Duration.ofSeconds(10))
+        when:
+            timeMeter.close()
+            long before = System.nanoTime()
+            long time = timeMeter.currentTimeNanos()
+        then:
+            time >= before
+    }
+
+    def "bucket should be refilled when time is cached"() {
+        setup:
+            Bucket bucket = Bucket4j.builder()
+                .withCachedTimePrecision(Duration.ofMillis(1))
+                .addLimit(0, Bandwidth.simple(1000, Duration.ofSeconds(1)))
+                .build()
+        when:
+            Thread.sleep(100)
+        then:
+            bucket.getAvailableTokens() > 0
+    }
+
+    def "should validate resolution"() {
+        when:
+            CachedTimeMeter.acquire(null)
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            CachedTimeMeter.acquire(Duration.ZERO)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.CoalescingGridProxy
+import io.github.bucket4j.grid.CommandResult
+import io.github.bucket4j.grid.CompositeCommand
+import io.github.bucket4j.grid.GetAvailableTokensCommand
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.GridCommand
+import io.github.bucket4j.grid.TryConsumeCommand
+import io.github.bucket4j.mock.GridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class CoalescingGridProxySpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    ControlledGridProxyMock target = new ControlledGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(100, Duration.ofSeconds(1)))
+            .buildConfiguration()
+
+    def "synchronous commands which arrive while request is in flight should be sent by single round trip"() {
+        setup:
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target)
+            Bucket bucket = GridBucket.createInitializedBucket("42", configuration, proxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+            target.blockNextExecution()
+            Thread leader = Thread.start { assert bucket.tryConsume(1) }
+            target.entered.await()
+        when:
+            List<Thread> followers = (1..10).collect { Thread.start { assert bucket.tryConsume(1) } }
+            // followers park until the leader completes the batch which is in flight
+            while (followers.any { it.state != Thread.State.WAITING }) {
+                Thread.sleep(1)
+            }
+            target.release.countDown()
+            leader.join()
+            followers*.join()
+        then:
+            target.executedCommands.size() == 2
+            target.executedCommands[1] instanceof CompositeCommand
+            bucket.availableTokens == 89
+    }
+
+    def "asynchronous commands which arrive while request is in flight should be sent by single round trip"() {
+        setup:
+            target.createInitialState("42", configuration)
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target)
+            target.holdNextAsyncExecution()
+        when:
+            CompletableFuture<CommandResult<Boolean>> first = proxy.executeAsync("42", new TryConsumeCommand(1))
+            List<CompletableFuture<CommandResult<Boolean>>> others = (1..10).collect { proxy.executeAsync("42", new TryConsumeCommand(it)) }
+        then:
+            !first.done
+            others.every { !it.done }
+            target.executedCommands.size() == 1
+
+        when:
+            target.completeHeldExecution()
+        then:
+            first.get().data
+            // 1 + (1 + 2 + ... + 10) = 56 tokens fit into capacity 100
+            others.every { it.get().data }
+            target.executedCommands.size() == 2
+            target.executedCommands[1] instanceof CompositeCommand
+            target.execute("42", new GetAvailableTokensCommand()).data == 100 - 1 - 55
+    }
+
+    def "should split batch by max batch size"() {
+        setup:
+            target.createInitialState("42", configuration)
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target, 4)
+            target.holdNextAsyncExecution()
+        when:
+            CompletableFuture<CommandResult<Boolean>> first = proxy.executeAsync("42", new TryConsumeCommand(1))
+            List<CompletableFuture<CommandResult<Boolean>>> others = (1..10).collect { proxy.executeAsync("42", new TryConsumeCommand(1)) }
+            target.completeHeldExecution()
+        then:
+            first.get().data
+            others.every { it.get().data }
+            target.executedCommands.size() == 4
+    }
+
+    def "batches completed synchronously should not drain the queue by recursion"() {
+        setup:
+            target.createInitialState("42", configuration)
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target, 1)
+            target.holdNextAsyncExecution()
+            int queued = 10_000
+        when:
+            CompletableFuture<CommandResult<Boolean>> first = proxy.executeAsync("42", new TryConsumeCommand(1))
+            List<CompletableFuture<CommandResult<Boolean>>> others = (1..queued).collect { proxy.executeAsync("42", new TryConsumeCommand(1)) }
+            target.completeHeldExecution()
+        then:
+            first.get().data
+            others.every { it.done && !it.completedExceptionally }
+            others.count { it.get().data } == 99
+    }
+
+    def "should propagate absence of bucket to each coalesced command"() {
+        setup:
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target)
+            target.holdNextAsyncExecution()
+        when:
+            CompletableFuture<CommandResult<Boolean>> first = proxy.executeAsync("42", new TryConsumeCommand(1))
+            List<CompletableFuture<CommandResult<Boolean>>> others = (1..3).collect { proxy.executeAsync("42", new TryConsumeCommand(1)) }
+            target.completeHeldExecution()
+        then:
+            first.get().bucketNotFound
+            others.every { it.get().bucketNotFound }
+    }
+
+    def "failure of batch should be propagated only to commands of this batch"() {
+        setup:
+            target.createInitialState("42", configuration)
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target)
+            target.holdNextAsyncExecution()
+        when:
+            CompletableFuture<CommandResult<Boolean>> first = proxy.executeAsync("42", new TryConsumeCommand(1))
+            CompletableFuture<CommandResult<Boolean>> second = proxy.executeAsync("42", new TryConsumeCommand(1))
+            target.failHeldExecution(new IllegalStateException("grid is unavailable"))
+        then:
+            first.completedExceptionally
+            second.get().data
+    }
+
+    def "commands for different keys should not be coalesced"() {
+        setup:
+            target.createInitialState("1", configuration)
+            target.createInitialState("2", configuration)
+            CoalescingGridProxy<String> proxy = new CoalescingGridProxy<>(target)
+        when:
+            proxy.executeAsync("1", new TryConsumeCommand(1)).get()
+            proxy.executeAsync("2", new TryConsumeCommand(1)).get()
+            proxy.execute("1", new TryConsumeCommand(1))
+        then:
+            target.executedCommands.every { it instanceof TryConsumeCommand }
+    }
+
+    def "should check arguments"() {
+        when:
+            new CoalescingGridProxy<>(null)
+        then:
+            IllegalArgumentException ex = thrown()
+            ex.message == BucketExceptions.nullGridProxy().message
+
+        when:
+            new CoalescingGridProxy<>(target, 0)
+        then:
+            ex = thrown()
+            ex.message == BucketExceptions.nonPositiveMaxBatchSize(0).message
+    }
+
+    static class ControlledGridProxyMock extends GridProxyMock {
+
+        final List<GridCommand> executedCommands = new CopyOnWriteArrayList<>()
+        CountDownLatch entered
+        CountDownLatch release
+        volatile boolean blockNext
+        CompletableFuture<CommandResult> heldFuture
+        Serializable heldKey
+        GridCommand heldCommand
+        boolean holdNextAsync
+
+        ControlledGridProxyMock(TimeMeter timeMeter) {
+            super(timeMeter)
+        }
+
+        void blockNextExecution() {
+            entered = new CountDownLatch(1)
+            release = new CountDownLatch(1)
+            blockNext = true
+        }
+
+        void holdNextAsyncExecution() {
+            holdNextAsync = true
+        }
+
+        void completeHeldExecution() {
+            heldFuture.complete(super.execute(heldKey, heldCommand))
+        }
+
+        void failHeldExecution(Throwable error) {
+            heldFuture.completeExceptionally(error)
+        }
+
+        @Override
+        CommandResult execute(Serializable key, GridCommand command) {
+            executedCommands.add(command)
+            if (blockNext) {
+                blockNext = false
+                entered.countDown()
+                release.await()
+            }
+            return super.execute(key, command)
+        }
+
+        @Override
+        CompletableFuture<CommandResult> executeAsync(Serializable key, GridCommand command) {
+            if (holdNextAsync) {
+                holdNextAsync = false
+                executedCommands.add(command)
+                heldKey = key
+                heldCommand = command
+                heldFuture = new CompletableFuture<>()
+                return heldFuture
+            }
+            return super.executeAsync(key, command)
+        }
+
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.CommandResult
+import io.github.bucket4j.grid.CompletionExecutorGridProxy
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.GridCommand
+import io.github.bucket4j.grid.TryConsumeCommand
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class CompletionExecutorGridProxySpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    BoundedAsyncGridProxySpecification.HoldingGridProxyMock target = new BoundedAsyncGridProxySpecification.HoldingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(100, Duration.ofDays(1)))
+            .buildConfiguration()
+    ExecutorService executor = Executors.newSingleThreadExecutor({ new Thread(it, "completion-thread") })
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    def "continuations should run in completion executor instead of grid thread"() {
+        setup:
+            GridBucket<String> bucket = GridBucket.createInitializedBucket("42", configuration, target, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+                    .withCompletionExecutor(executor)
+            target.holding = true
+        when:
+            CompletableFuture<String> continuationThread = bucket.asAsync().tryConsume(1)
+                    .thenApply({ consumed -> Thread.currentThread().getName() })
+            completeFromGridThread()
+        then:
+            continuationThread.get(1, TimeUnit.SECONDS) == "completion-thread"
+    }
+
+    def "future which is completed before returning should be returned as is"() {
+        setup:
+            CountingExecutor countingExecutor = new CountingExecutor(executor)
+            GridBucket<String> bucket = GridBucket.createInitializedBucket("42", configuration, target, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+                    .withCompletionExecutor(countingExecutor)
+        when:
+            String continuationThread = bucket.asAsync().tryConsume(1)
+                    .thenApply({ consumed -> Thread.currentThread().getName() })
+                    .get()
+        then:
+            continuationThread == Thread.currentThread().getName()
+            countingExecutor.tasks.get() == 0
+    }
+
+    def "completion should be handed off to executor even when nobody is subscribed yet"() {
+        setup:
+            CountingExecutor countingExecutor = new CountingExecutor(executor)
+            CompletionExecutorGridProxy<String> proxy = new CompletionExecutorGridProxy<>(target, countingExecutor)
+            proxy.createInitialState("42", configuration)
+            target.holding = true
+        when:
+            CompletableFuture<CommandResult<Boolean>> future = proxy.executeAsync("42", new TryConsumeCommand(1))
+            completeFromGridThread()
+        then:
+            future.get(1, TimeUnit.SECONDS).data
+            countingExecutor.tasks.get() == 1
+    }
+
+    def "inline completion view should run continuations in grid thread"() {
+        setup:
+            CountingExecutor countingExecutor = new CountingExecutor(executor)
+            GridBucket<String> bucket = GridBucket.createInitializedBucket("42", configuration, target, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+                    .withCompletionExecutor(countingExecutor)
+                    .withInlineCompletion()
+            target.holding = true
+        when:
+            CompletableFuture<String> continuationThread = bucket.asAsync().tryConsume(1)
+                    .thenApply({ consumed -> Thread.currentThread().getName() })
+            completeFromGridThread()
+        then:
+            continuationThread.get(1, TimeUnit.SECONDS) == "grid-thread"
+            countingExecutor.tasks.get() == 0
+    }
+
+    def "inline completion view of bucket without completion executor should be same bucket"() {
+        setup:
+            GridBucket<String> bucket = GridBucket.createInitializedBucket("42", configuration, target, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+        expect:
+            bucket.withInlineCompletion().is(bucket)
+    }
+
+    def "future should be completed inline when executor rejects completion"() {
+        setup:
+            Executor rejectingExecutor = { throw new RejectedExecutionException() } as Executor
+            CompletionExecutorGridProxy<String> proxy = new CompletionExecutorGridProxy<>(target, rejectingExecutor)
+            proxy.createInitialState("42", configuration)
+            target.holding = true
+        when:
+            CompletableFuture<Boolean> future = proxy.executeAsync("42", new TryConsumeCommand(1))
+                    .thenApply({ result -> result.data })
+            completeFromGridThread()
+        then:
+            future.isDone()
+            future.get()
+    }
+
+    def "errors should be delivered through completion executor"() {
+        setup:
+            target = new FailingGridProxyMock(meter)
+            GridBucket<String> bucket = GridBucket.createLazyBucket("42", { configuration }, target)
+                    .withCompletionExecutor(executor)
+        when:
+            CompletableFuture<String> continuationThread = bucket.asAsync().tryConsume(1)
+                    .handle({ consumed, error -> error == null ? "no-error" : Thread.currentThread().getName() })
+            completeFromGridThread()
+        then:
+            continuationThread.get(1, TimeUnit.SECONDS) == "completion-thread"
+    }
+
+    def "should detect null executor"() {
+        when:
+            new CompletionExecutorGridProxy<>(target, null)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    private void completeFromGridThread() {
+        Thread gridThread = new Thread({ target.releaseAll() }, "grid-thread")
+        gridThread.start()
+        gridThread.join()
+    }
+
+    static class CountingExecutor implements Executor {
+
+        final Executor target
+        final AtomicInteger tasks = new AtomicInteger()
+
+        CountingExecutor(Executor target) {
+            this.target = target
+        }
+
+        @Override
+        void execute(Runnable command) {
+            tasks.incrementAndGet()
+            target.execute(command)
+        }
+
+    }
+
+    static class FailingGridProxyMock extends BoundedAsyncGridProxySpecification.HoldingGridProxyMock {
+
+        FailingGridProxyMock(TimeMeter timeMeter) {
+            super(timeMeter)
+        }
+
+        @Override
+        CompletableFuture<CommandResult> executeAsync(Serializable key, GridCommand command) {
+            CompletableFuture<CommandResult> future = new CompletableFuture<>()
+            held.add({ future.completeExceptionally(new IllegalStateException("grid is unavailable")) } as Runnable)
+            return future
+        }
+
+    }
+
+}
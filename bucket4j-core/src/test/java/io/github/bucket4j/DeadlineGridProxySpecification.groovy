@@ -0,0 +1,229 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.CommandResult
+import io.github.bucket4j.grid.ConsumeAsMuchAsPossibleCommand
+import io.github.bucket4j.grid.DeadlineGridProxy
+import io.github.bucket4j.grid.FallbackStrategy
+import io.github.bucket4j.grid.GetAvailableTokensCommand
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.GridCommand
+import io.github.bucket4j.mock.GridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+import static io.github.bucket4j.grid.FallbackStrategy.FAIL_CLOSED
+import static io.github.bucket4j.grid.FallbackStrategy.FAIL_OPEN
+import static io.github.bucket4j.grid.FallbackStrategy.LOCAL
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class DeadlineGridProxySpecification extends Specification {
+
+    static final Duration DEADLINE = Duration.ofMillis(50)
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    HangingGridProxyMock gridProxy = new HangingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(10, Duration.ofSeconds(10)))
+            .buildConfiguration()
+    GridBucket<String> gridBucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+    HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 64)
+
+    def cleanup() {
+        timer.stop()
+    }
+
+    def "withDeadline should bound the duration of operations"() {
+        setup:
+            Bucket bucket = gridBucket.withDeadline(DEADLINE, FAIL_OPEN)
+            gridBucket.tryConsume(10)
+            gridProxy.hanging = true
+        expect:
+            bucket.tryConsume(1)
+    }
+
+    def "should return the result of grid when grid responds before deadline"() {
+        setup:
+            Bucket bucket = withDeadline(DEADLINE, null, FAIL_CLOSED)
+        when:
+            boolean consumed = bucket.tryConsume(3)
+        then:
+            consumed
+            gridBucket.availableTokens == 7
+    }
+
+    def "fail-open strategy should admit requests when grid hangs"() {
+        setup:
+            Bucket bucket = withDeadline(DEADLINE, null, FAIL_OPEN)
+            gridBucket.tryConsume(10)
+            gridProxy.hanging = true
+        expect:
+            bucket.tryConsume(1)
+            bucket.asAsync().tryConsume(1).get()
+    }
+
+    def "fail-closed strategy should reject requests when grid hangs"() {
+        setup:
+            Bucket bucket = withDeadline(DEADLINE, null, FAIL_CLOSED)
+            gridProxy.hanging = true
+        expect:
+            !bucket.tryConsume(1)
+            !bucket.asAsync().tryConsume(1).get()
+            bucket.tryConsumeAndReturnRemaining(1).nanosToWaitForRefill == Duration.ofSeconds(1).toNanos()
+    }
+
+    def "should fall back when grid fails"() {
+        setup:
+            Bucket bucket = withDeadline(Duration.ofDays(1), null, FAIL_CLOSED)
+            gridProxy.setException(new IllegalStateException())
+        expect:
+            !bucket.tryConsume(1)
+            !bucket.asAsync().tryConsume(1).get()
+    }
+
+    def "local strategy should enforce the limits locally and reconcile consumed tokens when grid recovers"() {
+        setup:
+            Bucket bucket = withDeadline(DEADLINE, null, LOCAL)
+            gridProxy.hanging = true
+        when:
+            (1..5).each { assert bucket.tryConsume(1) }
+            (1..5).each { assert bucket.asAsync().tryConsume(1).get() }
+        then:
+            !bucket.tryConsume(1)
+        when:
+            gridProxy.hanging = false
+            bucket.tryConsume(1)
+        then: "first response of grid triggers reconciliation"
+            gridProxy.asyncCommands*.class.contains(ConsumeAsMuchAsPossibleCommand)
+            gridBucket.availableTokens == 0
+    }
+
+    def "read-only commands should be hedged"() {
+        setup:
+            Bucket bucket = withDeadline(Duration.ofSeconds(5), Duration.ofMillis(10), FAIL_CLOSED)
+            gridBucket.tryConsume(4)
+            gridProxy.hangingCommands = 1
+            gridProxy.asyncCommands.clear()
+        when:
+            long availableTokens = bucket.availableTokens
+        then:
+            availableTokens == 6
+            gridProxy.asyncCommands*.class == [GetAvailableTokensCommand, GetAvailableTokensCommand]
+    }
+
+    def "commands which modify the state should not be hedged"() {
+        setup:
+            Bucket bucket = withDeadline(DEADLINE, Duration.ofMillis(10), FAIL_CLOSED)
+            gridProxy.hangingCommands = 1
+            gridProxy.asyncCommands.clear()
+        when:
+            boolean consumed = bucket.tryConsume(1)
+        then:
+            !consumed
+            gridProxy.asyncCommands.size() == 1
+    }
+
+    def "deadline should be cancelled when grid responds before it"() {
+        setup:
+            Bucket bucket = withDeadline(Duration.ofDays(1), null, FAIL_CLOSED)
+        when:
+            boolean consumed = bucket.asAsync().tryConsume(1).get()
+        then:
+            consumed
+            timer.pendingTasks == 0
+    }
+
+    def "fallback should be executed by task executor of timer"() {
+        setup:
+            ExecutorService executor = Executors.newSingleThreadExecutor({ runnable -> new Thread(runnable, "fallback-executor") })
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 64, executor)
+            String fallbackThread = null
+            DeadlineGridProxy<String> deadlineProxy = new DeadlineGridProxy<>(gridProxy, DEADLINE, null, FAIL_CLOSED, {
+                fallbackThread = Thread.currentThread().name
+                return configuration
+            }, meter, timer)
+            Bucket bucket = GridBucket.createLazyBucket("42", { configuration }, deadlineProxy)
+            gridProxy.hanging = true
+        when:
+            boolean consumed = bucket.asAsync().tryConsume(1).get()
+        then:
+            !consumed
+            fallbackThread == "fallback-executor"
+        cleanup:
+            timer.stop()
+            executor.shutdown()
+    }
+
+    @Unroll
+    def "should detect illegal arguments #deadline #hedgeDelay"() {
+        when:
+            new DeadlineGridProxy<>(gridProxy, deadline, hedgeDelay, FAIL_OPEN, { configuration }, meter, timer)
+        then:
+            thrown(IllegalArgumentException)
+        where:
+            deadline              | hedgeDelay
+            null                  | null
+            Duration.ZERO         | null
+            Duration.ofSeconds(1) | Duration.ZERO
+            Duration.ofSeconds(1) | Duration.ofSeconds(1)
+    }
+
+    private Bucket withDeadline(Duration deadline, Duration hedgeDelay, FallbackStrategy fallbackStrategy) {
+        DeadlineGridProxy<String> deadlineProxy = new DeadlineGridProxy<>(gridProxy, deadline, hedgeDelay, fallbackStrategy, { configuration }, meter, timer)
+        return GridBucket.createLazyBucket("42", { configuration }, deadlineProxy)
+    }
+
+    static class HangingGridProxyMock extends GridProxyMock {
+
+        final List<GridCommand> asyncCommands = new CopyOnWriteArrayList<>()
+        volatile boolean hanging
+        volatile int hangingCommands
+
+        HangingGridProxyMock(TimeMeter timeMeter) {
+            super(timeMeter)
+        }
+
+        @Override
+        synchronized CommandResult execute(Serializable key, GridCommand command) {
+            return super.execute(key, command)
+        }
+
+        @Override
+        CompletableFuture<CommandResult> executeAsync(Serializable key, GridCommand command) {
+            asyncCommands.add(command)
+            if (hanging) {
+                return new CompletableFuture<>()
+            }
+            if (hangingCommands > 0) {
+                hangingCommands--
+                return new CompletableFuture<>()
+            }
+            return super.executeAsync(key, command)
+        }
+
+    }
+
+}
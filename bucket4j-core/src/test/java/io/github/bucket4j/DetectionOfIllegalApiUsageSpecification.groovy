@@ -223,6 +223,18 @@ class DetectionOfIllegalApiUsageSpecification extends Specification {
             ex.message == nullScheduler().message
     }
 
+    def "Should that timer passed to tryConsume is not null"() {
+        setup:
+            def bucket = Bucket4j.builder().addLimit(
+                    Bandwidth.simple(VALID_CAPACITY, VALID_PERIOD)
+            ).build()
+        when:
+            bucket.asAsync().tryConsumeWithTimer(32, 1000_000, null)
+        then:
+            IllegalArgumentException ex = thrown()
+            ex.message == nullTimer().message
+    }
+
     def "Should detect when extension unregistered"() {
         when:
             Bucket4j.extension(FakeExtension.class)
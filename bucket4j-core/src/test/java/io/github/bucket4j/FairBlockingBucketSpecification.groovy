@@ -0,0 +1,140 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+class FairBlockingBucketSpecification extends Specification {
+
+    def "addTokens should wake up waiter immediately"() {
+        setup:
+            FairBlockingBucket bucket = new FairBlockingBucket(Bucket4j.builder()
+                    .withNanosecondPrecision()
+                    .addLimit(0, Bandwidth.simple(1, Duration.ofSeconds(10)))
+                    .build())
+            AtomicReference<Boolean> result = new AtomicReference<>()
+            Thread waiter = new Thread({
+                result.set(bucket.tryConsumeUninterruptibly(1, TimeUnit.SECONDS.toNanos(20), BlockingStrategy.PARKING))
+            })
+        when:
+            waiter.start()
+            awaitQueueLength(bucket, 1)
+            long startNanos = System.nanoTime()
+            bucket.addTokens(1)
+            waiter.join()
+        then:
+            result.get()
+            System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(5)
+            bucket.getQueueLength() == 0
+    }
+
+    def "waiters should be served in FIFO order"() {
+        setup:
+            FairBlockingBucket bucket = new FairBlockingBucket(Bucket4j.builder()
+                    .withNanosecondPrecision()
+                    .addLimit(0, Bandwidth.simple(1, Duration.ofMillis(100)))
+                    .build())
+            ConcurrentLinkedQueue<Integer> order = new ConcurrentLinkedQueue<>()
+            List<Thread> threads = []
+        when:
+            for (int i = 0; i < 5; i++) {
+                int number = i
+                Thread thread = new Thread({
+                    if (bucket.tryConsume(1, TimeUnit.SECONDS.toNanos(10), BlockingStrategy.PARKING)) {
+                        order.add(number)
+                    }
+                })
+                threads.add(thread)
+                thread.start()
+                while (bucket.getQueueLength() + order.size() < i + 1) {
+                    Thread.sleep(1)
+                }
+            }
+            threads.each { it.join() }
+        then:
+            order as List == [0, 1, 2, 3, 4]
+    }
+
+    def "head should fail immediately when tokens can not be refilled before deadline"() {
+        setup:
+            FairBlockingBucket bucket = new FairBlockingBucket(Bucket4j.builder()
+                    .addLimit(0, Bandwidth.simple(1, Duration.ofHours(1)))
+                    .build())
+        when:
+            long startNanos = System.nanoTime()
+            boolean consumed = bucket.tryConsume(1, TimeUnit.SECONDS.toNanos(10), BlockingStrategy.PARKING)
+        then:
+            !consumed
+            System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(5)
+            bucket.getQueueLength() == 0
+    }
+
+    def "waiter behind head should leave queue at deadline"() {
+        setup:
+            FairBlockingBucket bucket = new FairBlockingBucket(Bucket4j.builder()
+                    .withNanosecondPrecision()
+                    .addLimit(0, Bandwidth.simple(1, Duration.ofSeconds(2)))
+                    .build())
+            Thread head = new Thread({
+                bucket.tryConsumeUninterruptibly(1, TimeUnit.SECONDS.toNanos(10), BlockingStrategy.PARKING)
+            })
+            head.start()
+            awaitQueueLength(bucket, 1)
+        when:
+            boolean consumed = bucket.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(100), BlockingStrategy.PARKING)
+            head.join()
+        then:
+            !consumed
+            bucket.getQueueLength() == 0
+    }
+
+    def "interrupted waiter should leave queue"() {
+        setup:
+            FairBlockingBucket bucket = new FairBlockingBucket(Bucket4j.builder()
+                    .addLimit(0, Bandwidth.simple(1, Duration.ofSeconds(10)))
+                    .build())
+            AtomicReference<Throwable> error = new AtomicReference<>()
+            Thread waiter = new Thread({
+                try {
+                    bucket.tryConsume(1, TimeUnit.SECONDS.toNanos(20), BlockingStrategy.PARKING)
+                } catch (InterruptedException e) {
+                    error.set(e)
+                }
+            })
+        when:
+            waiter.start()
+            awaitQueueLength(bucket, 1)
+            waiter.interrupt()
+            waiter.join()
+        then:
+            error.get() instanceof InterruptedException
+            bucket.getQueueLength() == 0
+    }
+
+    private static void awaitQueueLength(FairBlockingBucket bucket, int length) {
+        while (bucket.getQueueLength() < length) {
+            Thread.sleep(1)
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.*
+import io.github.bucket4j.local.GcraBucket
+import io.github.bucket4j.local.LockFreeBucket
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+
+class GcraStateSpecification extends Specification {
+
+    private static final BlockingStrategy NO_PARKING = new BlockingStrategy() {
+        @Override
+        void park(long nanosToPark) {
+        }
+        @Override
+        void parkUninterruptibly(long nanosToPark) {
+        }
+    }
+
+    @Unroll
+    def "GCRA should be equivalent to token bucket for seed #seed"(long seed) {
+        setup:
+            Random random = new Random(seed)
+            long emissionInterval = 1 + random.nextInt(100)
+            long refillTokens = 1 + random.nextInt(10)
+            long capacity = 1 + random.nextInt(50)
+            Bandwidth bandwidth = Bandwidth.classic(capacity, Refill.smooth(refillTokens, Duration.ofNanos(emissionInterval * refillTokens)))
+            ConfigurationBuilder builder = Bucket4j.configurationBuilder()
+            if (random.nextBoolean()) {
+                builder.addLimit(random.nextInt((int) capacity + 1), bandwidth)
+            } else {
+                builder.addLimit(bandwidth)
+            }
+            BucketConfiguration configuration = builder.buildConfiguration()
+            BucketConfiguration gcraConfiguration = builder.withGcraState().buildConfiguration()
+
+            TimeMeterMock timeMeter = new TimeMeterMock(random.nextInt(1_000_000))
+            Bucket tokenBucket = new LockFreeBucket(configuration, timeMeter)
+            Bucket gcraBucket = new GcraBucket(gcraConfiguration, timeMeter)
+            GridBucketState gridState = new GridBucketState(gcraConfiguration,
+                    BucketState.createInitialState(gcraConfiguration, timeMeter.currentTimeNanos()))
+        expect:
+            for (int i = 0; i < 5_000; i++) {
+                long now = timeMeter.currentTimeNanos()
+                long tokens = 1 + random.nextInt((int) capacity + 2)
+                switch (random.nextInt(8)) {
+                    case 0:
+                        timeMeter.addTime(random.nextInt((int) (emissionInterval * 3)))
+                        break
+                    case 1:
+                        boolean consumed = tokenBucket.tryConsume(tokens)
+                        assert gcraBucket.tryConsume(tokens) == consumed
+                        assert new TryConsumeCommand(tokens).execute(gridState, now) == consumed
+                        break
+                    case 2:
+                        ConsumptionProbe probe = tokenBucket.tryConsumeAndReturnRemaining(tokens)
+                        assertEquals(probe, gcraBucket.tryConsumeAndReturnRemaining(tokens))
+                        assertEquals(probe, new TryConsumeAndReturnRemainingTokensCommand(tokens).execute(gridState, now))
+                        break
+                    case 3:
+                        long consumed = tokenBucket.tryConsumeAsMuchAsPossible(tokens)
+                        assert gcraBucket.tryConsumeAsMuchAsPossible(tokens) == consumed
+                        assert new ConsumeAsMuchAsPossibleCommand(tokens).execute(gridState, now) == consumed
+                        break
+                    case 4:
+                        tokenBucket.addTokens(tokens)
+                        gcraBucket.addTokens(tokens)
+                        new AddTokensCommand(tokens).execute(gridState, now)
+                        break
+                    case 5:
+                        long maxWait = random.nextInt((int) (emissionInterval * capacity))
+                        if (maxWait > 0) {
+                            boolean reserved = tokenBucket.tryConsumeUninterruptibly(tokens, maxWait, NO_PARKING)
+                            assert gcraBucket.tryConsumeUninterruptibly(tokens, maxWait, NO_PARKING) == reserved
+                            long sleep = new ReserveAndCalculateTimeToSleepCommand(tokens, maxWait).execute(gridState, now)
+                            assert (sleep != Long.MAX_VALUE) == reserved
+                        }
+                        break
+                    case 6:
+                        BucketState expected = tokenBucket.createSnapshot()
+                        expected.refillAllBandwidth(configuration.getBandwidths(), now)
+                        assertEquals(expected, gcraBucket.createSnapshot())
+                        assertEquals(expected, new CreateSnapshotCommand().execute(gridState, now))
+                        break
+                    default:
+                        long available = tokenBucket.getAvailableTokens()
+                        assert gcraBucket.getAvailableTokens() == available
+                        assert new GetAvailableTokensCommand().execute(gridState, now) == available
+                }
+            }
+        where:
+            seed << (1..20)
+    }
+
+    def "GCRA state should survive replacement of configuration"() {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .buildConfiguration()
+            BucketConfiguration newConfiguration = Bucket4j.configurationBuilder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.simple(100, Duration.ofNanos(100)))
+                    .buildConfiguration()
+            GcraBucket bucket = new GcraBucket(configuration, timeMeter)
+        when:
+            bucket.tryConsume(4)
+            bucket.replaceConfiguration(newConfiguration)
+        then:
+            bucket.getAvailableTokens() == 6
+            bucket.getConfiguration() == newConfiguration
+        when:
+            timeMeter.addTime(10)
+        then:
+            bucket.getAvailableTokens() == 16
+        when:
+            bucket.replaceConfiguration(Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(100, Duration.ofNanos(100)))
+                    .buildConfiguration())
+        then:
+            thrown(IncompatibleConfigurationException)
+    }
+
+    def "local builder should create GCRA bucket and grid state should be stored as single long"() {
+        setup:
+            ConfigurationBuilder builder = Bucket4j.builder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.simple(10, Duration.ofSeconds(1)))
+            BucketConfiguration configuration = builder.buildConfiguration()
+            GridBucketState gridState = new GridBucketState(configuration, BucketState.createInitialState(configuration, 0))
+        expect:
+            builder.build() instanceof GcraBucket
+            gridState.getState(0).getAvailableTokens(configuration.getBandwidths()) == 10
+            serializedSize(gridState) < serializedSize(new GridBucketState(Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofSeconds(1)))
+                    .buildConfiguration(), BucketState.createInitialState(configuration, 0)))
+    }
+
+    def "GCRA grid state should require current time for conversion after deserialization"() {
+        setup:
+            BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .buildConfiguration()
+            GridBucketState gridState = new GridBucketState(configuration, BucketState.createInitialState(configuration, 1000))
+            gridState.consume(10)
+            GridBucketState deserialized = deserialize(serialize(gridState))
+        when:
+            deserialized.getState()
+        then:
+            UnsupportedOperationException ex = thrown()
+            ex.message == BucketExceptions.gcraStateRequiresCurrentTime().message
+        when:
+            deserialized.copyBucketState()
+        then:
+            thrown(UnsupportedOperationException)
+        expect:
+            deserialized.getState(1050).getAvailableTokens(configuration.getBandwidths()) == 5
+            deserialized.copyBucketState(1100).getAvailableTokens(configuration.getBandwidths()) == 10
+    }
+
+    def "should reject configurations which can not be represented by GCRA"() {
+        when:
+            Bucket4j.configurationBuilder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.simple(10, Duration.ofSeconds(1)))
+                    .addLimit(Bandwidth.simple(100, Duration.ofMinutes(1)))
+                    .buildConfiguration()
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            Bucket4j.configurationBuilder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.simple(3, Duration.ofNanos(10)))
+                    .buildConfiguration()
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            Bucket4j.configurationBuilder()
+                    .withGcraState()
+                    .addLimit(Bandwidth.classic(1_000_000_000_000, Refill.smooth(1, Duration.ofDays(1))))
+                    .buildConfiguration()
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    private static void assertEquals(ConsumptionProbe expected, ConsumptionProbe actual) {
+        assert actual.isConsumed() == expected.isConsumed()
+        assert actual.getRemainingTokens() == expected.getRemainingTokens()
+        assert actual.getNanosToWaitForRefill() == expected.getNanosToWaitForRefill()
+    }
+
+    private static void assertEquals(BucketState expected, BucketState actual) {
+        assert actual.getCurrentSize(0) == expected.getCurrentSize(0)
+        assert actual.getRoundingError(0) == expected.getRoundingError(0)
+    }
+
+    private static int serializedSize(Serializable object) {
+        return serialize(object).length
+    }
+
+    private static byte[] serialize(Serializable object) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        new ObjectOutputStream(bytes).withCloseable { it.writeObject(object) }
+        return bytes.toByteArray()
+    }
+
+    private static <T> T deserialize(byte[] bytes) {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).withCloseable { (T) it.readObject() }
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+class HashedWheelTimerSpecification extends Specification {
+
+    def "task should never be executed before its deadline"() {
+        setup:
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 8)
+            int tasks = 50
+            CountDownLatch latch = new CountDownLatch(tasks)
+            AtomicLong earlyExecutions = new AtomicLong()
+        when:
+            for (int i = 0; i < tasks; i++) {
+                long delayNanos = TimeUnit.MILLISECONDS.toNanos(i % 25)
+                long deadlineNanos = System.nanoTime() + delayNanos
+                timer.schedule({
+                    if (System.nanoTime() < deadlineNanos) {
+                        earlyExecutions.incrementAndGet()
+                    }
+                    latch.countDown()
+                }, delayNanos)
+            }
+        then:
+            latch.await(10, TimeUnit.SECONDS)
+            earlyExecutions.get() == 0
+        cleanup:
+            timer.stop()
+    }
+
+    def "delay which is longer than wheel should take several rounds"() {
+        setup:
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 4)
+            CountDownLatch latch = new CountDownLatch(1)
+            long startNanos = System.nanoTime()
+            long delayNanos = TimeUnit.MILLISECONDS.toNanos(30)
+        when:
+            timer.schedule({ latch.countDown() }, delayNanos)
+        then:
+            latch.await(10, TimeUnit.SECONDS)
+            System.nanoTime() - startNanos >= delayNanos
+            timer.getPendingTasks() == 0
+        cleanup:
+            timer.stop()
+    }
+
+    def "all scheduled tasks should be executed"() {
+        setup:
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 512)
+            int tasks = 100_000
+            CountDownLatch latch = new CountDownLatch(tasks)
+        when:
+            for (int i = 0; i < tasks; i++) {
+                timer.schedule({ latch.countDown() }, TimeUnit.MILLISECONDS.toNanos(i % 10))
+            }
+        then:
+            latch.await(20, TimeUnit.SECONDS)
+            timer.getPendingTasks() == 0
+        cleanup:
+            timer.stop()
+    }
+
+    def "failure of task should not stop the timer"() {
+        setup:
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 8)
+            CountDownLatch latch = new CountDownLatch(1)
+        when:
+            timer.schedule({ throw new IllegalStateException("expected") }, 0)
+            timer.schedule({ latch.countDown() }, TimeUnit.MILLISECONDS.toNanos(2))
+        then:
+            latch.await(10, TimeUnit.SECONDS)
+        cleanup:
+            timer.stop()
+    }
+
+    def "cancelled task should not be executed"() {
+        setup:
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 8)
+            AtomicLong executions = new AtomicLong()
+            CountDownLatch latch = new CountDownLatch(1)
+        when:
+            HashedWheelTimer.Timeout timeout = timer.schedule({ executions.incrementAndGet() }, TimeUnit.MILLISECONDS.toNanos(5))
+        then:
+            timeout.cancel()
+            timeout.isCancelled()
+            !timeout.cancel()
+            timer.getPendingTasks() == 0
+        when:
+            timer.schedule({ latch.countDown() }, TimeUnit.MILLISECONDS.toNanos(20))
+        then:
+            latch.await(10, TimeUnit.SECONDS)
+            executions.get() == 0
+        cleanup:
+            timer.stop()
+    }
+
+    def "tasks should be executed by task executor instead of worker thread"() {
+        setup:
+            Executor executor = Executors.newSingleThreadExecutor({ runnable -> new Thread(runnable, "task-executor") })
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 8, executor)
+            CompletableFuture<String> threadName = new CompletableFuture<>()
+        when:
+            timer.schedule({ threadName.complete(Thread.currentThread().getName()) }, TimeUnit.MILLISECONDS.toNanos(2))
+        then:
+            threadName.get(10, TimeUnit.SECONDS) == "task-executor"
+        cleanup:
+            timer.stop()
+            executor.shutdown()
+    }
+
+    def "default timer should not be stopped"() {
+        when:
+            HashedWheelTimer.getDefault().stop()
+        then:
+            UnsupportedOperationException ex = thrown()
+            ex.message == BucketExceptions.defaultTimerCanNotBeStopped().message
+        when:
+            boolean consumed = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(1, Duration.ofMinutes(1)))
+                    .build()
+                    .asAsync().tryConsume(1, TimeUnit.SECONDS.toNanos(1)).get(10, TimeUnit.SECONDS)
+        then:
+            consumed
+    }
+
+    def "async tryConsume should be completed by timer after refill"() {
+        setup:
+            long startNanos = System.nanoTime()
+            Bucket bucket = Bucket4j.builder()
+                    .withNanosecondPrecision()
+                    .addLimit(0, Bandwidth.simple(10, Duration.ofMillis(100)))
+                    .build()
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 64)
+        when:
+            boolean consumed = bucket.asAsync().tryConsumeWithTimer(1, TimeUnit.SECONDS.toNanos(1), timer).get(10, TimeUnit.SECONDS)
+        then:
+            consumed
+            System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(9)
+        cleanup:
+            timer.stop()
+    }
+
+    def "async tryConsume should return false immediately when max wait time is exceeded"() {
+        setup:
+            Bucket bucket = Bucket4j.builder()
+                    .addLimit(0, Bandwidth.simple(1, Duration.ofMinutes(1)))
+                    .build()
+        when:
+            def future = bucket.asAsync().tryConsume(1, TimeUnit.SECONDS.toNanos(1))
+        then:
+            future.isDone()
+            !future.get()
+            HashedWheelTimer.getDefault().getPendingTasks() == 0
+    }
+
+    def "default tryConsumeWithTimer should schedule delayed completion to the timer"() {
+        setup:
+            long startNanos = System.nanoTime()
+            Bucket bucket = Bucket4j.builder()
+                    .withNanosecondPrecision()
+                    .addLimit(0, Bandwidth.simple(10, Duration.ofMillis(100)))
+                    .build()
+            AsyncBucket asyncBucket = new AsyncBucketWithoutTimerSupport(bucket.asAsync())
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 64)
+        when:
+            boolean consumed = asyncBucket.tryConsumeWithTimer(1, TimeUnit.SECONDS.toNanos(1), timer).get(10, TimeUnit.SECONDS)
+        then:
+            consumed
+            System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(9)
+        when:
+            asyncBucket.tryConsumeWithTimer(1, 1000_000, null)
+        then:
+            IllegalArgumentException ex = thrown()
+            ex.message == BucketExceptions.nullTimer().message
+        cleanup:
+            timer.stop()
+    }
+
+    def "cancellation of task scheduled via adapter should release the timer"() {
+        setup:
+            HashedWheelTimer timer = new HashedWheelTimer(Duration.ofMillis(1), 64)
+            HashedWheelTimerScheduler scheduler = new HashedWheelTimerScheduler(timer)
+        when:
+            def future = scheduler.schedule({ } as Runnable, 1, TimeUnit.MINUTES)
+        then:
+            timer.pendingTasks == 1
+            future.getDelay(TimeUnit.SECONDS) > 0
+        when:
+            future.cancel(false)
+        then:
+            future.isCancelled()
+            timer.pendingTasks == 0
+        when:
+            String result = scheduler.schedule({ "done" } as Callable<String>, 1, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS)
+        then:
+            result == "done"
+        cleanup:
+            timer.stop()
+    }
+
+    def "invalid parameters of timer should be detected"() {
+        when:
+            new HashedWheelTimer(null, 8)
+        then:
+            IllegalArgumentException ex1 = thrown()
+            ex1.message == BucketExceptions.nullTimeResolution().message
+        when:
+            new HashedWheelTimer(Duration.ZERO, 8)
+        then:
+            IllegalArgumentException ex2 = thrown()
+            ex2.message == BucketExceptions.nonPositiveTimeResolution(0).message
+        when:
+            new HashedWheelTimer(Duration.ofMillis(1), 0)
+        then:
+            IllegalArgumentException ex3 = thrown()
+            ex3.message == BucketExceptions.nonPositiveTicksPerWheel(0).message
+        when:
+            new HashedWheelTimer(Duration.ofMillis(1), 8, null)
+        then:
+            IllegalArgumentException ex4 = thrown()
+            ex4.message == BucketExceptions.nullExecutor().message
+    }
+
+    private static class AsyncBucketWithoutTimerSupport implements AsyncBucket {
+        @Delegate(excludes = ['tryConsumeWithTimer'])
+        final AsyncBucket target
+
+        AsyncBucketWithoutTimerSupport(AsyncBucket target) {
+            this.target = target
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.AddTokensCommand
+import io.github.bucket4j.grid.ConsumeAsMuchAsPossibleCommand
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.LeasedGridBucket
+import io.github.bucket4j.mock.RecordingGridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicLong
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class LeasedGridBucketSpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    RecordingGridProxyMock gridProxy = new RecordingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(100, Duration.ofDays(100)))
+            .buildConfiguration()
+    Bucket gridBucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+
+    def "should serve consumption from lease acquired by single round trip"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 10, 10, Duration.ofSeconds(1), meter)
+            gridProxy.executedCommands.clear()
+        when:
+            10.times { assert bucket.tryConsume(1) }
+        then:
+            gridProxy.executedCommands*.class == [ConsumeAsMuchAsPossibleCommand]
+            bucket.leasedTokens == 0
+            gridBucket.availableTokens == 90
+    }
+
+    def "should adapt lease size to observed demand"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 2, 16, Duration.ofSeconds(1), meter)
+        when:
+            bucket.tryConsume(1)
+        then:
+            bucket.leasedTokens == 1
+        when: "lease is exhausted quickly"
+            bucket.tryConsume(1)
+            bucket.tryConsume(1)
+        then:
+            bucket.leasedTokens == 3
+        when: "lease expires with unused tokens"
+            meter.addTime(Duration.ofSeconds(2).toNanos())
+            bucket.tryConsume(1)
+        then:
+            bucket.leasedTokens == 1
+            gridBucket.availableTokens == 95
+    }
+
+    def "should return unused tokens on expiration"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 10, 10, Duration.ofSeconds(1), meter)
+            bucket.tryConsume(3)
+        when:
+            meter.addTime(Duration.ofSeconds(2).toNanos())
+            gridProxy.executedCommands.clear()
+            bucket.tryConsume(1)
+        then:
+            gridProxy.executedCommands*.class == [AddTokensCommand, ConsumeAsMuchAsPossibleCommand]
+            bucket.leasedTokens == 9
+            gridBucket.availableTokens == 87
+    }
+
+    def "should keep acquisition time of carried-over tokens"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 10, 10, Duration.ofSeconds(1), meter)
+            bucket.tryConsume(5)
+        when:
+            meter.addTime(Duration.ofMillis(800).toNanos())
+            bucket.tryConsume(8)
+        then:
+            bucket.leasedTokens == 7
+            gridBucket.availableTokens == 80
+        when: "lease expires according to the time when carried-over tokens were acquired"
+            meter.addTime(Duration.ofMillis(300).toNanos())
+            bucket.tryConsume(1)
+        then:
+            bucket.leasedTokens == 9
+            gridBucket.availableTokens == 77
+    }
+
+    def "should return leased tokens when request can not be satisfied"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 10, 10, Duration.ofSeconds(1), meter)
+            gridBucket.tryConsume(95)
+        when:
+            boolean consumed = bucket.tryConsume(6)
+        then:
+            !consumed
+            bucket.leasedTokens == 0
+            gridBucket.availableTokens == 5
+        when:
+            consumed = bucket.tryConsume(5)
+        then:
+            consumed
+            gridBucket.availableTokens == 0
+    }
+
+    def "should lease deficit when request is greater than lease"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 2, 4, Duration.ofSeconds(1), meter)
+        when:
+            boolean consumed = bucket.tryConsume(30)
+        then:
+            consumed
+            bucket.leasedTokens == 0
+            gridBucket.availableTokens == 70
+    }
+
+    def "releaseLease should return all unused tokens"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 10, 10, Duration.ofSeconds(1), meter)
+            bucket.tryConsume(1)
+        when:
+            bucket.releaseLease()
+        then:
+            bucket.leasedTokens == 0
+            gridBucket.availableTokens == 99
+    }
+
+    def "concurrent consumption should never exceed the limit of bucket in the grid"() {
+        setup:
+            LeasedGridBucket bucket = new LeasedGridBucket(gridBucket, 1, 8, Duration.ofSeconds(1), meter)
+            AtomicLong consumed = new AtomicLong()
+        when:
+            List<Thread> threads = (1..4).collect {
+                Thread.start {
+                    50.times {
+                        if (bucket.tryConsume(1)) {
+                            consumed.incrementAndGet()
+                        }
+                    }
+                }
+            }
+            threads*.join()
+        then:
+            consumed.get() + bucket.leasedTokens == 100
+            gridBucket.availableTokens == 0
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.MultiKeyConsumption
+import io.github.bucket4j.local.LocalProxyManager
+import io.github.bucket4j.mock.GridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.function.Function
+
+import static io.github.bucket4j.grid.MultiKeyConsistency.ALL_OR_NOTHING
+import static io.github.bucket4j.grid.MultiKeyConsistency.BEST_EFFORT
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class MultiKeyConsumptionSpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    GridProxyMock gridProxy = new GridProxyMock(meter)
+    @Shared
+    Function<String, BucketConfiguration> configurations = { String key ->
+        long capacity = [ip: 10, apiKey: 5, route: 3][key]
+        return Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(capacity, Duration.ofNanos(capacity * 10)))
+                .buildConfiguration()
+    }
+    Map<String, Long> request = [ip: 3L, apiKey: 3L, route: 3L]
+
+    def "should lazily create absent buckets and consume from all of them"() {
+        when:
+            Map<String, ConsumptionProbe> probes = MultiKeyConsumption.tryConsume(gridProxy, request, configurations, mode)
+        then:
+            probes.keySet() as List == ["ip", "apiKey", "route"]
+            probes.values().every { it.consumed }
+            probes.ip.remainingTokens == 7
+            probes.apiKey.remainingTokens == 2
+            probes.route.remainingTokens == 0
+        where:
+            mode << [BEST_EFFORT, ALL_OR_NOTHING]
+    }
+
+    def "best effort should consume from buckets independently"() {
+        setup:
+            MultiKeyConsumption.tryConsume(gridProxy, request, configurations, BEST_EFFORT)
+        when:
+            Map<String, ConsumptionProbe> probes = MultiKeyConsumption.tryConsume(gridProxy, request, configurations, BEST_EFFORT)
+        then:
+            probes.ip.consumed
+            !probes.apiKey.consumed
+            !probes.route.consumed
+            probes.apiKey.nanosToWaitForRefill == 10
+            probes.route.nanosToWaitForRefill == 30
+            availableTokens("ip") == 4
+            availableTokens("apiKey") == 2
+    }
+
+    def "all or nothing should return tokens back when any bucket rejects"() {
+        setup:
+            MultiKeyConsumption.tryConsume(gridProxy, request, configurations, ALL_OR_NOTHING)
+        when:
+            Map<String, ConsumptionProbe> probes = MultiKeyConsumption.tryConsume(gridProxy, request, configurations, ALL_OR_NOTHING)
+        then:
+            probes.values().every { !it.consumed }
+            probes.ip.remainingTokens == 7
+            probes.ip.nanosToWaitForRefill == 0
+            probes.route.nanosToWaitForRefill == 30
+            availableTokens("ip") == 7
+            availableTokens("apiKey") == 2
+            availableTokens("route") == 0
+    }
+
+    def "async consumption should return same results in single future"() {
+        setup:
+            MultiKeyConsumption.tryConsume(gridProxy, [ip: 3L, apiKey: 3L], configurations, BEST_EFFORT)
+        when:
+            Map<String, ConsumptionProbe> probes = MultiKeyConsumption.tryConsumeAsync(gridProxy, request, configurations, ALL_OR_NOTHING).get()
+        then:
+            probes.values().every { !it.consumed }
+            availableTokens("ip") == 7
+            availableTokens("route") == 3
+    }
+
+    def "default implementation of proxy manager should provide same semantic"() {
+        setup:
+            LocalProxyManager<String> proxyManager = new LocalProxyManager<>(100, meter)
+        when:
+            proxyManager.tryConsume(request, configurations, ALL_OR_NOTHING)
+            Map<String, ConsumptionProbe> probes = proxyManager.tryConsume(request, configurations, ALL_OR_NOTHING)
+        then:
+            probes.values().every { !it.consumed }
+            proxyManager.getProxy("ip").get().availableTokens == 7
+
+        when:
+            probes = proxyManager.tryConsume(request, configurations, BEST_EFFORT)
+        then:
+            probes.ip.consumed
+            !probes.route.consumed
+            proxyManager.getProxy("ip").get().availableTokens == 4
+    }
+
+    def "should reject illegal requests"() {
+        when:
+            MultiKeyConsumption.tryConsume(gridProxy, tokens, supplier, mode)
+        then:
+            IllegalArgumentException ex = thrown()
+            ex.message == expectedException.message
+        where:
+            tokens       | supplier       | mode        | expectedException
+            null         | configurations | BEST_EFFORT | BucketExceptions.nullBatch()
+            [:]          | configurations | BEST_EFFORT | BucketExceptions.emptyBatch()
+            [ip: 0L]     | configurations | BEST_EFFORT | BucketExceptions.nonPositiveTokensToConsume(0)
+            [ip: 1L]     | null           | BEST_EFFORT | BucketExceptions.nullConfigurationSupplier()
+            [ip: 1L]     | configurations | null        | BucketExceptions.nullMultiKeyConsistency()
+    }
+
+    private long availableTokens(String key) {
+        return GridBucket.createLazyBucket(key, { configurations.apply(key) }, gridProxy).availableTokens
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.TryConsumeAndReturnRemainingTokensCommand
+import io.github.bucket4j.mock.RecordingGridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class RejectionCacheSpecification extends Specification {
+
+    static final long SECOND = Duration.ofSeconds(1).toNanos()
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    RecordingGridProxyMock gridProxy = new RecordingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(10, Duration.ofSeconds(10)))
+            .buildConfiguration()
+    GridBucket<String> bucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+            .withRejectionCache(meter)
+
+    def "requests inside rejection window should be rejected without round trip"() {
+        setup:
+            bucket.tryConsume(10)
+            gridProxy.executedCommands.clear()
+        when:
+            boolean consumed = bucket.tryConsume(1)
+        then:
+            !consumed
+            gridProxy.executedCommands*.class == [TryConsumeAndReturnRemainingTokensCommand]
+        when:
+            meter.addTime(SECOND - 1)
+            5.times { assert !bucket.tryConsume(1) }
+            ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1)
+        then:
+            !probe.consumed
+            probe.nanosToWaitForRefill == 1
+            gridProxy.executedCommands.size() == 1
+        when:
+            meter.addTime(1)
+            consumed = bucket.tryConsume(1)
+        then:
+            consumed
+            gridProxy.executedCommands.size() == 2
+    }
+
+    def "asynchronous requests inside rejection window should be rejected without round trip"() {
+        setup:
+            bucket.tryConsume(10)
+            bucket.tryConsume(1)
+            gridProxy.executedCommands.clear()
+        when:
+            boolean consumed = bucket.asAsync().tryConsume(1).get()
+            ConsumptionProbe probe = bucket.asAsync().tryConsumeAndReturnRemaining(2).get()
+        then:
+            !consumed
+            !probe.consumed
+            probe.nanosToWaitForRefill == SECOND
+            gridProxy.executedCommands.isEmpty()
+    }
+
+    def "lower bound of waiting for smaller request should be derived from configuration"() {
+        setup:
+            bucket.tryConsume(8)
+            ConsumptionProbe rejection = bucket.tryConsumeAndReturnRemaining(6)
+            gridProxy.executedCommands.clear()
+        expect:
+            rejection.nanosToWaitForRefill == 4 * SECOND
+            bucket.tryConsumeAndReturnRemaining(7).nanosToWaitForRefill == 4 * SECOND
+            bucket.tryConsumeAndReturnRemaining(5).nanosToWaitForRefill == 2 * SECOND
+            gridProxy.executedCommands.isEmpty()
+        when: "request which can be satisfied by fractional refill is sent to the grid"
+            boolean consumed = bucket.tryConsume(2)
+        then:
+            consumed
+            gridProxy.executedCommands.size() == 1
+    }
+
+    def "addTokens should invalidate rejection cache"() {
+        setup:
+            bucket.tryConsume(10)
+            bucket.tryConsume(1)
+        when:
+            bucket.addTokens(5)
+        then:
+            bucket.tryConsume(1)
+    }
+
+    def "asynchronous addTokens should invalidate rejection cache"() {
+        setup:
+            bucket.tryConsume(10)
+            bucket.tryConsume(1)
+        when:
+            bucket.asAsync().addTokens(5).get()
+        then:
+            bucket.tryConsume(1)
+    }
+
+    def "replaceConfiguration should invalidate rejection cache"() {
+        setup:
+            bucket.tryConsume(10)
+            bucket.tryConsume(1)
+            BucketConfiguration newConfiguration = Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(10)))
+                    .buildConfiguration()
+        when:
+            bucket.replaceConfiguration(newConfiguration)
+            meter.addTime(1)
+        then:
+            bucket.tryConsume(1)
+    }
+
+    def "rejection observed before invalidation should not be cached"() {
+        setup:
+            GridBucket<String> plainBucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+            plainBucket.tryConsume(10)
+            gridProxy.onExecute = {
+                // tokens are added concurrently while rejection is in flight
+                gridProxy.onExecute = null
+                bucket.addTokens(5)
+            }
+        when:
+            boolean consumed = bucket.tryConsume(1)
+        then:
+            !consumed
+            bucket.tryConsume(1)
+    }
+
+    def "bucket without rejection cache should send each request to the grid"() {
+        setup:
+            GridBucket<String> plainBucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+            plainBucket.tryConsume(10)
+            gridProxy.executedCommands.clear()
+        when:
+            3.times { assert !plainBucket.tryConsume(1) }
+        then:
+            gridProxy.executedCommands.size() == 3
+    }
+
+}
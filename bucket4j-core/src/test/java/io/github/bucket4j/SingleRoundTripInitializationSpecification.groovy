@@ -0,0 +1,233 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.BucketNotFoundException
+import io.github.bucket4j.grid.CommandResult
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.GridCommand
+import io.github.bucket4j.grid.SingleRoundTripInitializer
+import io.github.bucket4j.mock.GridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class SingleRoundTripInitializationSpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    CountingGridProxyMock gridProxy = new CountingGridProxyMock(meter)
+    AtomicInteger supplierCalls = new AtomicInteger()
+    Supplier<BucketConfiguration> configurationSupplier = {
+        supplierCalls.incrementAndGet()
+        return Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(100, Duration.ofSeconds(1)))
+                .buildConfiguration()
+    }
+
+    def "by default the first touch of absent key should cost two round trips"() {
+        setup:
+            Bucket bucket = GridBucket.createLazyBucket("42", configurationSupplier, gridProxy)
+        when:
+            bucket.tryConsume(1)
+        then:
+            gridProxy.executions.get() == 1
+            gridProxy.initializations.get() == 1
+    }
+
+    def "the first touch of absent key should cost single round trip"() {
+        setup:
+            Bucket bucket = GridBucket.createLazyBucket("42", configurationSupplier, gridProxy).withSingleRoundTripInitialization()
+        when:
+            bucket.tryConsume(1)
+        then:
+            gridProxy.executions.get() == 0
+            gridProxy.initializations.get() == 1
+        when:
+            bucket.tryConsume(1)
+        then:
+            gridProxy.executions.get() == 1
+            gridProxy.initializations.get() == 1
+            bucket.availableTokens == 98
+    }
+
+    def "the first asynchronous touch of absent key should cost single round trip"() {
+        setup:
+            Bucket bucket = GridBucket.createLazyBucket("42", configurationSupplier, gridProxy).withSingleRoundTripInitialization()
+        when:
+            boolean consumed = bucket.asAsync().tryConsume(1).get()
+        then:
+            consumed
+            gridProxy.executions.get() == 0
+            gridProxy.initializations.get() == 1
+        when:
+            bucket.asAsync().tryConsume(1).get()
+        then:
+            gridProxy.executions.get() == 1
+            gridProxy.initializations.get() == 1
+    }
+
+    def "initialization should not reset the state of existing bucket"() {
+        setup:
+            GridBucket.createLazyBucket("42", configurationSupplier, gridProxy).tryConsume(10)
+            Bucket bucket = GridBucket.createLazyBucket("42", configurationSupplier, gridProxy).withSingleRoundTripInitialization()
+        when:
+            bucket.tryConsume(1)
+        then:
+            bucket.availableTokens == 89
+    }
+
+    def "configuration should be memoized"() {
+        setup:
+            Bucket bucket = GridBucket.createLazyBucket("42", configurationSupplier, gridProxy).withSingleRoundTripInitialization()
+        when:
+            bucket.tryConsume(1)
+            gridProxy.removeState("42")
+            bucket.tryConsume(1)
+            gridProxy.removeState("42")
+            bucket.asAsync().tryConsume(1).get()
+        then:
+            supplierCalls.get() == 1
+            gridProxy.initializations.get() == 3
+    }
+
+    def "concurrent callers hitting absent bucket should share single initialization"() {
+        setup:
+            Bucket bucket = GridBucket.createLazyBucket("42", configurationSupplier, gridProxy).withSingleRoundTripInitialization()
+            gridProxy.blockNextInitialization()
+            Thread initiator = Thread.start { assert bucket.tryConsume(1) }
+            gridProxy.entered.await()
+        when:
+            List<Thread> followers = (1..5).collect { Thread.start { assert bucket.tryConsume(1) } }
+            CompletableFuture<Boolean> asyncFollower = bucket.asAsync().tryConsume(1)
+            while (followers.any { it.state != Thread.State.WAITING }) {
+                Thread.sleep(1)
+            }
+            gridProxy.release.countDown()
+            initiator.join()
+            followers*.join()
+        then:
+            asyncFollower.get()
+            gridProxy.initializations.get() == 1
+            gridProxy.executions.get() == 6
+            supplierCalls.get() == 1
+            bucket.availableTokens == 93
+    }
+
+    def "proxies of same key created via same initializer should share the state of initialization"() {
+        setup:
+            SingleRoundTripInitializer<String> initializer = new SingleRoundTripInitializer<>()
+        when:
+            GridBucket.createLazyBucket("42", configurationSupplier, gridProxy, initializer).tryConsume(1)
+            GridBucket.createLazyBucket("42", configurationSupplier, gridProxy, initializer).tryConsume(1)
+            GridBucket.createLazyBucket("42", configurationSupplier, gridProxy, initializer).asAsync().tryConsume(1).get()
+        then:
+            gridProxy.initializations.get() == 1
+            gridProxy.executions.get() == 2
+            supplierCalls.get() == 1
+        when:
+            GridBucket.createLazyBucket("13", configurationSupplier, gridProxy, initializer).tryConsume(1)
+        then:
+            gridProxy.initializations.get() == 2
+            supplierCalls.get() == 2
+    }
+
+    def "concurrent callers hitting absent bucket through different proxies should share single initialization"() {
+        setup:
+            SingleRoundTripInitializer<String> initializer = new SingleRoundTripInitializer<>()
+            Supplier<Bucket> proxies = { GridBucket.createLazyBucket("42", configurationSupplier, gridProxy, initializer) }
+            gridProxy.blockNextInitialization()
+            Thread initiator = Thread.start { assert proxies.get().tryConsume(1) }
+            gridProxy.entered.await()
+        when:
+            List<Thread> followers = (1..5).collect { Thread.start { assert proxies.get().tryConsume(1) } }
+            CompletableFuture<Boolean> asyncFollower = proxies.get().asAsync().tryConsume(1)
+            while (followers.any { it.state != Thread.State.WAITING }) {
+                Thread.sleep(1)
+            }
+            gridProxy.release.countDown()
+            initiator.join()
+            followers*.join()
+        then:
+            asyncFollower.get()
+            gridProxy.initializations.get() == 1
+            gridProxy.executions.get() == 6
+            supplierCalls.get() == 1
+            proxies.get().availableTokens == 93
+    }
+
+    def "absent bucket should not be initialized implicitly when THROW_BUCKET_NOT_FOUND_EXCEPTION strategy is used"() {
+        setup:
+            Bucket bucket = GridBucket.createInitializedBucket("42", configurationSupplier.get(), gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+                    .withSingleRoundTripInitialization()
+            gridProxy.removeState("42")
+        when:
+            bucket.tryConsume(1)
+        then:
+            thrown(BucketNotFoundException)
+            gridProxy.initializations.get() == 0
+    }
+
+    static class CountingGridProxyMock extends GridProxyMock {
+
+        final AtomicInteger executions = new AtomicInteger()
+        final AtomicInteger initializations = new AtomicInteger()
+        CountDownLatch entered
+        CountDownLatch release
+        volatile boolean blockNext
+
+        CountingGridProxyMock(TimeMeter timeMeter) {
+            super(timeMeter)
+        }
+
+        void blockNextInitialization() {
+            entered = new CountDownLatch(1)
+            release = new CountDownLatch(1)
+            blockNext = true
+        }
+
+        @Override
+        synchronized CommandResult execute(Serializable key, GridCommand command) {
+            // the state of mock is updated non-atomically, so concurrent commands are serialized as they would be by the grid
+            executions.incrementAndGet()
+            return super.execute(key, command)
+        }
+
+        @Override
+        Serializable createInitialStateAndExecute(Serializable key, BucketConfiguration configuration, GridCommand command) {
+            initializations.incrementAndGet()
+            if (blockNext) {
+                blockNext = false
+                entered.countDown()
+                release.await()
+            }
+            Serializable result = super.createInitialStateAndExecute(key, configuration, command)
+            // execution of command is the part of initialization round trip
+            executions.decrementAndGet()
+            return result
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.ConsumeAsMuchAsPossibleCommand
+import io.github.bucket4j.grid.GetAvailableTokensCommand
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.TryConsumeCommand
+import io.github.bucket4j.grid.TwoTierBucket
+import io.github.bucket4j.mock.RecordingGridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class TwoTierBucketSpecification extends Specification {
+
+    static final long SECOND = Duration.ofSeconds(1).toNanos()
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    RecordingGridProxyMock gridProxy = new RecordingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(1000, Duration.ofDays(10000)))
+            .buildConfiguration()
+    Bucket gridBucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+    TwoTierBucket bucket = new TwoTierBucket(gridBucket, 50, 100, Duration.ofSeconds(1), meter)
+
+    def "each request should be checked by the grid until first rebalance"() {
+        setup:
+            gridProxy.executedCommands.clear()
+        when:
+            10.times { assert bucket.tryConsume(1) }
+        then:
+            gridProxy.executedCommands.size() == 10
+            bucket.localShare == 0
+    }
+
+    def "requests should be admitted locally after rebalance"() {
+        setup:
+            10.times { bucket.tryConsume(1) }
+            meter.addTime(SECOND)
+            gridProxy.executedCommands.clear()
+        when: "rebalance assigns share according to observed demand, local bucket is empty just after rebalance"
+            bucket.tryConsume(1)
+        then:
+            bucket.localShare == 10
+            gridProxy.executedCommands*.class == [GetAvailableTokensCommand, TryConsumeCommand]
+        when:
+            meter.addTime(SECOND / 2 as long)
+            gridProxy.executedCommands.clear()
+            5.times { assert bucket.tryConsume(1) }
+        then:
+            gridProxy.executedCommands.isEmpty()
+        when: "next rebalance debits locally admitted tokens from the grid"
+            meter.addTime(SECOND / 2 as long)
+            bucket.tryConsume(1)
+        then:
+            gridProxy.executedCommands*.class == [ConsumeAsMuchAsPossibleCommand, GetAvailableTokensCommand, TryConsumeCommand]
+            gridBucket.availableTokens == 1000 - 10 - 1 - 5 - 1
+    }
+
+    def "local share should be limited by maximum share"() {
+        setup:
+            100.times { bucket.tryConsume(1) }
+            meter.addTime(SECOND)
+        when:
+            bucket.tryConsume(1)
+        then:
+            bucket.localShare == 50
+    }
+
+    def "should degrade to pure grid checks when global bucket runs low"() {
+        setup:
+            gridBucket.tryConsume(820)
+            50.times { bucket.tryConsume(1) }
+            meter.addTime(SECOND)
+        when: "only 30 tokens above low watermark"
+            bucket.tryConsume(1)
+        then:
+            bucket.localShare == 30
+        when:
+            gridBucket.tryConsume(30)
+            meter.addTime(SECOND)
+            bucket.tryConsume(1)
+        then:
+            bucket.localShare == 0
+        when:
+            meter.addTime(SECOND / 2 as long)
+            gridProxy.executedCommands.clear()
+            5.times { assert bucket.tryConsume(1) }
+        then:
+            gridProxy.executedCommands.size() == 5
+    }
+
+    def "should drop local share when grid rejects the request"() {
+        setup:
+            10.times { bucket.tryConsume(1) }
+            meter.addTime(SECOND)
+            bucket.tryConsume(1)
+            meter.addTime(SECOND / 2 as long)
+            gridBucket.tryConsumeAsMuchAsPossible()
+        when:
+            boolean consumed = bucket.tryConsume(6)
+        then:
+            !consumed
+            bucket.localShare == 0
+        when:
+            gridProxy.executedCommands.clear()
+            consumed = bucket.tryConsume(1)
+        then:
+            !consumed
+            gridProxy.executedCommands.size() == 1
+    }
+
+    @Unroll
+    def "should detect illegal arguments #maxLocalShare #lowWatermark #interval"() {
+        when:
+            new TwoTierBucket(gridBucket, maxLocalShare, lowWatermark, interval, meter)
+        then:
+            thrown(IllegalArgumentException)
+        where:
+            maxLocalShare | lowWatermark | interval
+            0             | 0            | Duration.ofSeconds(1)
+            1             | -1           | Duration.ofSeconds(1)
+            1             | 0            | Duration.ZERO
+            1             | 0            | null
+    }
+
+}
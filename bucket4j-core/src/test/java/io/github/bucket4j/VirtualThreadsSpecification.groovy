@@ -0,0 +1,36 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package io.github.bucket4j
+
+import spock.lang.Specification
+
+class VirtualThreadsSpecification extends Specification {
+
+    def "platform threads should not be detected as virtual"() {
+        expect:
+            !VirtualThreads.isVirtual(Thread.currentThread())
+            !VirtualThreads.isCurrentThreadVirtual()
+    }
+
+    def "support of virtual threads should be detected by version of JDK"() {
+        expect:
+            VirtualThreads.isSupported() == (Thread.metaClass.respondsTo(Thread.currentThread(), "isVirtual").size() > 0)
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j
+
+import io.github.bucket4j.grid.CompositeCommand
+import io.github.bucket4j.grid.GetAvailableTokensCommand
+import io.github.bucket4j.grid.GridBucket
+import io.github.bucket4j.grid.WriteBehindBucket
+import io.github.bucket4j.mock.RecordingGridProxyMock
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+
+import static io.github.bucket4j.grid.RecoveryStrategy.THROW_BUCKET_NOT_FOUND_EXCEPTION
+
+class WriteBehindBucketSpecification extends Specification {
+
+    TimeMeterMock meter = new TimeMeterMock(0)
+    RecordingGridProxyMock gridProxy = new RecordingGridProxyMock(meter)
+    BucketConfiguration configuration = Bucket4j.configurationBuilder()
+            .addLimit(Bandwidth.simple(100, Duration.ofDays(100)))
+            .buildConfiguration()
+    GridBucket<String> gridBucket = GridBucket.createInitializedBucket("42", configuration, gridProxy, THROW_BUCKET_NOT_FOUND_EXCEPTION)
+    ScheduledFuture<?> scheduledFlush = Mock()
+    Runnable flushTask
+    ScheduledExecutorService scheduler = Mock() {
+        scheduleWithFixedDelay(_, _, _, _) >> { Runnable task, long initialDelay, long delay, unit ->
+            flushTask = task
+            return scheduledFlush
+        }
+    }
+
+    def "consumption should be written to the grid once per threshold"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 5, meter, scheduler)
+            gridProxy.executedCommands.clear()
+        when:
+            4.times { assert bucket.tryConsume(1) }
+        then: "only the balance is read by first request"
+            gridProxy.executedCommands*.class == [GetAvailableTokensCommand]
+            bucket.pendingTokens == 4
+            gridBucket.availableTokens == 100
+        when:
+            gridProxy.executedCommands.clear()
+            bucket.tryConsume(1)
+        then:
+            gridProxy.executedCommands*.class == [CompositeCommand]
+            bucket.pendingTokens == 0
+            bucket.remoteBalance == 95
+            gridBucket.availableTokens == 95
+    }
+
+    def "consumption should be written to the grid once per interval"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 100, meter, scheduler)
+            2.times { bucket.tryConsume(1) }
+        when:
+            meter.addTime(Duration.ofSeconds(1).toNanos())
+            bucket.tryConsume(1)
+        then:
+            bucket.pendingTokens == 1
+            bucket.remoteBalance == 98
+            gridBucket.availableTokens == 98
+    }
+
+    def "pending tokens of idle key should be written to the grid by scheduled flush"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 100, meter, scheduler)
+            3.times { bucket.tryConsume(1) }
+        when: "interval is not elapsed yet"
+            meter.addTime(Duration.ofMillis(500).toNanos())
+            flushTask.run()
+        then:
+            bucket.pendingTokens == 3
+            gridBucket.availableTokens == 100
+        when:
+            meter.addTime(Duration.ofMillis(500).toNanos())
+            flushTask.run()
+        then:
+            bucket.pendingTokens == 0
+            bucket.remoteBalance == 97
+            gridBucket.availableTokens == 97
+    }
+
+    def "close should cancel scheduled flush and write pending tokens"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 100, meter, scheduler)
+            bucket.tryConsume(5)
+        when:
+            bucket.close()
+        then:
+            1 * scheduledFlush.cancel(false)
+            gridBucket.availableTokens == 95
+    }
+
+    def "admission should be decided against the estimate of remote balance"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 1000, meter, scheduler)
+            gridBucket.tryConsume(90)
+        when:
+            10.times { assert bucket.tryConsume(1) }
+        then:
+            !bucket.tryConsume(1)
+            gridBucket.availableTokens == 10
+        when:
+            bucket.flush()
+        then:
+            bucket.pendingTokens == 0
+            bucket.remoteBalance == 0
+            gridBucket.availableTokens == 0
+    }
+
+    def "flush should piggyback consumption of other nodes"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 1000, meter, scheduler)
+            bucket.tryConsume(10)
+        when:
+            gridBucket.tryConsume(50)
+            bucket.flush()
+        then:
+            bucket.remoteBalance == 40
+    }
+
+    def "getAvailableTokens should flush pending tokens"() {
+        setup:
+            WriteBehindBucket<String> bucket = new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 1000, meter, scheduler)
+            bucket.tryConsume(10)
+        expect:
+            bucket.availableTokens == 90
+            bucket.pendingTokens == 0
+    }
+
+    @Unroll
+    def "should detect illegal arguments #flushInterval #flushThreshold"() {
+        when:
+            new WriteBehindBucket<>(gridBucket, flushInterval, flushThreshold, meter, scheduler)
+        then:
+            thrown(IllegalArgumentException)
+        where:
+            flushInterval         | flushThreshold
+            null                  | 1
+            Duration.ZERO         | 1
+            Duration.ofSeconds(1) | 0
+    }
+
+    def "should detect null scheduler"() {
+        when:
+            new WriteBehindBucket<>(gridBucket, Duration.ofSeconds(1), 1, meter, null)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local
+
+import io.github.bucket4j.Bandwidth
+import io.github.bucket4j.BlockingStrategy
+import io.github.bucket4j.Bucket4j
+import io.github.bucket4j.BucketConfiguration
+import io.github.bucket4j.ConsumptionProbe
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicLong
+
+class HierarchicalBucketSpecification extends Specification {
+
+    TimeMeterMock timeMeter = new TimeMeterMock(0)
+    HierarchicalBucket global = Bucket4j.builder()
+            .withCustomTimePrecision(timeMeter)
+            .addLimit(Bandwidth.simple(100, Duration.ofNanos(100)))
+            .buildHierarchy()
+    HierarchicalBucket tenant = global.createChild(configuration(10, 1000))
+    HierarchicalBucket user = tenant.createChild(configuration(5, 1000))
+
+    def "consumption should be applied to all levels"() {
+        when:
+            boolean consumed = user.tryConsume(3)
+        then:
+            consumed
+            user.createSnapshot().getCurrentSize(0) == 2
+            tenant.createSnapshot().getCurrentSize(0) == 7
+            global.createSnapshot().getCurrentSize(0) == 97
+            user.getAvailableTokens() == 2
+            tenant.getAvailableTokens() == 7
+            global.getAvailableTokens() == 97
+            user.getLevel() == 2
+            user.getParent() == tenant
+    }
+
+    def "rejected consumption should not change any level"() {
+        setup:
+            HierarchicalBucket sibling = tenant.createChild(configuration(100, 1000))
+            sibling.tryConsume(8)
+        when:
+            boolean consumed = user.tryConsume(3)
+        then:
+            !consumed
+            user.createSnapshot().getCurrentSize(0) == 5
+            tenant.createSnapshot().getCurrentSize(0) == 2
+            global.createSnapshot().getCurrentSize(0) == 92
+    }
+
+    def "probe should report the level which rejected consumption"() {
+        setup:
+            HierarchicalBucket sibling = tenant.createChild(configuration(100, 1000))
+        when:
+            ConsumptionProbe probe = user.tryConsumeAndReturnRemaining(6)
+        then:
+            !probe.isConsumed()
+            probe.getRejectingLevel() == 2
+            probe.getRemainingTokens() == 5
+            probe.getNanosToWaitForRefill() == 200
+        when:
+            sibling.tryConsume(9)
+            probe = user.tryConsumeAndReturnRemaining(2)
+        then:
+            !probe.isConsumed()
+            probe.getRejectingLevel() == 1
+            probe.getRemainingTokens() == 1
+            probe.getNanosToWaitForRefill() == 100
+        when:
+            timeMeter.addTime(1000)
+            global.tryConsumeAsMuchAsPossible()
+            probe = user.tryConsumeAndReturnRemaining(2)
+        then:
+            !probe.isConsumed()
+            probe.getRejectingLevel() == 0
+            probe.getNanosToWaitForRefill() == 2
+        when:
+            timeMeter.addTime(1000)
+            probe = user.tryConsumeAndReturnRemaining(2)
+        then:
+            probe.isConsumed()
+            probe.getRejectingLevel() == -1
+            probe.getRemainingTokens() == 3
+    }
+
+    def "addTokens should compensate consumption on all levels"() {
+        when:
+            user.tryConsume(4)
+            user.addTokens(4)
+        then:
+            user.getAvailableTokens() == 5
+            tenant.getAvailableTokens() == 10
+            global.getAvailableTokens() == 100
+    }
+
+    def "reservation should wait for the slowest level"() {
+        setup:
+            List<Long> parks = []
+            BlockingStrategy blockingStrategy = new BlockingStrategy() {
+                @Override
+                void park(long nanosToPark) {
+                    parks.add(nanosToPark)
+                }
+                @Override
+                void parkUninterruptibly(long nanosToPark) {
+                    parks.add(nanosToPark)
+                }
+            }
+            tenant.tryConsume(10)
+        when:
+            boolean consumed = user.tryConsume(2, 1000, blockingStrategy)
+        then:
+            consumed
+            parks == [200L]
+            tenant.createSnapshot().getCurrentSize(0) == -2
+            user.createSnapshot().getCurrentSize(0) == 3
+        when:
+            consumed = user.tryConsume(2, 300, blockingStrategy)
+        then:
+            !consumed
+            parks == [200L]
+    }
+
+    def "concurrent consumption from different children should never exceed the limit of parent"() {
+        setup:
+            HierarchicalBucket root = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10_000, Duration.ofDays(1)))
+                    .buildHierarchy()
+            List<HierarchicalBucket> children = (1..4).collect { root.createChild(configuration(5_000, Duration.ofDays(1).toNanos())) }
+            AtomicLong consumed = new AtomicLong()
+            CountDownLatch startLatch = new CountDownLatch(1)
+            List<Thread> threads = children.collect { child ->
+                new Thread({
+                    startLatch.await()
+                    for (int i = 0; i < 5_000; i++) {
+                        if (child.tryConsume(1)) {
+                            consumed.incrementAndGet()
+                        }
+                    }
+                })
+            }
+        when:
+            threads.each { it.start() }
+            startLatch.countDown()
+            threads.each { it.join() }
+        then:
+            consumed.get() == 10_000
+            root.getAvailableTokens() == 0
+            children.sum { 5_000 - it.createSnapshot().getCurrentSize(0) } == 10_000
+    }
+
+    private static BucketConfiguration configuration(long capacity, long periodNanos) {
+        return Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(capacity, Duration.ofNanos(periodNanos)))
+                .buildConfiguration()
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local
+
+import io.github.bucket4j.Bandwidth
+import io.github.bucket4j.Bucket
+import io.github.bucket4j.Bucket4j
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+
+class LeasingBucketSpecification extends Specification {
+
+    TimeMeterMock timeMeter = new TimeMeterMock(0)
+    Bucket sharedBucket = Bucket4j.builder()
+            .addLimit(Bandwidth.simple(100, Duration.ofDays(100)))
+            .withCustomTimePrecision(timeMeter)
+            .build()
+
+    def "should serve consumption from lease"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 10, 10, Duration.ofSeconds(1), timeMeter)
+        when:
+            boolean consumed = bucket.tryConsume(1)
+        then:
+            consumed
+            bucket.getLeasedTokens() == 9
+            sharedBucket.getAvailableTokens() == 90
+        when:
+            9.times { assert bucket.tryConsume(1) }
+        then:
+            bucket.getLeasedTokens() == 0
+            sharedBucket.getAvailableTokens() == 90
+    }
+
+    def "should adapt batch size"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 2, 16, Duration.ofSeconds(1), timeMeter)
+        when:
+            bucket.tryConsume(1)
+        then:
+            bucket.getLeasedTokens() == 1
+        when: "lease is exhausted quickly"
+            bucket.tryConsume(1)
+            bucket.tryConsume(1)
+        then: "batch is doubled"
+            bucket.getLeasedTokens() == 3
+        when: "lease expires with unused tokens"
+            timeMeter.addTime(Duration.ofSeconds(2).toNanos())
+            bucket.tryConsume(3)
+        then: "unused tokens are returned and batch is halved"
+            bucket.getLeasedTokens() == 0
+            sharedBucket.getAvailableTokens() == 94
+    }
+
+    def "should return leased tokens when request can not be satisfied"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 10, 10, Duration.ofSeconds(1), timeMeter)
+            bucket.tryConsume(1)
+        when:
+            boolean consumed = bucket.tryConsume(1000)
+        then:
+            !consumed
+            bucket.getLeasedTokens() == 0
+            sharedBucket.getAvailableTokens() == 99
+    }
+
+    def "should release lease on demand"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 10, 10, Duration.ofSeconds(1), timeMeter)
+            bucket.tryConsume(1)
+        when:
+            bucket.releaseLease()
+        then:
+            bucket.getLeasedTokens() == 0
+            sharedBucket.getAvailableTokens() == 99
+    }
+
+    def "should return tokens leased by terminated thread"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 10, 10, Duration.ofSeconds(1), timeMeter)
+            Thread thread = new Thread({ bucket.tryConsume(1) })
+            thread.start()
+            thread.join()
+        expect:
+            sharedBucket.getAvailableTokens() == 90
+        when:
+            timeMeter.addTime(Duration.ofSeconds(2).toNanos())
+            bucket.tryConsume(1)
+        then:
+            sharedBucket.getAvailableTokens() == 90 + 9 - 10
+    }
+
+    def "should not touch expired lease of live thread until owner calls bucket again"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 10, 10, Duration.ofSeconds(1), timeMeter)
+            CountDownLatch leased = new CountDownLatch(1)
+            CountDownLatch resume = new CountDownLatch(1)
+            Thread thread = new Thread({
+                bucket.tryConsume(1)
+                leased.countDown()
+                resume.await()
+                bucket.tryConsume(1)
+            })
+            thread.start()
+            leased.await()
+        when:
+            timeMeter.addTime(Duration.ofSeconds(2).toNanos())
+        then:
+            bucket.getAvailableTokens() == 90
+        when: "owner returns expired lease and leases fresh tokens"
+            resume.countDown()
+            thread.join()
+        then:
+            bucket.getAvailableTokens() == 90 + 9 - 10
+        when: "lease of terminated owner is returned by sweep"
+            timeMeter.addTime(Duration.ofSeconds(2).toNanos())
+        then:
+            bucket.getAvailableTokens() == 89 + 9
+    }
+
+    def "should keep acquisition time of carried-over tokens"() {
+        setup:
+            LeasingBucket bucket = new LeasingBucket(sharedBucket, 10, 10, Duration.ofSeconds(1), timeMeter)
+            bucket.tryConsume(5)
+        when:
+            timeMeter.addTime(Duration.ofMillis(800).toNanos())
+            bucket.tryConsume(8)
+        then:
+            bucket.getLeasedTokens() == 7
+            sharedBucket.getAvailableTokens() == 80
+        when: "lease expires according to the time when carried-over tokens were acquired"
+            timeMeter.addTime(Duration.ofMillis(300).toNanos())
+            bucket.tryConsume(1)
+        then:
+            bucket.getLeasedTokens() == 9
+            sharedBucket.getAvailableTokens() == 77
+    }
+
+    def "should validate parameters"() {
+        when:
+            new LeasingBucket(sharedBucket, 0, 10, Duration.ofSeconds(1), timeMeter)
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            new LeasingBucket(sharedBucket, 11, 10, Duration.ofSeconds(1), timeMeter)
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            new LeasingBucket(sharedBucket, 1, 10, Duration.ZERO, timeMeter)
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            new LeasingBucket(null, 1, 10, Duration.ofSeconds(1), timeMeter)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+}
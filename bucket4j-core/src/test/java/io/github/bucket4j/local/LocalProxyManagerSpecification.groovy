@@ -0,0 +1,170 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local
+
+import io.github.bucket4j.Bandwidth
+import io.github.bucket4j.Bucket
+import io.github.bucket4j.Bucket4j
+import io.github.bucket4j.BucketConfiguration
+import io.github.bucket4j.grid.BucketNotFoundException
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.function.Supplier
+
+class LocalProxyManagerSpecification extends Specification {
+
+    TimeMeterMock timeMeter = new TimeMeterMock(0)
+    Supplier<BucketConfiguration> configuration = {
+        Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                .addLimit(Bandwidth.simple(100, Duration.ofNanos(10_000)))
+                .buildConfiguration()
+    }
+
+    def "bucket should be created lazily and shared between proxies"() {
+        setup:
+            LocalProxyManager<String> manager = new LocalProxyManager<>(100, timeMeter)
+            Bucket proxy1 = manager.getProxy("42", configuration)
+            Bucket proxy2 = manager.getProxy("42", configuration)
+        expect:
+            manager.size() == 0
+            !manager.getProxy("42").isPresent()
+            !manager.getProxyConfiguration("42").isPresent()
+        when:
+            proxy1.tryConsume(3)
+        then:
+            manager.size() == 1
+            proxy2.getAvailableTokens() == 7
+            manager.getProxy("42").get().getAvailableTokens() == 7
+            manager.getProxyConfiguration("42").get().getBandwidths().length == 2
+    }
+
+    def "proxy without configuration should fail when bucket absents"() {
+        setup:
+            LocalProxyManager<String> manager = new LocalProxyManager<>(100, timeMeter)
+            manager.getProxy("42", configuration).tryConsume(1)
+            Bucket proxy = manager.getProxy("42").get()
+        when:
+            timeMeter.addTime(10_000)
+            manager.removeIdleBuckets()
+            proxy.tryConsume(1)
+        then:
+            thrown(BucketNotFoundException)
+    }
+
+    def "bucket should be evicted only when all bandwidths are full"() {
+        setup:
+            LocalProxyManager<String> manager = new LocalProxyManager<>(100, timeMeter)
+            Bucket proxy = manager.getProxy("42", configuration)
+            proxy.tryConsume(10)
+        when:
+            // first bandwidth is full, but second one is not
+            timeMeter.addTime(100)
+        then:
+            manager.removeIdleBuckets() == 0
+            manager.size() == 1
+        when:
+            timeMeter.addTime(900)
+        then:
+            manager.removeIdleBuckets() == 1
+            manager.size() == 0
+            proxy.getAvailableTokens() == 10
+    }
+
+    def "bucket with replaced configuration should not be evicted when idle"() {
+        setup:
+            LocalProxyManager<String> manager = new LocalProxyManager<>(1000, timeMeter)
+            Bucket proxy = manager.getProxy("42", configuration)
+            proxy.replaceConfiguration(Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(5, Duration.ofNanos(100)))
+                    .addLimit(Bandwidth.simple(50, Duration.ofNanos(10_000)))
+                    .buildConfiguration())
+            manager.getProxy("other", configuration).tryConsume(1)
+        when:
+            timeMeter.addTime(10_000)
+            for (int i = 0; i < 10; i++) {
+                manager.getProxy("new-" + i, configuration).tryConsume(1)
+            }
+        then: "bucket with original configuration is evicted, but bucket with replaced configuration is not"
+            manager.getProxy("other").isPresent() == false
+            manager.removeIdleBuckets() == 0
+            manager.getProxyConfiguration("42").get().getBandwidths()[0].getCapacity() == 5
+            proxy.getAvailableTokens() == 5
+    }
+
+    def "idle buckets should be evicted during creation of new buckets"() {
+        setup:
+            LocalProxyManager<Integer> manager = new LocalProxyManager<>(Long.MAX_VALUE, timeMeter)
+        when:
+            for (int i = 0; i < 100_000; i++) {
+                manager.getProxy(i, configuration).tryConsume(1)
+                timeMeter.addTime(10)
+            }
+        then:
+            // bucket becomes idle-full after 1000 nanos, which equals to creation of 100 buckets
+            manager.size() <= 200
+    }
+
+    def "size of manager should be bounded and recently accessed buckets should get second chance"() {
+        setup:
+            LocalProxyManager<Integer> manager = new LocalProxyManager<>(100, timeMeter)
+            Bucket hot = manager.getProxy(-1, configuration)
+            hot.tryConsume(5)
+        when:
+            for (int i = 0; i < 10_000; i++) {
+                manager.getProxy(i, configuration).tryConsume(1)
+                hot.getAvailableTokens()
+            }
+        then:
+            manager.size() <= 101
+            hot.getAvailableTokens() == 5
+    }
+
+    def "creation should give limited count of second chances when all buckets were accessed recently"() {
+        setup:
+            LocalProxyManager<Integer> manager = new LocalProxyManager<>(100, timeMeter)
+            for (int i = 0; i < 100; i++) {
+                manager.getProxy(i, configuration).tryConsume(1)
+            }
+        when:
+            manager.getProxy(100, configuration).tryConsume(1)
+        then: "two oldest buckets get the second chance and third one is evicted despite of recent access"
+            manager.size() == 100
+            manager.getProxy(0).isPresent()
+            manager.getProxy(1).isPresent()
+            !manager.getProxy(2).isPresent()
+    }
+
+    def "should check construction parameters"() {
+        when:
+            new LocalProxyManager<String>(0)
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            new LocalProxyManager<String>(1, null)
+        then:
+            thrown(IllegalArgumentException)
+        when:
+            new LocalProxyManager<String>(1).getProxy("1", null)
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+}
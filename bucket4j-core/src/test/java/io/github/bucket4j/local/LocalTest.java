@@ -21,6 +21,7 @@ import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.BlockingStrategy;
+import io.github.bucket4j.TimeMeter;
 import org.junit.Test;
 import io.github.bucket4j.util.ConsumptionScenario;
 
@@ -51,6 +52,13 @@ public class LocalTest {
         test15Seconds(() -> builder.build(), threadCount, action);
     }
 
+    @Test
+    public void testTryConsume_lockFreeUnpacked() throws Exception {
+        int threadCount = 4;
+        Function<Bucket, Long> action = b -> b.tryConsume(1)? 1L : 0L;
+        test15Seconds(() -> new LockFreeBucket(builder.buildConfiguration(), TimeMeter.SYSTEM_MILLISECONDS), threadCount, action);
+    }
+
     @Test
     public void testTryConsume_Synchronized() throws Exception {
         int threadCount = 4;
@@ -65,6 +73,34 @@ public class LocalTest {
         test15Seconds(() -> builder.build(SynchronizationStrategy.SYNCHRONIZED), threadCount, action);
     }
 
+    @Test
+    public void testTryConsume_Seqlock() throws Exception {
+        int threadCount = 4;
+        Function<Bucket, Long> action = b -> b.tryConsume(1)? 1L : 0L;
+        test15Seconds(() -> builder.build(SynchronizationStrategy.SEQLOCK), threadCount, action);
+    }
+
+    @Test
+    public void testTryConsume_SeqlockLimited() throws Exception {
+        int threadCount = 4;
+        Function<Bucket, Long> action = b -> b.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(50), BlockingStrategy.PARKING)? 1L : 0L;
+        test15Seconds(() -> builder.build(SynchronizationStrategy.SEQLOCK), threadCount, action);
+    }
+
+    @Test
+    public void testTryConsume_Striped() throws Exception {
+        int threadCount = 4;
+        Function<Bucket, Long> action = b -> b.tryConsume(1)? 1L : 0L;
+        test15Seconds(() -> builder.build(SynchronizationStrategy.STRIPED), threadCount, action);
+    }
+
+    @Test
+    public void testTryConsume_StripedLimited() throws Exception {
+        int threadCount = 4;
+        Function<Bucket, Long> action = b -> b.tryConsumeUninterruptibly(1, TimeUnit.MILLISECONDS.toNanos(50), BlockingStrategy.PARKING)? 1L : 0L;
+        test15Seconds(() -> builder.build(SynchronizationStrategy.STRIPED), threadCount, action);
+    }
+
     @Test
     public void testTryConsume_Unsafe() throws Exception {
         int threadCount = 1;
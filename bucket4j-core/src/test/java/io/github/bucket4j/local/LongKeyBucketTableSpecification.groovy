@@ -0,0 +1,131 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local
+
+import io.github.bucket4j.Bandwidth
+import io.github.bucket4j.Bucket
+import io.github.bucket4j.Bucket4j
+import io.github.bucket4j.BucketConfiguration
+import io.github.bucket4j.ConsumptionProbe
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+
+class LongKeyBucketTableSpecification extends Specification {
+
+    @Unroll
+    def "table with #segments segments should behave like separated buckets"(int segments) {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .addLimit(5, Bandwidth.simple(30, Duration.ofNanos(1000)))
+                    .buildConfiguration()
+            LongKeyBucketTable table = new LongKeyBucketTable(configuration, timeMeter, 0, segments)
+            Map<Long, Bucket> buckets = new HashMap<>()
+            Random random = new Random(42)
+        expect:
+            for (int i = 0; i < 20_000; i++) {
+                long key = random.nextInt(500) * 0x100000001L
+                int operation = random.nextInt(10)
+                if (operation == 0) {
+                    timeMeter.addTime(random.nextInt(50))
+                    continue
+                }
+                if (operation == 3) {
+                    Bucket bucket = buckets.containsKey(key) ? buckets.get(key) : new LockFreeBucket(configuration, timeMeter)
+                    assert table.getAvailableTokens(key) == bucket.getAvailableTokens()
+                    continue
+                }
+                Bucket bucket = buckets.computeIfAbsent(key, { k -> new LockFreeBucket(configuration, timeMeter) })
+                switch (operation) {
+                    case 1:
+                        boolean exists = table.createSnapshot(key) != null
+                        assert table.remove(key) == exists
+                        buckets.remove(key)
+                        break
+                    case 2:
+                        long tokens = 1 + random.nextInt(5)
+                        table.addTokens(key, tokens)
+                        bucket.addTokens(tokens)
+                        break
+                    case 4:
+                        long tokens = 1 + random.nextInt(5)
+                        ConsumptionProbe expected = bucket.tryConsumeAndReturnRemaining(tokens)
+                        ConsumptionProbe actual = table.tryConsumeAndReturnRemaining(key, tokens)
+                        assert actual.consumed == expected.consumed
+                        assert actual.remainingTokens == expected.remainingTokens
+                        assert actual.nanosToWaitForRefill == expected.nanosToWaitForRefill
+                        break
+                    default:
+                        long tokens = 1 + random.nextInt(3)
+                        assert table.tryConsume(key, tokens) == bucket.tryConsume(tokens)
+                }
+            }
+            table.size() == buckets.size()
+        where:
+            segments << [1, 3, 64]
+    }
+
+    def "should replace configuration of all buckets"() {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            LongKeyBucketTable table = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofNanos(100)))
+                    .withCustomTimePrecision(timeMeter)
+                    .buildTable(100)
+            for (long key = 0; key < 100; key++) {
+                table.tryConsume(key, 10)
+            }
+        when:
+            table.replaceConfiguration(Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(100, Duration.ofNanos(100)))
+                    .buildConfiguration())
+            timeMeter.addTime(10)
+        then:
+            for (long key = 0; key < 100; key++) {
+                assert table.getAvailableTokens(key) == 10
+            }
+    }
+
+    def "getAvailableTokens should not create bucket"() {
+        setup:
+            LongKeyBucketTable table = Bucket4j.builder()
+                    .addLimit(Bandwidth.simple(10, Duration.ofSeconds(1)))
+                    .buildTable(0)
+        expect:
+            table.getAvailableTokens(42) == 10
+            table.size() == 0
+            table.createSnapshot(42) == null
+    }
+
+    @Unroll
+    def "capacity of segment should keep table array inside array length limit for stride #stride"(int stride) {
+        when:
+            int maxCapacity = LongKeyBucketTable.maxSegmentCapacity(stride)
+        then:
+            Integer.bitCount(maxCapacity) == 1
+            maxCapacity * 1L * stride <= Integer.MAX_VALUE - 8
+            maxCapacity * 2L * stride > Integer.MAX_VALUE - 8
+        where:
+            stride << [4, 6, 8, 100, 1_000_001]
+    }
+
+}
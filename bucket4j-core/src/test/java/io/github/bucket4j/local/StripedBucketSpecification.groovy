@@ -0,0 +1,210 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.local
+
+import io.github.bucket4j.Bandwidth
+import io.github.bucket4j.Bucket4j
+import io.github.bucket4j.BucketConfiguration
+import io.github.bucket4j.ConsumptionProbe
+import io.github.bucket4j.IncompatibleConfigurationException
+import io.github.bucket4j.mock.TimeMeterMock
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+
+class StripedBucketSpecification extends Specification {
+
+    @Unroll
+    def "#stripes stripes should not exceed capacity #capacity"(int stripes, long capacity) {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            StripedBucket bucket = new StripedBucket(configuration(Bandwidth.simple(capacity, Duration.ofNanos(1000))), timeMeter, stripes)
+        expect:
+            bucket.getAvailableTokens() == capacity
+            bucket.tryConsumeAsMuchAsPossible() == capacity
+            !bucket.tryConsume(1)
+            bucket.getAvailableTokens() == 0
+        where:
+            stripes | capacity
+               1    |   10
+               4    |   10
+               8    |  1000
+              16    |    3
+    }
+
+    def "count of cells should be limited by smallest capacity"() {
+        when:
+            StripedBucket bucket = new StripedBucket(configuration(Bandwidth.simple(3, Duration.ofNanos(1000))), new TimeMeterMock(0), 16)
+        then:
+            bucket.getCellCount() == 3
+    }
+
+    def "should borrow tokens from other cells when home cell is empty"() {
+        setup:
+            StripedBucket bucket = new StripedBucket(configuration(Bandwidth.simple(100, Duration.ofNanos(100))), new TimeMeterMock(0), 4)
+        expect:
+            // capacity of each cell is 25, so request can be satisfied only by borrowing
+            bucket.tryConsume(90)
+            bucket.getAvailableTokens() == 10
+            !bucket.tryConsume(11)
+            // rejected request should return borrowed tokens back
+            bucket.getAvailableTokens() == 10
+            bucket.tryConsume(10)
+            bucket.getAvailableTokens() == 0
+    }
+
+    def "total refill rate should be equal to original refill rate"() {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            StripedBucket bucket = new StripedBucket(configuration(0, Bandwidth.simple(100, Duration.ofNanos(100))), timeMeter, 4)
+        when:
+            timeMeter.addTime(40)
+        then:
+            bucket.getAvailableTokens() == 40
+            bucket.createSnapshot().getAvailableTokens(bucket.configuration.bandwidths) == 40
+        when:
+            timeMeter.addTime(1000)
+        then:
+            bucket.getAvailableTokens() == 100
+    }
+
+    def "probe should report time to wait calculated for all cells"() {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            StripedBucket bucket = new StripedBucket(configuration(0, Bandwidth.simple(100, Duration.ofNanos(100))), timeMeter, 4)
+        when:
+            ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(20)
+        then:
+            !probe.consumed
+            probe.remainingTokens == 0
+            probe.nanosToWaitForRefill == 20
+        when:
+            timeMeter.addTime(20)
+            probe = bucket.tryConsumeAndReturnRemaining(20)
+        then:
+            probe.consumed
+            probe.remainingTokens == 0
+    }
+
+    def "added tokens should be distributed between cells"() {
+        setup:
+            StripedBucket bucket = new StripedBucket(configuration(0, Bandwidth.simple(100, Duration.ofNanos(100))), new TimeMeterMock(0), 4)
+        when:
+            bucket.addTokens(30)
+        then:
+            bucket.getAvailableTokens() == 30
+            bucket.tryConsume(30)
+        when:
+            bucket.addTokens(1000)
+        then:
+            bucket.getAvailableTokens() == 100
+    }
+
+    def "should reject configuration which can not be split between cells"() {
+        setup:
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            StripedBucket bucket = new StripedBucket(configuration(Bandwidth.simple(100, Duration.ofNanos(100))), timeMeter, 4)
+        when:
+            bucket.replaceConfiguration(configuration(Bandwidth.simple(3, Duration.ofNanos(100))))
+        then:
+            thrown(IncompatibleConfigurationException)
+        when:
+            bucket.replaceConfiguration(configuration(Bandwidth.simple(8, Duration.ofNanos(100))))
+            timeMeter.addTime(1)
+        then:
+            bucket.configuration.bandwidths[0].capacity == 8
+            bucket.getAvailableTokens() == 8
+    }
+
+    def "remaining tokens should be estimated by home cell when request is satisfied without borrowing"() {
+        setup:
+            StripedBucket bucket = new StripedBucket(configuration(Bandwidth.simple(100, Duration.ofNanos(100))), new TimeMeterMock(0), 4)
+        when:
+            ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(5)
+        then:
+            probe.consumed
+            // 20 tokens are remaining in the home cell
+            probe.remainingTokens == 80
+            bucket.getAvailableTokens() == 95
+    }
+
+    @Unroll
+    def "blocking consumption should reserve tokens in all cells, gcra=#gcra"(boolean gcra) {
+        setup:
+            def builder = Bucket4j.configurationBuilder()
+                    .addLimit(0, Bandwidth.simple(100, Duration.ofNanos(100)))
+            if (gcra) {
+                builder.withGcraState()
+            }
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            StripedBucket bucket = new StripedBucket(builder.buildConfiguration(), timeMeter, 4)
+        expect:
+            bucket.reserveAndCalculateTimeToSleepImpl(20, 1000) == 20
+            bucket.reserveAndCalculateTimeToSleepImpl(20, 30) == Long.MAX_VALUE
+        when:
+            timeMeter.addTime(40)
+        then:
+            bucket.getAvailableTokens() == 20
+        where:
+            gcra << [false, true]
+    }
+
+    @Unroll
+    def "replaced configuration should keep the tokens, gcra=#gcra"(boolean gcra) {
+        setup:
+            def builder = Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(100, Duration.ofNanos(100)))
+            def newBuilder = Bucket4j.configurationBuilder()
+                    .addLimit(Bandwidth.simple(200, Duration.ofNanos(200)))
+            if (gcra) {
+                builder.withGcraState()
+                newBuilder.withGcraState()
+            }
+            TimeMeterMock timeMeter = new TimeMeterMock(0)
+            StripedBucket bucket = new StripedBucket(builder.buildConfiguration(), timeMeter, 4)
+            BucketConfiguration newConfiguration = newBuilder.buildConfiguration()
+        when:
+            bucket.tryConsume(40)
+            bucket.replaceConfiguration(newConfiguration)
+        then:
+            bucket.configuration.is(newConfiguration)
+            bucket.getAvailableTokens() == 60
+        when:
+            timeMeter.addTime(20)
+        then:
+            bucket.getAvailableTokens() == 80
+            bucket.tryConsume(80)
+            !bucket.tryConsume(1)
+        where:
+            gcra << [false, true]
+    }
+
+    private static BucketConfiguration configuration(Bandwidth bandwidth) {
+        return Bucket4j.configurationBuilder()
+                .addLimit(bandwidth)
+                .buildConfiguration()
+    }
+
+    private static BucketConfiguration configuration(long initialTokens, Bandwidth bandwidth) {
+        return Bucket4j.configurationBuilder()
+                .addLimit(initialTokens, bandwidth)
+                .buildConfiguration()
+    }
+
+}
@@ -41,6 +41,14 @@ public enum BucketType {
                     .build();
         }
     },
+    LOCAL_SEQLOCK {
+        @Override
+        public Bucket createBucket(ConfigurationBuilder builder, TimeMeter timeMeter) {
+            return ((LocalBucketBuilder) builder)
+                    .withCustomTimePrecision(timeMeter)
+                    .build(SynchronizationStrategy.SEQLOCK);
+        }
+    },
     LOCAL_SYNCHRONIZED {
         @Override
         public Bucket createBucket(ConfigurationBuilder builder, TimeMeter timeMeter) {
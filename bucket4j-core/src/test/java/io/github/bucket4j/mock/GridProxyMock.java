@@ -27,13 +27,15 @@ import io.github.bucket4j.grid.GridCommand;
 import io.github.bucket4j.grid.GridProxy;
 
 import java.io.*;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GridProxyMock implements GridProxy {
 
     private final TimeMeter timeMeter;
-    private GridBucketState state;
+    private final Map<Serializable, GridBucketState> states = new ConcurrentHashMap<>();
     private RuntimeException exception;
 
     public GridProxyMock(TimeMeter timeMeter) {
@@ -44,11 +46,16 @@ public class GridProxyMock implements GridProxy {
         this.exception = exception;
     }
 
+    public void removeState(Serializable key) {
+        states.remove(key);
+    }
+
     @Override
     public CommandResult execute(Serializable key, GridCommand command) {
         if (exception != null) {
             throw new RuntimeException();
         }
+        GridBucketState state = states.get(key);
         if (state == null) {
             return CommandResult.bucketNotFound();
         }
@@ -57,7 +64,7 @@ public class GridProxyMock implements GridProxy {
         GridBucketState newState = emulateSerialization(state);
         Serializable resultData = command.execute(newState, timeMeter.currentTimeNanos());
         if (command.isBucketStateModified()) {
-            state = newState;
+            states.put(key, newState);
         }
         resultData = emulateSerialization(resultData);
         return CommandResult.success(resultData);
@@ -69,7 +76,7 @@ public class GridProxyMock implements GridProxy {
             throw new RuntimeException();
         }
         BucketState bucketState = BucketState.createInitialState(configuration, timeMeter.currentTimeNanos());
-        this.state = new GridBucketState(configuration, bucketState);
+        states.put(key, new GridBucketState(configuration, bucketState));
     }
 
     @Override
@@ -77,7 +84,7 @@ public class GridProxyMock implements GridProxy {
         if (exception != null) {
             throw new RuntimeException();
         }
-        return Optional.of(state.getConfiguration());
+        return Optional.of(states.get(key).getConfiguration());
     }
 
     @Override
@@ -85,8 +92,10 @@ public class GridProxyMock implements GridProxy {
         if (exception != null) {
             throw new RuntimeException();
         }
-        createInitialState(key, configuration);
-        return execute(key, command);
+        if (!states.containsKey(key)) {
+            createInitialState(key, configuration);
+        }
+        return execute(key, command).getData();
     }
 
     @Override
@@ -0,0 +1,56 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.mock;
+
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.grid.CommandResult;
+import io.github.bucket4j.grid.GridCommand;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class RecordingGridProxyMock extends GridProxyMock {
+
+    private final List<GridCommand> executedCommands = new CopyOnWriteArrayList<>();
+    private volatile Runnable onExecute;
+
+    public RecordingGridProxyMock(TimeMeter timeMeter) {
+        super(timeMeter);
+    }
+
+    public List<GridCommand> getExecutedCommands() {
+        return executedCommands;
+    }
+
+    public void setOnExecute(Runnable onExecute) {
+        this.onExecute = onExecute;
+    }
+
+    @Override
+    public CommandResult execute(Serializable key, GridCommand command) {
+        executedCommands.add(command);
+        CommandResult result = super.execute(key, command);
+        Runnable onExecute = this.onExecute;
+        if (onExecute != null) {
+            onExecute.run();
+        }
+        return result;
+    }
+
+}
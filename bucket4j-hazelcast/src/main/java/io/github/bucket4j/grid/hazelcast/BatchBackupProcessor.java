@@ -0,0 +1,46 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid.hazelcast;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import io.github.bucket4j.grid.GridBucketState;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+
+class BatchBackupProcessor<K extends Serializable> implements EntryBackupProcessor<K, GridBucketState> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<K, GridBucketState> states;
+
+    public BatchBackupProcessor(Map<K, GridBucketState> states) {
+        this.states = new HashMap<>(states);
+    }
+
+    @Override
+    public void processBackup(Map.Entry<K, GridBucketState> entry) {
+        GridBucketState state = states.get(entry.getKey());
+        if (state != null) {
+            entry.setValue(state);
+        }
+    }
+
+}
@@ -19,10 +19,16 @@ package io.github.bucket4j.grid.hazelcast;
 
 
 import com.hazelcast.core.IMap;
+import io.github.bucket4j.BucketExceptions;
 import io.github.bucket4j.Extension;
+import io.github.bucket4j.grid.BoundedAsyncGridProxy;
+import io.github.bucket4j.grid.CoalescingGridProxy;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import java.io.Serializable;
+import java.util.concurrent.Executor;
 
 /**
  * The extension of Bucket4j library addressed to support <a href="https://hazelcast.com//">Hazelcast</a> in-memory data grid.
@@ -52,4 +58,67 @@ public class Hazelcast implements Extension<HazelcastBucketBuilder> {
         return new HazelcastProxyManager<>(map);
     }
 
+    /**
+     * Creates {@link HazelcastProxyManager} for specified map which coalesces concurrent requests to same key from current JVM
+     * into single round trip, see {@link CoalescingGridProxy} for details.
+     *
+     * @param map map for storing state of buckets
+     * @param <T> type of keys in the map
+     * @return {@link ProxyManager} for specified map.
+     */
+    public <T extends Serializable> ProxyManager<T> coalescingProxyManagerForMap(IMap<T, GridBucketState> map) {
+        return new HazelcastProxyManager<>(map, true);
+    }
+
+    /**
+     * Creates {@link HazelcastProxyManager} for specified map which completes the futures of asynchronous operations
+     * in specified executor instead of grid thread, see {@link CompletionExecutorGridProxy} for details.
+     *
+     * @param map map for storing state of buckets
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     * @param <T> type of keys in the map
+     * @return {@link ProxyManager} for specified map.
+     */
+    public <T extends Serializable> ProxyManager<T> proxyManagerForMap(IMap<T, GridBucketState> map, Executor completionExecutor) {
+        return new HazelcastProxyManager<>(map, false, checkExecutor(completionExecutor));
+    }
+
+    /**
+     * Creates {@link HazelcastProxyManager} for specified map which coalesces concurrent requests to same key from current JVM
+     * into single round trip, and completes the futures of asynchronous operations in specified executor instead of grid thread.
+     *
+     * @param map map for storing state of buckets
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     * @param <T> type of keys in the map
+     * @return {@link ProxyManager} for specified map.
+     */
+    public <T extends Serializable> ProxyManager<T> coalescingProxyManagerForMap(IMap<T, GridBucketState> map, Executor completionExecutor) {
+        return new HazelcastProxyManager<>(map, true, checkExecutor(completionExecutor));
+    }
+
+    /**
+     * Creates {@link HazelcastProxyManager} for specified map which limits the count of outstanding asynchronous operations,
+     * see {@link BoundedAsyncGridProxy} for details.
+     * If metrics of limiter need to be published, construct {@link BoundedAsyncGridProxy} on top of {@link HazelcastProxy} directly
+     * and create buckets via {@link io.github.bucket4j.grid.GridBucket#createLazyBucket}.
+     *
+     * @param map map for storing state of buckets
+     * @param maxInFlightOperations the maximum count of asynchronous operations which are sent to the grid and not completed yet
+     * @param maxQueueSize the maximum count of operations which wait for free slot, it is ignored by {@link OverflowStrategy#REJECT}
+     * @param overflowStrategy the reaction on operation which exceeds the limit
+     * @param <T> type of keys in the map
+     * @return {@link ProxyManager} for specified map.
+     */
+    public <T extends Serializable> ProxyManager<T> boundedProxyManagerForMap(IMap<T, GridBucketState> map, int maxInFlightOperations,
+                                                                              int maxQueueSize, OverflowStrategy overflowStrategy) {
+        return new HazelcastProxyManager<>(map, gridProxy -> new BoundedAsyncGridProxy<>(gridProxy, maxInFlightOperations, maxQueueSize, overflowStrategy));
+    }
+
+    private static Executor checkExecutor(Executor completionExecutor) {
+        if (completionExecutor == null) {
+            throw BucketExceptions.nullCompletionExecutor();
+        }
+        return completionExecutor;
+    }
+
 }
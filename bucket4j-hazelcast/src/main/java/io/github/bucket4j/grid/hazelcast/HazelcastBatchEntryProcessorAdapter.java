@@ -0,0 +1,64 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid.hazelcast;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+import io.github.bucket4j.grid.CommandResult;
+import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.jcache.JCacheEntryProcessor;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In contrast to {@link HazelcastEntryProcessorAdapter} this adapter is applied to several keys via {@link com.hazelcast.core.IMap#executeOnKeys},
+ * Hazelcast takes single backup processor for all keys of partition, so the modified states are remembered per key.
+ */
+class HazelcastBatchEntryProcessorAdapter<K extends Serializable, T extends Serializable> implements EntryProcessor<K, GridBucketState> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JCacheEntryProcessor<K, T> entryProcessor;
+    // same instance can be shared by operations for different partitions when keys are owned by local member
+    private final Map<K, GridBucketState> modifiedStates = new ConcurrentHashMap<>();
+
+    public HazelcastBatchEntryProcessorAdapter(JCacheEntryProcessor<K, T> entryProcessor) {
+        this.entryProcessor = entryProcessor;
+    }
+
+    @Override
+    public Object process(Map.Entry<K, GridBucketState> entry) {
+        HazelcastMutableEntryAdapter<K> entryAdapter = new HazelcastMutableEntryAdapter<>(entry);
+        CommandResult<T> result = entryProcessor.process(entryAdapter);
+        if (entryAdapter.isModified()) {
+            modifiedStates.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public EntryBackupProcessor<K, GridBucketState> getBackupProcessor() {
+        if (modifiedStates.isEmpty()) {
+            return null;
+        }
+        return new BatchBackupProcessor<>(modifiedStates);
+    }
+
+}
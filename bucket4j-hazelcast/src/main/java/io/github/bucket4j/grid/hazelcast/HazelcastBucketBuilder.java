@@ -21,12 +21,15 @@ import com.hazelcast.core.IMap;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.ConfigurationBuilder;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
 import io.github.bucket4j.grid.GridBucket;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.GridProxy;
 import io.github.bucket4j.grid.RecoveryStrategy;
 
 import javax.cache.Cache;
 import java.io.Serializable;
+import java.util.concurrent.Executor;
 
 /**
  * {@inheritDoc}
@@ -57,4 +60,17 @@ public class HazelcastBucketBuilder extends ConfigurationBuilder<HazelcastBucket
         return GridBucket.createInitializedBucket(key, configuration, gridProxy, recoveryStrategy);
     }
 
+    /**
+     * Constructs an instance of {@link GridBucket} which state actually stored inside in-memory data-grid,
+     * and which completes the futures of asynchronous operations in specified executor instead of grid thread,
+     * see {@link CompletionExecutorGridProxy} for details.
+     *
+     * @return new distributed bucket
+     */
+    public <K extends Serializable> Bucket build(IMap<K, GridBucketState> map, K key, RecoveryStrategy recoveryStrategy, Executor completionExecutor) {
+        BucketConfiguration configuration = buildConfiguration();
+        GridProxy<K> gridProxy = new CompletionExecutorGridProxy<>(new HazelcastProxy<>(map), completionExecutor);
+        return GridBucket.createInitializedBucket(key, configuration, gridProxy, recoveryStrategy);
+    }
+
 }
@@ -29,6 +29,9 @@ import io.github.bucket4j.grid.GridProxy;
 import io.github.bucket4j.grid.jcache.JCacheEntryProcessor;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -42,10 +45,30 @@ public class HazelcastProxy<K extends Serializable> implements GridProxy<K> {
 
     @Override
     public <T extends Serializable> CommandResult<T> execute(K key, GridCommand<T> command) {
+        if (command.isReadOnly()) {
+            return executeLocally(key, cache.get(key), command);
+        }
         JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeProcessor(command);
         return (CommandResult<T>) cache.executeOnKey(key, adoptEntryProcessor(entryProcessor));
     }
 
+    @Override
+    public <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        if (isReadOnly(commands)) {
+            Map<K, GridBucketState> states = cache.getAll(commands.keySet());
+            Map<K, CommandResult<T>> results = new LinkedHashMap<>();
+            commands.forEach((key, command) -> results.put(key, executeLocally(key, states.get(key), command)));
+            return results;
+        }
+        JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeBatchProcessor(commands);
+        Map<K, Object> results = cache.executeOnKeys(commands.keySet(), new HazelcastBatchEntryProcessorAdapter<>(entryProcessor));
+        Map<K, CommandResult<T>> typedResults = new LinkedHashMap<>();
+        for (K key : commands.keySet()) {
+            typedResults.put(key, (CommandResult<T>) results.get(key));
+        }
+        return typedResults;
+    }
+
     @Override
     public void createInitialState(K key, BucketConfiguration configuration) {
         JCacheEntryProcessor<K, Nothing> entryProcessor = JCacheEntryProcessor.initStateProcessor(configuration);
@@ -61,6 +84,9 @@ public class HazelcastProxy<K extends Serializable> implements GridProxy<K> {
 
     @Override
     public <T extends Serializable> CompletableFuture<CommandResult<T>> executeAsync(K key, GridCommand<T> command) {
+        if (command.isReadOnly()) {
+            return getAsync(key).thenApply(state -> executeLocally(key, state, command));
+        }
         JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeProcessor(command);
         return invokeAsync(key, entryProcessor);
     }
@@ -87,6 +113,40 @@ public class HazelcastProxy<K extends Serializable> implements GridProxy<K> {
         return true;
     }
 
+    private <T extends Serializable> boolean isReadOnly(Map<K, GridCommand<T>> commands) {
+        for (GridCommand<T> command : commands.values()) {
+            if (!command.isReadOnly()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Read-only commands are executed against the copy of state obtained by plain read,
+    // so they do not wait for the lock of key, do not write the entry and do not send backups.
+    // The copy is never written back, the deep copy protects the instance which can be shared by near cache.
+    private <T extends Serializable> CommandResult<T> executeLocally(K key, GridBucketState state, GridCommand<T> command) {
+        JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeProcessor(command);
+        GridBucketState copy = state == null ? null : state.deepCopy();
+        return entryProcessor.process(new HazelcastMutableEntryAdapter<>(new AbstractMap.SimpleEntry<>(key, copy)));
+    }
+
+    private CompletableFuture<GridBucketState> getAsync(K key) {
+        CompletableFuture<GridBucketState> future = new CompletableFuture<>();
+        cache.getAsync(key).andThen(new ExecutionCallback<GridBucketState>() {
+            @Override
+            public void onResponse(GridBucketState response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
     private <T extends Serializable>  EntryProcessor adoptEntryProcessor(final JCacheEntryProcessor<K, T> entryProcessor) {
         return new HazelcastEntryProcessorAdapter<>(entryProcessor);
     }
@@ -23,6 +23,7 @@ import io.github.bucket4j.AbstractDistributedBucketTest;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import io.github.bucket4j.grid.RecoveryStrategy;
 import io.github.bucket4j.grid.hazelcast.HazelcastBucketBuilder;
@@ -96,6 +97,16 @@ public class HazelcastTest extends AbstractDistributedBucketTest<HazelcastBucket
         return Bucket4j.extension(getExtensionClass()).proxyManagerForMap(map);
     }
 
+    @Override
+    protected ProxyManager<String> newCoalescingProxyManager() {
+        return Bucket4j.extension(getExtensionClass()).coalescingProxyManagerForMap(map);
+    }
+
+    @Override
+    protected ProxyManager<String> newBoundedProxyManager(int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy) {
+        return Bucket4j.extension(getExtensionClass()).boundedProxyManagerForMap(map, maxInFlightOperations, maxQueueSize, overflowStrategy);
+    }
+
     @Override
     protected void removeBucketFromBackingStorage(String key) {
         map.remove(key);
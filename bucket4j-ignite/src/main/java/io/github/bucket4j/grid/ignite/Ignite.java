@@ -18,12 +18,18 @@
 package io.github.bucket4j.grid.ignite;
 
 
+import io.github.bucket4j.BucketExceptions;
 import io.github.bucket4j.Extension;
+import io.github.bucket4j.grid.BoundedAsyncGridProxy;
+import io.github.bucket4j.grid.CoalescingGridProxy;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import org.apache.ignite.IgniteCache;
 
 import java.io.Serializable;
+import java.util.concurrent.Executor;
 
 /**
  * The extension of Bucket4j library addressed to support <a href="https://ignite.apache.org/">Apache ignite</a> in-memory computing platform.
@@ -53,4 +59,67 @@ public class Ignite implements Extension<IgniteBucketBuilder> {
         return new IgniteProxyManager<>(cache);
     }
 
+    /**
+     * Creates {@link IgniteProxyManager} for specified cache which coalesces concurrent requests to same key from current JVM
+     * into single round trip, see {@link CoalescingGridProxy} for details.
+     *
+     * @param cache cache for storing state of buckets
+     * @param <T> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <T extends Serializable> ProxyManager<T> coalescingProxyManagerForCache(IgniteCache<T, GridBucketState> cache) {
+        return new IgniteProxyManager<>(cache, true);
+    }
+
+    /**
+     * Creates {@link IgniteProxyManager} for specified cache which completes the futures of asynchronous operations
+     * in specified executor instead of grid thread, see {@link CompletionExecutorGridProxy} for details.
+     *
+     * @param cache cache for storing state of buckets
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     * @param <T> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <T extends Serializable> ProxyManager<T> proxyManagerForCache(IgniteCache<T, GridBucketState> cache, Executor completionExecutor) {
+        return new IgniteProxyManager<>(cache, false, checkExecutor(completionExecutor));
+    }
+
+    /**
+     * Creates {@link IgniteProxyManager} for specified cache which coalesces concurrent requests to same key from current JVM
+     * into single round trip, and completes the futures of asynchronous operations in specified executor instead of grid thread.
+     *
+     * @param cache cache for storing state of buckets
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     * @param <T> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <T extends Serializable> ProxyManager<T> coalescingProxyManagerForCache(IgniteCache<T, GridBucketState> cache, Executor completionExecutor) {
+        return new IgniteProxyManager<>(cache, true, checkExecutor(completionExecutor));
+    }
+
+    /**
+     * Creates {@link IgniteProxyManager} for specified cache which limits the count of outstanding asynchronous operations,
+     * see {@link BoundedAsyncGridProxy} for details.
+     * If metrics of limiter need to be published, construct {@link BoundedAsyncGridProxy} on top of {@link IgniteProxy} directly
+     * and create buckets via {@link io.github.bucket4j.grid.GridBucket#createLazyBucket}.
+     *
+     * @param cache cache for storing state of buckets
+     * @param maxInFlightOperations the maximum count of asynchronous operations which are sent to the grid and not completed yet
+     * @param maxQueueSize the maximum count of operations which wait for free slot, it is ignored by {@link OverflowStrategy#REJECT}
+     * @param overflowStrategy the reaction on operation which exceeds the limit
+     * @param <T> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <T extends Serializable> ProxyManager<T> boundedProxyManagerForCache(IgniteCache<T, GridBucketState> cache, int maxInFlightOperations,
+                                                                              int maxQueueSize, OverflowStrategy overflowStrategy) {
+        return new IgniteProxyManager<>(cache, gridProxy -> new BoundedAsyncGridProxy<>(gridProxy, maxInFlightOperations, maxQueueSize, overflowStrategy));
+    }
+
+    private static Executor checkExecutor(Executor completionExecutor) {
+        if (completionExecutor == null) {
+            throw BucketExceptions.nullCompletionExecutor();
+        }
+        return completionExecutor;
+    }
+
 }
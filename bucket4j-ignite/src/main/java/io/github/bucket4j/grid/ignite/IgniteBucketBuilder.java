@@ -20,13 +20,16 @@ package io.github.bucket4j.grid.ignite;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.ConfigurationBuilder;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
 import io.github.bucket4j.grid.GridBucket;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.GridProxy;
 import io.github.bucket4j.grid.RecoveryStrategy;
 import org.apache.ignite.IgniteCache;
 
 import javax.cache.Cache;
 import java.io.Serializable;
+import java.util.concurrent.Executor;
 
 /**
  * {@inheritDoc}
@@ -57,4 +60,17 @@ public class IgniteBucketBuilder extends ConfigurationBuilder<IgniteBucketBuilde
         return GridBucket.createInitializedBucket(key, configuration, gridProxy, recoveryStrategy);
     }
 
+    /**
+     * Constructs an instance of {@link GridBucket} which state actually stored inside in-memory data-grid,
+     * and which completes the futures of asynchronous operations in specified executor instead of grid thread,
+     * see {@link CompletionExecutorGridProxy} for details.
+     *
+     * @return new distributed bucket
+     */
+    public <K extends Serializable> Bucket build(IgniteCache<K, GridBucketState> cache, K key, RecoveryStrategy recoveryStrategy, Executor completionExecutor) {
+        BucketConfiguration configuration = buildConfiguration();
+        GridProxy<K> gridProxy = new CompletionExecutorGridProxy<>(new IgniteProxy<>(cache), completionExecutor);
+        return GridBucket.createInitializedBucket(key, configuration, gridProxy, recoveryStrategy);
+    }
+
 }
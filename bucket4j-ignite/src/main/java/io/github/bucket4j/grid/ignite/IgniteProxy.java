@@ -17,18 +17,24 @@
 
 package io.github.bucket4j.grid.ignite;
 
+import io.github.bucket4j.BatchConsumptionProbe;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
 import io.github.bucket4j.Nothing;
 import io.github.bucket4j.grid.CommandResult;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.GridCommand;
 import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.jcache.ExecuteBatchProcessor;
 import io.github.bucket4j.grid.jcache.JCacheEntryProcessor;
+import org.apache.ignite.IgniteBinary;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.lang.IgniteFuture;
 import org.apache.ignite.lang.IgniteInClosure;
 
+import javax.cache.processor.EntryProcessorResult;
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -38,6 +44,15 @@ public class IgniteProxy<K extends Serializable> implements GridProxy<K> {
 
     public IgniteProxy(IgniteCache<K, GridBucketState> cache) {
         this.cache = cache;
+        registerResultTypes(cache.unwrap(org.apache.ignite.Ignite.class).binary());
+    }
+
+    private static void registerResultTypes(IgniteBinary binary) {
+        // The client node must know the schema of results before the first answer arrives,
+        // otherwise Ignite can deserialize the answer against the schema-less metadata proposed by the server node
+        // and fail with NullPointerException inside BinaryMetadata.hasSchema
+        binary.toBinary(CommandResult.success(ConsumptionProbe.consumed(0L)));
+        binary.toBinary(CommandResult.success(new BatchConsumptionProbe(0, 0, 0L, 0L, 0L)));
     }
 
     @Override
@@ -46,6 +61,13 @@ public class IgniteProxy<K extends Serializable> implements GridProxy<K> {
         return cache.invoke(key, entryProcessor);
     }
 
+    @Override
+    public <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeBatchProcessor(commands);
+        Map<K, EntryProcessorResult<CommandResult<T>>> results = cache.invokeAll(commands.keySet(), entryProcessor);
+        return ExecuteBatchProcessor.unwrapResults(commands, results);
+    }
+
     @Override
     public void createInitialState(K key, BucketConfiguration configuration) {
         JCacheEntryProcessor<K, Nothing> entryProcessor = JCacheEntryProcessor.initStateProcessor(configuration);
@@ -65,6 +87,13 @@ public class IgniteProxy<K extends Serializable> implements GridProxy<K> {
         return invokeAsync(key, entryProcessor);
     }
 
+    @Override
+    public <T extends Serializable> CompletableFuture<Map<K, CommandResult<T>>> executeBatchAsync(Map<K, GridCommand<T>> commands) {
+        JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeBatchProcessor(commands);
+        IgniteFuture<Map<K, EntryProcessorResult<CommandResult<T>>>> igniteFuture = cache.invokeAllAsync(commands.keySet(), entryProcessor);
+        return convertFuture(igniteFuture).thenApply(results -> ExecuteBatchProcessor.unwrapResults(commands, results));
+    }
+
     @Override
     public <T extends Serializable> CompletableFuture<T> createInitialStateAndExecuteAsync(K key, BucketConfiguration configuration, GridCommand<T> command) {
         JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.initStateAndExecuteProcessor(command, configuration);
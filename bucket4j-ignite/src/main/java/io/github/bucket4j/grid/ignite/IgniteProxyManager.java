@@ -19,15 +19,26 @@ package io.github.bucket4j.grid.ignite;
 
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.grid.CoalescingGridProxy;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
 import io.github.bucket4j.grid.GridBucket;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.MultiKeyConsistency;
+import io.github.bucket4j.grid.MultiKeyConsumption;
 import io.github.bucket4j.grid.ProxyManager;
+import io.github.bucket4j.grid.SingleRoundTripInitializer;
 import org.apache.ignite.IgniteCache;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Ignite specific implementation of {@link ProxyManager}
@@ -37,23 +48,50 @@ import java.util.function.Supplier;
 public class IgniteProxyManager<K extends Serializable> implements ProxyManager<K> {
 
     private final GridProxy<K> gridProxy;
+    private final SingleRoundTripInitializer<K> initializer;
 
     IgniteProxyManager(IgniteCache<K, GridBucketState> cache) {
+        this(cache, false);
+    }
+
+    IgniteProxyManager(IgniteCache<K, GridBucketState> cache, boolean coalescing) {
+        this(cache, coalescing, null);
+    }
+
+    IgniteProxyManager(IgniteCache<K, GridBucketState> cache, boolean coalescing, Executor completionExecutor) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache must not be null");
+        }
+        GridProxy<K> gridProxy = new IgniteProxy<>(cache);
+        if (completionExecutor != null) {
+            gridProxy = new CompletionExecutorGridProxy<>(gridProxy, completionExecutor);
+        }
+        this.gridProxy = coalescing ? new CoalescingGridProxy<>(gridProxy) : gridProxy;
+        this.initializer = null;
+    }
+
+    IgniteProxyManager(IgniteCache<K, GridBucketState> cache, UnaryOperator<GridProxy<K>> decorator) {
         if (cache == null) {
             throw new IllegalArgumentException("cache must not be null");
         }
-        this.gridProxy = new IgniteProxy<>(cache);
+        this.gridProxy = decorator.apply(new IgniteProxy<>(cache));
+        this.initializer = null;
+    }
+
+    private IgniteProxyManager(GridProxy<K> gridProxy, SingleRoundTripInitializer<K> initializer) {
+        this.gridProxy = gridProxy;
+        this.initializer = initializer;
     }
 
     @Override
     public Bucket getProxy(K key, Supplier<BucketConfiguration> supplier) {
-        return GridBucket.createLazyBucket(key, supplier, gridProxy);
+        return createLazyBucket(key, supplier);
     }
 
     @Override
     public Optional<Bucket> getProxy(K key) {
         return getProxyConfiguration(key)
-                .map(configuration -> GridBucket.createLazyBucket(key, () -> configuration, gridProxy));
+                .map(configuration -> createLazyBucket(key, () -> configuration));
     }
 
     @Override
@@ -61,4 +99,28 @@ public class IgniteProxyManager<K extends Serializable> implements ProxyManager<
         return gridProxy.getConfiguration(key);
     }
 
+    @Override
+    public ProxyManager<K> withSingleRoundTripInitialization() {
+        return new IgniteProxyManager<>(gridProxy, new SingleRoundTripInitializer<>());
+    }
+
+    @Override
+    public Map<K, ConsumptionProbe> tryConsume(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                               MultiKeyConsistency consistency) {
+        return MultiKeyConsumption.tryConsume(gridProxy, tokensToConsume, configurationLazySupplier, consistency);
+    }
+
+    @Override
+    public CompletableFuture<Map<K, ConsumptionProbe>> tryConsumeAsync(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                                                       MultiKeyConsistency consistency) {
+        return MultiKeyConsumption.tryConsumeAsync(gridProxy, tokensToConsume, configurationLazySupplier, consistency);
+    }
+
+    private Bucket createLazyBucket(K key, Supplier<BucketConfiguration> supplier) {
+        if (initializer == null) {
+            return GridBucket.createLazyBucket(key, supplier, gridProxy);
+        }
+        return GridBucket.createLazyBucket(key, supplier, gridProxy, initializer);
+    }
+
 }
@@ -21,6 +21,7 @@ import io.github.bucket4j.AbstractDistributedBucketTest;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import io.github.bucket4j.grid.RecoveryStrategy;
 import org.apache.ignite.Ignite;
@@ -100,6 +101,16 @@ public class IgniteTest extends AbstractDistributedBucketTest<IgniteBucketBuilde
         return Bucket4j.extension(getExtensionClass()).proxyManagerForCache(cache);
     }
 
+    @Override
+    protected ProxyManager<String> newCoalescingProxyManager() {
+        return Bucket4j.extension(getExtensionClass()).coalescingProxyManagerForCache(cache);
+    }
+
+    @Override
+    protected ProxyManager<String> newBoundedProxyManager(int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy) {
+        return Bucket4j.extension(getExtensionClass()).boundedProxyManagerForCache(cache, maxInFlightOperations, maxQueueSize, overflowStrategy);
+    }
+
     @Override
     protected void removeBucketFromBackingStorage(String key) {
         cache.remove(key);
@@ -18,13 +18,19 @@
 package io.github.bucket4j.grid.infinispan;
 
 
+import io.github.bucket4j.BucketExceptions;
 import io.github.bucket4j.Extension;
+import io.github.bucket4j.grid.BoundedAsyncGridProxy;
+import io.github.bucket4j.grid.CoalescingGridProxy;
+import io.github.bucket4j.grid.CompletionExecutorGridProxy;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 
 import org.infinispan.functional.FunctionalMap.ReadWriteMap;
 
 import java.io.Serializable;
+import java.util.concurrent.Executor;
 
 /**
  * The extension of Bucket4j library addressed to support <a href="https://ignite.apache.org/">Apache ignite</a> in-memory computing platform.
@@ -54,4 +60,69 @@ public class Infinispan implements Extension<InfinispanBucketBuilder> {
         return new InfinispanProxyManager<>(readWriteMap);
     }
 
+    /**
+     * Creates {@link InfinispanProxyManager} for specified cache which coalesces concurrent requests to same key from current JVM
+     * into single round trip, see {@link CoalescingGridProxy} for details.
+     *
+     * @param readWriteMap cache for storing state of buckets
+     * @param <K> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <K extends Serializable> ProxyManager<K> coalescingProxyManagerForMap(ReadWriteMap<K, GridBucketState> readWriteMap) {
+        return new InfinispanProxyManager<>(readWriteMap, true);
+    }
+
+    /**
+     * Creates {@link InfinispanProxyManager} for specified cache which limits the count of outstanding asynchronous operations,
+     * see {@link BoundedAsyncGridProxy} for details.
+     * If metrics of limiter need to be published, construct {@link BoundedAsyncGridProxy} on top of {@link InfinispanProxy} directly
+     * and create buckets via {@link io.github.bucket4j.grid.GridBucket#createLazyBucket}.
+     *
+     * @param readWriteMap cache for storing state of buckets
+     * @param maxInFlightOperations the maximum count of asynchronous operations which are sent to the grid and not completed yet
+     * @param maxQueueSize the maximum count of operations which wait for free slot, it is ignored by {@link OverflowStrategy#REJECT}
+     * @param overflowStrategy the reaction on operation which exceeds the limit
+     * @param <K> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <K extends Serializable> ProxyManager<K> boundedProxyManagerForMap(ReadWriteMap<K, GridBucketState> readWriteMap, int maxInFlightOperations,
+                                                                              int maxQueueSize, OverflowStrategy overflowStrategy) {
+        return new InfinispanProxyManager<>(readWriteMap, gridProxy -> new BoundedAsyncGridProxy<>(gridProxy, maxInFlightOperations, maxQueueSize, overflowStrategy));
+    }
+
+    /**
+     * Creates {@link InfinispanProxyManager} for specified cache which completes the futures of asynchronous operations
+     * in specified executor instead of grid thread, see {@link CompletionExecutorGridProxy} for details.
+     *
+     * @param readWriteMap cache for storing state of buckets
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     * @param <K> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <K extends Serializable> ProxyManager<K> proxyManagerForMap(ReadWriteMap<K, GridBucketState> readWriteMap, Executor completionExecutor) {
+        checkExecutor(completionExecutor);
+        return new InfinispanProxyManager<>(readWriteMap, gridProxy -> new CompletionExecutorGridProxy<>(gridProxy, completionExecutor));
+    }
+
+    /**
+     * Creates {@link InfinispanProxyManager} for specified cache which coalesces concurrent requests to same key from current JVM
+     * into single round trip, and completes the futures of asynchronous operations in specified executor instead of grid thread.
+     *
+     * @param readWriteMap cache for storing state of buckets
+     * @param completionExecutor the executor which completes the futures returned by asynchronous operations
+     * @param <K> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <K extends Serializable> ProxyManager<K> coalescingProxyManagerForMap(ReadWriteMap<K, GridBucketState> readWriteMap, Executor completionExecutor) {
+        checkExecutor(completionExecutor);
+        return new InfinispanProxyManager<>(readWriteMap,
+                gridProxy -> new CoalescingGridProxy<>(new CompletionExecutorGridProxy<>(gridProxy, completionExecutor)));
+    }
+
+    private static void checkExecutor(Executor completionExecutor) {
+        if (completionExecutor == null) {
+            throw BucketExceptions.nullCompletionExecutor();
+        }
+    }
+
 }
@@ -30,6 +30,8 @@ import org.infinispan.functional.FunctionalMap.ReadWriteMap;
 import org.infinispan.util.function.SerializableFunction;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -48,6 +50,19 @@ public class InfinispanProxy<K extends Serializable> implements GridProxy<K> {
         return invokeSync(key, entryProcessor);
     }
 
+    @Override
+    public <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeBatchProcessor(commands);
+        SerializableFunctionAdapter<K, T> function = new SerializableFunctionAdapter<>(entryProcessor);
+        SerializableFunction<EntryView.ReadWriteEntryView<K, GridBucketState>, KeyedCommandResult<K, T>> keyedFunction =
+                (SerializableFunction<EntryView.ReadWriteEntryView<K, GridBucketState>, KeyedCommandResult<K, T>>)
+                entry -> new KeyedCommandResult<>(entry.key(), function.apply(entry));
+        Map<K, CommandResult<T>> results = new LinkedHashMap<>();
+        readWriteMap.evalMany(commands.keySet(), keyedFunction)
+                .forEach(keyedResult -> results.put(keyedResult.getKey(), keyedResult.getResult()));
+        return results;
+    }
+
     @Override
     public void createInitialState(K key, BucketConfiguration configuration) {
         JCacheEntryProcessor<K, Nothing> entryProcessor = JCacheEntryProcessor.initStateProcessor(configuration);
@@ -19,15 +19,24 @@ package io.github.bucket4j.grid.infinispan;
 
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.grid.CoalescingGridProxy;
 import io.github.bucket4j.grid.GridBucket;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.MultiKeyConsistency;
+import io.github.bucket4j.grid.MultiKeyConsumption;
 import io.github.bucket4j.grid.ProxyManager;
+import io.github.bucket4j.grid.SingleRoundTripInitializer;
 import org.infinispan.functional.FunctionalMap;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Infinispan specific implementation of {@link ProxyManager}
@@ -37,23 +46,43 @@ import java.util.function.Supplier;
 public class InfinispanProxyManager<K extends Serializable> implements ProxyManager<K> {
 
     private final GridProxy<K> gridProxy;
+    private final SingleRoundTripInitializer<K> initializer;
 
     InfinispanProxyManager(FunctionalMap.ReadWriteMap<K, GridBucketState> readWriteMap) {
+        this(readWriteMap, false);
+    }
+
+    InfinispanProxyManager(FunctionalMap.ReadWriteMap<K, GridBucketState> readWriteMap, boolean coalescing) {
         if (readWriteMap == null) {
             throw new IllegalArgumentException("map must not be null");
         }
-        this.gridProxy = new InfinispanProxy<>(readWriteMap);
+        GridProxy<K> gridProxy = new InfinispanProxy<>(readWriteMap);
+        this.gridProxy = coalescing ? new CoalescingGridProxy<>(gridProxy) : gridProxy;
+        this.initializer = null;
+    }
+
+    InfinispanProxyManager(FunctionalMap.ReadWriteMap<K, GridBucketState> readWriteMap, UnaryOperator<GridProxy<K>> decorator) {
+        if (readWriteMap == null) {
+            throw new IllegalArgumentException("map must not be null");
+        }
+        this.gridProxy = decorator.apply(new InfinispanProxy<>(readWriteMap));
+        this.initializer = null;
+    }
+
+    private InfinispanProxyManager(GridProxy<K> gridProxy, SingleRoundTripInitializer<K> initializer) {
+        this.gridProxy = gridProxy;
+        this.initializer = initializer;
     }
 
     @Override
     public Bucket getProxy(K key, Supplier<BucketConfiguration> supplier) {
-        return GridBucket.createLazyBucket(key, supplier, gridProxy);
+        return createLazyBucket(key, supplier);
     }
 
     @Override
     public Optional<Bucket> getProxy(K key) {
         return getProxyConfiguration(key)
-                .map(configuration -> GridBucket.createLazyBucket(key, () -> configuration, gridProxy));
+                .map(configuration -> createLazyBucket(key, () -> configuration));
     }
 
     @Override
@@ -61,4 +90,28 @@ public class InfinispanProxyManager<K extends Serializable> implements ProxyMana
         return gridProxy.getConfiguration(key);
     }
 
+    @Override
+    public ProxyManager<K> withSingleRoundTripInitialization() {
+        return new InfinispanProxyManager<>(gridProxy, new SingleRoundTripInitializer<>());
+    }
+
+    @Override
+    public Map<K, ConsumptionProbe> tryConsume(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                               MultiKeyConsistency consistency) {
+        return MultiKeyConsumption.tryConsume(gridProxy, tokensToConsume, configurationLazySupplier, consistency);
+    }
+
+    @Override
+    public CompletableFuture<Map<K, ConsumptionProbe>> tryConsumeAsync(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                                                       MultiKeyConsistency consistency) {
+        return MultiKeyConsumption.tryConsumeAsync(gridProxy, tokensToConsume, configurationLazySupplier, consistency);
+    }
+
+    private Bucket createLazyBucket(K key, Supplier<BucketConfiguration> supplier) {
+        if (initializer == null) {
+            return GridBucket.createLazyBucket(key, supplier, gridProxy);
+        }
+        return GridBucket.createLazyBucket(key, supplier, gridProxy, initializer);
+    }
+
 }
@@ -0,0 +1,47 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid.infinispan;
+
+import io.github.bucket4j.grid.CommandResult;
+
+import java.io.Serializable;
+
+/**
+ * The result of command execution together with the key, it is required because {@code evalMany} does not associate results with keys.
+ */
+class KeyedCommandResult<K extends Serializable, T extends Serializable> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final K key;
+    private final CommandResult<T> result;
+
+    KeyedCommandResult(K key, CommandResult<T> result) {
+        this.key = key;
+        this.result = result;
+    }
+
+    K getKey() {
+        return key;
+    }
+
+    CommandResult<T> getResult() {
+        return result;
+    }
+
+}
@@ -21,6 +21,7 @@ import io.github.bucket4j.AbstractDistributedBucketTest;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import io.github.bucket4j.grid.RecoveryStrategy;
 import org.infinispan.functional.FunctionalMap.ReadWriteMap;
@@ -85,6 +86,16 @@ public class InfinispanTest extends AbstractDistributedBucketTest<InfinispanBuck
         return Bucket4j.extension(Infinispan.class).proxyManagerForMap(readWriteMap);
     }
 
+    @Override
+    protected ProxyManager<String> newCoalescingProxyManager() {
+        return Bucket4j.extension(Infinispan.class).coalescingProxyManagerForMap(readWriteMap);
+    }
+
+    @Override
+    protected ProxyManager<String> newBoundedProxyManager(int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy) {
+        return Bucket4j.extension(Infinispan.class).boundedProxyManagerForMap(readWriteMap, maxInFlightOperations, maxQueueSize, overflowStrategy);
+    }
+
     @Override
     protected void removeBucketFromBackingStorage(String key) {
         cache.remove(key);
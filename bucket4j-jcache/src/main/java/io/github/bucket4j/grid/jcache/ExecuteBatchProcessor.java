@@ -0,0 +1,63 @@
+/*
+ *
+ *   Copyright 2015-2017 Vladimir Bukhtoyarov
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.github.bucket4j.grid.jcache;
+
+import io.github.bucket4j.grid.CommandResult;
+import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.GridCommand;
+
+import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The processor which is sent to several keys at once, each entry is processed by command dedicated to its key.
+ */
+public class ExecuteBatchProcessor<K extends Serializable, T extends Serializable> implements JCacheEntryProcessor<K, T> {
+
+    private static final long serialVersionUID = 1;
+
+    private Map<K, GridCommand<T>> targetCommands;
+
+    public ExecuteBatchProcessor(Map<K, GridCommand<T>> targetCommands) {
+        this.targetCommands = new LinkedHashMap<>(targetCommands);
+    }
+
+    @Override
+    public CommandResult<T> process(MutableEntry<K, GridBucketState> mutableEntry, Object... arguments) {
+        GridCommand<T> targetCommand = targetCommands.get(mutableEntry.getKey());
+        return new ExecuteProcessor<K, T>(targetCommand).process(mutableEntry, arguments);
+    }
+
+    public static <K extends Serializable, T extends Serializable> Map<K, CommandResult<T>> unwrapResults(
+            Map<K, GridCommand<T>> commands, Map<K, EntryProcessorResult<CommandResult<T>>> results) {
+        Map<K, CommandResult<T>> unwrappedResults = new LinkedHashMap<>();
+        for (K key : commands.keySet()) {
+            EntryProcessorResult<CommandResult<T>> result = results.get(key);
+            if (result == null) {
+                // processor never returns null, so the result can be missed only when provider violates the contract of invokeAll
+                throw new IllegalStateException("Result for key " + key + " is missed");
+            }
+            unwrappedResults.put(key, result.get());
+        }
+        return unwrappedResults;
+    }
+
+}
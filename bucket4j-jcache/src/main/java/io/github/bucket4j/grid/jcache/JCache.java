@@ -18,6 +18,7 @@
 package io.github.bucket4j.grid.jcache;
 
 import io.github.bucket4j.Extension;
+import io.github.bucket4j.grid.CoalescingGridProxy;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.ProxyManager;
 
@@ -50,4 +51,16 @@ public class JCache implements Extension<JCacheBucketBuilder> {
         return new JCacheProxyManager<>(cache);
     }
 
+    /**
+     * Creates {@link JCacheProxyManager} for specified cache which coalesces concurrent requests to same key from current JVM
+     * into single round trip, see {@link CoalescingGridProxy} for details.
+     *
+     * @param cache cache for storing state of buckets
+     * @param <T> type of keys in the cache
+     * @return {@link ProxyManager} for specified cache.
+     */
+    public <T extends Serializable> ProxyManager<T> coalescingProxyManagerForCache(Cache<T, GridBucketState> cache) {
+        return new JCacheProxyManager<>(cache, true);
+    }
+
 }
@@ -25,6 +25,7 @@ import io.github.bucket4j.grid.GridCommand;
 
 import javax.cache.processor.EntryProcessor;
 import java.io.Serializable;
+import java.util.Map;
 
 
 public interface JCacheEntryProcessor<K extends Serializable, T extends Serializable> extends Serializable, EntryProcessor<K, GridBucketState, CommandResult<T>> {
@@ -37,6 +38,10 @@ public interface JCacheEntryProcessor<K extends Serializable, T extends Serializ
         return new ExecuteProcessor<>(targetCommand);
     }
 
+    static <K extends Serializable, T extends Serializable> JCacheEntryProcessor<K, T> executeBatchProcessor(Map<K, GridCommand<T>> targetCommands) {
+        return new ExecuteBatchProcessor<>(targetCommands);
+    }
+
     static <K extends Serializable, T extends Serializable> JCacheEntryProcessor<K, T> initStateAndExecuteProcessor(GridCommand<T> targetCommand, BucketConfiguration configuration) {
         return new InitStateAndExecuteProcessor<>(targetCommand, configuration);
     }
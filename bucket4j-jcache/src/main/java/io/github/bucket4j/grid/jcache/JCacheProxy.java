@@ -26,6 +26,7 @@ import io.github.bucket4j.grid.GridBucketState;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
+import javax.cache.processor.EntryProcessorResult;
 import javax.cache.spi.CachingProvider;
 import java.io.Serializable;
 import java.util.*;
@@ -51,6 +52,13 @@ public class JCacheProxy<K extends Serializable> implements GridProxy<K> {
         return cache.invoke(key, entryProcessor);
     }
 
+    @Override
+    public <T extends Serializable> Map<K, CommandResult<T>> executeBatch(Map<K, GridCommand<T>> commands) {
+        JCacheEntryProcessor<K, T> entryProcessor = JCacheEntryProcessor.executeBatchProcessor(commands);
+        Map<K, EntryProcessorResult<CommandResult<T>>> results = cache.invokeAll(commands.keySet(), entryProcessor);
+        return ExecuteBatchProcessor.unwrapResults(commands, results);
+    }
+
     @Override
     public void createInitialState(K key, BucketConfiguration configuration) {
         JCacheEntryProcessor<K, Nothing> entryProcessor = JCacheEntryProcessor.initStateProcessor(configuration);
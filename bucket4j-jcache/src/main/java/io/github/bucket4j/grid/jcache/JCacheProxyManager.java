@@ -19,14 +19,22 @@ package io.github.bucket4j.grid.jcache;
 
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
 import io.github.bucket4j.grid.ProxyManager;
+import io.github.bucket4j.grid.SingleRoundTripInitializer;
+import io.github.bucket4j.grid.CoalescingGridProxy;
 import io.github.bucket4j.grid.GridBucket;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.MultiKeyConsistency;
+import io.github.bucket4j.grid.MultiKeyConsumption;
 
 import javax.cache.Cache;
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -37,23 +45,35 @@ import java.util.function.Supplier;
 public class JCacheProxyManager<K extends Serializable> implements ProxyManager<K> {
 
     private final GridProxy<K> gridProxy;
+    private final SingleRoundTripInitializer<K> initializer;
 
     JCacheProxyManager(Cache<K, GridBucketState> cache) {
+        this(cache, false);
+    }
+
+    JCacheProxyManager(Cache<K, GridBucketState> cache, boolean coalescing) {
         if (cache == null) {
             throw new IllegalArgumentException("cache must not be null");
         }
-        this.gridProxy = new JCacheProxy<>(cache);
+        GridProxy<K> gridProxy = new JCacheProxy<>(cache);
+        this.gridProxy = coalescing ? new CoalescingGridProxy<>(gridProxy) : gridProxy;
+        this.initializer = null;
+    }
+
+    private JCacheProxyManager(GridProxy<K> gridProxy, SingleRoundTripInitializer<K> initializer) {
+        this.gridProxy = gridProxy;
+        this.initializer = initializer;
     }
 
     @Override
     public Bucket getProxy(K key, Supplier<BucketConfiguration> supplier) {
-        return GridBucket.createLazyBucket(key, supplier, gridProxy);
+        return createLazyBucket(key, supplier);
     }
 
     @Override
     public Optional<Bucket> getProxy(K key) {
         return getProxyConfiguration(key)
-                .map(configuration -> GridBucket.createLazyBucket(key, () -> configuration, gridProxy));
+                .map(configuration -> createLazyBucket(key, () -> configuration));
     }
 
     @Override
@@ -61,4 +81,28 @@ public class JCacheProxyManager<K extends Serializable> implements ProxyManager<
         return gridProxy.getConfiguration(key);
     }
 
+    @Override
+    public ProxyManager<K> withSingleRoundTripInitialization() {
+        return new JCacheProxyManager<>(gridProxy, new SingleRoundTripInitializer<>());
+    }
+
+    @Override
+    public Map<K, ConsumptionProbe> tryConsume(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                               MultiKeyConsistency consistency) {
+        return MultiKeyConsumption.tryConsume(gridProxy, tokensToConsume, configurationLazySupplier, consistency);
+    }
+
+    @Override
+    public CompletableFuture<Map<K, ConsumptionProbe>> tryConsumeAsync(Map<K, Long> tokensToConsume, Function<K, BucketConfiguration> configurationLazySupplier,
+                                                                       MultiKeyConsistency consistency) {
+        return MultiKeyConsumption.tryConsumeAsync(gridProxy, tokensToConsume, configurationLazySupplier, consistency);
+    }
+
+    private Bucket createLazyBucket(K key, Supplier<BucketConfiguration> supplier) {
+        if (initializer == null) {
+            return GridBucket.createLazyBucket(key, supplier, gridProxy);
+        }
+        return GridBucket.createLazyBucket(key, supplier, gridProxy, initializer);
+    }
+
 }
@@ -20,6 +20,7 @@ package io.github.bucket4j.grid.jcache;
 
 import io.github.bucket4j.*;
 import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.OverflowStrategy;
 import io.github.bucket4j.grid.ProxyManager;
 import io.github.bucket4j.grid.RecoveryStrategy;
 import org.junit.Test;
@@ -63,6 +64,17 @@ public abstract class AbstractJCacheTest extends AbstractDistributedBucketTest<J
         return Bucket4j.extension(JCache.class).proxyManagerForCache(getCache());
     }
 
+    @Override
+    protected ProxyManager<String> newCoalescingProxyManager() {
+        return Bucket4j.extension(JCache.class).coalescingProxyManagerForCache(getCache());
+    }
+
+    @Override
+    protected ProxyManager<String> newBoundedProxyManager(int maxInFlightOperations, int maxQueueSize, OverflowStrategy overflowStrategy) {
+        // JCache does not specify asynchronous API, so there is nothing to bound
+        return newProxyManager();
+    }
+
     @Override
     protected void removeBucketFromBackingStorage(String key) {
         getCache().remove(key);
@@ -17,6 +17,9 @@
 
 package io.github.bucket4j.grid.jcache.ignite;
 
+import io.github.bucket4j.BatchConsumptionProbe;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.grid.CommandResult;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.jcache.AbstractJCacheTest;
 import org.apache.ignite.Ignite;
@@ -62,6 +65,12 @@ public class IgniteJCacheTest extends AbstractJCacheTest {
         ignite = Ignition.start(igniteConfiguration);
         CacheConfiguration cacheConfiguration = new CacheConfiguration("my_buckets");
         cache = ignite.getOrCreateCache(cacheConfiguration);
+
+        // JCacheProxy is not aware about Ignite, so application registers the schema of results up front,
+        // otherwise the client can deserialize the first answer against the schema-less metadata proposed by the server
+        // and fail with NullPointerException inside BinaryMetadata.hasSchema
+        ignite.binary().toBinary(CommandResult.success(ConsumptionProbe.consumed(0L)));
+        ignite.binary().toBinary(CommandResult.success(new BatchConsumptionProbe(0, 0, 0L, 0L, 0L)));
     }
 
     @AfterClass